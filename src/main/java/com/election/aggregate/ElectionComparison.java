@@ -0,0 +1,205 @@
+package com.election.aggregate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntFunction;
+
+/**
+ * Turnout, completion and gender and age range distributions of many elections side by side,
+ * with totals across all of them.
+ * <p>
+ * Payloads are resolved and reduced to one {@link Row} each by a fork-join task that splits the
+ * election range in halves. Each half keeps its own sums, and the halves are merged
+ * left to right, so distribution categories keep the order in which they first appear.
+ */
+public final class ElectionComparison {
+
+    // Elections a task reduces without forking further
+    private static final int LEAF_SIZE = 16;
+
+    /**
+     * One election. {@code turnout} and {@code completionRate} are percentages, NaN when the
+     * payload has no {@code insights}.
+     */
+    public record Row(String electionId, String electionName, String startDate, String endDate, int candidates,
+                      long votes, long allVoters, long submitted, double turnout, double completionRate,
+                      Map<String, Long> gender, Map<String, Long> ageRange) {
+    }
+
+    /**
+     * Sums over all elections. {@code completionRate} is weighted by each election's
+     * {@code allVotersCount}.
+     */
+    public record Totals(int elections, long candidates, long votes, long allVoters, long submitted, double turnout,
+                         double completionRate, Map<String, Long> gender, Map<String, Long> ageRange) {
+    }
+
+    private final List<Row> rows;
+    private final Totals totals;
+
+    private ElectionComparison(List<Row> rows, Totals totals) {
+        this.rows = rows;
+        this.totals = totals;
+    }
+
+    /**
+     * Compares {@code count} elections
+     *
+     * @param payloads the payload of election {@code i}, with or without the {@code data}
+     *                 wrapper; called from the pool's threads
+     */
+    public static ElectionComparison build(int count, IntFunction<JsonNode> payloads, ForkJoinPool pool) {
+        Row[] rows = new Row[count];
+        Sum sum = pool.invoke(new Reduce(payloads, rows, 0, count));
+        return new ElectionComparison(List.of(rows), sum.totals(count));
+    }
+
+    public List<Row> rows() {
+        return rows;
+    }
+
+    public Totals totals() {
+        return totals;
+    }
+
+    /**
+     * Gender categories of all elections, in order of first appearance
+     */
+    public List<String> genderCategories() {
+        return List.copyOf(totals.gender().keySet());
+    }
+
+    public List<String> ageRangeCategories() {
+        return List.copyOf(totals.ageRange().keySet());
+    }
+
+    /**
+     * Share of {@code category} in {@code distribution} as a fraction, 0 when it is empty
+     */
+    public static double share(Map<String, Long> distribution, String category) {
+        long total = 0;
+        for (long count : distribution.values()) {
+            total += count;
+        }
+        return total == 0 ? 0.0 : distribution.getOrDefault(category, 0L) / (double) total;
+    }
+
+    static Row row(JsonNode rootNode) {
+        JsonNode dataNode = rootNode.has("data") ? rootNode.path("data") : rootNode;
+        long votes = 0;
+        for (JsonNode candidate : dataNode.path("resultsSummary")) {
+            votes += candidate.path("numberOfVoters").asLong(0);
+        }
+        JsonNode insights = dataNode.path("insights");
+        long allVoters = insights.path("allVotersCount").asLong(0);
+        long submitted = insights.path("submittedVotesCount").asLong(0);
+        double turnout = allVoters > 0 ? submitted * 100.0 / allVoters : Double.NaN;
+        double completionRate = insights.has("completionRate")
+                ? insights.path("completionRate").asDouble(0.0) : Double.NaN;
+        return new Row(dataNode.path("electionId").asText(""), dataNode.path("electionName").asText(""),
+                dataNode.path("startDate").asText(""), dataNode.path("endDate").asText(""),
+                dataNode.path("resultsSummary").size(), votes, allVoters, submitted, turnout, completionRate,
+                distribution(dataNode, "candidateGender"), distribution(dataNode, "candidateAgeRange"));
+    }
+
+    private static Map<String, Long> distribution(JsonNode dataNode, String key) {
+        Map<String, Long> distribution = new LinkedHashMap<>();
+        dataNode.path("analytics").path(key).fields()
+                .forEachRemaining(e -> distribution.merge(e.getKey(), e.getValue().asLong(0), Long::sum));
+        return distribution;
+    }
+
+    /**
+     * Running sums of a range of elections
+     */
+    private static final class Sum {
+        long candidates;
+        long votes;
+        long allVoters;
+        long submitted;
+        // completionRate * allVotersCount over elections that report both
+        double weightedCompletion;
+        long completionVoters;
+        // Plain sum and count, used when no election reports allVotersCount
+        double completion;
+        int completions;
+        final Map<String, Long> gender = new LinkedHashMap<>();
+        final Map<String, Long> ageRange = new LinkedHashMap<>();
+
+        void add(Row row) {
+            candidates += row.candidates();
+            votes += row.votes();
+            allVoters += row.allVoters();
+            submitted += row.submitted();
+            if (!Double.isNaN(row.completionRate())) {
+                weightedCompletion += row.completionRate() * row.allVoters();
+                completionVoters += row.allVoters();
+                completion += row.completionRate();
+                completions++;
+            }
+            row.gender().forEach((k, v) -> gender.merge(k, v, Long::sum));
+            row.ageRange().forEach((k, v) -> ageRange.merge(k, v, Long::sum));
+        }
+
+        Sum merge(Sum right) {
+            candidates += right.candidates;
+            votes += right.votes;
+            allVoters += right.allVoters;
+            submitted += right.submitted;
+            weightedCompletion += right.weightedCompletion;
+            completionVoters += right.completionVoters;
+            completion += right.completion;
+            completions += right.completions;
+            right.gender.forEach((k, v) -> gender.merge(k, v, Long::sum));
+            right.ageRange.forEach((k, v) -> ageRange.merge(k, v, Long::sum));
+            return this;
+        }
+
+        Totals totals(int elections) {
+            double turnout = allVoters > 0 ? submitted * 100.0 / allVoters : Double.NaN;
+            double completionRate = completions == 0 ? Double.NaN
+                    : completionVoters > 0 ? weightedCompletion / completionVoters : completion / completions;
+            return new Totals(elections, candidates, votes, allVoters, submitted, turnout, completionRate,
+                    Collections.unmodifiableMap(gender), Collections.unmodifiableMap(ageRange));
+        }
+    }
+
+    private static final class Reduce extends RecursiveTask<Sum> {
+        private static final long serialVersionUID = 1L;
+
+        private final IntFunction<JsonNode> payloads;
+        private final Row[] rows;
+        private final int from;
+        private final int to;
+
+        Reduce(IntFunction<JsonNode> payloads, Row[] rows, int from, int to) {
+            this.payloads = payloads;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Sum compute() {
+            if (to - from <= LEAF_SIZE) {
+                Sum sum = new Sum();
+                for (int i = from; i < to; i++) {
+                    rows[i] = row(payloads.apply(i));
+                    sum.add(rows[i]);
+                }
+                return sum;
+            }
+            int middle = (from + to) >>> 1;
+            Reduce left = new Reduce(payloads, rows, from, middle);
+            left.fork();
+            Sum right = new Reduce(payloads, rows, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+}
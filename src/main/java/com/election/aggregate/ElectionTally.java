@@ -0,0 +1,262 @@
+package com.election.aggregate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running aggregates of the raw ballots of one election: votes per candidate, answer counts per
+ * question, responses per question and the voter demographics behind the {@code analytics}
+ * distributions. Every dimension is a {@link OrdinalDictionary} plus {@link StripedCounters}
+ * indexed by its ordinals.
+ * <p>
+ * Ingestion goes through a {@link Batch}, which counts into plain int arrays owned by one thread
+ * and adds them to the shared counters every so many ballots, so concurrent uploads rarely touch
+ * the same memory.
+ * <p>
+ * Voter names are interned in a {@link VoterDictionary} and each candidate keeps an int array of
+ * voter ids, so a vote costs four bytes plus the name once per distinct voter.
+ */
+public class ElectionTally {
+
+    public static final String ANSWER_SEPARATOR = "\u0000";
+
+    private final OrdinalDictionary candidates;
+    private final OrdinalDictionary questions;
+    // Keyed by question number, ANSWER_SEPARATOR and answer name
+    private final OrdinalDictionary answers;
+    private final OrdinalDictionary genders;
+    private final OrdinalDictionary ageRanges;
+
+    private final StripedCounters candidateVotes;
+    private final StripedCounters questionResponses;
+    private final StripedCounters answerCounts;
+    private final StripedCounters genderCounts;
+    private final StripedCounters ageRangeCounts;
+    private final LongAdder ballots = new LongAdder();
+    private final VoterDictionary voterNames = new VoterDictionary();
+    // Voter ids per candidate ordinal; each list is guarded by itself
+    private final AtomicReferenceArray<VoterIds> voters;
+
+    public ElectionTally(int maxCandidates, int maxAnswers, int maxCategories) {
+        this.candidates = new OrdinalDictionary(maxCandidates);
+        this.questions = new OrdinalDictionary(maxAnswers);
+        this.answers = new OrdinalDictionary(maxAnswers);
+        this.genders = new OrdinalDictionary(maxCategories);
+        this.ageRanges = new OrdinalDictionary(maxCategories);
+        this.candidateVotes = new StripedCounters(maxCandidates);
+        this.questionResponses = new StripedCounters(maxAnswers);
+        this.answerCounts = new StripedCounters(maxAnswers);
+        this.genderCounts = new StripedCounters(maxCategories);
+        this.ageRangeCounts = new StripedCounters(maxCategories);
+        this.voters = new AtomicReferenceArray<>(maxCandidates);
+    }
+
+    public Batch newBatch() {
+        return new Batch();
+    }
+
+    public long ballots() {
+        return ballots.sum();
+    }
+
+    public OrdinalDictionary candidates() {
+        return candidates;
+    }
+
+    public OrdinalDictionary questions() {
+        return questions;
+    }
+
+    public OrdinalDictionary answers() {
+        return answers;
+    }
+
+    public OrdinalDictionary genders() {
+        return genders;
+    }
+
+    public OrdinalDictionary ageRanges() {
+        return ageRanges;
+    }
+
+    public long[] candidateVotes() {
+        return candidateVotes.sums(candidates.size());
+    }
+
+    public long[] questionResponses() {
+        return questionResponses.sums(questions.size());
+    }
+
+    public long[] answerCounts() {
+        return answerCounts.sums(answers.size());
+    }
+
+    public long[] genderCounts() {
+        return genderCounts.sums(genders.size());
+    }
+
+    public long[] ageRangeCounts() {
+        return ageRangeCounts.sums(ageRanges.size());
+    }
+
+    /**
+     * Voter names of the first {@code candidates} candidate ordinals, in the order they were
+     * flushed. The lists share the tally's arrays, so taking them copies no names.
+     */
+    public VoterLists voters(int candidates) {
+        int[][] ids = new int[candidates][];
+        int[] sizes = new int[candidates];
+        for (int i = 0; i < candidates; i++) {
+            VoterIds list = voters.get(i);
+            if (list != null) {
+                synchronized (list) {
+                    ids[i] = list.ids;
+                    sizes[i] = list.size;
+                }
+            }
+        }
+        // Taken after the ids, so it covers every one of them
+        return new EncodedVoterLists(voterNames.snapshot(), ids, sizes);
+    }
+
+    /**
+     * Bytes held for voter names and ids, including spare capacity
+     */
+    public long voterFootprint() {
+        long bytes = voterNames.footprint();
+        for (int i = 0; i < voters.length(); i++) {
+            VoterIds list = voters.get(i);
+            if (list != null) {
+                synchronized (list) {
+                    bytes += 4L * list.ids.length;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Single-threaded accumulator for one upload; {@link #flush()} publishes what it counted
+     */
+    public final class Batch {
+        private int[] candidateVotes = new int[16];
+        private int[] questionResponses = new int[16];
+        private int[] answerCounts = new int[64];
+        private int[] genderCounts = new int[8];
+        private int[] ageRangeCounts = new int[8];
+        private List<String>[] voters = newVoterLists(16);
+        private int ballots;
+
+        private Batch() {
+        }
+
+        public void ballot() {
+            ballots++;
+        }
+
+        public void vote(int candidate, String voter) {
+            candidateVotes = grow(candidateVotes, candidate);
+            candidateVotes[candidate]++;
+            if (voter != null) {
+                if (candidate >= voters.length) {
+                    voters = Arrays.copyOf(voters, Math.max(candidate + 1, voters.length * 2));
+                }
+                if (voters[candidate] == null) {
+                    voters[candidate] = new ArrayList<>();
+                }
+                voters[candidate].add(voter);
+            }
+        }
+
+        public void response(int question) {
+            questionResponses = grow(questionResponses, question);
+            questionResponses[question]++;
+        }
+
+        public void answer(int answer) {
+            answerCounts = grow(answerCounts, answer);
+            answerCounts[answer]++;
+        }
+
+        public void gender(int category) {
+            genderCounts = grow(genderCounts, category);
+            genderCounts[category]++;
+        }
+
+        public void ageRange(int category) {
+            ageRangeCounts = grow(ageRangeCounts, category);
+            ageRangeCounts[category]++;
+        }
+
+        public int size() {
+            return ballots;
+        }
+
+        public void flush() {
+            drain(candidateVotes, ElectionTally.this.candidateVotes);
+            drain(questionResponses, ElectionTally.this.questionResponses);
+            drain(answerCounts, ElectionTally.this.answerCounts);
+            drain(genderCounts, ElectionTally.this.genderCounts);
+            drain(ageRangeCounts, ElectionTally.this.ageRangeCounts);
+            for (int i = 0; i < voters.length; i++) {
+                if (voters[i] != null && !voters[i].isEmpty()) {
+                    int[] ids = voterNames.ids(voters[i]);
+                    VoterIds shared = sharedVoters(i);
+                    synchronized (shared) {
+                        shared.addAll(ids);
+                    }
+                    voters[i].clear();
+                }
+            }
+            ElectionTally.this.ballots.add(ballots);
+            ballots = 0;
+        }
+
+        private void drain(int[] local, StripedCounters shared) {
+            for (int i = 0; i < local.length; i++) {
+                if (local[i] != 0) {
+                    shared.add(i, local[i]);
+                    local[i] = 0;
+                }
+            }
+        }
+    }
+
+    private VoterIds sharedVoters(int candidate) {
+        VoterIds ids = voters.get(candidate);
+        if (ids == null) {
+            voters.compareAndSet(candidate, null, new VoterIds());
+            ids = voters.get(candidate);
+        }
+        return ids;
+    }
+
+    /**
+     * Growable int array; entries below {@code size} are never changed, so readers may keep
+     * the array after the lock is released
+     */
+    private static final class VoterIds {
+        int[] ids = new int[16];
+        int size;
+
+        void addAll(int[] added) {
+            if (size + added.length > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(size + added.length, ids.length * 2));
+            }
+            System.arraycopy(added, 0, ids, size, added.length);
+            size += added.length;
+        }
+    }
+
+    private static int[] grow(int[] counts, int ordinal) {
+        return ordinal < counts.length ? counts : Arrays.copyOf(counts, Math.max(ordinal + 1, counts.length * 2));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<String>[] newVoterLists(int size) {
+        return new List[size];
+    }
+}
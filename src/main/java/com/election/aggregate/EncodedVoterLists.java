@@ -0,0 +1,81 @@
+package com.election.aggregate;
+
+import com.election.io.Utf8CsvWriter;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Voter lists held as int ids into a {@link VoterDictionary}: four bytes per vote, with each
+ * distinct name stored once. CSV exports copy the names' UTF-8 bytes straight from the arena.
+ */
+public final class EncodedVoterLists implements VoterLists {
+
+    private final VoterDictionary.Snapshot names;
+    private final int[][] ids;
+    private final int[] sizes;
+
+    /**
+     * @param ids   voter ids per candidate; only the first {@code sizes[i]} of {@code ids[i]} are read
+     * @param names a snapshot taken after every id in {@code ids} was assigned
+     */
+    public EncodedVoterLists(VoterDictionary.Snapshot names, int[][] ids, int[] sizes) {
+        this.names = names;
+        this.ids = ids;
+        this.sizes = sizes;
+    }
+
+    @Override
+    public int size(int candidate) {
+        return candidate >= 0 && candidate < sizes.length ? sizes[candidate] : 0;
+    }
+
+    @Override
+    public String name(int candidate, int index) {
+        return names.name(id(candidate, index));
+    }
+
+    @Override
+    public void appendTo(Utf8CsvWriter writer, int candidate, int index) throws IOException {
+        int id = id(candidate, index);
+        writer.appendUtf8(names.arena(), names.offset(id), names.length(id));
+    }
+
+    private int id(int candidate, int index) {
+        if (index < 0 || index >= size(candidate)) {
+            throw new IndexOutOfBoundsException("Voter " + index + " of candidate " + candidate);
+        }
+        return ids[candidate][index];
+    }
+
+    /**
+     * Collects voter names while a payload is parsed; not thread-safe
+     */
+    public static final class Builder {
+        private final VoterDictionary dictionary = new VoterDictionary();
+        private int[][] ids = new int[16][];
+        private int[] sizes = new int[16];
+        private int candidates;
+
+        public void add(int candidate, String name) {
+            if (candidate >= ids.length) {
+                int length = Math.max(candidate + 1, ids.length * 2);
+                ids = Arrays.copyOf(ids, length);
+                sizes = Arrays.copyOf(sizes, length);
+            }
+            candidates = Math.max(candidates, candidate + 1);
+            int[] list = ids[candidate];
+            if (list == null) {
+                list = ids[candidate] = new int[16];
+            } else if (sizes[candidate] == list.length) {
+                list = ids[candidate] = Arrays.copyOf(list, list.length * 2);
+            }
+            list[sizes[candidate]++] = dictionary.id(name);
+        }
+
+        public EncodedVoterLists build() {
+            return new EncodedVoterLists(dictionary.snapshot(), Arrays.copyOf(ids, candidates),
+                    Arrays.copyOf(sizes, candidates));
+        }
+    }
+}
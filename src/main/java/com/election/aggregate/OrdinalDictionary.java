@@ -0,0 +1,63 @@
+package com.election.aggregate;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns dense ordinals 0, 1, 2, ... to names in the order they are first seen, so counts can
+ * be kept in primitive arrays. Lookups of known names are lock-free; new names are assigned
+ * under a lock, which is rare once an election's candidates and answers have been seen.
+ */
+public class OrdinalDictionary {
+
+    private final ConcurrentHashMap<String, Integer> ordinals = new ConcurrentHashMap<>();
+    private final String[] names;
+    // Published after the name is stored, so readers up to size() always see it
+    private volatile int size;
+
+    public OrdinalDictionary(int capacity) {
+        this.names = new String[capacity];
+    }
+
+    /**
+     * Ordinal of {@code name}, assigning the next one if it is new, or -1 once the dictionary is full
+     */
+    public int ordinal(String name) {
+        Integer existing = ordinals.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (this) {
+            existing = ordinals.get(name);
+            if (existing != null) {
+                return existing;
+            }
+            int next = size;
+            if (next == names.length) {
+                return -1;
+            }
+            names[next] = name;
+            ordinals.put(name, next);
+            size = next + 1;
+            return next;
+        }
+    }
+
+    /**
+     * Ordinal of a known name, or -1
+     */
+    public int find(String name) {
+        return ordinals.getOrDefault(name, -1);
+    }
+
+    public String name(int ordinal) {
+        return names[ordinal];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return names.length;
+    }
+}
@@ -0,0 +1,48 @@
+package com.election.aggregate;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed number of long counters indexed by ordinal, spread over several stripes so concurrent
+ * writers mostly update different arrays. Adds are lock-free; sums read every stripe and are
+ * exact once writers have finished.
+ */
+public class StripedCounters {
+
+    private final AtomicLongArray[] stripes;
+    private final int mask;
+
+    public StripedCounters(int capacity) {
+        int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        this.stripes = new AtomicLongArray[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new AtomicLongArray(capacity);
+        }
+        this.mask = stripeCount - 1;
+    }
+
+    public void add(int ordinal, long delta) {
+        stripes[(int) Thread.currentThread().getId() & mask].getAndAdd(ordinal, delta);
+    }
+
+    public long sum(int ordinal) {
+        long sum = 0;
+        for (AtomicLongArray stripe : stripes) {
+            sum += stripe.get(ordinal);
+        }
+        return sum;
+    }
+
+    /**
+     * Sums of the first {@code size} counters
+     */
+    public long[] sums(int size) {
+        long[] sums = new long[size];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < size; i++) {
+                sums[i] += stripe.get(i);
+            }
+        }
+        return sums;
+    }
+}
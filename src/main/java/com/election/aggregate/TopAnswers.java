@@ -0,0 +1,168 @@
+package com.election.aggregate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the {@code limit} largest answers of very wide questions and folds the rest into one
+ * "Others" entry, so the layout and chart cost of a question stays bounded however many options
+ * it has.
+ * <p>
+ * Selection is a single pass over the answers with a min-heap of {@code limit} indexes whose root
+ * is the weakest answer kept so far: O(n log k) instead of copying and sorting all n answers.
+ * Equal values keep the earlier answer, so the result does not depend on the sort algorithm.
+ */
+public final class TopAnswers {
+
+    /**
+     * The kept answers and the sums of the folded ones
+     *
+     * @param ranked          kept answers, largest first
+     * @param inPayloadOrder  the same answers in the order of the payload
+     * @param otherAnswers    number of answers folded into "Others", 0 if none were
+     * @param otherCount      sum of their {@code answerCount}
+     * @param otherPercentage sum of their {@code answerPercentage}, rounded to two decimals
+     */
+    public record Selection(List<JsonNode> ranked, List<JsonNode> inPayloadOrder, int otherAnswers,
+                            long otherCount, double otherPercentage) {
+
+        public boolean hasOthers() {
+            return otherAnswers > 0;
+        }
+    }
+
+    private final int limit;
+
+    /**
+     * @param limit answers kept per question; 0 or less keeps every answer
+     */
+    public TopAnswers(int limit) {
+        this.limit = Math.max(0, limit);
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    /**
+     * Whether {@code answers} has more entries than are kept
+     */
+    public boolean truncates(JsonNode answers) {
+        return truncates(answers.size());
+    }
+
+    public boolean truncates(int answers) {
+        return limit > 0 && answers > limit;
+    }
+
+    /**
+     * Rows {@code answers} takes once selected: the kept answers plus the "Others" row
+     */
+    public int displayedCount(JsonNode answers) {
+        return displayedCount(answers.size());
+    }
+
+    public int displayedCount(int answers) {
+        return truncates(answers) ? limit + 1 : answers;
+    }
+
+    /**
+     * Selects the answers with the largest {@code key}, either {@code answerCount} or
+     * {@code answerPercentage}
+     */
+    public Selection select(JsonNode answers, String key) {
+        int size = answers.size();
+        if (!truncates(answers)) {
+            List<JsonNode> all = new ArrayList<>(size);
+            answers.forEach(all::add);
+            List<JsonNode> ranked = new ArrayList<>(all);
+            ranked.sort((a, b) -> Double.compare(b.path(key).asDouble(0.0), a.path(key).asDouble(0.0)));
+            return new Selection(ranked, all, 0, 0, 0.0);
+        }
+
+        double[] values = new double[size];
+        long totalCount = 0;
+        double totalPercentage = 0.0;
+        for (int i = 0; i < size; i++) {
+            JsonNode answer = answers.get(i);
+            values[i] = answer.path(key).asDouble(0.0);
+            totalCount += answer.path("answerCount").asLong(0);
+            totalPercentage += answer.path("answerPercentage").asDouble(0.0);
+        }
+
+        int[] heap = new int[limit];
+        for (int i = 0; i < limit; i++) {
+            heap[i] = i;
+            siftUp(heap, i, values);
+        }
+        for (int i = limit; i < size; i++) {
+            if (ranksBefore(i, heap[0], values)) {
+                heap[0] = i;
+                siftDown(heap, limit, values);
+            }
+        }
+
+        // Popping the root repeatedly yields the kept answers weakest first
+        int[] ranked = new int[limit];
+        for (int n = limit; n > 0; n--) {
+            ranked[n - 1] = heap[0];
+            heap[0] = heap[n - 1];
+            siftDown(heap, n - 1, values);
+        }
+        int[] ordered = ranked.clone();
+        Arrays.sort(ordered);
+
+        List<JsonNode> rankedAnswers = new ArrayList<>(limit);
+        List<JsonNode> orderedAnswers = new ArrayList<>(limit);
+        long keptCount = 0;
+        double keptPercentage = 0.0;
+        for (int i = 0; i < limit; i++) {
+            rankedAnswers.add(answers.get(ranked[i]));
+            JsonNode answer = answers.get(ordered[i]);
+            orderedAnswers.add(answer);
+            keptCount += answer.path("answerCount").asLong(0);
+            keptPercentage += answer.path("answerPercentage").asDouble(0.0);
+        }
+        return new Selection(rankedAnswers, orderedAnswers, size - limit, totalCount - keptCount,
+                Math.round((totalPercentage - keptPercentage) * 100) / 100.0);
+    }
+
+    /**
+     * Whether answer {@code a} is kept in preference to answer {@code b}
+     */
+    private static boolean ranksBefore(int a, int b, double[] values) {
+        return values[a] > values[b] || (values[a] == values[b] && a < b);
+    }
+
+    private static void siftUp(int[] heap, int index, double[] values) {
+        int node = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!ranksBefore(heap[parent], node, values)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = node;
+    }
+
+    private static void siftDown(int[] heap, int size, double[] values) {
+        int node = heap[0];
+        int index = 0;
+        for (int child = 1; child < size; child = 2 * index + 1) {
+            if (child + 1 < size && ranksBefore(heap[child], heap[child + 1], values)) {
+                child++;
+            }
+            if (!ranksBefore(node, heap[child], values)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = node;
+    }
+}
@@ -0,0 +1,213 @@
+package com.election.aggregate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Interns voter names as dense int ids. Each distinct name is stored once, UTF-8 encoded, in a
+ * single growable byte arena; an id costs its encoded bytes plus an offset and a hash slot, where
+ * a {@code String} costs about 50 bytes of headers and padding on top of its characters. Voter
+ * lists can then be kept as int arrays of ids.
+ * <p>
+ * Ids are assigned under the dictionary's lock. Readers work on a {@link Snapshot}: stored bytes
+ * and offsets are never changed, only copied into larger arrays, so a snapshot stays valid for
+ * every id assigned before it was taken.
+ */
+public class VoterDictionary {
+
+    private static final int MAX_ARENA = Integer.MAX_VALUE - 8;
+
+    private byte[] arena;
+    private int used;
+    // Name of id i is arena[offsets[i], offsets[i + 1])
+    private int[] offsets;
+    private int size;
+    // Open addressing table of id + 1, 0 for a free slot; the length is a power of two
+    private int[] slots;
+
+    public VoterDictionary() {
+        this(1024);
+    }
+
+    public VoterDictionary(int expectedNames) {
+        // Larger dictionaries grow as names arrive
+        int capacity = Math.max(16, Math.min(expectedNames, 1 << 24));
+        this.arena = new byte[capacity * 16];
+        this.offsets = new int[capacity + 1];
+        this.slots = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+    }
+
+    /**
+     * Id of {@code name}, assigning the next one if it is new
+     */
+    public synchronized int id(String name) {
+        return intern(name);
+    }
+
+    /**
+     * Ids of {@code names} in order, taking the lock once for the whole list
+     */
+    public synchronized int[] ids(List<String> names) {
+        int[] ids = new int[names.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = intern(names.get(i));
+        }
+        return ids;
+    }
+
+    /**
+     * Id of a known name, or -1
+     */
+    public synchronized int find(String name) {
+        byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+        int mask = slots.length - 1;
+        for (int slot = hash(utf8, 0, utf8.length) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (Arrays.equals(arena, offsets[id], offsets[id + 1], utf8, 0, utf8.length)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Bytes held by the arena, offsets and hash table, including spare capacity
+     */
+    public synchronized long footprint() {
+        return arena.length + 4L * offsets.length + 4L * slots.length;
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(arena, offsets, size);
+    }
+
+    /**
+     * Encodes the name at the end of the arena and keeps it there only if it is new, so looking
+     * up a known name allocates nothing
+     */
+    private int intern(String name) {
+        int length = encode(name);
+        int mask = slots.length - 1;
+        for (int slot = hash(arena, used, length) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                if (size + 2 > offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                }
+                used += length;
+                offsets[size + 1] = used;
+                slots[slot] = size + 1;
+                int id = size++;
+                // Rehash above a load factor of 0.75
+                if (size * 4L > slots.length * 3L) {
+                    rehash();
+                }
+                return id;
+            }
+            int id = entry - 1;
+            if (Arrays.equals(arena, offsets[id], offsets[id + 1], arena, used, used + length)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Writes {@code name} as UTF-8 at {@code arena[used]} without claiming the space
+     */
+    private int encode(String name) {
+        int chars = name.length();
+        ensureArena(chars);
+        for (int i = 0; i < chars; i++) {
+            char c = name.charAt(i);
+            if (c >= 0x80) {
+                byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+                ensureArena(utf8.length);
+                System.arraycopy(utf8, 0, arena, used, utf8.length);
+                return utf8.length;
+            }
+            arena[used + i] = (byte) c;
+        }
+        return chars;
+    }
+
+    private void ensureArena(int bytes) {
+        if (used + (long) bytes > MAX_ARENA) {
+            throw new IllegalStateException("Voter names exceed " + MAX_ARENA + " bytes");
+        }
+        if (used + bytes > arena.length) {
+            arena = Arrays.copyOf(arena, (int) Math.min(MAX_ARENA, Math.max(used + (long) bytes, arena.length * 2L)));
+        }
+    }
+
+    private void rehash() {
+        int[] table = new int[slots.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hash(arena, offsets[id], offsets[id + 1] - offsets[id]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+        slots = table;
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int h = 1;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            h = 31 * h + bytes[i];
+        }
+        // Names like "Voter 1", "Voter 2" hash to neighbouring values; mix so they do not cluster
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Read-only view of the names assigned when it was taken
+     */
+    public static final class Snapshot {
+        private final byte[] arena;
+        private final int[] offsets;
+        private final int size;
+
+        private Snapshot(byte[] arena, int[] offsets, int size) {
+            this.arena = arena;
+            this.offsets = offsets;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public String name(int id) {
+            return new String(arena, offset(id), length(id), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Arena holding the UTF-8 bytes of name {@code id} at {@link #offset} for {@link #length}
+         */
+        public byte[] arena() {
+            return arena;
+        }
+
+        public int offset(int id) {
+            if (id < 0 || id >= size) {
+                throw new IndexOutOfBoundsException("Voter id " + id + " not in snapshot of " + size);
+            }
+            return offsets[id];
+        }
+
+        public int length(int id) {
+            return offsets[id + 1] - offset(id);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.election.aggregate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Inverted index of one election snapshot: from voter name to the candidates the voter chose and
+ * the question answers recorded under the voter's name.
+ * <p>
+ * Names are split into partitions by hash, and each partition has its own
+ * {@link VoterDictionary} and postings in compressed-row form: the targets of voter id
+ * {@code i} are {@code postings[offsets[i]]} up to {@code postings[offsets[i + 1]]}, as ints
+ * into the table of candidates and answers. The build reads every name once. First, slices of
+ * the voter lists are sorted into per-partition buckets in parallel. Then each partition
+ * interns its buckets and lays out its postings, also in parallel and without shared state.
+ * <p>
+ * Dictionaries start small and grow with the distinct names they receive. The build is given a
+ * byte budget: it fails before reading any name when the postings alone exceed it, and while
+ * interning as soon as the dictionaries and postings together do.
+ */
+public final class VoterIndex {
+
+    // Votes per first-phase task
+    private static final int SLICE_SIZE = 64 * 1024;
+    // Names a partition interns between budget checks
+    private static final int BUDGET_CHECK_INTERVAL = 4096;
+
+    /**
+     * Thrown when an index would not fit its byte budget
+     */
+    public static final class TooLargeException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final long bytes;
+
+        TooLargeException(long bytes, long maxBytes) {
+            super("Voter index needs at least " + bytes + " bytes, more than " + maxBytes);
+            this.bytes = bytes;
+        }
+
+        /**
+         * Bytes the index had reached when the build stopped
+         */
+        public long bytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * A question answer recorded under a voter's name
+     */
+    public record Answer(String questionNumber, String title, String answer) {
+    }
+
+    /**
+     * What one voter chose, in payload order
+     */
+    public record Votes(String voter, List<String> candidates, List<Answer> answers) {
+    }
+
+    private record Source(int target, int size, IntFunction<String> names) {
+    }
+
+    private record Slice(Source source, int from, int to) {
+    }
+
+    private static final class Partition {
+        final VoterDictionary names;
+        int[] offsets;
+        int[] postings;
+
+        Partition() {
+            this.names = new VoterDictionary();
+        }
+    }
+
+    /**
+     * Names and targets of one slice sorted by partition
+     */
+    private static final class Buckets {
+        final String[][] names;
+        final int[][] targets;
+        final int[] sizes;
+
+        Buckets(int partitions) {
+            names = new String[partitions][];
+            targets = new int[partitions][];
+            sizes = new int[partitions];
+        }
+
+        void add(int partition, String name, int target) {
+            int size = sizes[partition];
+            if (names[partition] == null) {
+                names[partition] = new String[64];
+                targets[partition] = new int[64];
+            } else if (size == names[partition].length) {
+                names[partition] = Arrays.copyOf(names[partition], size * 2);
+                targets[partition] = Arrays.copyOf(targets[partition], size * 2);
+            }
+            names[partition][size] = name;
+            targets[partition][size] = target;
+            sizes[partition] = size + 1;
+        }
+    }
+
+    // Candidates first, then answers; a candidate has no question number
+    private final String[] targetQuestions;
+    private final String[] targetTitles;
+    private final String[] targetNames;
+    private final Partition[] partitions;
+    private final long entries;
+
+    private VoterIndex(List<String[]> targets, Partition[] partitions, long entries) {
+        this.targetQuestions = new String[targets.size()];
+        this.targetTitles = new String[targets.size()];
+        this.targetNames = new String[targets.size()];
+        for (int i = 0; i < targets.size(); i++) {
+            targetQuestions[i] = targets.get(i)[0];
+            targetTitles[i] = targets.get(i)[1];
+            targetNames[i] = targets.get(i)[2];
+        }
+        this.partitions = partitions;
+        this.entries = entries;
+    }
+
+    /**
+     * Number of votes the {@code dataNode} would add to an index, for checking limits before
+     * building it
+     */
+    public static long countEntries(JsonNode dataNode, VoterLists voters) {
+        long count = 0;
+        for (Source source : sources(dataNode, voters, new ArrayList<>())) {
+            count += source.size();
+        }
+        return count;
+    }
+
+    /**
+     * Indexes the candidates' voters from {@code voters}, indexed like
+     * {@code dataNode.resultsSummary}, and the {@code voterName} of every question and answer
+     * in {@code dataNode.questionResults}
+     *
+     * @param partitions rounded up to a power of two
+     * @param maxBytes   footprint the index may reach
+     * @throws TooLargeException when the index would not fit {@code maxBytes}
+     */
+    public static VoterIndex build(JsonNode dataNode, VoterLists voters, int partitions, long maxBytes,
+                                   ForkJoinPool pool) {
+        int partitionCount = Integer.highestOneBit(Math.max(1, partitions) * 2 - 1);
+        List<String[]> targets = new ArrayList<>();
+        List<Source> sources = sources(dataNode, voters, targets);
+
+        List<Slice> slices = new ArrayList<>();
+        long entries = 0;
+        for (Source source : sources) {
+            for (int from = 0; from < source.size(); from += SLICE_SIZE) {
+                slices.add(new Slice(source, from, Math.min(source.size(), from + SLICE_SIZE)));
+            }
+            entries += source.size();
+        }
+        // Every vote takes a posting, whatever the names
+        AtomicLong footprint = new AtomicLong(4L * entries);
+        if (footprint.get() > maxBytes) {
+            throw new TooLargeException(footprint.get(), maxBytes);
+        }
+
+        List<ForkJoinTask<Buckets>> bucketTasks = new ArrayList<>(slices.size());
+        for (Slice slice : slices) {
+            bucketTasks.add(pool.submit(() -> bucket(slice, partitionCount)));
+        }
+        List<Buckets> buckets = new ArrayList<>(slices.size());
+        for (ForkJoinTask<Buckets> task : bucketTasks) {
+            buckets.add(task.join());
+        }
+
+        List<ForkJoinTask<Partition>> partitionTasks = new ArrayList<>(partitionCount);
+        for (int p = 0; p < partitionCount; p++) {
+            int partition = p;
+            partitionTasks.add(pool.submit(() -> buildPartition(buckets, partition, footprint, maxBytes)));
+        }
+        Partition[] built = new Partition[partitionCount];
+        for (int p = 0; p < partitionCount; p++) {
+            built[p] = partitionTasks.get(p).join();
+        }
+        return new VoterIndex(targets, built, entries);
+    }
+
+    /**
+     * Everything recorded for {@code voter}, or null if the name does not occur
+     */
+    public Votes find(String voter) {
+        Partition partition = partitions[partition(voter, partitions.length)];
+        int id = partition.names.find(voter);
+        if (id < 0) {
+            return null;
+        }
+        int[] targets = Arrays.copyOfRange(partition.postings, partition.offsets[id], partition.offsets[id + 1]);
+        Arrays.sort(targets);
+        List<String> candidates = new ArrayList<>();
+        List<Answer> answers = new ArrayList<>();
+        for (int i = 0; i < targets.length; i++) {
+            int target = targets[i];
+            if (i > 0 && target == targets[i - 1]) {
+                continue;
+            }
+            if (targetQuestions[target] == null) {
+                candidates.add(targetNames[target]);
+            } else {
+                answers.add(new Answer(targetQuestions[target], targetTitles[target], targetNames[target]));
+            }
+        }
+        return new Votes(voter, List.copyOf(candidates), List.copyOf(answers));
+    }
+
+    public int voters() {
+        int voters = 0;
+        for (Partition partition : partitions) {
+            voters += partition.names.size();
+        }
+        return voters;
+    }
+
+    public long entries() {
+        return entries;
+    }
+
+    /**
+     * Bytes held by the dictionaries and postings, including spare capacity
+     */
+    public long footprint() {
+        long bytes = 0;
+        for (Partition partition : partitions) {
+            bytes += partition.names.footprint() + 4L * partition.offsets.length + 4L * partition.postings.length;
+        }
+        return bytes;
+    }
+
+    private static List<Source> sources(JsonNode dataNode, VoterLists voters, List<String[]> targets) {
+        List<Source> sources = new ArrayList<>();
+        JsonNode resultsSummary = dataNode.path("resultsSummary");
+        for (int c = 0; c < resultsSummary.size(); c++) {
+            int candidate = c;
+            targets.add(new String[]{null, null, resultsSummary.get(c).path("candidateName").asText("N/A")});
+            sources.add(new Source(targets.size() - 1, voters.size(c), i -> voters.name(candidate, i)));
+        }
+        for (JsonNode question : dataNode.path("questionResults")) {
+            String questionNumber = question.path("questionNumber").asText("");
+            String title = question.path("title").asText("");
+            addAnswerSource(sources, targets, questionNumber, title, question.path("singleAnswer").asText(""),
+                    question.path("voterName"));
+            for (JsonNode answer : question.path("answers")) {
+                addAnswerSource(sources, targets, questionNumber, title, answer.path("name").asText(""),
+                        answer.path("voterName"));
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * {@code voterName} may hold one name or an array of names
+     */
+    private static void addAnswerSource(List<Source> sources, List<String[]> targets, String questionNumber,
+                                        String title, String answer, JsonNode voterName) {
+        if (voterName.isArray() ? voterName.isEmpty() : voterName.asText("").isEmpty()) {
+            return;
+        }
+        targets.add(new String[]{questionNumber, title, answer});
+        if (voterName.isArray()) {
+            sources.add(new Source(targets.size() - 1, voterName.size(), i -> voterName.get(i).asText()));
+        } else {
+            String name = voterName.asText();
+            sources.add(new Source(targets.size() - 1, 1, i -> name));
+        }
+    }
+
+    private static Buckets bucket(Slice slice, int partitionCount) {
+        Buckets buckets = new Buckets(partitionCount);
+        Source source = slice.source();
+        for (int i = slice.from(); i < slice.to(); i++) {
+            String name = source.names().apply(i);
+            buckets.add(partition(name, partitionCount), name, source.target());
+        }
+        return buckets;
+    }
+
+    /**
+     * Interns the partition's names, adding the growth of its dictionary and offsets to the
+     * shared {@code footprint} as it goes
+     */
+    private static Partition buildPartition(List<Buckets> buckets, int p, AtomicLong footprint, long maxBytes) {
+        int total = 0;
+        for (Buckets bucket : buckets) {
+            total += bucket.sizes[p];
+        }
+        Partition partition = new Partition();
+        long reported = 0;
+        int[] voterIds = new int[total];
+        int[] targets = new int[total];
+        int n = 0;
+        for (Buckets bucket : buckets) {
+            int size = bucket.sizes[p];
+            for (int i = 0; i < size; i++) {
+                voterIds[n] = partition.names.id(bucket.names[p][i]);
+                targets[n++] = bucket.targets[p][i];
+                if (n % BUDGET_CHECK_INTERVAL == 0) {
+                    reported = report(partition, reported, footprint, maxBytes);
+                }
+            }
+            // Let the names be collected while later buckets are interned
+            bucket.names[p] = null;
+            bucket.targets[p] = null;
+        }
+        report(partition, reported, footprint, maxBytes);
+        int voters = partition.names.size();
+        int[] offsets = new int[voters + 1];
+        for (int i = 0; i < total; i++) {
+            offsets[voterIds[i] + 1]++;
+        }
+        for (int v = 0; v < voters; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] next = Arrays.copyOf(offsets, voters);
+        int[] postings = new int[total];
+        for (int i = 0; i < total; i++) {
+            postings[next[voterIds[i]]++] = targets[i];
+        }
+        partition.offsets = offsets;
+        partition.postings = postings;
+        return partition;
+    }
+
+    private static long report(Partition partition, long reported, AtomicLong footprint, long maxBytes) {
+        long bytes = partition.names.footprint() + 4L * (partition.names.size() + 1);
+        long total = footprint.addAndGet(bytes - reported);
+        if (total > maxBytes) {
+            throw new TooLargeException(total, maxBytes);
+        }
+        return bytes;
+    }
+
+    private static int partition(String name, int partitionCount) {
+        int h = name.hashCode();
+        return (h ^ (h >>> 16)) & (partitionCount - 1);
+    }
+}
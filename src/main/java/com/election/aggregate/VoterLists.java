@@ -0,0 +1,54 @@
+package com.election.aggregate;
+
+import com.election.io.Utf8CsvWriter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+import java.io.IOException;
+
+/**
+ * Voter names per candidate, indexed like the payload's {@code resultsSummary}, as the election
+ * exports read them. Names are read one at a time, so an export never joins a candidate's
+ * voters into one string.
+ */
+public interface VoterLists {
+
+    VoterLists EMPTY = of(null);
+
+    /**
+     * Number of voters of the candidate at {@code candidate}, 0 for an unknown index
+     */
+    int size(int candidate);
+
+    String name(int candidate, int index);
+
+    /**
+     * Appends one name to the CSV field being written
+     */
+    default void appendTo(Utf8CsvWriter writer, int candidate, int index) throws IOException {
+        writer.appendText(name(candidate, index));
+    }
+
+    /**
+     * View over the {@code voters} arrays of a parsed {@code resultsSummary}
+     */
+    static VoterLists of(JsonNode resultsSummary) {
+        return new VoterLists() {
+            @Override
+            public int size(int candidate) {
+                JsonNode voters = voters(candidate);
+                return voters.isArray() ? voters.size() : 0;
+            }
+
+            @Override
+            public String name(int candidate, int index) {
+                return voters(candidate).path(index).asText();
+            }
+
+            private JsonNode voters(int candidate) {
+                return resultsSummary == null ? MissingNode.getInstance()
+                        : resultsSummary.path(candidate).path("voters");
+            }
+        };
+    }
+}
@@ -0,0 +1,74 @@
+package com.election.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.ForkJoinPool;
+
+@Configuration
+@EnableConfigurationProperties(ExportProperties.class)
+public class ExportExecutorConfig {
+
+    /**
+     * Dedicated pool for CPU-bound rendering, kept apart from the common pool
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool exportForkJoinPool(ExportProperties properties) {
+        return new ForkJoinPool(Math.max(1, properties.getParallelism()));
+    }
+
+    /**
+     * Background threads that render registered reports once their election closes
+     */
+    @Bean
+    public ThreadPoolTaskScheduler pregenerationScheduler(ExportProperties properties) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(Math.max(1, properties.getPregeneration().getPoolSize()));
+        scheduler.setThreadNamePrefix("pregen-");
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduler.setWaitForTasksToCompleteOnShutdown(false);
+        return scheduler;
+    }
+
+    /**
+     * Writes live result events; each subscriber has at most one task queued at a time
+     */
+    @Bean
+    public ThreadPoolTaskExecutor liveDispatchExecutor(ExportProperties properties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        int threads = Math.max(1, properties.getLive().getDispatchThreads());
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("live-");
+        return executor;
+    }
+
+    /**
+     * Renders viewer exports off the servlet threads
+     */
+    @Bean
+    public ThreadPoolTaskExecutor lightLaneExecutor(ExportProperties properties) {
+        return laneExecutor(properties.getLanes().getLight(), "lane-light-");
+    }
+
+    /**
+     * Renders creator exports and PDFs, so a burst of them cannot hold up viewer downloads
+     */
+    @Bean
+    public ThreadPoolTaskExecutor heavyLaneExecutor(ExportProperties properties) {
+        return laneExecutor(properties.getLanes().getHeavy(), "lane-heavy-");
+    }
+
+    // The queue is bounded by ExportLanes, which answers overflow with a 503
+    private static ThreadPoolTaskExecutor laneExecutor(ExportProperties.Lane lane, String threadNamePrefix) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        int threads = Math.max(1, lane.getConcurrency());
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        return executor;
+    }
+}
@@ -0,0 +1,409 @@
+package com.election.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Tuning knobs for the export services, bound from {@code export.*} properties
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "export")
+public class ExportProperties {
+
+    /**
+     * Number of worker threads used for parallel rendering
+     */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private final Request request = new Request();
+
+    private final Compression compression = new Compression();
+
+    private final Pdf pdf = new Pdf();
+
+    private final Excel excel = new Excel();
+
+    private final Csv csv = new Csv();
+
+    private final Spill spill = new Spill();
+
+    private final Store store = new Store();
+
+    private final Pregeneration pregeneration = new Pregeneration();
+
+    private final Delta delta = new Delta();
+
+    private final LivePdf livePdf = new LivePdf();
+
+    private final Live live = new Live();
+
+    private final Ballots ballots = new Ballots();
+
+    private final VoterIndex voterIndex = new VoterIndex();
+
+    private final Comparison comparison = new Comparison();
+
+    private final TopAnswers topAnswers = new TopAnswers();
+
+    private final Admission admission = new Admission();
+
+    private final Lanes lanes = new Lanes();
+
+    @Getter
+    @Setter
+    public static class Request {
+        /**
+         * Largest request body accepted by the export endpoints, enforced while reading
+         */
+        private DataSize maxBodySize = DataSize.ofMegabytes(50);
+
+        /**
+         * Largest body accepted by endpoints that stream the payload without building a tree
+         */
+        private DataSize maxStreamingBodySize = DataSize.ofGigabytes(10);
+    }
+
+    @Getter
+    @Setter
+    public static class Compression {
+        /**
+         * Whether export responses are gzip-encoded for clients that accept it
+         */
+        private boolean enabled = true;
+
+        /**
+         * Deflater level, 1 (fastest) to 9 (smallest)
+         */
+        private int level = 6;
+
+        /**
+         * Responses smaller than this are sent uncompressed
+         */
+        private DataSize minResponseSize = DataSize.ofKilobytes(2);
+
+        /**
+         * Content types worth compressing; XLSX and PDF are already deflated
+         */
+        private List<String> mimeTypes = List.of("text/csv", "text/plain", "application/json");
+    }
+
+    @Getter
+    @Setter
+    public static class Pdf {
+        /**
+         * Question count from which the charts PDF is rendered as parallel chunks
+         */
+        private int parallelThreshold = 500;
+
+        /**
+         * Maximum number of questions laid out by a single chunk sub-document
+         */
+        private int chunkSize = 100;
+    }
+
+    @Getter
+    @Setter
+    public static class Excel {
+        /**
+         * Distinct strings kept in a workbook's shared string table; further strings are written inline
+         */
+        private int maxSharedStrings = 65_536;
+
+        /**
+         * Rows per sheet before question results continue on a new sheet; capped at Excel's 1,048,576
+         */
+        private int maxRowsPerSheet = 1_048_576;
+    }
+
+    @Getter
+    @Setter
+    public static class Csv {
+        /**
+         * Whether survey CSV rows are encoded in chunks on the export pool
+         */
+        private boolean parallel = true;
+
+        /**
+         * Questions encoded per chunk in parallel mode
+         */
+        private int chunkSize = 256;
+    }
+
+    @Getter
+    @Setter
+    public static class Spill {
+        /**
+         * Export output kept in memory before it is moved to a temporary file
+         */
+        private DataSize memoryThreshold = DataSize.ofMegabytes(32);
+
+        /**
+         * Directory for spilled exports; the system temp directory when empty
+         */
+        private String directory = "";
+    }
+
+    @Getter
+    @Setter
+    public static class Store {
+        /**
+         * Whether rendered exports are kept on disk and reused for identical requests
+         */
+        private boolean enabled = true;
+
+        /**
+         * Directory holding the artifacts; {@code multiexport-artifacts} in the system temp directory when empty
+         */
+        private String directory = "";
+
+        /**
+         * Total size of stored artifacts before the least recently served are evicted
+         */
+        private DataSize maxSize = DataSize.ofGigabytes(2);
+
+        /**
+         * How long an artifact is served after it was rendered
+         */
+        private Duration ttl = Duration.ofHours(24);
+    }
+
+    @Getter
+    @Setter
+    public static class Pregeneration {
+        /**
+         * Whether elections can be registered for rendering at close time
+         */
+        private boolean enabled = true;
+
+        /**
+         * Wait after close before rendering, leaving time for late results to settle
+         */
+        private Duration delay = Duration.ofSeconds(30);
+
+        /**
+         * Threads rendering registered reports in the background
+         */
+        private int poolSize = 1;
+
+        /**
+         * Time zone of close dates given without an offset
+         */
+        private String zone = "Asia/Riyadh";
+
+        /**
+         * Registrations waiting for their close time before new ones are refused
+         */
+        private int maxPending = 100;
+    }
+
+    @Getter
+    @Setter
+    public static class Delta {
+        /**
+         * Elections whose last export is remembered for delta polling; the least recently polled are dropped
+         */
+        private int maxElections = 1000;
+
+        /**
+         * Versions of changes kept per election; clients further behind get the full export
+         */
+        private int history = 60;
+    }
+
+    @Getter
+    @Setter
+    public static class LivePdf {
+        /**
+         * Directory holding the growing documents; {@code multiexport-live-pdf} in the system temp directory when empty
+         */
+        private String directory = "";
+
+        /**
+         * Elections with a live document; the least recently requested are dropped
+         */
+        private int maxElections = 100;
+
+        /**
+         * Revisions appended to a document before the report is rendered afresh; each revision
+         * takes longer as the document grows
+         */
+        private int maxRevisions = 200;
+    }
+
+    @Getter
+    @Setter
+    public static class Live {
+        /**
+         * Elections with live standings kept for event subscribers; the least recently used are dropped
+         */
+        private int maxElections = 1000;
+
+        /**
+         * Event stream subscribers per election before new ones are refused
+         */
+        private int maxSubscribers = 10_000;
+
+        /**
+         * How long an event stream stays open before the client has to reconnect
+         */
+        private Duration emitterTimeout = Duration.ofMinutes(30);
+
+        /**
+         * Threads writing events to subscribers
+         */
+        private int dispatchThreads = 4;
+
+        /**
+         * How long a subscriber may leave its last event unread before it is disconnected
+         */
+        private Duration sendTimeout = Duration.ofSeconds(10);
+    }
+
+    @Getter
+    @Setter
+    public static class Ballots {
+        /**
+         * Elections aggregated from raw ballots at the same time
+         */
+        private int maxElections = 100;
+
+        /**
+         * Distinct candidates per election; counters are allocated up front
+         */
+        private int maxCandidates = 4096;
+
+        /**
+         * Distinct questions and distinct question answers per election
+         */
+        private int maxAnswers = 65_536;
+
+        /**
+         * Distinct gender and age range values per election
+         */
+        private int maxCategories = 256;
+
+        /**
+         * Ballots counted locally by an upload before they are added to the shared counters
+         */
+        private int flushInterval = 8192;
+    }
+
+    @Getter
+    @Setter
+    public static class VoterIndex {
+        /**
+         * Total size of the voter indexes kept; the least recently used are dropped beyond it
+         */
+        private DataSize maxMemory = DataSize.ofMegabytes(256);
+
+        /**
+         * Votes and named answers one election snapshot may add to an index
+         */
+        private long maxEntries = 20_000_000;
+
+        /**
+         * Hash partitions of an index, built in parallel; rounded up to a power of two
+         */
+        private int partitions = 16;
+    }
+
+    @Getter
+    @Setter
+    public static class Comparison {
+        /**
+         * Elections one comparison report may cover
+         */
+        private int maxElections = 10_000;
+    }
+
+    @Getter
+    @Setter
+    public static class TopAnswers {
+        /**
+         * Answers shown per question in the survey PDF, Excel and CSV exports; the rest are
+         * folded into an "Others" row. 0 shows every answer.
+         */
+        private int limit = 50;
+
+        /**
+         * Whether questions that were cut are listed in full in an appendix
+         */
+        private boolean appendix = true;
+    }
+
+    @Getter
+    @Setter
+    public static class Admission {
+        /**
+         * Whether exports wait for their predicted heap to fit before rendering
+         */
+        private boolean enabled = true;
+
+        /**
+         * Share of the maximum heap that the exports being rendered may be predicted to use together
+         */
+        private double heapShare = 0.5;
+
+        /**
+         * Exports predicted at or below this heap and {@code small-cpu} are small; the rest are large
+         */
+        private DataSize smallHeap = DataSize.ofMegabytes(16);
+
+        private Duration smallCpu = Duration.ofSeconds(1);
+
+        /**
+         * Share of the heap budget kept for small exports, which large exports never use
+         */
+        private double smallReserve = 0.25;
+
+        /**
+         * How long an export waits for room in the budget before it is answered with a 503
+         */
+        private Duration queueTimeout = Duration.ofSeconds(30);
+    }
+
+    @Getter
+    @Setter
+    public static class Lanes {
+        /**
+         * Viewer exports, which skip voter lists, distributions and insights
+         */
+        private final Lane light = new Lane(8, 500, Duration.ofSeconds(10));
+
+        /**
+         * Creator exports and PDFs
+         */
+        private final Lane heavy = new Lane(Runtime.getRuntime().availableProcessors(), 100, Duration.ofSeconds(60));
+    }
+
+    @Getter
+    @Setter
+    public static class Lane {
+        /**
+         * Exports of the lane rendered at once
+         */
+        private int concurrency;
+
+        /**
+         * Exports that may wait for a thread; more are answered with a 503
+         */
+        private int queueCapacity;
+
+        /**
+         * How long an export may wait for a thread before it is answered with a 503
+         */
+        private Duration queueTimeout;
+
+        public Lane(int concurrency, int queueCapacity, Duration queueTimeout) {
+            this.concurrency = concurrency;
+            this.queueCapacity = queueCapacity;
+            this.queueTimeout = queueTimeout;
+        }
+    }
+}
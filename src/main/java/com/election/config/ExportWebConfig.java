@@ -0,0 +1,24 @@
+package com.election.config;
+
+import com.election.web.CompressionFilter;
+import com.election.web.CompressionMetrics;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ExportWebConfig {
+
+    /**
+     * Response compression is limited to the tabular export endpoints; PDF and XLSX bodies are
+     * already deflated and gain nothing from a second pass
+     */
+    @Bean
+    public FilterRegistrationBean<CompressionFilter> compressionFilter(ExportProperties properties,
+                                                                       CompressionMetrics metrics) {
+        FilterRegistrationBean<CompressionFilter> registration =
+                new FilterRegistrationBean<>(new CompressionFilter(properties, metrics));
+        registration.addUrlPatterns("/api/export/*", "/api/election/export/*");
+        return registration;
+    }
+}
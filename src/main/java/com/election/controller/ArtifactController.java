@@ -0,0 +1,30 @@
+package com.election.controller;
+
+import com.election.store.ArtifactStore;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+
+/**
+ * Serves stored exports by id, as advertised in the {@code Content-Location} of export responses,
+ * so interrupted downloads can be resumed with {@code Range} and {@code If-Range}
+ */
+@RestController
+@RequestMapping("/api/artifacts")
+@RequiredArgsConstructor
+public class ArtifactController {
+
+    private final ArtifactStore artifactStore;
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Resource> getArtifact(@PathVariable String id, HttpServletRequest request) throws IOException {
+        return artifactStore.toResponse(artifactStore.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No stored export " + id)), request);
+    }
+}
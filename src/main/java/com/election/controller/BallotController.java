@@ -0,0 +1,94 @@
+package com.election.controller;
+
+import com.election.service.BallotAggregationService;
+import com.election.service.ElectionExportService;
+import com.election.service.ElectionServicePdf;
+import com.election.service.ExportAdmission;
+import com.election.service.ExportCostEstimator;
+import com.election.store.ArtifactKey;
+import com.election.web.ElectionPayloadReader;
+import com.election.web.ExportLanes;
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+
+/**
+ * Raw ballot ingestion: ballots are posted as NDJSON and aggregated on the server, and the
+ * resulting payload is exported through the existing election services
+ */
+@RestController
+@RequestMapping("/api/ballots")
+@RequiredArgsConstructor
+public class BallotController {
+
+    private final BallotAggregationService aggregationService;
+    private final ElectionExportService electionExportService;
+    private final ElectionServicePdf electionServicePdf;
+    private final ElectionPayloadReader payloadReader;
+    private final ExportCostEstimator costEstimator;
+    private final ExportAdmission exportAdmission;
+    private final ExportLanes exportLanes;
+
+    @PutMapping("/{electionId}")
+    public ResponseEntity<Void> define(@PathVariable String electionId, HttpServletRequest request) throws IOException {
+        aggregationService.define(electionId, payloadReader.readTree(request));
+        return ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/{electionId}")
+    public BallotAggregationService.Ingested ingest(@PathVariable String electionId,
+                                                   HttpServletRequest request) throws IOException {
+        return aggregationService.ingest(electionId, payloadReader.openStreamingParser(request));
+    }
+
+    @GetMapping("/{electionId}/results")
+    public JsonNode results(@PathVariable String electionId) {
+        return aggregationService.results(electionId);
+    }
+
+    @GetMapping("/{electionId}/export/{role}/{format}")
+    public WebAsyncTask<ResponseEntity<Resource>> export(@PathVariable String electionId, @PathVariable String role,
+                                                         @PathVariable String format,
+                                                         @RequestParam(value = "lang", defaultValue = "en") String lang) {
+        if (!role.equals("creator") && !role.equals("viewer")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown role: " + role);
+        }
+        if (!format.equals("excel") && !format.equals("csv")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown format: " + format);
+        }
+        return exportLanes.submit(ExportLanes.Lane.forRole(role), () -> {
+            BallotAggregationService.Aggregated aggregated = aggregationService.aggregate(electionId);
+            String kind = format.equals("excel") ? ArtifactKey.ELECTION_EXCEL : ArtifactKey.ELECTION_CSV;
+            return exportAdmission.run(costEstimator.estimate(
+                            costEstimator.scan(aggregated.payload()).withVoters(aggregated.voters()), kind, role),
+                    () -> electionExportService.export(aggregated.payload(), aggregated.voters(), role,
+                            format.equals("excel"), lang));
+        });
+    }
+
+    @GetMapping("/{electionId}/pdf")
+    public WebAsyncTask<ResponseEntity<Resource>> pdf(@PathVariable String electionId) {
+        return exportLanes.submit(ExportLanes.Lane.HEAVY, () -> {
+            JsonNode payload = aggregationService.aggregate(electionId).payload();
+            return exportAdmission.run(
+                    costEstimator.estimate(costEstimator.scan(payload), ArtifactKey.ELECTION_PDF, ""),
+                    () -> electionServicePdf.export(payload));
+        });
+    }
+
+    @DeleteMapping("/{electionId}")
+    public ResponseEntity<Void> remove(@PathVariable String electionId) {
+        if (!aggregationService.remove(electionId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No ballots or definition for " + electionId);
+        }
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,52 @@
+package com.election.controller;
+
+import com.election.config.ExportProperties;
+import com.election.service.ElectionComparisonService;
+import com.election.service.ExportAdmission;
+import com.election.service.ExportCostEstimator;
+import com.election.web.ElectionPayloadReader;
+import com.election.web.ExportLanes;
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+/**
+ * Comparison reports across elections. The body is a JSON array whose elements are election
+ * payloads or ids of elections aggregated from ballots.
+ */
+@RestController
+@RequestMapping("/api/election/compare")
+@RequiredArgsConstructor
+public class ElectionComparisonController {
+
+    private static final List<String> FORMATS = List.of("excel", "csv", "pdf");
+
+    private final ElectionComparisonService comparisonService;
+    private final ElectionPayloadReader payloadReader;
+    private final ExportProperties exportProperties;
+    private final ExportCostEstimator costEstimator;
+    private final ExportAdmission exportAdmission;
+    private final ExportLanes exportLanes;
+
+    @PostMapping("/{format}")
+    public WebAsyncTask<ResponseEntity<Resource>> compare(@PathVariable String format, HttpServletRequest request,
+                                                          @RequestParam(value = "lang", defaultValue = "en") String lang) {
+        if (!FORMATS.contains(format)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown format: " + format);
+        }
+        return exportLanes.submit(ExportLanes.Lane.HEAVY, () -> {
+            List<JsonNode> elections = payloadReader.readElectionSummaries(request,
+                    exportProperties.getComparison().getMaxElections());
+            return exportAdmission.run(costEstimator.comparison(elections),
+                    () -> comparisonService.export(elections, format, lang));
+        });
+    }
+}
@@ -1,41 +1,60 @@
 package com.election.controller;
 
 import com.election.service.ElectionServicePdf;
+import com.election.service.ExportAdmission;
+import com.election.service.ExportCostEstimator;
+import com.election.service.LiveElectionPdfService;
+import com.election.store.ArtifactKey;
+import com.election.store.ArtifactStore;
+import com.election.web.ElectionPayloadReader;
+import com.election.web.ExportLanes;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import org.springframework.core.io.Resource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
 @RestController
 @RequestMapping("/election")
 @RequiredArgsConstructor
 public class ElectionControllerPdf {
-    private static final Logger logger = LoggerFactory.getLogger(ElectionControllerPdf.class);
     private final ElectionServicePdf electionService;
+    private final ElectionPayloadReader payloadReader;
+    private final ArtifactStore artifactStore;
+    private final LiveElectionPdfService liveElectionPdfService;
+    private final ExportCostEstimator costEstimator;
+    private final ExportAdmission exportAdmission;
+    private final ExportLanes exportLanes;
 
     @PostMapping("/generate-pdf")
-    public ResponseEntity<ByteArrayResource> generatePdf(@RequestBody String jsonString) {
-        String electionName = "election_report";
-        try {
-            JsonNode dataNode = new ObjectMapper().readTree(jsonString).path("data");
-            electionName = dataNode.path("electionName").asText("election_report");
-        } catch (Exception e) {
-            logger.error("Error reading election name from JSON", e);
-        }
-
-        ByteArrayResource pdf = electionService.generatePdf(jsonString);
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_PDF);
-        headers.setContentDispositionFormData("attachment", electionName + ".pdf");
+    public WebAsyncTask<ResponseEntity<Resource>> generatePdf(HttpServletRequest request) {
+        return exportLanes.submit(ExportLanes.Lane.HEAVY, () -> {
+            ElectionPayloadReader.HashedPayload payload = payloadReader.readHashedTree(request);
+            ArtifactKey key = new ArtifactKey(ArtifactKey.ELECTION_PDF, null, null, payload.hash());
+            return artifactStore.serve(key, request, () -> exportAdmission.run(
+                    costEstimator.estimate(costEstimator.scan(payload.tree()), key.kind(), key.role()),
+                    () -> electionService.export(payload.tree())));
+        });
+    }
 
-        return ResponseEntity.ok()
-                .headers(headers)
-                .body(pdf);
+    /**
+     * Report for a running election; with {@code since} only the revisions added after it are sent
+     */
+    @PostMapping("/live-pdf")
+    public WebAsyncTask<ResponseEntity<Resource>> liveElectionPdf(HttpServletRequest request,
+                                                                  @RequestParam(value = "since", required = false) Long since) {
+        return exportLanes.submit(ExportLanes.Lane.HEAVY, () -> {
+            JsonNode payload = payloadReader.readTree(request);
+            // The export throws IOException, so the permit is held here rather than through run()
+            ExportAdmission.Permit permit = exportAdmission.admit(
+                    costEstimator.estimate(costEstimator.scan(payload), ArtifactKey.ELECTION_PDF, ""));
+            try {
+                return liveElectionPdfService.export(payload, since);
+            } finally {
+                permit.close();
+            }
+        });
     }
 }
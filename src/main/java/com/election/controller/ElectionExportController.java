@@ -1,11 +1,22 @@
 package com.election.controller;
 
 import com.election.service.ElectionExportService;
+import com.election.service.ExportAdmission;
+import com.election.service.ExportCostEstimator;
+import com.election.store.ArtifactKey;
+import com.election.store.ArtifactStore;
+import com.election.web.ElectionPayloadReader;
+import com.election.web.ExportLanes;
 import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import java.io.IOException;
 
 @Slf4j
 @RestController
@@ -14,30 +25,68 @@ import org.springframework.web.bind.annotation.*;
 public class ElectionExportController {
 
     private final ElectionExportService electionExportService;
+    private final ElectionPayloadReader payloadReader;
+    private final ArtifactStore artifactStore;
+    private final ExportCostEstimator costEstimator;
+    private final ExportAdmission exportAdmission;
+    private final ExportLanes exportLanes;
 
     @PostMapping("/creator/excel")
-    public ResponseEntity<byte[]> exportCreatorExcel(@RequestBody JsonNode data,
-                                                     @RequestParam(value = "lang", defaultValue = "en") String lang) {
-        return electionExportService.export(data, "creator", true, lang);
+    public WebAsyncTask<ResponseEntity<Resource>> exportCreatorExcel(HttpServletRequest request,
+                                                                     @RequestParam(value = "lang", defaultValue = "en") String lang) {
+        return exportLanes.submit(ExportLanes.Lane.HEAVY, () -> export(request, "creator", true, lang));
     }
 
     @PostMapping("/viewer/excel")
-    public ResponseEntity<byte[]> exportViewerExcel(@RequestBody JsonNode data,
-                                                    @RequestParam(value = "lang", defaultValue = "en") String lang) {
-        return electionExportService.export(data, "viewer", true, lang);
+    public WebAsyncTask<ResponseEntity<Resource>> exportViewerExcel(HttpServletRequest request,
+                                                                    @RequestParam(value = "lang", defaultValue = "en") String lang) {
+        return exportLanes.submit(ExportLanes.Lane.LIGHT, () -> export(request, "viewer", true, lang));
     }
 
     @PostMapping("/creator/csv")
-    public ResponseEntity<byte[]> exportCreatorCsv(@RequestBody JsonNode data,
-                                                   @RequestParam(value = "lang", defaultValue = "en") String lang) {
-        return electionExportService.export(data, "creator", false, lang);
+    public WebAsyncTask<ResponseEntity<Resource>> exportCreatorCsv(HttpServletRequest request,
+                                                                   @RequestParam(value = "lang", defaultValue = "en") String lang,
+                                                                   @RequestParam(value = "since", required = false) Long since) {
+        return exportLanes.submit(ExportLanes.Lane.HEAVY, () -> {
+            if (since != null) {
+                return exportDelta(request, "creator", lang, since);
+            }
+            return export(request, "creator", false, lang);
+        });
     }
 
     @PostMapping("/viewer/csv")
-    public ResponseEntity<byte[]> exportViewerCsv(@RequestBody JsonNode data,
-                                                  @RequestParam(value = "lang", defaultValue = "en") String lang) {
-        return electionExportService.export(data, "viewer", false, lang);
+    public WebAsyncTask<ResponseEntity<Resource>> exportViewerCsv(HttpServletRequest request,
+                                                                  @RequestParam(value = "lang", defaultValue = "en") String lang,
+                                                                  @RequestParam(value = "since", required = false) Long since) {
+        return exportLanes.submit(ExportLanes.Lane.LIGHT, () -> {
+            if (since != null) {
+                return exportDelta(request, "viewer", lang, since);
+            }
+            return export(request, "viewer", false, lang);
+        });
     }
 
+    /**
+     * The changes since a version, or the full CSV when the client is too far behind; admitted
+     * like a full CSV since that is what it may turn out to be
+     */
+    private ResponseEntity<Resource> exportDelta(HttpServletRequest request, String dataType, String lang,
+                                                 long since) throws IOException {
+        JsonNode rootNode = payloadReader.readTree(request);
+        return exportAdmission.run(
+                costEstimator.estimate(costEstimator.scan(rootNode), ArtifactKey.ELECTION_CSV, dataType),
+                () -> electionExportService.exportCsvDelta(rootNode, dataType, lang, since));
+    }
 
+    private ResponseEntity<Resource> export(HttpServletRequest request, String dataType, boolean isExcel,
+                                            String lang) throws IOException {
+        ElectionPayloadReader.ElectionPayload payload = payloadReader.readHashedElection(request);
+        ArtifactKey key = new ArtifactKey(isExcel ? ArtifactKey.ELECTION_EXCEL : ArtifactKey.ELECTION_CSV, dataType, lang,
+                payload.hash());
+        return artifactStore.serve(key, request, () -> exportAdmission.run(
+                costEstimator.estimate(costEstimator.scan(payload.tree()).withVoters(payload.voters()), key.kind(),
+                        key.role()),
+                () -> electionExportService.export(payload.tree(), payload.voters(), dataType, isExcel, lang)));
+    }
 }
@@ -1,11 +1,27 @@
 package com.election.controller;
 
+import com.election.service.ExportAdmission;
+import com.election.service.ExportCostEstimator;
 import com.election.service.ExportService;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.election.store.Artifact;
+import com.election.store.ArtifactKey;
+import com.election.store.ArtifactStore;
+import com.election.web.ElectionPayloadReader;
+import com.election.web.ExportLanes;
+import com.fasterxml.jackson.core.JsonParser;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.Optional;
 
 
 @RestController
@@ -14,34 +30,106 @@ public class ExportController {
 
     private static final Logger logger = LoggerFactory.getLogger(ExportController.class);
     private final ExportService exportService;
+    private final ElectionPayloadReader payloadReader;
+    private final ArtifactStore artifactStore;
+    private final ExportCostEstimator costEstimator;
+    private final ExportAdmission exportAdmission;
+    private final ExportLanes exportLanes;
 
-    public ExportController(ExportService exportService) {
+    public ExportController(ExportService exportService, ElectionPayloadReader payloadReader,
+                            ArtifactStore artifactStore, ExportCostEstimator costEstimator,
+                            ExportAdmission exportAdmission, ExportLanes exportLanes) {
         this.exportService = exportService;
+        this.payloadReader = payloadReader;
+        this.artifactStore = artifactStore;
+        this.costEstimator = costEstimator;
+        this.exportAdmission = exportAdmission;
+        this.exportLanes = exportLanes;
     }
 
     @PostMapping("/creator/excel")
-    public ResponseEntity<byte[]> exportCreatorExcel(@RequestBody JsonNode data,
-                                                     @RequestParam(value = "lang", defaultValue = "en") String lang) {
-        return exportService.export(data, "creator", true, lang);
+    public WebAsyncTask<ResponseEntity<Resource>> exportCreatorExcel(HttpServletRequest request, HttpServletResponse response,
+                                                                     @RequestParam(value = "lang", defaultValue = "en") String lang,
+                                                                     @RequestParam(value = "engine", defaultValue = "poi") String engine) {
+        return exportLanes.submit(ExportLanes.Lane.HEAVY,
+                () -> exportExcel(request, response, "creator", lang, engine));
     }
 
     @PostMapping("/viewer/excel")
-    public ResponseEntity<byte[]> exportViewerExcel(@RequestBody JsonNode data,
-                                                    @RequestParam(value = "lang", defaultValue = "en") String lang) {
-        return exportService.export(data, "viewer", true, lang);
+    public WebAsyncTask<ResponseEntity<Resource>> exportViewerExcel(HttpServletRequest request, HttpServletResponse response,
+                                                                    @RequestParam(value = "lang", defaultValue = "en") String lang,
+                                                                    @RequestParam(value = "engine", defaultValue = "poi") String engine) {
+        return exportLanes.submit(ExportLanes.Lane.LIGHT,
+                () -> exportExcel(request, response, "viewer", lang, engine));
     }
 
     @PostMapping("/creator/csv")
-    public ResponseEntity<byte[]> exportCreatorCsv(@RequestBody JsonNode data,
-                                                   @RequestParam(value = "lang", defaultValue = "en") String lang) {
-        return exportService.export(data, "creator", false, lang);
+    public WebAsyncTask<ResponseEntity<Resource>> exportCreatorCsv(HttpServletRequest request, HttpServletResponse response,
+                                                                   @RequestParam(value = "lang", defaultValue = "en") String lang) {
+        return exportLanes.submit(ExportLanes.Lane.HEAVY,
+                () -> exportCsv(request, response, "creator", lang));
     }
 
     @PostMapping("/viewer/csv")
-    public ResponseEntity<byte[]> exportViewerCsv(@RequestBody JsonNode data,
-                                                  @RequestParam(value = "lang", defaultValue = "en") String lang) {
-        return exportService.export(data, "viewer", false, lang);
+    public WebAsyncTask<ResponseEntity<Resource>> exportViewerCsv(HttpServletRequest request, HttpServletResponse response,
+                                                                  @RequestParam(value = "lang", defaultValue = "en") String lang) {
+        return exportLanes.submit(ExportLanes.Lane.LIGHT,
+                () -> exportCsv(request, response, "viewer", lang));
     }
 
+    /**
+     * The fast engine writes the workbook to the response itself, in which case null is returned
+     */
+    private ResponseEntity<Resource> exportExcel(HttpServletRequest request, HttpServletResponse response,
+                                                 String dataType, String lang, String engine) throws IOException {
+        String normalizedEngine = engine.toLowerCase();
+        if (!normalizedEngine.equals("poi") && !normalizedEngine.equals("fast")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown engine: " + engine);
+        }
+        ElectionPayloadReader.HashedPayload payload = payloadReader.readHashedTree(request);
+        ArtifactKey key = new ArtifactKey(normalizedEngine.equals("poi") ? ArtifactKey.SURVEY_EXCEL : ArtifactKey.SURVEY_EXCEL_FAST,
+                dataType, lang, payload.hash());
+        if (normalizedEngine.equals("poi")) {
+            return artifactStore.serve(key, request, () -> exportAdmission.run(estimate(payload, key),
+                    () -> exportService.export(payload.tree(), dataType, true, lang)));
+        }
+        Optional<Artifact> cached = artifactStore.find(key);
+        if (cached.isPresent()) {
+            return artifactStore.toResponse(cached.get(), request);
+        }
+        exportAdmission.write(estimate(payload, key), () -> artifactStore.capture(key, response,
+                out -> exportService.exportExcelStream(payload.tree(), dataType, lang, out)));
+        return null;
+    }
 
+    /**
+     * Streams the CSV straight from the request when the artifact store is off. Otherwise the
+     * body is spooled and hashed first so a stored copy can be served; null is returned whenever
+     * the CSV was written to the response directly.
+     */
+    private ResponseEntity<Resource> exportCsv(HttpServletRequest request, HttpServletResponse response,
+                                               String dataType, String lang) throws IOException {
+        if (!artifactStore.isEnabled()) {
+            exportAdmission.write(costEstimator.streamingCsv(dataType),
+                    () -> exportService.exportCsvStream(payloadReader.openStreamingParser(request), dataType, lang, response));
+            return null;
+        }
+        ElectionPayloadReader.SpooledPayload payload = payloadReader.spoolStreamingBody(request);
+        ArtifactKey key = new ArtifactKey(ArtifactKey.SURVEY_CSV, dataType, lang, payload.hash());
+        Optional<Artifact> cached = artifactStore.find(key);
+        if (cached.isPresent()) {
+            return artifactStore.toResponse(cached.get(), request);
+        }
+        ExportCostEstimator.PayloadShape shape;
+        try (JsonParser parser = payload.openParser()) {
+            shape = costEstimator.scan(parser);
+        }
+        exportAdmission.write(costEstimator.estimate(shape, key.kind(), key.role()), () -> artifactStore.capture(key, response,
+                out -> exportService.exportCsvStream(payload.openParser(), dataType, lang, out)));
+        return null;
+    }
+
+    private ExportCostEstimator.Estimate estimate(ElectionPayloadReader.HashedPayload payload, ArtifactKey key) {
+        return costEstimator.estimate(costEstimator.scan(payload.tree()), key.kind(), key.role());
+    }
 }
@@ -0,0 +1,51 @@
+package com.election.controller;
+
+import com.election.service.ExportAdmission;
+import com.election.service.ExportCostEstimator;
+import com.election.web.ElectionPayloadReader;
+import com.fasterxml.jackson.core.JsonParser;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Dry run of the export endpoints: the body is scanned, not rendered, and the predicted CPU time,
+ * heap and size of each export are returned along with whether it would be admitted right away
+ */
+@RestController
+@RequestMapping("/api/estimate")
+@RequiredArgsConstructor
+public class ExportEstimateController {
+
+    private final ExportCostEstimator costEstimator;
+    private final ExportAdmission exportAdmission;
+    private final ElectionPayloadReader payloadReader;
+
+    /**
+     * @param export one export kind, e.g. {@code survey-pdf}; every applicable kind when absent
+     * @param role   {@code creator} or {@code viewer}; both when absent
+     */
+    @PostMapping
+    public ExportAdmission.DryRun estimate(HttpServletRequest request,
+                                           @RequestParam(value = "export", required = false) String export,
+                                           @RequestParam(value = "role", required = false) String role) throws IOException {
+        if (role != null && !role.equals("creator") && !role.equals("viewer")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown role: " + role);
+        }
+        ExportCostEstimator.PayloadShape shape;
+        try (JsonParser parser = payloadReader.openStreamingParser(request)) {
+            shape = costEstimator.scan(parser);
+        }
+        List<ExportCostEstimator.Estimate> estimates = export != null
+                ? List.of(costEstimator.estimate(shape, export, role == null ? "creator" : role))
+                : costEstimator.estimateAll(shape).stream()
+                .filter(estimate -> role == null || estimate.role().isEmpty() || estimate.role().equals(role))
+                .toList();
+        return exportAdmission.dryRun(shape, estimates);
+    }
+}
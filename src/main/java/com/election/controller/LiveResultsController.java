@@ -0,0 +1,37 @@
+package com.election.controller;
+
+import com.election.service.LiveResultsService;
+import com.election.web.ElectionPayloadReader;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+/**
+ * Live standings for front ends: snapshots are uploaded as election payloads and changes are
+ * pushed to subscribers as server-sent events, instead of clients polling the export endpoints
+ */
+@RestController
+@RequestMapping("/api/live/elections")
+@RequiredArgsConstructor
+public class LiveResultsController {
+
+    private final LiveResultsService liveResultsService;
+    private final ElectionPayloadReader payloadReader;
+
+    @GetMapping(path = "/{electionId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public void subscribe(@PathVariable String electionId, HttpServletRequest request,
+                          HttpServletResponse response) throws IOException {
+        liveResultsService.subscribe(electionId, request, response);
+    }
+
+    @PostMapping("/{electionId}")
+    public ResponseEntity<LiveResultsService.Published> publish(@PathVariable String electionId,
+                                                                HttpServletRequest request) throws IOException {
+        return ResponseEntity.accepted().body(liveResultsService.publish(electionId, payloadReader.readTree(request)));
+    }
+}
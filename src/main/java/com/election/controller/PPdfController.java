@@ -1,15 +1,19 @@
 package com.election.controller;
 
+import com.election.service.ExportAdmission;
+import com.election.service.ExportCostEstimator;
 import com.election.service.PdfService;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.election.store.ArtifactKey;
+import com.election.store.ArtifactStore;
+import com.election.web.ElectionPayloadReader;
+import com.election.web.ExportLanes;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import org.springframework.core.io.Resource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
 @RestController
 @RequestMapping("/pdf")
@@ -17,31 +21,31 @@ public class PPdfController {
 
     private static final Logger logger = LoggerFactory.getLogger(PPdfController.class);
     private final PdfService pdfService;
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private final ElectionPayloadReader payloadReader;
+    private final ArtifactStore artifactStore;
+    private final ExportCostEstimator costEstimator;
+    private final ExportAdmission exportAdmission;
+    private final ExportLanes exportLanes;
 
-    public PPdfController(PdfService pdfService) {
+    public PPdfController(PdfService pdfService, ElectionPayloadReader payloadReader, ArtifactStore artifactStore,
+                          ExportCostEstimator costEstimator, ExportAdmission exportAdmission, ExportLanes exportLanes) {
         this.pdfService = pdfService;
+        this.payloadReader = payloadReader;
+        this.artifactStore = artifactStore;
+        this.costEstimator = costEstimator;
+        this.exportAdmission = exportAdmission;
+        this.exportLanes = exportLanes;
     }
 
     @PostMapping("/charts")
-    public ResponseEntity<ByteArrayResource> getCommitteePdf(@RequestBody String jsonString) {
+    public WebAsyncTask<ResponseEntity<Resource>> getCommitteePdf(HttpServletRequest request) {
         logger.info("Received request for Demand Committee PDF (answerPercentage).");
-
-        try {
-            JsonNode rootNode = OBJECT_MAPPER.readTree(jsonString);
-            String voteTitle = rootNode.path("data").path("voteTitle").asText("Vote");
-            ByteArrayResource pdfResource = pdfService.generateDemandCommitteePdf(jsonString);
-
-            String fileName = voteTitle + " Results.pdf";
-            HttpHeaders headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
-            headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_PDF_VALUE);
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(pdfResource);
-        } catch (Exception e) {
-            logger.error("Error generating PDF", e);
-            return ResponseEntity.internalServerError().build();
-        }
+        return exportLanes.submit(ExportLanes.Lane.HEAVY, () -> {
+            ElectionPayloadReader.HashedPayload payload = payloadReader.readHashedTree(request);
+            ArtifactKey key = new ArtifactKey(ArtifactKey.SURVEY_PDF, null, null, payload.hash());
+            return artifactStore.serve(key, request, () -> exportAdmission.run(
+                    costEstimator.estimate(costEstimator.scan(payload.tree()), key.kind(), key.role()),
+                    () -> pdfService.export(payload.tree())));
+        });
     }
 }
@@ -0,0 +1,49 @@
+package com.election.controller;
+
+import com.election.service.ReportPregenerationService;
+import com.election.service.ReportPregenerationService.Family;
+import com.election.service.ReportPregenerationService.Registration;
+import com.election.web.ElectionPayloadReader;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+
+/**
+ * Registers surveys and elections whose reports should be rendered ahead of demand once they
+ * close. The body must be the same payload that will later be posted to the export endpoints.
+ */
+@RestController
+@RequestMapping("/api/pregeneration")
+@RequiredArgsConstructor
+public class PregenerationController {
+
+    private final ReportPregenerationService pregenerationService;
+    private final ElectionPayloadReader payloadReader;
+
+    @PostMapping("/survey")
+    public ResponseEntity<Registration> registerSurvey(HttpServletRequest request) throws IOException {
+        return register(request, Family.SURVEY);
+    }
+
+    @PostMapping("/election")
+    public ResponseEntity<Registration> registerElection(HttpServletRequest request) throws IOException {
+        return register(request, Family.ELECTION);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> cancel(@PathVariable String id) {
+        if (!pregenerationService.cancel(id)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No pending registration " + id);
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    private ResponseEntity<Registration> register(HttpServletRequest request, Family family) throws IOException {
+        return ResponseEntity.accepted().body(pregenerationService.register(family, payloadReader.readHashedTree(request)));
+    }
+}
@@ -0,0 +1,63 @@
+package com.election.controller;
+
+import com.election.aggregate.VoterIndex;
+import com.election.service.ExportAdmission;
+import com.election.service.ExportCostEstimator;
+import com.election.service.VoterIndexService;
+import com.election.web.ElectionPayloadReader;
+import com.election.web.ExportLanes;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+
+/**
+ * Per-voter lookups and receipts, served from an index of the last posted election snapshot
+ */
+@RestController
+@RequestMapping("/api/voter-index")
+@RequiredArgsConstructor
+public class VoterIndexController {
+
+    private final VoterIndexService voterIndexService;
+    private final ElectionPayloadReader payloadReader;
+    private final ExportCostEstimator costEstimator;
+    private final ExportAdmission exportAdmission;
+    private final ExportLanes exportLanes;
+
+    @PostMapping("/{electionId}")
+    public VoterIndexService.Indexed index(@PathVariable String electionId, HttpServletRequest request) throws IOException {
+        ElectionPayloadReader.ElectionPayload payload = payloadReader.readHashedElection(request);
+        return voterIndexService.index(electionId, payload.tree(), payload.voters(), payload.hash());
+    }
+
+    @GetMapping("/{electionId}")
+    public VoterIndex.Votes lookup(@PathVariable String electionId, @RequestParam("voter") String voter) {
+        return voterIndexService.lookup(electionId, voter);
+    }
+
+    @GetMapping("/{electionId}/receipt/{format}")
+    public WebAsyncTask<ResponseEntity<Resource>> receipt(@PathVariable String electionId, @PathVariable String format,
+                                            @RequestParam("voter") String voter,
+                                            @RequestParam(value = "lang", defaultValue = "en") String lang) {
+        if (!format.equals("pdf") && !format.equals("csv")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown format: " + format);
+        }
+        return exportLanes.submit(ExportLanes.Lane.LIGHT, () -> exportAdmission.run(costEstimator.receipt(),
+                () -> voterIndexService.receipt(electionId, voter, format.equals("pdf"), lang)));
+    }
+
+    @DeleteMapping("/{electionId}")
+    public ResponseEntity<Void> remove(@PathVariable String electionId) {
+        if (!voterIndexService.remove(electionId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No voter index for " + electionId);
+        }
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,87 @@
+package com.election.io;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Size-classed pool of byte arrays backing {@link SegmentedByteBuffer}.
+ * <p>
+ * Small buffers (CSV chunks, headers) are built from {@link #SMALL_SEGMENT} arrays and switch to
+ * {@link #LARGE_SEGMENT} arrays once they outgrow {@link #SMALL_LIMIT}, so a few kilobytes do not
+ * pin a large segment and large exports do not fragment into thousands of small ones. Each class
+ * retains a bounded number of idle segments; anything beyond that is left to the GC. Heap
+ * arrays are used throughout because every consumer (servlet streams, POI, iText) copies from
+ * heap arrays anyway, so direct memory would only add a copy.
+ */
+public final class BufferPool {
+
+    public static final int SMALL_SEGMENT = 4 * 1024;
+    public static final int LARGE_SEGMENT = 64 * 1024;
+    public static final int SMALL_LIMIT = 64 * 1024;
+
+    private static final BufferPool SHARED = new BufferPool(1024, 512);
+
+    private final SizeClass small;
+    private final SizeClass large;
+
+    /**
+     * @param maxIdleSmall idle {@link #SMALL_SEGMENT} arrays kept for reuse
+     * @param maxIdleLarge idle {@link #LARGE_SEGMENT} arrays kept for reuse
+     */
+    public BufferPool(int maxIdleSmall, int maxIdleLarge) {
+        this.small = new SizeClass(SMALL_SEGMENT, maxIdleSmall);
+        this.large = new SizeClass(LARGE_SEGMENT, maxIdleLarge);
+    }
+
+    /**
+     * Process-wide pool, retaining at most 4 MB of small and 32 MB of large segments
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Segment for a buffer that currently holds {@code bufferSize} bytes
+     */
+    byte[] acquire(long bufferSize) {
+        return bufferSize < SMALL_LIMIT ? small.acquire() : large.acquire();
+    }
+
+    void release(byte[] segment) {
+        if (segment.length == SMALL_SEGMENT) {
+            small.release(segment);
+        } else if (segment.length == LARGE_SEGMENT) {
+            large.release(segment);
+        }
+    }
+
+    private static final class SizeClass {
+        private final int segmentSize;
+        private final int maxIdle;
+        private final Queue<byte[]> idle = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+
+        SizeClass(int segmentSize, int maxIdle) {
+            this.segmentSize = segmentSize;
+            this.maxIdle = maxIdle;
+        }
+
+        byte[] acquire() {
+            byte[] segment = idle.poll();
+            if (segment == null) {
+                return new byte[segmentSize];
+            }
+            idleCount.decrementAndGet();
+            return segment;
+        }
+
+        void release(byte[] segment) {
+            if (idleCount.incrementAndGet() <= maxIdle) {
+                idle.offer(segment);
+            } else {
+                idleCount.decrementAndGet();
+            }
+        }
+    }
+}
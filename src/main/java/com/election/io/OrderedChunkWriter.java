@@ -0,0 +1,89 @@
+package com.election.io;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Encodes chunks of output on a fork-join pool and writes them to the underlying stream in
+ * submission order.
+ * <p>
+ * Every completed prefix of chunks is written as soon as it is available, so the output keeps
+ * streaming while later chunks are still being encoded. At most {@code window} chunks are in
+ * flight; submitting beyond that waits for the oldest one, which bounds memory to roughly
+ * {@code window} encoded chunks.
+ * <p>
+ * Instances are not thread-safe; only the encoders run on the pool.
+ */
+public class OrderedChunkWriter implements Flushable {
+
+    /**
+     * Encodes one chunk; runs on a pool thread
+     */
+    @FunctionalInterface
+    public interface ChunkEncoder {
+        void encode(OutputStream out) throws IOException;
+    }
+
+    private final OutputStream out;
+    private final ForkJoinPool pool;
+    private final int window;
+    private final Deque<ForkJoinTask<SegmentedByteBuffer>> pending;
+
+    public OrderedChunkWriter(OutputStream out, ForkJoinPool pool, int window) {
+        this.out = out;
+        this.pool = pool;
+        this.window = Math.max(1, window);
+        this.pending = new ArrayDeque<>(this.window);
+    }
+
+    public void submit(ChunkEncoder encoder) throws IOException {
+        while (pending.size() >= window) {
+            writeNext();
+        }
+        pending.add(pool.submit(() -> {
+            SegmentedByteBuffer buffer = new SegmentedByteBuffer();
+            encoder.encode(buffer);
+            return buffer;
+        }));
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            writeNext();
+        }
+    }
+
+    /**
+     * Waits for all submitted chunks and writes them
+     */
+    @Override
+    public void flush() throws IOException {
+        try {
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+        } finally {
+            cancel();
+        }
+        out.flush();
+    }
+
+    /**
+     * Drops chunks that have not been written, e.g. after the output failed
+     */
+    public void cancel() {
+        pending.forEach(task -> task.cancel(true));
+        pending.clear();
+    }
+
+    private void writeNext() throws IOException {
+        SegmentedByteBuffer buffer = pending.remove().join();
+        try {
+            buffer.writeTo(out);
+        } finally {
+            buffer.release();
+        }
+    }
+}
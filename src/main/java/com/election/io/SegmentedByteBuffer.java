@@ -0,0 +1,112 @@
+package com.election.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory output stream backed by pooled segments, replacing {@link java.io.ByteArrayOutputStream}
+ * for export output.
+ * <p>
+ * Growing appends a segment instead of doubling and copying the whole array, and
+ * {@link #release()} returns the segments to the {@link BufferPool} for the next export.
+ * {@link #close()} does nothing, as with {@code ByteArrayOutputStream}, so the buffer can be
+ * handed to libraries that close their output (POI, iText) and still be read afterwards.
+ * A buffer that is never released is simply garbage collected.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class SegmentedByteBuffer extends OutputStream {
+
+    private final BufferPool pool;
+    private final List<byte[]> segments = new ArrayList<>();
+    private byte[] current;
+    private int position;
+    private long size;
+
+    public SegmentedByteBuffer() {
+        this(BufferPool.shared());
+    }
+
+    public SegmentedByteBuffer(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void write(int b) {
+        if (current == null || position == current.length) {
+            nextSegment();
+        }
+        current[position++] = (byte) b;
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            if (current == null || position == current.length) {
+                nextSegment();
+            }
+            int count = Math.min(len, current.length - position);
+            System.arraycopy(b, off, current, position, count);
+            position += count;
+            off += count;
+            len -= count;
+            size += count;
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        int last = segments.size() - 1;
+        for (int i = 0; i < last; i++) {
+            out.write(segments.get(i));
+        }
+        if (last >= 0) {
+            out.write(current, 0, position);
+        }
+    }
+
+    public byte[] toByteArray() {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Buffer too large for a byte array: " + size);
+        }
+        byte[] bytes = new byte[(int) size];
+        int offset = 0;
+        int last = segments.size() - 1;
+        for (int i = 0; i < last; i++) {
+            byte[] segment = segments.get(i);
+            System.arraycopy(segment, 0, bytes, offset, segment.length);
+            offset += segment.length;
+        }
+        if (last >= 0) {
+            System.arraycopy(current, 0, bytes, offset, position);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the segments to the pool; the buffer is empty afterwards
+     */
+    public void release() {
+        segments.forEach(pool::release);
+        segments.clear();
+        current = null;
+        position = 0;
+        size = 0;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void nextSegment() {
+        current = pool.acquire(size);
+        segments.add(current);
+        position = 0;
+    }
+}
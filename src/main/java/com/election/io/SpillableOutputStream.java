@@ -0,0 +1,143 @@
+package com.election.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Output stream that keeps data in a {@link SegmentedByteBuffer} up to a threshold and moves it
+ * to a temporary file once that threshold is crossed.
+ * <p>
+ * Small exports never touch the disk, while large ones stop growing the heap after the threshold.
+ * {@link #close()} only finishes writing; the data stays readable until {@link #delete()}, which
+ * must always be called, typically when the request that produced the export completes.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class SpillableOutputStream extends OutputStream {
+
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+    private final long threshold;
+    private final Path directory;
+    private SegmentedByteBuffer memory = new SegmentedByteBuffer();
+    private Path file;
+    private OutputStream fileOut;
+    private long size;
+    private boolean closed;
+
+    /**
+     * @param threshold bytes kept in memory before spilling
+     * @param directory where the temporary file is created
+     */
+    public SpillableOutputStream(long threshold, Path directory) {
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        target(1).write(b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        target(len).write(b, off, len);
+        size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileOut != null) {
+            fileOut.flush();
+        }
+    }
+
+    /**
+     * Finishes writing; the contents stay available
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (fileOut != null) {
+                fileOut.close();
+            }
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * The temporary file holding the data, or null while it is still in memory
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Copies the in-memory contents; only valid before spilling
+     */
+    public byte[] toByteArray() {
+        if (memory == null) {
+            throw new IllegalStateException("Output was spilled to " + file);
+        }
+        return memory.toByteArray();
+    }
+
+    /**
+     * Reads the contents back from memory or from the temporary file
+     */
+    public InputStream openInputStream() throws IOException {
+        flush();
+        return file != null ? Files.newInputStream(file) : new ByteArrayInputStream(memory.toByteArray());
+    }
+
+    /**
+     * Releases the memory and removes the temporary file, if any
+     */
+    public void delete() throws IOException {
+        closed = true;
+        if (memory != null) {
+            memory.release();
+        }
+        try {
+            if (fileOut != null) {
+                fileOut.close();
+            }
+        } finally {
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private OutputStream target(int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (fileOut == null && size + len > threshold) {
+            spill();
+        }
+        return fileOut != null ? fileOut : memory;
+    }
+
+    private void spill() throws IOException {
+        file = Files.createTempFile(directory, "export-", ".tmp");
+        fileOut = new BufferedOutputStream(Files.newOutputStream(file), FILE_BUFFER_SIZE);
+        memory.writeTo(fileOut);
+        memory.release();
+        memory = null;
+    }
+}
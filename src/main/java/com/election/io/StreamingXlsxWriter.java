@@ -0,0 +1,453 @@
+package com.election.io;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Minimal XLSX writer that streams sheet XML straight into a ZIP archive on the output stream.
+ * <p>
+ * Unlike POI (including SXSSF) no row or cell objects, style indirection or temp files are
+ * involved: each cell is serialized as it is written and only the sheet names and the shared
+ * string table are kept until the workbook parts are written on {@link #close()}. Only the
+ * handful of styles the exports use are supported, and column widths must be supplied up front
+ * since the sheet cannot be measured before it is written.
+ * <p>
+ * Repeated text such as question titles is stored once in the shared string table. The table
+ * is bounded: once it holds {@code maxSharedStrings} entries, new strings are written inline so
+ * that high-cardinality columns (voter names) cannot grow it without limit.
+ * <p>
+ * Sheets are either written one at a time with {@link #startSheet}, or rendered concurrently
+ * with {@link #writeSheets}, where each sheet part is serialized and deflated on its own pool
+ * thread and the parts are added to the archive in order. The writer itself is not
+ * thread-safe, but sheets rendered by {@link #writeSheets} may share its string table.
+ */
+public class StreamingXlsxWriter implements Closeable {
+
+    /**
+     * Cell styles, in the order of the {@code cellXfs} entries in the styles part
+     */
+    public enum Style {
+        DEFAULT,
+        /** Bold white on 25% grey, as in the survey exports */
+        HEADER,
+        /** 14pt bold white on 50% grey, centered, thin borders */
+        SECTION_TITLE,
+        /** 14pt bold white on 25% grey, centered, thin borders */
+        SECTION_HEADER,
+        /** 14pt black on white, left aligned, thin borders */
+        SECTION_DATA,
+        /** Numeric {@code 0.00%} */
+        PERCENT,
+        /** {@link #SECTION_DATA} with a {@code 0.00%} number format */
+        SECTION_PERCENT
+    }
+
+    public static final int DEFAULT_MAX_SHARED_STRINGS = 65_536;
+
+    /**
+     * Writes the rows of one sheet
+     */
+    @FunctionalInterface
+    public interface SheetContent {
+        void write(SheetWriter sheet) throws IOException;
+    }
+
+    public record SheetTask(String name, double[] columnWidths, SheetContent content) {
+    }
+
+    private static final String CONTENT_TYPES = """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <Types xmlns="http://schemas.openxmlformats.org/package/2006/content-types">\
+            <Default Extension="rels" ContentType="application/vnd.openxmlformats-package.relationships+xml"/>\
+            <Default Extension="xml" ContentType="application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml"/>\
+            <Override PartName="/xl/workbook.xml" ContentType="application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml"/>\
+            <Override PartName="/xl/styles.xml" ContentType="application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml"/>\
+            <Override PartName="/xl/sharedStrings.xml" ContentType="application/vnd.openxmlformats-officedocument.spreadsheetml.sharedStrings+xml"/>\
+            </Types>""";
+
+    private static final String ROOT_RELS = """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <Relationships xmlns="http://schemas.openxmlformats.org/package/2006/relationships">\
+            <Relationship Id="rId1" Type="http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument" Target="xl/workbook.xml"/>\
+            </Relationships>""";
+
+    // Mirrors the CellStyles built by ExportService and ElectionExportService with POI
+    private static final String STYLES = """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <styleSheet xmlns="http://schemas.openxmlformats.org/spreadsheetml/2006/main">\
+            <fonts count="4">\
+            <font><sz val="11"/><color theme="1"/><name val="Calibri"/><family val="2"/></font>\
+            <font><b/><sz val="11"/><color indexed="9"/><name val="Calibri"/><family val="2"/></font>\
+            <font><b/><sz val="14"/><color indexed="9"/><name val="Calibri"/><family val="2"/></font>\
+            <font><sz val="14"/><color indexed="8"/><name val="Calibri"/><family val="2"/></font>\
+            </fonts>\
+            <fills count="5">\
+            <fill><patternFill patternType="none"/></fill>\
+            <fill><patternFill patternType="gray125"/></fill>\
+            <fill><patternFill patternType="solid"><fgColor indexed="22"/><bgColor indexed="64"/></patternFill></fill>\
+            <fill><patternFill patternType="solid"><fgColor indexed="23"/><bgColor indexed="64"/></patternFill></fill>\
+            <fill><patternFill patternType="solid"><fgColor indexed="9"/><bgColor indexed="64"/></patternFill></fill>\
+            </fills>\
+            <borders count="2">\
+            <border><left/><right/><top/><bottom/><diagonal/></border>\
+            <border><left style="thin"><color indexed="22"/></left><right style="thin"><color indexed="22"/></right>\
+            <top style="thin"><color indexed="22"/></top><bottom style="thin"><color indexed="22"/></bottom><diagonal/></border>\
+            </borders>\
+            <cellStyleXfs count="1"><xf numFmtId="0" fontId="0" fillId="0" borderId="0"/></cellStyleXfs>\
+            <cellXfs count="7">\
+            <xf numFmtId="0" fontId="0" fillId="0" borderId="0" xfId="0"/>\
+            <xf numFmtId="0" fontId="1" fillId="2" borderId="0" xfId="0" applyFont="1" applyFill="1"/>\
+            <xf numFmtId="0" fontId="2" fillId="3" borderId="1" xfId="0" applyFont="1" applyFill="1" applyBorder="1" applyAlignment="1">\
+            <alignment horizontal="center" vertical="center"/></xf>\
+            <xf numFmtId="0" fontId="2" fillId="2" borderId="1" xfId="0" applyFont="1" applyFill="1" applyBorder="1" applyAlignment="1">\
+            <alignment horizontal="center" vertical="center"/></xf>\
+            <xf numFmtId="0" fontId="3" fillId="4" borderId="1" xfId="0" applyFont="1" applyFill="1" applyBorder="1" applyAlignment="1">\
+            <alignment horizontal="left" vertical="center"/></xf>\
+            <xf numFmtId="10" fontId="0" fillId="0" borderId="0" xfId="0" applyNumberFormat="1"/>\
+            <xf numFmtId="10" fontId="3" fillId="4" borderId="1" xfId="0" applyNumberFormat="1" applyFont="1" applyFill="1" applyBorder="1" applyAlignment="1">\
+            <alignment horizontal="left" vertical="center"/></xf>\
+            </cellXfs>\
+            <cellStyles count="1"><cellStyle name="Normal" xfId="0" builtinId="0"/></cellStyles>\
+            </styleSheet>""";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ZipAssembler zip;
+    private final SharedStringTable sharedStrings;
+    private final List<String> sheetNames = new ArrayList<>();
+    private SheetWriter currentSheet;
+    private OutputStream currentEntry;
+
+    public StreamingXlsxWriter(OutputStream out) throws IOException {
+        this(out, DEFAULT_MAX_SHARED_STRINGS);
+    }
+
+    /**
+     * @param maxSharedStrings bound on the shared string table, 0 to write all strings inline
+     */
+    public StreamingXlsxWriter(OutputStream out, int maxSharedStrings) throws IOException {
+        this.zip = new ZipAssembler(out);
+        this.sharedStrings = new SharedStringTable(maxSharedStrings);
+        zip.addEntry("[Content_Types].xml", CONTENT_TYPES);
+        zip.addEntry("_rels/.rels", ROOT_RELS);
+    }
+
+    /**
+     * Starts a new sheet, ending the current one; column widths are in characters, as in
+     * Excel's column width dialog
+     */
+    public SheetWriter startSheet(String name, double... columnWidths) throws IOException {
+        endSheet();
+        sheetNames.add(name);
+        currentEntry = zip.openEntry(sheetPath(sheetNames.size()));
+        currentSheet = new SheetWriter(currentEntry, columnWidths);
+        return currentSheet;
+    }
+
+    public void endSheet() throws IOException {
+        if (currentSheet != null) {
+            currentSheet.finish();
+            currentEntry.close();
+            currentSheet = null;
+            currentEntry = null;
+        }
+    }
+
+    /**
+     * Renders the sheets on {@code pool} and adds them in order. At most one more sheet than the
+     * pool's parallelism is held in memory while waiting for earlier sheets to complete. A single
+     * sheet is streamed on the calling thread instead.
+     */
+    public void writeSheets(List<SheetTask> tasks, ForkJoinPool pool) throws IOException {
+        endSheet();
+        if (tasks.size() == 1) {
+            SheetTask task = tasks.get(0);
+            task.content().write(startSheet(task.name(), task.columnWidths()));
+            endSheet();
+            return;
+        }
+        int window = pool.getParallelism() + 1;
+        Deque<ForkJoinTask<ZipAssembler.DeflatedPart>> pending = new ArrayDeque<>(window);
+        int submitted = 0;
+        try {
+            for (SheetTask task : tasks) {
+                while (submitted < tasks.size() && pending.size() < window) {
+                    SheetTask next = tasks.get(submitted++);
+                    pending.add(pool.submit(() -> ZipAssembler.deflate(out -> {
+                        SheetWriter sheet = new SheetWriter(out, next.columnWidths());
+                        next.content().write(sheet);
+                        sheet.finish();
+                    })));
+                }
+                ZipAssembler.DeflatedPart part = pending.remove().join();
+                sheetNames.add(task.name());
+                zip.addEntry(sheetPath(sheetNames.size()), part);
+            }
+        } finally {
+            pending.forEach(task -> task.cancel(true));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        endSheet();
+        if (sheetNames.isEmpty()) {
+            startSheet("Sheet1");
+            endSheet();
+        }
+        zip.addEntry("xl/workbook.xml", workbookXml());
+        zip.addEntry("xl/_rels/workbook.xml.rels", workbookRelsXml());
+        zip.addEntry("xl/styles.xml", STYLES);
+        writeSharedStrings();
+        zip.finish();
+    }
+
+    private static String sheetPath(int number) {
+        return "xl/worksheets/sheet" + number + ".xml";
+    }
+
+    private String workbookXml() {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                + "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" "
+                + "xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\"><sheets>");
+        for (int i = 0; i < sheetNames.size(); i++) {
+            xml.append("<sheet name=\"").append(escape(sheetNames.get(i))).append("\" sheetId=\"").append(i + 1)
+                    .append("\" r:id=\"rId").append(i + 1).append("\"/>");
+        }
+        return xml.append("</sheets></workbook>").toString();
+    }
+
+    private String workbookRelsXml() {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">");
+        int i = 0;
+        for (; i < sheetNames.size(); i++) {
+            xml.append("<Relationship Id=\"rId").append(i + 1)
+                    .append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet")
+                    .append(i + 1).append(".xml\"/>");
+        }
+        xml.append("<Relationship Id=\"rId").append(i + 1)
+                .append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\" Target=\"styles.xml\"/>");
+        xml.append("<Relationship Id=\"rId").append(i + 2)
+                .append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/sharedStrings\" Target=\"sharedStrings.xml\"/>");
+        return xml.append("</Relationships>").toString();
+    }
+
+    private void writeSharedStrings() throws IOException {
+        String[] strings = sharedStrings.toArray();
+        try (OutputStream entry = zip.openEntry("xl/sharedStrings.xml")) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(entry, StandardCharsets.UTF_8), BUFFER_SIZE);
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                    + "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count=\""
+                    + sharedStrings.getReferences() + "\" uniqueCount=\"" + strings.length + "\">");
+            for (String text : strings) {
+                writer.write("<si><t xml:space=\"preserve\">");
+                writeEscaped(writer, text);
+                writer.write("</t></si>");
+            }
+            writer.write("</sst>");
+            writer.flush();
+        }
+    }
+
+    private static void writeEscaped(Writer writer, String value) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> writer.write("&amp;");
+                case '<' -> writer.write("&lt;");
+                case '>' -> writer.write("&gt;");
+                case '"' -> writer.write("&quot;");
+                default -> {
+                    // Control characters other than tab and line breaks are not allowed in XML
+                    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                        writer.write(c);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '&' -> escaped.append("&amp;");
+                case '<' -> escaped.append("&lt;");
+                case '>' -> escaped.append("&gt;");
+                case '"' -> escaped.append("&quot;");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Serializes the rows of one sheet part. Not thread-safe; each sheet has its own writer.
+     */
+    public final class SheetWriter {
+
+        private final Writer writer;
+        private final char[] columnName = new char[3];
+        private boolean inRow;
+        private int rowNumber;
+        private int columnIndex;
+
+        private SheetWriter(OutputStream out, double[] columnWidths) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                    + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">");
+            if (columnWidths.length > 0) {
+                writer.write("<cols>");
+                for (int i = 0; i < columnWidths.length; i++) {
+                    writer.write("<col min=\"" + (i + 1) + "\" max=\"" + (i + 1) + "\" width=\""
+                            + columnWidths[i] + "\" customWidth=\"1\"/>");
+                }
+                writer.write("</cols>");
+            }
+            writer.write("<sheetData>");
+        }
+
+        public void startRow() throws IOException {
+            if (inRow) {
+                endRow();
+            }
+            rowNumber++;
+            columnIndex = 0;
+            writer.write("<row r=\"");
+            writer.write(Integer.toString(rowNumber));
+            writer.write("\">");
+            inRow = true;
+        }
+
+        public void cell(String value, Style style) throws IOException {
+            String text = value == null ? "" : value;
+            startCell(style);
+            int index = sharedStrings.indexOf(text);
+            if (index >= 0) {
+                writer.write(" t=\"s\"><v>");
+                writer.write(Integer.toString(index));
+                writer.write("</v></c>");
+            } else {
+                writer.write(" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+                writeEscaped(writer, text);
+                writer.write("</t></is></c>");
+            }
+        }
+
+        public void cell(String value) throws IOException {
+            cell(value, Style.DEFAULT);
+        }
+
+        public void cell(double value, Style style) throws IOException {
+            if (!Double.isFinite(value)) {
+                cell(Double.toString(value), style);
+                return;
+            }
+            startCell(style);
+            writer.write("><v>");
+            writer.write(value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value));
+            writer.write("</v></c>");
+        }
+
+        public void cell(long value, Style style) throws IOException {
+            startCell(style);
+            writer.write("><v>");
+            writer.write(Long.toString(value));
+            writer.write("</v></c>");
+        }
+
+        public void endRow() throws IOException {
+            writer.write("</row>");
+            inRow = false;
+        }
+
+        /**
+         * Number of rows written to this sheet
+         */
+        public int getRowCount() {
+            return rowNumber;
+        }
+
+        private void finish() throws IOException {
+            if (inRow) {
+                endRow();
+            }
+            writer.write("</sheetData></worksheet>");
+            writer.flush();
+        }
+
+        private void startCell(Style style) throws IOException {
+            writer.write("<c r=\"");
+            int position = columnName.length;
+            for (int n = columnIndex + 1; n > 0; n = (n - 1) / 26) {
+                columnName[--position] = (char) ('A' + (n - 1) % 26);
+            }
+            writer.write(columnName, position, columnName.length - position);
+            writer.write(Integer.toString(rowNumber));
+            writer.write('"');
+            if (style != Style.DEFAULT) {
+                writer.write(" s=\"");
+                writer.write(Integer.toString(style.ordinal()));
+                writer.write('"');
+            }
+            columnIndex++;
+        }
+    }
+
+    /**
+     * Shared string table that can be filled from several sheet threads at once. The bound is
+     * checked before inserting, so concurrent writers may overshoot it by a few entries.
+     */
+    private static final class SharedStringTable {
+
+        private final ConcurrentHashMap<String, Integer> index = new ConcurrentHashMap<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final LongAdder references = new LongAdder();
+        private final int maxSize;
+
+        SharedStringTable(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * @return the index of {@code text}, or -1 if the table is full and it has to be written inline
+         */
+        int indexOf(String text) {
+            Integer position = index.get(text);
+            if (position == null) {
+                if (size.get() >= maxSize) {
+                    return -1;
+                }
+                position = index.computeIfAbsent(text, key -> size.getAndIncrement());
+            }
+            references.increment();
+            return position;
+        }
+
+        long getReferences() {
+            return references.sum();
+        }
+
+        String[] toArray() {
+            String[] strings = new String[size.get()];
+            index.forEach((text, position) -> strings[position] = text);
+            return strings;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.election.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * CSV encoder that writes quoted fields straight into a reusable UTF-8 byte buffer.
+ * <p>
+ * Output matches the OpenCSV defaults the exports were built on: every field is wrapped in
+ * double quotes, embedded quotes are doubled (RFC 4180) and rows end with {@code \n}. Rows are
+ * written field by field, so no {@code String[]} is allocated per row, and numbers are
+ * formatted without going through {@link String#format}.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class Utf8CsvWriter implements Flushable, Closeable {
+
+    private static final byte QUOTE = '"';
+    private static final byte SEPARATOR = ',';
+    private static final byte LINE_END = '\n';
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+    private static final double FAST_FORMAT_LIMIT = 1e9;
+    // Double.toString switches to scientific notation from 10^7
+    private static final double PLAIN_FORMAT_LIMIT = 1e7;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+    private boolean rowStarted;
+
+    public Utf8CsvWriter(OutputStream out) {
+        this(out, 16 * 1024);
+    }
+
+    public Utf8CsvWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+    }
+
+    public Utf8CsvWriter writeBom() throws IOException {
+        for (byte b : UTF8_BOM) {
+            put(b);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a quoted text field; {@code null} is written as an empty unquoted field
+     */
+    public Utf8CsvWriter field(CharSequence value) throws IOException {
+        separate();
+        if (value == null) {
+            return this;
+        }
+        put(QUOTE);
+        appendEscaped(value);
+        put(QUOTE);
+        return this;
+    }
+
+    /**
+     * Writes a field whose content is already UTF-8 encoded, e.g. taken from a byte arena
+     */
+    public Utf8CsvWriter utf8Field(byte[] utf8, int offset, int length) throws IOException {
+        return beginField().appendUtf8(utf8, offset, length).endField();
+    }
+
+    /**
+     * Opens a quoted field whose content is written in parts with {@link #appendText} and
+     * {@link #appendUtf8}, so a long value never has to be built as one string
+     */
+    public Utf8CsvWriter beginField() throws IOException {
+        separate();
+        put(QUOTE);
+        return this;
+    }
+
+    public Utf8CsvWriter appendText(CharSequence value) throws IOException {
+        appendEscaped(value);
+        return this;
+    }
+
+    public Utf8CsvWriter appendUtf8(byte[] utf8, int offset, int length) throws IOException {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (utf8[i] == QUOTE) {
+                put(QUOTE);
+            }
+            put(utf8[i]);
+        }
+        return this;
+    }
+
+    public Utf8CsvWriter endField() throws IOException {
+        put(QUOTE);
+        return this;
+    }
+
+    public Utf8CsvWriter field(long value) throws IOException {
+        separate();
+        put(QUOTE);
+        appendLong(value);
+        put(QUOTE);
+        return this;
+    }
+
+    /**
+     * Writes {@code value} with a fixed number of decimals followed by a percent sign, producing
+     * the same text as {@code String.format("%.<decimals>f%%", value)}
+     */
+    public Utf8CsvWriter percentField(double value, int decimals) throws IOException {
+        separate();
+        put(QUOTE);
+        appendFixed(value, decimals);
+        put((byte) '%');
+        put(QUOTE);
+        return this;
+    }
+
+    /**
+     * Writes {@code value} as {@link Double#toString(double)} does, followed by a percent sign
+     */
+    public Utf8CsvWriter plainPercentField(double value) throws IOException {
+        separate();
+        put(QUOTE);
+        if (value == Math.rint(value) && value < PLAIN_FORMAT_LIMIT && Double.doubleToRawLongBits(value) >= 0) {
+            appendLong((long) value);
+            put((byte) '.');
+            put((byte) '0');
+        } else {
+            appendEscaped(Double.toString(value));
+        }
+        put((byte) '%');
+        put(QUOTE);
+        return this;
+    }
+
+    /**
+     * Convenience for header and other one-off rows
+     */
+    public void writeRow(String... fields) throws IOException {
+        for (String field : fields) {
+            field(field);
+        }
+        endRow();
+    }
+
+    public void endRow() throws IOException {
+        put(LINE_END);
+        rowStarted = false;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    private void separate() throws IOException {
+        if (rowStarted) {
+            put(SEPARATOR);
+        }
+        rowStarted = true;
+    }
+
+    private void appendFixed(double value, int decimals) throws IOException {
+        double scaled = value * POWERS_OF_TEN[decimals];
+        long whole = (long) scaled;
+        double fraction = scaled - whole;
+        // Negative, huge and non-finite values as well as near-ties fall back to Formatter, which
+        // rounds half-up on the shortest decimal representation rather than on the binary value
+        if (Double.doubleToRawLongBits(value) < 0 || !(scaled < FAST_FORMAT_LIMIT) || Math.abs(fraction - 0.5) < 1e-6) {
+            appendEscaped(String.format("%." + decimals + "f", value));
+            return;
+        }
+        long rounded = fraction > 0.5 ? whole + 1 : whole;
+        appendLong(rounded / POWERS_OF_TEN[decimals]);
+        if (decimals > 0) {
+            put((byte) '.');
+            long remainder = rounded % POWERS_OF_TEN[decimals];
+            for (int i = decimals - 1; i >= 0; i--) {
+                put((byte) ('0' + (remainder / POWERS_OF_TEN[i]) % 10));
+            }
+        }
+    }
+
+    private void appendLong(long value) throws IOException {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                appendEscaped(Long.toString(value));
+                return;
+            }
+            put((byte) '-');
+            value = -value;
+        }
+        ensure(19);
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position = end;
+    }
+
+    private void appendEscaped(CharSequence value) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"') {
+                    put(QUOTE);
+                }
+                put((byte) c);
+            } else if (c < 0x800) {
+                ensure(2);
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensure(4);
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, replaced the same way OutputStreamWriter does
+                put((byte) '?');
+            } else {
+                ensure(3);
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = b;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
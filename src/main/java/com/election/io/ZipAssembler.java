@@ -0,0 +1,273 @@
+package com.election.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a ZIP archive whose entries are either deflated while streaming or deflated ahead of
+ * time, possibly on another thread, and copied in as-is.
+ * <p>
+ * {@link java.util.zip.ZipOutputStream} compresses every entry on the writing thread, which makes
+ * compression the bottleneck for multi-sheet workbooks. Here each sheet can be deflated
+ * independently with {@link #deflate} and the parts assembled in order. ZIP64 is not supported,
+ * so the archive and each entry are limited to 4 GB.
+ * <p>
+ * Instances are not thread-safe; {@link #deflate} is.
+ */
+final class ZipAssembler {
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int VERSION = 20;
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * A deflated entry body together with the checksum and length of the uncompressed data
+     */
+    record DeflatedPart(SegmentedByteBuffer data, long crc, long size) {
+    }
+
+    @FunctionalInterface
+    interface ContentWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private record Entry(byte[] name, int flags, long crc, long compressedSize, long size, long offset) {
+    }
+
+    private final CountingOutputStream out;
+    private final List<Entry> entries = new ArrayList<>();
+    private final long dosTime = toDosTime(LocalDateTime.now());
+    private boolean entryOpen;
+
+    ZipAssembler(OutputStream out) {
+        this.out = new CountingOutputStream(out);
+    }
+
+    /**
+     * Deflates {@code content} into memory so it can later be added with {@link #addEntry}
+     */
+    static DeflatedPart deflate(ContentWriter content) throws IOException {
+        SegmentedByteBuffer data = new SegmentedByteBuffer();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            CheckedStream checked = new CheckedStream(new DeflaterOutputStream(data, deflater, BUFFER_SIZE));
+            content.write(checked);
+            checked.finish();
+            return new DeflatedPart(data, checked.crc.getValue(), checked.size);
+        } catch (IOException | RuntimeException e) {
+            data.release();
+            throw e;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Opens a streaming entry; it must be closed before the next entry is added
+     */
+    OutputStream openEntry(String name) throws IOException {
+        checkNoOpenEntry();
+        byte[] encodedName = name.getBytes(StandardCharsets.UTF_8);
+        long offset = out.count;
+        writeLocalHeader(encodedName, FLAG_DATA_DESCRIPTOR | FLAG_UTF8, 0, 0, 0);
+        entryOpen = true;
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        return new CheckedStream(new DeflaterOutputStream(out, deflater, BUFFER_SIZE)) {
+            private boolean closed;
+
+            // Finishes the entry without closing the archive stream
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    finish();
+                } finally {
+                    deflater.end();
+                }
+                long compressedSize = ZipAssembler.this.out.count - offset - 30 - encodedName.length;
+                checkSize(compressedSize);
+                checkSize(size);
+                writeInt(DATA_DESCRIPTOR);
+                writeInt(crc.getValue());
+                writeInt(compressedSize);
+                writeInt(size);
+                entries.add(new Entry(encodedName, FLAG_DATA_DESCRIPTOR | FLAG_UTF8, crc.getValue(),
+                        compressedSize, size, offset));
+                entryOpen = false;
+            }
+        };
+    }
+
+    /**
+     * Copies in a part from {@link #deflate}, releasing its buffer
+     */
+    void addEntry(String name, DeflatedPart part) throws IOException {
+        checkNoOpenEntry();
+        byte[] encodedName = name.getBytes(StandardCharsets.UTF_8);
+        long compressedSize = part.data().size();
+        checkSize(compressedSize);
+        checkSize(part.size());
+        long offset = out.count;
+        writeLocalHeader(encodedName, FLAG_UTF8, part.crc(), compressedSize, part.size());
+        part.data().writeTo(out);
+        part.data().release();
+        entries.add(new Entry(encodedName, FLAG_UTF8, part.crc(), compressedSize, part.size(), offset));
+    }
+
+    void addEntry(String name, String content) throws IOException {
+        try (OutputStream entry = openEntry(name)) {
+            entry.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Writes the central directory; the underlying stream is flushed but not closed
+     */
+    void finish() throws IOException {
+        checkNoOpenEntry();
+        long directoryOffset = out.count;
+        for (Entry entry : entries) {
+            writeInt(CENTRAL_HEADER);
+            writeShort(VERSION);
+            writeShort(VERSION);
+            writeShort(entry.flags());
+            writeShort(Deflater.DEFLATED);
+            writeInt(dosTime);
+            writeInt(entry.crc());
+            writeInt(entry.compressedSize());
+            writeInt(entry.size());
+            writeShort(entry.name().length);
+            writeShort(0); // extra field length
+            writeShort(0); // comment length
+            writeShort(0); // disk number
+            writeShort(0); // internal attributes
+            writeInt(0);   // external attributes
+            writeInt(entry.offset());
+            out.write(entry.name());
+        }
+        long directorySize = out.count - directoryOffset;
+        checkSize(directoryOffset + directorySize);
+        if (entries.size() > 0xFFFF) {
+            throw new IOException("Too many ZIP entries: " + entries.size());
+        }
+        writeInt(END_OF_CENTRAL_DIRECTORY);
+        writeShort(0);
+        writeShort(0);
+        writeShort(entries.size());
+        writeShort(entries.size());
+        writeInt(directorySize);
+        writeInt(directoryOffset);
+        writeShort(0);
+        out.flush();
+    }
+
+    private void writeLocalHeader(byte[] name, int flags, long crc, long compressedSize, long size) throws IOException {
+        checkSize(out.count);
+        writeInt(LOCAL_HEADER);
+        writeShort(VERSION);
+        writeShort(flags);
+        writeShort(Deflater.DEFLATED);
+        writeInt(dosTime);
+        writeInt(crc);
+        writeInt(compressedSize);
+        writeInt(size);
+        writeShort(name.length);
+        writeShort(0);
+        out.write(name);
+    }
+
+    private void checkNoOpenEntry() {
+        if (entryOpen) {
+            throw new IllegalStateException("Previous ZIP entry is still open");
+        }
+    }
+
+    private static void checkSize(long size) throws IOException {
+        if (size > MAX_SIZE) {
+            throw new IOException("ZIP archive exceeds 4 GB, which requires ZIP64");
+        }
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    private void writeInt(long value) throws IOException {
+        writeShort((int) (value & 0xFFFF));
+        writeShort((int) ((value >>> 16) & 0xFFFF));
+    }
+
+    private static long toDosTime(LocalDateTime time) {
+        return ((long) (time.getYear() - 1980) << 25) | ((long) time.getMonthValue() << 21)
+                | ((long) time.getDayOfMonth() << 16) | ((long) time.getHour() << 11)
+                | ((long) time.getMinute() << 5) | (time.getSecond() >> 1);
+    }
+
+    /**
+     * Tracks the CRC and length of the uncompressed bytes written to a deflating stream
+     */
+    private static class CheckedStream extends FilterOutputStream {
+        final CRC32 crc = new CRC32();
+        long size;
+
+        CheckedStream(DeflaterOutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            crc.update(b);
+            size++;
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            crc.update(b, off, len);
+            size += len;
+            out.write(b, off, len);
+        }
+
+        void finish() throws IOException {
+            ((DeflaterOutputStream) out).finish();
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
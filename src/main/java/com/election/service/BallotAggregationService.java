@@ -0,0 +1,363 @@
+package com.election.service;
+
+import com.election.aggregate.ElectionTally;
+import com.election.aggregate.OrdinalDictionary;
+import com.election.aggregate.VoterLists;
+import com.election.config.ExportProperties;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Aggregates raw ballots on the server instead of relying on client-computed counts.
+ * <p>
+ * Ballots arrive as NDJSON, one object per line, for example
+ * {@code {"voter":"Voter 1","candidate":"Cand 0","gender":"male","ageRange":"26-40","answers":{"1":"Yes","2":["A","B"]}}}.
+ * Every field is optional, but a ballot needs a candidate or answers. They are read with the
+ * token parser and counted into an {@link ElectionTally}.
+ * <p>
+ * {@link #results} rebuilds the usual election payload from the counts, so the existing export
+ * services render it unchanged. {@link #aggregate} returns it without the {@code voters} arrays,
+ * together with the tally's encoded voter lists, for exports that read the names from those
+ * instead. The fields it computes are {@code resultsSummary},
+ * {@code questionResults}, {@code insights}, and the {@code analytics} distributions of the
+ * voters' gender and age range. An optional definition, the same payload without counts, adds
+ * names, dates, question titles, zero-vote candidates and the eligible voter count.
+ */
+@Slf4j
+@Service
+public class BallotAggregationService {
+
+    public record Ingested(long accepted, long ballots, long elapsedMillis) {
+    }
+
+    /**
+     * The computed payload without {@code voters} arrays, and the voter names per candidate
+     */
+    public record Aggregated(JsonNode payload, VoterLists voters) {
+    }
+
+    private static final class Election {
+        final ElectionTally tally;
+        volatile ObjectNode definition;
+
+        Election(ElectionTally tally) {
+            this.tally = tally;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final ExportProperties.Ballots settings;
+    private final Map<String, Election> elections = new ConcurrentHashMap<>();
+
+    public BallotAggregationService(ObjectMapper objectMapper, ExportProperties exportProperties) {
+        this.objectMapper = objectMapper;
+        this.settings = exportProperties.getBallots();
+    }
+
+    /**
+     * Stores the election's details and registers its candidates, questions and answers in
+     * payload order. Counts in the definition are ignored.
+     */
+    public void define(String electionId, JsonNode rootNode) {
+        JsonNode dataNode = rootNode.has("data") ? rootNode.path("data") : rootNode;
+        Election election = election(electionId);
+        ElectionTally tally = election.tally;
+        for (JsonNode candidate : dataNode.path("resultsSummary")) {
+            ordinal(tally.candidates(), candidate.path("candidateName").asText("N/A"), "candidates");
+        }
+        for (JsonNode question : dataNode.path("questionResults")) {
+            String questionNumber = question.path("questionNumber").asText("");
+            ordinal(tally.questions(), questionNumber, "questions");
+            for (JsonNode answer : question.path("answers")) {
+                ordinal(tally.answers(), questionNumber + ElectionTally.ANSWER_SEPARATOR + answer.path("name").asText(""), "answers");
+            }
+        }
+        ObjectNode definition = dataNode.isObject() ? ((ObjectNode) dataNode).deepCopy() : objectMapper.createObjectNode();
+        election.definition = definition;
+    }
+
+    /**
+     * Counts every ballot read from {@code parser}. Ballots before a malformed line stay counted.
+     */
+    public Ingested ingest(String electionId, JsonParser parser) throws IOException {
+        long start = System.nanoTime();
+        ElectionTally tally = election(electionId).tally;
+        ElectionTally.Batch batch = tally.newBatch();
+        BallotReader reader = new BallotReader(tally);
+        long accepted = 0;
+        try (parser) {
+            for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                            "Ballot " + (accepted + 1) + " is not a JSON object");
+                }
+                reader.read(parser, accepted + 1);
+                reader.applyTo(batch);
+                accepted++;
+                if (batch.size() >= settings.getFlushInterval()) {
+                    batch.flush();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Malformed ballot after " + accepted + " accepted ballots", e);
+        } finally {
+            batch.flush();
+        }
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        log.info("Ingested {} ballots for {} in {} ms", accepted, electionId, elapsed);
+        return new Ingested(accepted, tally.ballots(), elapsed);
+    }
+
+    /**
+     * The election payload with all counts computed from the ingested ballots
+     */
+    public JsonNode results(String electionId) {
+        Aggregated aggregated = aggregate(electionId);
+        JsonNode resultsSummary = aggregated.payload().path("data").path("resultsSummary");
+        for (int i = 0; i < resultsSummary.size(); i++) {
+            ArrayNode voters = ((ObjectNode) resultsSummary.get(i)).putArray("voters");
+            for (int v = 0, size = aggregated.voters().size(i); v < size; v++) {
+                voters.add(aggregated.voters().name(i, v));
+            }
+        }
+        return aggregated.payload();
+    }
+
+    public Aggregated aggregate(String electionId) {
+        Election election = elections.get(electionId);
+        if (election == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No ballots or definition for " + electionId);
+        }
+        ElectionTally tally = election.tally;
+        ObjectNode definition = election.definition;
+        ObjectNode root = objectMapper.createObjectNode();
+        ObjectNode data = definition != null ? definition.deepCopy() : root.objectNode();
+        root.set("data", data);
+        if (!data.has("electionId")) {
+            data.put("electionId", electionId);
+        }
+        long ballots = tally.ballots();
+
+        ObjectNode analytics = data.putObject("analytics");
+        writeDistribution(analytics.putObject("candidateGender"), tally.genders(), tally.genderCounts());
+        writeDistribution(analytics.putObject("candidateAgeRange"), tally.ageRanges(), tally.ageRangeCounts());
+
+        ArrayNode resultsSummary = data.putArray("resultsSummary");
+        long[] votes = tally.candidateVotes();
+        for (int i = 0; i < votes.length; i++) {
+            ObjectNode candidate = resultsSummary.addObject();
+            candidate.put("candidateName", tally.candidates().name(i));
+            candidate.put("numberOfVoters", votes[i]);
+        }
+        VoterLists voters = tally.voters(votes.length);
+
+        writeQuestionResults(data, tally, definition);
+
+        long eligible = definition != null ? definition.path("insights").path("allVotersCount").asLong(0) : 0;
+        long allVoters = eligible > 0 ? eligible : ballots;
+        ObjectNode insights = data.putObject("insights");
+        insights.put("totalCandidates", votes.length);
+        insights.put("allVotersCount", allVoters);
+        insights.put("completionRate", allVoters == 0 ? 0.0 : Math.round(ballots * 1000.0 / allVoters) / 10.0);
+        insights.put("submittedVotesCount", ballots);
+        return new Aggregated(root, voters);
+    }
+
+    public boolean remove(String electionId) {
+        return elections.remove(electionId) != null;
+    }
+
+    private Election election(String electionId) {
+        Election existing = elections.get(electionId);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (elections) {
+            if (!elections.containsKey(electionId) && elections.size() >= settings.getMaxElections()) {
+                throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many elections are being aggregated");
+            }
+            return elections.computeIfAbsent(electionId, id -> new Election(new ElectionTally(
+                    settings.getMaxCandidates(), settings.getMaxAnswers(), settings.getMaxCategories())));
+        }
+    }
+
+    private static void writeDistribution(ObjectNode target, OrdinalDictionary categories, long[] counts) {
+        for (int i = 0; i < counts.length; i++) {
+            target.put(categories.name(i), counts[i]);
+        }
+    }
+
+    private void writeQuestionResults(ObjectNode data, ElectionTally tally, ObjectNode definition) {
+        Map<String, JsonNode> defined = new LinkedHashMap<>();
+        if (definition != null) {
+            for (JsonNode question : definition.path("questionResults")) {
+                defined.put(question.path("questionNumber").asText(""), question);
+            }
+        }
+        Map<String, List<Integer>> answersByQuestion = new LinkedHashMap<>();
+        OrdinalDictionary answers = tally.answers();
+        long[] answerCounts = tally.answerCounts();
+        for (int i = 0; i < answerCounts.length; i++) {
+            String key = answers.name(i);
+            int separator = key.indexOf(ElectionTally.ANSWER_SEPARATOR);
+            answersByQuestion.computeIfAbsent(key.substring(0, separator), q -> new ArrayList<>()).add(i);
+        }
+        long[] responses = tally.questionResponses();
+        ArrayNode questionResults = data.putArray("questionResults");
+        for (int q = 0; q < responses.length; q++) {
+            String questionNumber = tally.questions().name(q);
+            JsonNode meta = defined.getOrDefault(questionNumber, objectMapper.createObjectNode());
+            ObjectNode question = questionResults.addObject();
+            question.put("questionNumber", questionNumber);
+            question.put("title", meta.path("title").asText(""));
+            question.put("type", meta.path("type").asText(""));
+            ArrayNode answerNodes = question.putArray("answers");
+            for (int a : answersByQuestion.getOrDefault(questionNumber, List.of())) {
+                String key = answers.name(a);
+                ObjectNode answer = answerNodes.addObject();
+                answer.put("name", key.substring(key.indexOf(ElectionTally.ANSWER_SEPARATOR) + 1));
+                answer.put("answerCount", answerCounts[a]);
+                answer.put("answerPercentage", responses[q] == 0 ? 0.0
+                        : Math.round(answerCounts[a] * 10000.0 / responses[q]) / 100.0);
+            }
+        }
+        if (questionResults.isEmpty()) {
+            data.remove("questionResults");
+        }
+    }
+
+    private static int ordinal(OrdinalDictionary dictionary, String name, String what) {
+        int ordinal = dictionary.ordinal(name);
+        if (ordinal < 0) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                    "More than " + dictionary.capacity() + " distinct " + what);
+        }
+        return ordinal;
+    }
+
+    /**
+     * Reads one ballot object into reusable fields, so a ballot is only counted once it parsed
+     */
+    private static final class BallotReader {
+        private final ElectionTally tally;
+        private String voter;
+        private int candidate;
+        private int gender;
+        private int ageRange;
+        private int[] questions = new int[8];
+        private int questionCount;
+        private int[] answers = new int[8];
+        private int answerCount;
+
+        BallotReader(ElectionTally tally) {
+            this.tally = tally;
+        }
+
+        void read(JsonParser parser, long number) throws IOException {
+            voter = null;
+            candidate = -1;
+            gender = -1;
+            ageRange = -1;
+            questionCount = 0;
+            answerCount = 0;
+            for (String field = parser.nextFieldName(); field != null; field = parser.nextFieldName()) {
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "voter" -> voter = text(parser, value);
+                    case "candidate" -> candidate = ordinalOf(tally.candidates(), text(parser, value), "candidates");
+                    case "gender" -> gender = ordinalOf(tally.genders(), text(parser, value), "genders");
+                    case "ageRange" -> ageRange = ordinalOf(tally.ageRanges(), text(parser, value), "age ranges");
+                    case "answers" -> readAnswers(parser, value);
+                    default -> parser.skipChildren();
+                }
+            }
+            if (candidate < 0 && questionCount == 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Ballot " + number + " has neither a candidate nor answers");
+            }
+        }
+
+        void applyTo(ElectionTally.Batch batch) {
+            batch.ballot();
+            if (candidate >= 0) {
+                batch.vote(candidate, voter);
+            }
+            if (gender >= 0) {
+                batch.gender(gender);
+            }
+            if (ageRange >= 0) {
+                batch.ageRange(ageRange);
+            }
+            for (int i = 0; i < questionCount; i++) {
+                batch.response(questions[i]);
+            }
+            for (int i = 0; i < answerCount; i++) {
+                batch.answer(answers[i]);
+            }
+        }
+
+        private void readAnswers(JsonParser parser, JsonToken value) throws IOException {
+            if (value != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                return;
+            }
+            for (String questionNumber = parser.nextFieldName(); questionNumber != null; questionNumber = parser.nextFieldName()) {
+                JsonToken answer = parser.nextToken();
+                if (questionCount == questions.length) {
+                    questions = Arrays.copyOf(questions, questionCount * 2);
+                }
+                questions[questionCount++] = ordinal(tally.questions(), questionNumber, "questions");
+                if (answer == JsonToken.START_ARRAY) {
+                    for (JsonToken item = parser.nextToken(); item != JsonToken.END_ARRAY; item = parser.nextToken()) {
+                        addAnswer(questionNumber, text(parser, item));
+                    }
+                } else {
+                    addAnswer(questionNumber, text(parser, answer));
+                }
+            }
+        }
+
+        private void addAnswer(String questionNumber, String name) {
+            if (name == null) {
+                return;
+            }
+            if (answerCount == answers.length) {
+                answers = Arrays.copyOf(answers, answerCount * 2);
+            }
+            answers[answerCount++] = ordinal(tally.answers(), questionNumber + ElectionTally.ANSWER_SEPARATOR + name, "answers");
+        }
+
+        private static int ordinalOf(OrdinalDictionary dictionary, String name, String what) {
+            return name == null ? -1 : ordinal(dictionary, name, what);
+        }
+
+        private static String text(JsonParser parser, JsonToken token) throws IOException {
+            if (token == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            if (!token.isScalarValue()) {
+                parser.skipChildren();
+                return null;
+            }
+            return parser.getText();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.election.service;
+
+import com.itextpdf.io.image.ImageData;
+import com.itextpdf.io.image.ImageDataFactory;
+import org.jfree.chart.JFreeChart;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rasterizes report images straight into iText image data.
+ * <p>
+ * Charts are drawn onto reusable surfaces instead of a fresh {@link BufferedImage} per chart, and
+ * the pixels are handed to iText as raw RGB so no PNG is encoded only to be decoded again. Idle
+ * surfaces are kept in a small bounded pool rather than per thread, so request threads that
+ * render a single PDF do not each pin one. Progress bars are plain two-colour rectangles and are
+ * built directly as pixel data, cached per filled width.
+ */
+final class ChartRasterizer {
+
+    private static final int PROGRESS_FILL = 0xA54FE0;
+    private static final int PROGRESS_TRACK = Color.LIGHT_GRAY.getRGB() & 0xFFFFFF;
+
+    private final int width;
+    private final int height;
+    private final BlockingQueue<Surface> idleSurfaces;
+    private final Map<Long, byte[]> progressBars = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxIdleSurfaces surfaces kept for reuse; more are created under load and dropped
+     */
+    ChartRasterizer(int width, int height, int maxIdleSurfaces) {
+        this.width = width;
+        this.height = height;
+        this.idleSurfaces = new ArrayBlockingQueue<>(Math.max(1, maxIdleSurfaces));
+    }
+
+    ImageData render(JFreeChart chart) {
+        Surface surface = idleSurfaces.poll();
+        if (surface == null) {
+            surface = new Surface(width, height);
+        }
+        try {
+            Graphics2D g2 = surface.image.createGraphics();
+            try {
+                g2.setColor(Color.WHITE);
+                g2.fillRect(0, 0, width, height);
+                chart.draw(g2, new Rectangle2D.Double(0, 0, width, height));
+            } finally {
+                g2.dispose();
+            }
+            return ImageDataFactory.create(width, height, 3, 8, toRgb(surface.pixels), null);
+        } finally {
+            idleSurfaces.offer(surface);
+        }
+    }
+
+    ImageData progressBar(double percentage, int barWidth, int barHeight) {
+        int filled = (int) ((percentage / 100.0) * barWidth);
+        filled = Math.max(0, Math.min(barWidth, filled));
+        long key = ((long) barWidth << 40) | ((long) barHeight << 20) | filled;
+        int fill = filled;
+        byte[] rgb = progressBars.computeIfAbsent(key, k -> buildProgressBar(fill, barWidth, barHeight));
+        return ImageDataFactory.create(barWidth, barHeight, 3, 8, rgb, null);
+    }
+
+    private static byte[] buildProgressBar(int filled, int barWidth, int barHeight) {
+        int rowLength = barWidth * 3;
+        byte[] rgb = new byte[rowLength * barHeight];
+        for (int x = 0; x < barWidth; x++) {
+            int color = x < filled ? PROGRESS_FILL : PROGRESS_TRACK;
+            rgb[x * 3] = (byte) (color >>> 16);
+            rgb[x * 3 + 1] = (byte) (color >>> 8);
+            rgb[x * 3 + 2] = (byte) color;
+        }
+        for (int y = 1; y < barHeight; y++) {
+            System.arraycopy(rgb, 0, rgb, y * rowLength, rowLength);
+        }
+        return rgb;
+    }
+
+    private static byte[] toRgb(int[] pixels) {
+        byte[] rgb = new byte[pixels.length * 3];
+        for (int i = 0, j = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            rgb[j++] = (byte) (pixel >>> 16);
+            rgb[j++] = (byte) (pixel >>> 8);
+            rgb[j++] = (byte) pixel;
+        }
+        return rgb;
+    }
+
+    private static final class Surface {
+        final BufferedImage image;
+        final int[] pixels;
+
+        Surface(int width, int height) {
+            this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.election.service;
+
+import com.election.aggregate.ElectionComparison;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * One report comparing many elections, instead of one export per election merged by hand.
+ * <p>
+ * Each election is given either as its payload or as the id of an election aggregated from raw
+ * ballots. Ballot elections are aggregated, and every election is reduced to its insights and
+ * analytics, in parallel on the export pool.
+ */
+@Slf4j
+@Service
+public class ElectionComparisonService {
+
+    private final ForkJoinPool exportForkJoinPool;
+    private final BallotAggregationService ballotAggregationService;
+    private final ElectionExportService electionExportService;
+    private final ElectionServicePdf electionServicePdf;
+
+    public ElectionComparisonService(ForkJoinPool exportForkJoinPool, BallotAggregationService ballotAggregationService,
+                                     ElectionExportService electionExportService, ElectionServicePdf electionServicePdf) {
+        this.exportForkJoinPool = exportForkJoinPool;
+        this.ballotAggregationService = ballotAggregationService;
+        this.electionExportService = electionExportService;
+        this.electionServicePdf = electionServicePdf;
+    }
+
+    /**
+     * @param elections election payloads, and text nodes naming elections aggregated from ballots
+     */
+    public ElectionComparison compare(List<JsonNode> elections) {
+        if (elections.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No elections to compare");
+        }
+        for (JsonNode election : elections) {
+            if (!election.isObject() && !election.isTextual()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Elections must be payload objects or ballot election ids");
+            }
+        }
+        long start = System.nanoTime();
+        ElectionComparison comparison = ElectionComparison.build(elections.size(), i -> resolve(elections.get(i)),
+                exportForkJoinPool);
+        log.info("Compared {} elections in {} ms", elections.size(), (System.nanoTime() - start) / 1_000_000);
+        return comparison;
+    }
+
+    public ResponseEntity<Resource> export(List<JsonNode> elections, String format, String lang) {
+        ElectionComparison comparison = compare(elections);
+        return switch (format) {
+            case "pdf" -> electionServicePdf.exportComparison(comparison);
+            case "excel" -> electionExportService.exportComparison(comparison, true, lang);
+            case "csv" -> electionExportService.exportComparison(comparison, false, lang);
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown format: " + format);
+        };
+    }
+
+    private JsonNode resolve(JsonNode election) {
+        return election.isTextual() ? ballotAggregationService.aggregate(election.asText()).payload() : election;
+    }
+}
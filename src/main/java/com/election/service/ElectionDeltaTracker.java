@@ -0,0 +1,243 @@
+package com.election.service;
+
+import com.election.config.ExportProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers what was last exported for each live election so that polling clients can be sent
+ * only what changed since the version they already have.
+ * <p>
+ * The state per election is compact: for each candidate the vote count, how many voters were
+ * seen and the last one, and for each question answer its percentage, plus a short log of recent
+ * diffs. Voter lists are assumed to only grow at the end; the last seen voter is checked at its
+ * old position, so a poll costs time proportional to the new voters rather than all of them.
+ * Removed or reordered voters, or removed candidates or answers, reset the election to a new full
+ * baseline.
+ */
+@Component
+public class ElectionDeltaTracker {
+
+    public record CandidateChange(String candidateName, int numberOfVoters, List<String> newVoters) {
+    }
+
+    public record PercentageChange(String questionNumber, String answer, double percentage) {
+    }
+
+    /**
+     * @param version current version of the election, to be sent back as {@code since}
+     * @param delta   false when the client needs the full export instead of the changes
+     */
+    public record Result(long version, boolean delta, List<CandidateChange> candidates,
+                         List<PercentageChange> percentages) {
+    }
+
+    private record Delta(long version, List<CandidateChange> candidates, List<PercentageChange> percentages) {
+    }
+
+    private static final class CandidateState {
+        int count;
+        int voters;
+        String lastVoter;
+    }
+
+    private static final class Snapshot {
+        long version;
+        final Map<String, CandidateState> candidates = new HashMap<>();
+        final Map<String, Double> percentages = new HashMap<>();
+        final ArrayDeque<Delta> history = new ArrayDeque<>();
+    }
+
+    private final int historySize;
+    // Least recently polled elections are forgotten first; guarded by itself
+    private final Map<String, Snapshot> elections;
+
+    public ElectionDeltaTracker(ExportProperties exportProperties) {
+        ExportProperties.Delta settings = exportProperties.getDelta();
+        this.historySize = Math.max(1, settings.getHistory());
+        int maxElections = Math.max(1, settings.getMaxElections());
+        this.elections = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+                return size() > maxElections;
+            }
+        };
+    }
+
+    /**
+     * Records {@code dataNode} as the latest state of the election and returns the changes a
+     * client at version {@code since} is missing. Clients at an unknown or expired version, and
+     * every client after a reset, get {@code delta == false}.
+     */
+    public Result update(String electionId, JsonNode dataNode, long since) {
+        Snapshot snapshot;
+        synchronized (elections) {
+            snapshot = elections.computeIfAbsent(electionId, id -> new Snapshot());
+        }
+        synchronized (snapshot) {
+            List<CandidateChange> candidates = new ArrayList<>();
+            List<PercentageChange> percentages = new ArrayList<>();
+            if (snapshot.version == 0 || !diff(snapshot, dataNode, candidates, percentages)) {
+                rebuild(snapshot, dataNode);
+                return new Result(snapshot.version, false, List.of(), List.of());
+            }
+            if (!candidates.isEmpty() || !percentages.isEmpty()) {
+                apply(snapshot, candidates, percentages);
+            }
+            long oldest = snapshot.history.isEmpty() ? snapshot.version : snapshot.history.peekFirst().version() - 1;
+            if (since < oldest || since > snapshot.version) {
+                return new Result(snapshot.version, false, List.of(), List.of());
+            }
+            return merge(snapshot, since);
+        }
+    }
+
+    /**
+     * Collects the changes against the snapshot, or returns false if they cannot be expressed
+     * as appended voters and updated values
+     */
+    private static boolean diff(Snapshot snapshot, JsonNode dataNode, List<CandidateChange> candidates,
+                                List<PercentageChange> percentages) {
+        Set<String> seen = new HashSet<>();
+        for (JsonNode candidate : dataNode.path("resultsSummary")) {
+            String name = candidate.path("candidateName").asText("N/A");
+            if (!seen.add(name)) {
+                return false;
+            }
+            JsonNode voters = candidate.path("voters");
+            int size = voters.isArray() ? voters.size() : 0;
+            int count = candidate.path("numberOfVoters").asInt(0);
+            CandidateState state = snapshot.candidates.get(name);
+            int from = 0;
+            if (state != null) {
+                if (size < state.voters
+                        || (state.voters > 0 && !voters.get(state.voters - 1).asText().equals(state.lastVoter))) {
+                    return false;
+                }
+                from = state.voters;
+                if (from == size && count == state.count) {
+                    continue;
+                }
+            }
+            List<String> added = new ArrayList<>(size - from);
+            for (int i = from; i < size; i++) {
+                added.add(voters.get(i).asText());
+            }
+            candidates.add(new CandidateChange(name, count, added));
+        }
+        if (seen.size() - countNew(snapshot, candidates) != snapshot.candidates.size()) {
+            return false;
+        }
+        Set<String> seenAnswers = new HashSet<>();
+        int newAnswers = 0;
+        for (JsonNode question : dataNode.path("questionResults")) {
+            String questionNumber = question.path("questionNumber").asText("");
+            for (JsonNode answer : question.path("answers")) {
+                String name = answer.path("name").asText("");
+                String key = key(questionNumber, name);
+                double percentage = answer.path("answerPercentage").asDouble(0.0);
+                Double previous = snapshot.percentages.get(key);
+                if (seenAnswers.add(key) && previous == null) {
+                    newAnswers++;
+                }
+                if (previous == null || previous != percentage) {
+                    percentages.add(new PercentageChange(questionNumber, name, percentage));
+                }
+            }
+        }
+        // An answer that is no longer reported cannot be expressed as an updated percentage
+        return seenAnswers.size() - newAnswers == snapshot.percentages.size();
+    }
+
+    private static int countNew(Snapshot snapshot, List<CandidateChange> candidates) {
+        int added = 0;
+        for (CandidateChange change : candidates) {
+            if (!snapshot.candidates.containsKey(change.candidateName())) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    private void apply(Snapshot snapshot, List<CandidateChange> candidates, List<PercentageChange> percentages) {
+        for (CandidateChange change : candidates) {
+            CandidateState state = snapshot.candidates.computeIfAbsent(change.candidateName(), name -> new CandidateState());
+            state.count = change.numberOfVoters();
+            if (!change.newVoters().isEmpty()) {
+                state.voters += change.newVoters().size();
+                state.lastVoter = change.newVoters().get(change.newVoters().size() - 1);
+            }
+        }
+        for (PercentageChange change : percentages) {
+            snapshot.percentages.put(key(change.questionNumber(), change.answer()), change.percentage());
+        }
+        snapshot.version++;
+        snapshot.history.addLast(new Delta(snapshot.version, candidates, percentages));
+        while (snapshot.history.size() > historySize) {
+            snapshot.history.removeFirst();
+        }
+    }
+
+    private static void rebuild(Snapshot snapshot, JsonNode dataNode) {
+        snapshot.candidates.clear();
+        snapshot.percentages.clear();
+        snapshot.history.clear();
+        for (JsonNode candidate : dataNode.path("resultsSummary")) {
+            CandidateState state = new CandidateState();
+            JsonNode voters = candidate.path("voters");
+            state.count = candidate.path("numberOfVoters").asInt(0);
+            state.voters = voters.isArray() ? voters.size() : 0;
+            state.lastVoter = state.voters > 0 ? voters.get(state.voters - 1).asText() : null;
+            snapshot.candidates.put(candidate.path("candidateName").asText("N/A"), state);
+        }
+        for (JsonNode question : dataNode.path("questionResults")) {
+            String questionNumber = question.path("questionNumber").asText("");
+            for (JsonNode answer : question.path("answers")) {
+                snapshot.percentages.put(key(questionNumber, answer.path("name").asText("")),
+                        answer.path("answerPercentage").asDouble(0.0));
+            }
+        }
+        snapshot.version++;
+    }
+
+    /**
+     * Folds the logged diffs after {@code since} into one, keeping the latest count and
+     * percentage and all appended voters in order
+     */
+    private static Result merge(Snapshot snapshot, long since) {
+        Map<String, CandidateChange> candidates = new LinkedHashMap<>();
+        Map<String, PercentageChange> percentages = new LinkedHashMap<>();
+        for (Delta delta : snapshot.history) {
+            if (delta.version() <= since) {
+                continue;
+            }
+            for (CandidateChange change : delta.candidates()) {
+                candidates.merge(change.candidateName(), change, (earlier, later) -> {
+                    List<String> voters = new ArrayList<>(earlier.newVoters());
+                    voters.addAll(later.newVoters());
+                    return new CandidateChange(later.candidateName(), later.numberOfVoters(), voters);
+                });
+            }
+            for (PercentageChange change : delta.percentages()) {
+                percentages.put(key(change.questionNumber(), change.answer()), change);
+            }
+        }
+        return new Result(snapshot.version, true,
+                Collections.unmodifiableList(new ArrayList<>(candidates.values())),
+                Collections.unmodifiableList(new ArrayList<>(percentages.values())));
+    }
+
+    private static String key(String questionNumber, String answer) {
+        return questionNumber + '\u0000' + answer;
+    }
+}
@@ -1,30 +1,47 @@
 package com.election.service;
 
+import com.election.aggregate.ElectionComparison;
+import com.election.aggregate.VoterIndex;
+import com.election.aggregate.VoterLists;
+import com.election.config.ExportProperties;
+import com.election.io.SegmentedByteBuffer;
+import com.election.io.SpillableOutputStream;
+import com.election.io.Utf8CsvWriter;
+import com.election.web.ExportOutputFactory;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.opencsv.ICSVWriter;
-import com.opencsv.CSVWriterBuilder;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.io.ByteArrayOutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class ElectionExportService {
 
+    public static final String VERSION_HEADER = "X-Export-Version";
+    public static final String DELTA_HEADER = "X-Export-Delta";
+
+    private final ExportProperties exportProperties;
+    private final ExportOutputFactory exportOutputFactory;
+    private final ElectionDeltaTracker deltaTracker;
+
     public enum ExportFormat {
         EXCEL, CSV
     }
@@ -37,14 +54,24 @@ public class ElectionExportService {
                         "GENDER_DIST", "Gender Distribution",
                         "AGE_DIST", "Age Range Distribution",
                         "RESULTS_SUMMARY", "Results Summary",
-                        "INSIGHTS", "Insights"
+                        "INSIGHTS", "Insights",
+                        "QUESTION_RESULTS", "Question Results",
+                        "VOTERS", "Voters",
+                        "VOTER_RECEIPT", "Voter Receipt",
+                        "CANDIDATES", "Candidates",
+                        "COMPARISON", "Election Comparison"
                 ),
                 "ar", Map.of(
                         "MAIN_DATA", "البيانات الرئيسية",
                         "GENDER_DIST", "توزيع الجنس",
                         "AGE_DIST", "توزيع الفئات العمرية",
                         "RESULTS_SUMMARY", "ملخص النتائج",
-                        "INSIGHTS", "رؤى"
+                        "INSIGHTS", "رؤى",
+                        "QUESTION_RESULTS", "نتائج الأسئلة",
+                        "VOTERS", "المصوتون",
+                        "VOTER_RECEIPT", "إيصال المصوت",
+                        "CANDIDATES", "المرشحون",
+                        "COMPARISON", "مقارنة الانتخابات"
                 )
         );
 
@@ -68,7 +95,19 @@ public class ElectionExportService {
                         Map.entry("allVotersCount", "All Voters Count"),
                         Map.entry("completionRate", "Completion Rate"),
                         Map.entry("submittedVotesCount", "Submitted Votes Count"),
-                        Map.entry("category", "Category")
+                        Map.entry("category", "Category"),
+                        Map.entry("newVoters", "New Voters"),
+                        Map.entry("questionNumber", "Question Number"),
+                        Map.entry("answer", "Answer"),
+                        Map.entry("votersOnSheet", "voters, listed on the Voters sheet"),
+                        Map.entry("voterName", "Voter Name"),
+                        Map.entry("generatedAt", "Generated At"),
+                        Map.entry("title", "Question Title"),
+                        Map.entry("turnout", "Turnout"),
+                        Map.entry("gender", "Gender"),
+                        Map.entry("ageRange", "Age Range"),
+                        Map.entry("total", "Total"),
+                        Map.entry("elections", "elections")
                 ),
                 "ar", Map.ofEntries(
                         Map.entry("electionId", "معرّف الانتخاب"),
@@ -88,7 +127,19 @@ public class ElectionExportService {
                         Map.entry("allVotersCount", "عدد المصوتين"),
                         Map.entry("completionRate", "معدل الإكمال"),
                         Map.entry("submittedVotesCount", "عدد الأصوات المقدمة"),
-                        Map.entry("category", "الفئة")
+                        Map.entry("category", "الفئة"),
+                        Map.entry("newVoters", "المصوتون الجدد"),
+                        Map.entry("questionNumber", "رقم السؤال"),
+                        Map.entry("answer", "الإجابة"),
+                        Map.entry("votersOnSheet", "مصوت، مدرجون في ورقة المصوتين"),
+                        Map.entry("voterName", "اسم المصوت"),
+                        Map.entry("generatedAt", "تاريخ الإنشاء"),
+                        Map.entry("title", "عنوان السؤال"),
+                        Map.entry("turnout", "نسبة المشاركة"),
+                        Map.entry("gender", "الجنس"),
+                        Map.entry("ageRange", "الفئة العمرية"),
+                        Map.entry("total", "الإجمالي"),
+                        Map.entry("elections", "انتخابات")
                 )
         );
     }
@@ -122,12 +173,14 @@ public class ElectionExportService {
     private static abstract class ExportContext {
         protected final JsonNode jsonData;
         protected final JsonNode dataNode;
+        protected final VoterLists voters;
         protected final boolean isCreator;
         protected final I18nHandler i18n;
 
-        ExportContext(JsonNode jsonData, boolean isCreator, boolean isArabic) {
+        ExportContext(JsonNode jsonData, VoterLists voters, boolean isCreator, boolean isArabic) {
             this.jsonData = jsonData;
             this.dataNode = jsonData.path("data");
+            this.voters = voters;
             this.isCreator = isCreator;
             this.i18n = new I18nHandler(isArabic);
         }
@@ -177,17 +230,33 @@ public class ElectionExportService {
      * Interface for the export strategy pattern
      */
     private interface ExportStrategy {
-        byte[] export(JsonNode data, boolean isCreator, boolean isArabic) throws Exception;
+        void export(JsonNode data, VoterLists voters, boolean isCreator, boolean isArabic, OutputStream out) throws Exception;
     }
 
     /**
      * Excel export implementation
      */
     private static class ExcelExportStrategy implements ExportStrategy {
+        // Section titles, headers and field labels written besides the data
+        private static final int FIXED_STRING_COUNT = 40;
+        // Longest text an Excel cell can hold
+        private static final int MAX_CELL_LENGTH = SpreadsheetVersion.EXCEL2007.getMaxTextLength();
+        private static final int VOTERS_COLUMN_WIDTH = 40 * 256;
+
+        private final int maxSharedStrings;
+
+        ExcelExportStrategy(int maxSharedStrings) {
+            this.maxSharedStrings = maxSharedStrings;
+        }
+
         @Override
-        public byte[] export(JsonNode jsonData, boolean isCreator, boolean isArabic) throws Exception {
-            try (SXSSFWorkbook workbook = new SXSSFWorkbook(100)) { // Better memory handling
-                ExcelContext context = new ExcelContext(jsonData, workbook, isCreator, isArabic);
+        public void export(JsonNode jsonData, VoterLists voters, boolean isCreator, boolean isArabic,
+                           OutputStream out) throws Exception {
+            long voterCount = isCreator ? countVoters(jsonData.path("data"), voters) : 0;
+            // The shared strings table is held in memory, so it is only used when it stays small
+            boolean useSharedStrings = estimateDistinctStrings(jsonData.path("data")) + voterCount <= maxSharedStrings;
+            try (SXSSFWorkbook workbook = new SXSSFWorkbook(null, 100, false, useSharedStrings)) { // Better memory handling
+                ExcelContext context = new ExcelContext(jsonData, voters, workbook, isCreator, isArabic);
                 int currentRow = 0;
 
                 // Main data section
@@ -208,8 +277,30 @@ public class ElectionExportService {
                 }
 
                 autoSizeColumns(context.sheet);
-                return writeWorkbookToBytes(workbook);
+
+                // Creator-only voter list, one row per vote
+                if (voterCount > 0) {
+                    writeVotersSheets(context);
+                }
+
+                workbook.write(out);
+            }
+        }
+
+        private static long countVoters(JsonNode dataNode, VoterLists voters) {
+            long count = 0;
+            for (int i = 0; i < dataNode.path("resultsSummary").size(); i++) {
+                count += voters.size(i);
+            }
+            return count;
+        }
+
+        private static int estimateDistinctStrings(JsonNode dataNode) {
+            int count = FIXED_STRING_COUNT + dataNode.size();
+            for (String key : List.of("resultsSummary", "candidateGender", "candidateAgeRange")) {
+                count += dataNode.path(key).size() * 2;
             }
+            return count;
         }
 
         /**
@@ -221,9 +312,10 @@ public class ElectionExportService {
             final CellStyle titleStyle;
             final CellStyle headerStyle;
             final CellStyle dataStyle;
+            final CellStyle percentStyle;
 
-            ExcelContext(JsonNode jsonData, Workbook workbook, boolean isCreator, boolean isArabic) {
-                super(jsonData, isCreator, isArabic);
+            ExcelContext(JsonNode jsonData, VoterLists voters, Workbook workbook, boolean isCreator, boolean isArabic) {
+                super(jsonData, voters, isCreator, isArabic);
 
                 this.workbook = workbook;
                 String sheetName = i18n.getSectionHeader("MAIN_DATA");
@@ -233,6 +325,7 @@ public class ElectionExportService {
                 this.titleStyle = createTitleStyle(workbook);
                 this.headerStyle = createHeaderStyle(workbook);
                 this.dataStyle = createDataStyle(workbook);
+                this.percentStyle = createPercentStyle(workbook, dataStyle);
             }
         }
 
@@ -289,8 +382,8 @@ public class ElectionExportService {
                 Row row = context.sheet.createRow(rowNum++);
                 createStyledCell(row, 0, entry.getKey(), context.dataStyle);
 
-                double percent = total == 0 ? 0.0 : (entry.getValue() / (double) total) * 100;
-                createStyledCell(row, 1, String.format("%.2f%%", percent), context.dataStyle);
+                double percent = total == 0 ? 0.0 : entry.getValue() / (double) total;
+                createStyledCell(row, 1, percent, context.percentStyle);
             }
 
             return rowNum + 1; // Add empty row
@@ -316,13 +409,14 @@ public class ElectionExportService {
             // Data rows
             JsonNode resultsSummary = context.dataNode.path("resultsSummary");
             if (resultsSummary.isArray()) {
-                for (JsonNode candidate : resultsSummary) {
+                for (int i = 0; i < resultsSummary.size(); i++) {
+                    JsonNode candidate = resultsSummary.get(i);
                     Row row = context.sheet.createRow(rowNum++);
                     createStyledCell(row, 0, candidate.path("candidateName").asText("N/A"), context.dataStyle);
-                    createStyledCell(row, 1, String.valueOf(candidate.path("numberOfVoters").asInt(0)), context.dataStyle);
+                    createStyledCell(row, 1, candidate.path("numberOfVoters").asInt(0), context.dataStyle);
 
                     if (context.isCreator) {
-                        String votersList = getVotersListAsString(candidate.path("voters"), context);
+                        String votersList = getVotersListAsString(i, context);
                         createStyledCell(row, 2, votersList, context.dataStyle);
                     }
                 }
@@ -331,14 +425,58 @@ public class ElectionExportService {
             return rowNum + 1; // Add empty row
         }
 
-        private String getVotersListAsString(JsonNode votersNode, ExcelContext context) {
-            if (!votersNode.isArray() || votersNode.isEmpty()) {
+        /**
+         * The candidate's voters joined into one cell, or a pointer to the Voters sheet when they
+         * do not fit in a cell
+         */
+        private String getVotersListAsString(int candidate, ExcelContext context) {
+            int count = context.voters.size(candidate);
+            if (count == 0) {
                 return context.i18n.getFieldLabel("notAvailable");
             }
 
-            return StreamSupport.stream(votersNode.spliterator(), false)
-                    .map(JsonNode::asText)
-                    .collect(Collectors.joining(", "));
+            StringBuilder joined = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    joined.append(", ");
+                }
+                joined.append(context.voters.name(candidate, i));
+                if (joined.length() > MAX_CELL_LENGTH) {
+                    return count + " " + context.i18n.getFieldLabel("votersOnSheet");
+                }
+            }
+            return joined.toString();
+        }
+
+        /**
+         * Streams every vote as a (candidate, voter) row, continuing on further sheets past
+         * Excel's row limit
+         */
+        private void writeVotersSheets(ExcelContext context) {
+            String title = context.i18n.getSectionHeader("VOTERS");
+            int maxRows = SpreadsheetVersion.EXCEL2007.getMaxRows();
+            JsonNode resultsSummary = context.dataNode.path("resultsSummary");
+            Sheet sheet = null;
+            int sheets = 0;
+            int rowNum = maxRows;
+            for (int c = 0; c < resultsSummary.size(); c++) {
+                String candidateName = resultsSummary.get(c).path("candidateName").asText("N/A");
+                for (int i = 0, count = context.voters.size(c); i < count; i++) {
+                    if (rowNum == maxRows) {
+                        sheets++;
+                        sheet = context.workbook.createSheet(sheets == 1 ? title : title + " (" + sheets + ")");
+                        sheet.setColumnWidth(0, VOTERS_COLUMN_WIDTH);
+                        sheet.setColumnWidth(1, VOTERS_COLUMN_WIDTH);
+                        Row headerRow = sheet.createRow(0);
+                        createStyledCell(headerRow, 0, context.i18n.getFieldLabel("candidateName"), context.headerStyle);
+                        createStyledCell(headerRow, 1, context.i18n.getFieldLabel("voters"), context.headerStyle);
+                        rowNum = 1;
+                    }
+                    Row row = sheet.createRow(rowNum++);
+                    createStyledCell(row, 0, candidateName, context.dataStyle);
+                    createStyledCell(row, 1, context.voters.name(c, i), context.dataStyle);
+                }
+            }
         }
 
         private int writeInsights(ExcelContext context, int rowNum) {
@@ -361,13 +499,13 @@ public class ElectionExportService {
 
             // Data row
             Row dataRow = context.sheet.createRow(rowNum++);
-            createStyledCell(dataRow, 0, String.valueOf(insights.path("totalCandidates").asInt(0)), context.dataStyle);
-            createStyledCell(dataRow, 1, String.valueOf(insights.path("allVotersCount").asInt(0)), context.dataStyle);
+            createStyledCell(dataRow, 0, insights.path("totalCandidates").asInt(0), context.dataStyle);
+            createStyledCell(dataRow, 1, insights.path("allVotersCount").asInt(0), context.dataStyle);
 
             double rate = insights.path("completionRate").asDouble(0.0);
-            createStyledCell(dataRow, 2, String.format("%.2f%%", rate), context.dataStyle);
+            createStyledCell(dataRow, 2, rate / 100, context.percentStyle);
 
-            createStyledCell(dataRow, 3, String.valueOf(insights.path("submittedVotesCount").asInt(0)), context.dataStyle);
+            createStyledCell(dataRow, 3, insights.path("submittedVotesCount").asInt(0), context.dataStyle);
 
             return rowNum + 1; // Add empty row
         }
@@ -426,6 +564,13 @@ public class ElectionExportService {
             return style;
         }
 
+        private static CellStyle createPercentStyle(Workbook wb, CellStyle dataStyle) {
+            CellStyle style = wb.createCellStyle();
+            style.cloneStyleFrom(dataStyle);
+            style.setDataFormat((short) BuiltinFormats.getBuiltinFormat("0.00%"));
+            return style;
+        }
+
         private static void setThinBorders(CellStyle style, short borderColor) {
             style.setBorderBottom(BorderStyle.THIN);
             style.setBorderTop(BorderStyle.THIN);
@@ -445,6 +590,13 @@ public class ElectionExportService {
             return cell;
         }
 
+        private static Cell createStyledCell(Row row, int col, double value, CellStyle style) {
+            Cell cell = row.createCell(col);
+            cell.setCellValue(value);
+            cell.setCellStyle(style);
+            return cell;
+        }
+
         private void autoSizeColumns(Sheet sheet) {
             int maxColumns = 0;
             for (int i = 0; i <= sheet.getLastRowNum(); i++) {
@@ -465,13 +617,6 @@ public class ElectionExportService {
                 }
             }
         }
-
-        private byte[] writeWorkbookToBytes(Workbook workbook) throws Exception {
-            try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-                workbook.write(bos);
-                return bos.toByteArray();
-            }
-        }
     }
 
     /**
@@ -479,17 +624,13 @@ public class ElectionExportService {
      */
     private static class CsvExportStrategy implements ExportStrategy {
         @Override
-        public byte[] export(JsonNode jsonData, boolean isCreator, boolean isArabic) throws Exception {
-            try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                 OutputStreamWriter streamWriter = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)) {
-
-                streamWriter.write('\uFEFF');
-
-                ICSVWriter csvWriter = new CSVWriterBuilder(streamWriter)
-                        .build();
+        public void export(JsonNode jsonData, VoterLists voters, boolean isCreator, boolean isArabic,
+                           OutputStream out) throws Exception {
+            try (Utf8CsvWriter csvWriter = new Utf8CsvWriter(out)) {
 
+                csvWriter.writeBom();
 
-                CsvContext context = new CsvContext(jsonData, csvWriter, isCreator, isArabic);
+                CsvContext context = new CsvContext(jsonData, voters, csvWriter, isCreator, isArabic);
 
                 // Export sections
                 writeMainDataToCsv(context);
@@ -506,69 +647,100 @@ public class ElectionExportService {
                 }
 
                 csvWriter.flush();
-                return outputStream.toByteArray();
+            }
+        }
+
+        /**
+         * Writes only the candidates and answers that changed, with the voters added since the
+         * client's version; viewers get counts without voter names
+         */
+        void exportDelta(ElectionDeltaTracker.Result changes, boolean isCreator, boolean isArabic,
+                         OutputStream out) throws IOException {
+            try (Utf8CsvWriter csvWriter = new Utf8CsvWriter(out)) {
+                I18nHandler i18n = new I18nHandler(isArabic);
+                csvWriter.writeBom();
+
+                csvWriter.writeRow(i18n.getSectionHeader("RESULTS_SUMMARY"));
+                csvWriter.field(i18n.getFieldLabel("candidateName")).field(i18n.getFieldLabel("numberOfVoters"));
+                if (isCreator) {
+                    csvWriter.field(i18n.getFieldLabel("newVoters"));
+                }
+                csvWriter.endRow();
+                for (ElectionDeltaTracker.CandidateChange change : changes.candidates()) {
+                    csvWriter.field(change.candidateName()).field(change.numberOfVoters());
+                    if (isCreator) {
+                        csvWriter.field(String.join(", ", change.newVoters()));
+                    }
+                    csvWriter.endRow();
+                }
+
+                if (!changes.percentages().isEmpty()) {
+                    csvWriter.endRow();
+                    csvWriter.writeRow(i18n.getSectionHeader("QUESTION_RESULTS"));
+                    csvWriter.writeRow(i18n.getFieldLabel("questionNumber"), i18n.getFieldLabel("answer"),
+                            i18n.getFieldLabel("percentage"));
+                    for (ElectionDeltaTracker.PercentageChange change : changes.percentages()) {
+                        csvWriter.field(change.questionNumber()).field(change.answer())
+                                .percentField(change.percentage(), 2).endRow();
+                    }
+                }
+                csvWriter.flush();
             }
         }
 
         private static class CsvContext extends ExportContext {
-            final ICSVWriter csvWriter;
+            final Utf8CsvWriter csvWriter;
 
-            CsvContext(JsonNode jsonData, ICSVWriter csvWriter, boolean isCreator, boolean isArabic) {
-                super(jsonData, isCreator, isArabic);
+            CsvContext(JsonNode jsonData, VoterLists voters, Utf8CsvWriter csvWriter, boolean isCreator, boolean isArabic) {
+                super(jsonData, voters, isCreator, isArabic);
                 this.csvWriter = csvWriter;
             }
 
-            void writeEmptyLine() {
-                csvWriter.writeNext(new String[]{});
+            void writeEmptyLine() throws IOException {
+                csvWriter.endRow();
             }
 
-            String[] translateHeaders(List<String> keys) {
-                return keys.stream()
-                        .map(i18n::getFieldLabel)
-                        .toArray(String[]::new);
+            void writeTranslatedHeaders(List<String> keys) throws IOException {
+                for (String key : keys) {
+                    csvWriter.field(i18n.getFieldLabel(key));
+                }
+                csvWriter.endRow();
             }
         }
 
-        private void writeMainDataToCsv(CsvContext context) {
+        private void writeMainDataToCsv(CsvContext context) throws IOException {
             // Title
-            context.csvWriter.writeNext(new String[]{
-                    context.i18n.getSectionHeader("MAIN_DATA")
-            });
+            context.csvWriter.writeRow(context.i18n.getSectionHeader("MAIN_DATA"));
 
             // Get dynamic columns
             List<String> columns = context.getHeaderRowColumns();
 
             // Headers
-            context.csvWriter.writeNext(context.translateHeaders(columns));
+            context.writeTranslatedHeaders(columns);
 
             // Data
-            String[] dataRow = new String[columns.size()];
-            for (int i = 0; i < columns.size(); i++) {
-                String colName = columns.get(i);
-                dataRow[i] = "exportType".equals(colName)
+            for (String colName : columns) {
+                context.csvWriter.field("exportType".equals(colName)
                         ? context.getExportTypeLabel()
-                        : context.getFieldValue(colName);
+                        : context.getFieldValue(colName));
             }
-            context.csvWriter.writeNext(dataRow);
+            context.csvWriter.endRow();
             context.writeEmptyLine();
         }
 
-        private void writeDistributionToCsv(CsvContext context, String sectionKey, String distributionKey) {
+        private void writeDistributionToCsv(CsvContext context, String sectionKey, String distributionKey) throws IOException {
             Map<String, Integer> distribution = context.extractDistribution(distributionKey);
             if (distribution.isEmpty()) {
                 return;
             }
 
             // Title
-            context.csvWriter.writeNext(new String[]{
-                    context.i18n.getSectionHeader(sectionKey)
-            });
+            context.csvWriter.writeRow(context.i18n.getSectionHeader(sectionKey));
 
             // Headers
-            context.csvWriter.writeNext(new String[]{
+            context.csvWriter.writeRow(
                     context.i18n.getFieldLabel("category"),
-                    context.i18n.getFieldLabel("percentage")
-            });
+                    context.i18n.getFieldLabel("percentage"));
 
             // Calculate total for percentages
             int total = distribution.values().stream().mapToInt(Integer::intValue).sum();
@@ -576,90 +748,85 @@ public class ElectionExportService {
             // Write data rows
             for (Map.Entry<String, Integer> entry : distribution.entrySet()) {
                 double percent = total == 0 ? 0.0 : (entry.getValue() / (double) total) * 100;
-                context.csvWriter.writeNext(new String[]{
-                        entry.getKey(),
-                        String.format("%.2f%%", percent)
-                });
+                context.csvWriter.field(entry.getKey()).percentField(percent, 2).endRow();
             }
 
             context.writeEmptyLine();
         }
 
-        private void writeResultsSummaryToCsv(CsvContext context) {
+        private void writeResultsSummaryToCsv(CsvContext context) throws IOException {
             // Title
-            context.csvWriter.writeNext(new String[]{
-                    context.i18n.getSectionHeader("RESULTS_SUMMARY")
-            });
+            context.csvWriter.writeRow(context.i18n.getSectionHeader("RESULTS_SUMMARY"));
 
             // Headers
-            String[] headers = context.isCreator
-                    ? new String[]{
-                    context.i18n.getFieldLabel("candidateName"),
-                    context.i18n.getFieldLabel("numberOfVoters"),
-                    context.i18n.getFieldLabel("voters")
-            }
-                    : new String[]{
-                    context.i18n.getFieldLabel("candidateName"),
-                    context.i18n.getFieldLabel("numberOfVoters")
-            };
-            context.csvWriter.writeNext(headers);
+            context.csvWriter.field(context.i18n.getFieldLabel("candidateName"))
+                    .field(context.i18n.getFieldLabel("numberOfVoters"));
+            if (context.isCreator) {
+                context.csvWriter.field(context.i18n.getFieldLabel("voters"));
+            }
+            context.csvWriter.endRow();
 
             // Data rows
             JsonNode resultsSummary = context.dataNode.path("resultsSummary");
             if (resultsSummary.isArray()) {
-                for (JsonNode candidate : resultsSummary) {
-                    String candidateName = candidate.path("candidateName").asText("N/A");
-                    String votersCount = String.valueOf(candidate.path("numberOfVoters").asInt(0));
+                for (int i = 0; i < resultsSummary.size(); i++) {
+                    JsonNode candidate = resultsSummary.get(i);
+                    context.csvWriter.field(candidate.path("candidateName").asText("N/A"))
+                            .field(candidate.path("numberOfVoters").asInt(0));
 
                     if (context.isCreator) {
-                        String votersList = getVotersListForCsv(candidate.path("voters"), context);
-                        context.csvWriter.writeNext(new String[]{candidateName, votersCount, votersList});
-                    } else {
-                        context.csvWriter.writeNext(new String[]{candidateName, votersCount});
+                        writeVotersListToCsv(i, context);
                     }
+                    context.csvWriter.endRow();
                 }
             }
 
             context.writeEmptyLine();
         }
 
-        private String getVotersListForCsv(JsonNode votersNode, CsvContext context) {
-            if (!votersNode.isArray() || votersNode.isEmpty()) {
-                return context.i18n.getFieldLabel("notAvailable");
+        /**
+         * Writes the candidate's voters as one comma-joined field, name by name
+         */
+        private void writeVotersListToCsv(int candidate, CsvContext context) throws IOException {
+            int count = context.voters.size(candidate);
+            if (count == 0) {
+                context.csvWriter.field(context.i18n.getFieldLabel("notAvailable"));
+                return;
             }
 
-            return StreamSupport.stream(votersNode.spliterator(), false)
-                    .map(JsonNode::asText)
-                    .collect(Collectors.joining(", "));
+            context.csvWriter.beginField();
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    context.csvWriter.appendText(", ");
+                }
+                context.voters.appendTo(context.csvWriter, candidate, i);
+            }
+            context.csvWriter.endField();
         }
 
-        private void writeInsightsToCsv(CsvContext context) {
+        private void writeInsightsToCsv(CsvContext context) throws IOException {
             JsonNode insights = context.dataNode.path("insights");
             if (insights.isMissingNode()) {
                 return;
             }
 
             // Title
-            context.csvWriter.writeNext(new String[]{
-                    context.i18n.getSectionHeader("INSIGHTS")
-            });
+            context.csvWriter.writeRow(context.i18n.getSectionHeader("INSIGHTS"));
 
             // Headers
-            context.csvWriter.writeNext(new String[]{
+            context.csvWriter.writeRow(
                     context.i18n.getFieldLabel("totalCandidates"),
                     context.i18n.getFieldLabel("allVotersCount"),
                     context.i18n.getFieldLabel("completionRate"),
-                    context.i18n.getFieldLabel("submittedVotesCount")
-            });
+                    context.i18n.getFieldLabel("submittedVotesCount"));
 
             // Data row
             double rate = insights.path("completionRate").asDouble(0.0);
-            context.csvWriter.writeNext(new String[]{
-                    String.valueOf(insights.path("totalCandidates").asInt(0)),
-                    String.valueOf(insights.path("allVotersCount").asInt(0)),
-                    String.format("%.1f%%", rate),
-                    String.valueOf(insights.path("submittedVotesCount").asInt(0))
-            });
+            context.csvWriter.field(insights.path("totalCandidates").asInt(0))
+                    .field(insights.path("allVotersCount").asInt(0))
+                    .percentField(rate, 1)
+                    .field(insights.path("submittedVotesCount").asInt(0))
+                    .endRow();
 
             context.writeEmptyLine();
         }
@@ -670,7 +837,7 @@ public class ElectionExportService {
      */
     private ExportStrategy getExportStrategy(ExportFormat format) {
         return switch (format) {
-            case EXCEL -> new ExcelExportStrategy();
+            case EXCEL -> new ExcelExportStrategy(exportProperties.getExcel().getMaxSharedStrings());
             case CSV -> new CsvExportStrategy();
         };
     }
@@ -685,7 +852,13 @@ public class ElectionExportService {
      * @throws Exception If an error occurs during export
      */
     public byte[] exportData(JsonNode jsonData, ExportFormat format, boolean isCreator, boolean isArabic) throws Exception {
-        return getExportStrategy(format).export(jsonData, isCreator, isArabic);
+        SegmentedByteBuffer buffer = new SegmentedByteBuffer();
+        try {
+            getExportStrategy(format).export(jsonData, jsonVoters(jsonData), isCreator, isArabic, buffer);
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
     }
 
     /**
@@ -702,43 +875,313 @@ public class ElectionExportService {
         return exportData(jsonData, ExportFormat.CSV, isCreator, isArabic);
     }
 
-    public ResponseEntity<byte[]> export(JsonNode data, String dataType, boolean isExcel, String lang) {
+    /**
+     * Renders the export into a sink that spills to disk when large; the sink is deleted when the
+     * request completes
+     */
+    public ResponseEntity<Resource> export(JsonNode data, String dataType, boolean isExcel, String lang) {
+        return export(data, jsonVoters(data), dataType, isExcel, lang);
+    }
+
+    /**
+     * Like {@link #export(JsonNode, String, boolean, String)}, with the voter names read from
+     * {@code voters} instead of the payload's {@code voters} arrays
+     */
+    public ResponseEntity<Resource> export(JsonNode data, VoterLists voters, String dataType, boolean isExcel,
+                                           String lang) {
         log.info("Starting export: type={}, format={}, language={}", dataType, isExcel ? "excel" : "csv", lang);
         try {
             boolean isArabic = lang.equalsIgnoreCase("ar");
-            String electionName = "";
-            if (data.has("data") && data.get("data").has("electionName")) {
-                electionName = data.get("data").get("electionName").asText("unnamed_election");
-            }
-            String safeElectionName = electionName.replaceAll("[^a-zA-Z0-9\\u0600-\\u06FF_.-]", "_");
-            byte[] fileData = generateExportData(data, dataType, isExcel, isArabic);
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-            String extension = isExcel ? ".xlsx" : ".csv";
-            String fileName = dataType + "_" + safeElectionName + "_" + timestamp + extension;
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentDisposition(org.springframework.http.ContentDisposition
-                    .builder("attachment")
-                    .filename(fileName)
-                    .build());
+            SpillableOutputStream fileData = exportOutputFactory.create();
+            generateExportData(data, voters, dataType, isExcel, isArabic, fileData);
+            String fileName = fileName(data, dataType, isExcel ? ".xlsx" : ".csv");
+            HttpHeaders headers = attachmentHeaders(fileName);
             MediaType mediaType = isExcel ? MediaType.APPLICATION_OCTET_STREAM : MediaType.TEXT_PLAIN;
             log.info("Export completed successfully: fileName={}", fileName);
             return ResponseEntity.ok()
                     .headers(headers)
                     .contentType(mediaType)
-                    .body(fileData);
+                    .body(ExportOutputFactory.toResource(fileData));
         } catch (Exception e) {
             log.error("Export failed: {}", e.getMessage(), e);
             return ResponseEntity.internalServerError()
-                    .body(("حدث خطأ أثناء التصدير: " + e.getMessage()).getBytes());
+                    .body(new ByteArrayResource(("حدث خطأ أثناء التصدير: " + e.getMessage()).getBytes()));
         }
     }
 
-    private byte[] generateExportData(JsonNode data, String dataType, boolean isExcel, boolean isArabic) throws Exception {
-        boolean isCreator = dataType.equals("creator");
-        if (isExcel) {
-            return this.exportToExcel(data, isCreator, isArabic);
+    /**
+     * Creator or viewer CSV for a live election, limited to what changed after version
+     * {@code since}. The returned {@code X-Export-Version} header is the version to poll with
+     * next; {@code X-Export-Delta: false} means the body is a full export, as it is for the first
+     * poll, for a version too old to diff against, and after voters were removed or reordered.
+     */
+    public ResponseEntity<Resource> exportCsvDelta(JsonNode data, String dataType, String lang, long since) {
+        JsonNode dataNode = data.path("data");
+        String electionId = dataNode.path("electionId").asText("");
+        if (electionId.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Delta exports need data.electionId");
+        }
+        try {
+            boolean isArabic = lang.equalsIgnoreCase("ar");
+            boolean isCreator = dataType.equals("creator");
+            ElectionDeltaTracker.Result changes = deltaTracker.update(electionId, dataNode, since);
+            SpillableOutputStream fileData = exportOutputFactory.create();
+            if (changes.delta()) {
+                new CsvExportStrategy().exportDelta(changes, isCreator, isArabic, fileData);
+            } else {
+                generateExportData(data, jsonVoters(data), dataType, false, isArabic, fileData);
+            }
+            String suffix = changes.delta() ? "_delta_" + since + "-" + changes.version() + ".csv" : ".csv";
+            HttpHeaders headers = attachmentHeaders(fileName(data, dataType, suffix));
+            headers.set(VERSION_HEADER, Long.toString(changes.version()));
+            headers.set(DELTA_HEADER, Boolean.toString(changes.delta()));
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body(ExportOutputFactory.toResource(fileData));
+        } catch (Exception e) {
+            log.error("Delta export failed: {}", e.getMessage(), e);
+            return ResponseEntity.internalServerError()
+                    .body(new ByteArrayResource(("حدث خطأ أثناء التصدير: " + e.getMessage()).getBytes()));
+        }
+    }
+
+    /**
+     * One voter's candidates and named answers as a CSV receipt
+     */
+    public ResponseEntity<Resource> exportVoterReceiptCsv(String electionId, String electionName, VoterIndex.Votes votes,
+                                                          String lang) {
+        I18nHandler i18n = new I18nHandler(lang.equalsIgnoreCase("ar"));
+        SpillableOutputStream fileData = exportOutputFactory.create();
+        try (Utf8CsvWriter csvWriter = new Utf8CsvWriter(fileData)) {
+            csvWriter.writeBom();
+            csvWriter.writeRow(i18n.getSectionHeader("VOTER_RECEIPT"));
+            csvWriter.writeRow(i18n.getFieldLabel("electionId"), i18n.getFieldLabel("electionName"),
+                    i18n.getFieldLabel("voterName"), i18n.getFieldLabel("generatedAt"));
+            csvWriter.writeRow(electionId, electionName, votes.voter(), timestamp());
+            csvWriter.endRow();
+
+            csvWriter.writeRow(i18n.getSectionHeader("CANDIDATES"));
+            csvWriter.writeRow(i18n.getFieldLabel("candidateName"));
+            for (String candidate : votes.candidates()) {
+                csvWriter.writeRow(candidate);
+            }
+
+            if (!votes.answers().isEmpty()) {
+                csvWriter.endRow();
+                csvWriter.writeRow(i18n.getSectionHeader("QUESTION_RESULTS"));
+                csvWriter.writeRow(i18n.getFieldLabel("questionNumber"), i18n.getFieldLabel("title"),
+                        i18n.getFieldLabel("answer"));
+                for (VoterIndex.Answer answer : votes.answers()) {
+                    csvWriter.writeRow(answer.questionNumber(), answer.title(), answer.answer());
+                }
+            }
+            csvWriter.flush();
+            String fileName = "receipt_" + safeName(electionName) + "_" + safeName(votes.voter()) + "_" + timestamp() + ".csv";
+            return ResponseEntity.ok()
+                    .headers(attachmentHeaders(fileName))
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body(ExportOutputFactory.toResource(fileData));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write voter receipt", e);
+        }
+    }
+
+    /**
+     * One row per election with turnout, completion rate and distribution shares, followed by
+     * the totals across all of them
+     */
+    public ResponseEntity<Resource> exportComparison(ElectionComparison comparison, boolean isExcel, String lang) {
+        I18nHandler i18n = new I18nHandler(lang.equalsIgnoreCase("ar"));
+        try {
+            SpillableOutputStream fileData = exportOutputFactory.create();
+            if (isExcel) {
+                writeComparisonExcel(comparison, i18n, fileData);
+            } else {
+                writeComparisonCsv(comparison, i18n, fileData);
+            }
+            String fileName = "comparison_" + comparison.totals().elections() + "_elections_" + timestamp()
+                    + (isExcel ? ".xlsx" : ".csv");
+            return ResponseEntity.ok()
+                    .headers(attachmentHeaders(fileName))
+                    .contentType(isExcel ? MediaType.APPLICATION_OCTET_STREAM : MediaType.TEXT_PLAIN)
+                    .body(ExportOutputFactory.toResource(fileData));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write comparison report", e);
+        }
+    }
+
+    private static List<String> comparisonHeaders(ElectionComparison comparison, I18nHandler i18n) {
+        List<String> headers = new ArrayList<>();
+        for (String key : List.of("electionId", "electionName", "startDate", "endDate", "totalCandidates",
+                "numberOfVoters", "allVotersCount", "submittedVotesCount", "turnout", "completionRate")) {
+            headers.add(i18n.getFieldLabel(key));
+        }
+        for (String category : comparison.genderCategories()) {
+            headers.add(i18n.getFieldLabel("gender") + ": " + category);
+        }
+        for (String category : comparison.ageRangeCategories()) {
+            headers.add(i18n.getFieldLabel("ageRange") + ": " + category);
+        }
+        return headers;
+    }
+
+    private static void writeComparisonCsv(ElectionComparison comparison, I18nHandler i18n,
+                                           OutputStream out) throws IOException {
+        List<String> genders = comparison.genderCategories();
+        List<String> ageRanges = comparison.ageRangeCategories();
+        try (Utf8CsvWriter csvWriter = new Utf8CsvWriter(out)) {
+            csvWriter.writeBom();
+            csvWriter.writeRow(i18n.getSectionHeader("COMPARISON"));
+            csvWriter.writeRow(comparisonHeaders(comparison, i18n).toArray(String[]::new));
+            for (ElectionComparison.Row row : comparison.rows()) {
+                csvWriter.field(row.electionId()).field(row.electionName()).field(row.startDate()).field(row.endDate())
+                        .field(row.candidates()).field(row.votes()).field(row.allVoters()).field(row.submitted());
+                writeCsvPercent(csvWriter, row.turnout());
+                writeCsvPercent(csvWriter, row.completionRate());
+                writeCsvShares(csvWriter, row.gender(), genders);
+                writeCsvShares(csvWriter, row.ageRange(), ageRanges);
+                csvWriter.endRow();
+            }
+
+            ElectionComparison.Totals totals = comparison.totals();
+            csvWriter.field(i18n.getFieldLabel("total"))
+                    .field(totals.elections() + " " + i18n.getFieldLabel("elections"))
+                    .field("").field("")
+                    .field(totals.candidates()).field(totals.votes()).field(totals.allVoters()).field(totals.submitted());
+            writeCsvPercent(csvWriter, totals.turnout());
+            writeCsvPercent(csvWriter, totals.completionRate());
+            writeCsvShares(csvWriter, totals.gender(), genders);
+            writeCsvShares(csvWriter, totals.ageRange(), ageRanges);
+            csvWriter.endRow();
+            csvWriter.flush();
+        }
+    }
+
+    private static void writeCsvPercent(Utf8CsvWriter csvWriter, double percent) throws IOException {
+        if (Double.isNaN(percent)) {
+            csvWriter.field("");
         } else {
-            return this.exportToCsv(data, isCreator, isArabic);
+            csvWriter.percentField(percent, 1);
+        }
+    }
+
+    private static void writeCsvShares(Utf8CsvWriter csvWriter, Map<String, Long> distribution,
+                                       List<String> categories) throws IOException {
+        for (String category : categories) {
+            csvWriter.percentField(ElectionComparison.share(distribution, category) * 100, 2);
+        }
+    }
+
+    private static void writeComparisonExcel(ElectionComparison comparison, I18nHandler i18n,
+                                             OutputStream out) throws IOException {
+        List<String> headers = comparisonHeaders(comparison, i18n);
+        List<String> genders = comparison.genderCategories();
+        List<String> ageRanges = comparison.ageRangeCategories();
+        // Names differ per election, so cells hold inline strings rather than a shared table
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(null, 100, false, false)) {
+            Sheet sheet = workbook.createSheet(i18n.getSectionHeader("COMPARISON"));
+            CellStyle titleStyle = ExcelExportStrategy.createTitleStyle(workbook);
+            CellStyle headerStyle = ExcelExportStrategy.createHeaderStyle(workbook);
+            CellStyle dataStyle = ExcelExportStrategy.createDataStyle(workbook);
+            CellStyle percentStyle = ExcelExportStrategy.createPercentStyle(workbook, dataStyle);
+            // Rows are streamed, so columns get fixed widths instead of being auto-sized
+            for (int i = 0; i < headers.size(); i++) {
+                sheet.setColumnWidth(i, (i == 1 ? 40 : 20) * 256);
+            }
+
+            Row titleRow = sheet.createRow(0);
+            ExcelExportStrategy.createStyledCell(titleRow, 0, i18n.getSectionHeader("COMPARISON"), titleStyle);
+            sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, headers.size() - 1));
+            Row headerRow = sheet.createRow(1);
+            for (int i = 0; i < headers.size(); i++) {
+                ExcelExportStrategy.createStyledCell(headerRow, i, headers.get(i), headerStyle);
+            }
+
+            int rowNum = 2;
+            for (ElectionComparison.Row election : comparison.rows()) {
+                Row row = sheet.createRow(rowNum++);
+                ExcelExportStrategy.createStyledCell(row, 0, election.electionId(), dataStyle);
+                ExcelExportStrategy.createStyledCell(row, 1, election.electionName(), dataStyle);
+                ExcelExportStrategy.createStyledCell(row, 2, election.startDate(), dataStyle);
+                ExcelExportStrategy.createStyledCell(row, 3, election.endDate(), dataStyle);
+                writeExcelCounts(row, election.candidates(), election.votes(), election.allVoters(),
+                        election.submitted(), dataStyle);
+                writeExcelPercent(row, 8, election.turnout(), percentStyle);
+                writeExcelPercent(row, 9, election.completionRate(), percentStyle);
+                writeExcelShares(row, 10, election.gender(), genders, percentStyle);
+                writeExcelShares(row, 10 + genders.size(), election.ageRange(), ageRanges, percentStyle);
+            }
+
+            ElectionComparison.Totals totals = comparison.totals();
+            Row row = sheet.createRow(rowNum);
+            ExcelExportStrategy.createStyledCell(row, 0, i18n.getFieldLabel("total"), headerStyle);
+            ExcelExportStrategy.createStyledCell(row, 1, totals.elections() + " " + i18n.getFieldLabel("elections"),
+                    headerStyle);
+            writeExcelCounts(row, totals.candidates(), totals.votes(), totals.allVoters(), totals.submitted(), dataStyle);
+            writeExcelPercent(row, 8, totals.turnout(), percentStyle);
+            writeExcelPercent(row, 9, totals.completionRate(), percentStyle);
+            writeExcelShares(row, 10, totals.gender(), genders, percentStyle);
+            writeExcelShares(row, 10 + genders.size(), totals.ageRange(), ageRanges, percentStyle);
+
+            workbook.write(out);
+        }
+    }
+
+    private static void writeExcelCounts(Row row, long candidates, long votes, long allVoters, long submitted,
+                                         CellStyle style) {
+        ExcelExportStrategy.createStyledCell(row, 4, candidates, style);
+        ExcelExportStrategy.createStyledCell(row, 5, votes, style);
+        ExcelExportStrategy.createStyledCell(row, 6, allVoters, style);
+        ExcelExportStrategy.createStyledCell(row, 7, submitted, style);
+    }
+
+    private static void writeExcelPercent(Row row, int col, double percent, CellStyle style) {
+        if (!Double.isNaN(percent)) {
+            ExcelExportStrategy.createStyledCell(row, col, percent / 100, style);
+        }
+    }
+
+    private static void writeExcelShares(Row row, int firstCol, Map<String, Long> distribution,
+                                         List<String> categories, CellStyle style) {
+        for (int i = 0; i < categories.size(); i++) {
+            ExcelExportStrategy.createStyledCell(row, firstCol + i, ElectionComparison.share(distribution, categories.get(i)),
+                    style);
         }
     }
+
+    private static String fileName(JsonNode data, String dataType, String suffix) {
+        String electionName = "";
+        if (data.has("data") && data.get("data").has("electionName")) {
+            electionName = data.get("data").get("electionName").asText("unnamed_election");
+        }
+        return dataType + "_" + safeName(electionName) + "_" + timestamp() + suffix;
+    }
+
+    private static String safeName(String name) {
+        return name.replaceAll("[^a-zA-Z0-9\\u0600-\\u06FF_.-]", "_");
+    }
+
+    private static String timestamp() {
+        return LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+    }
+
+    private static HttpHeaders attachmentHeaders(String fileName) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentDisposition(org.springframework.http.ContentDisposition
+                .builder("attachment")
+                .filename(fileName)
+                .build());
+        return headers;
+    }
+
+    private static VoterLists jsonVoters(JsonNode data) {
+        return VoterLists.of(data.path("data").path("resultsSummary"));
+    }
+
+    private void generateExportData(JsonNode data, VoterLists voters, String dataType, boolean isExcel,
+                                    boolean isArabic, OutputStream out) throws Exception {
+        boolean isCreator = dataType.equals("creator");
+        getExportStrategy(isExcel ? ExportFormat.EXCEL : ExportFormat.CSV).export(data, voters, isCreator, isArabic, out);
+    }
 }
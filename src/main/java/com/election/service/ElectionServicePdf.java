@@ -1,10 +1,15 @@
 package com.election.service;
 
+import com.election.aggregate.ElectionComparison;
+import com.election.aggregate.VoterIndex;
+import com.election.io.SpillableOutputStream;
+import com.election.web.ExportOutputFactory;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.itextpdf.kernel.colors.ColorConstants;
 import com.itextpdf.kernel.colors.DeviceGray;
 import com.itextpdf.kernel.colors.DeviceRgb;
+import com.itextpdf.kernel.geom.PageSize;
 import com.itextpdf.kernel.geom.Rectangle;
 import com.itextpdf.kernel.pdf.PdfDocument;
 import com.itextpdf.kernel.pdf.PdfWriter;
@@ -13,134 +18,358 @@ import com.itextpdf.layout.Canvas;
 import com.itextpdf.layout.Document;
 import com.itextpdf.layout.borders.Border;
 import com.itextpdf.layout.borders.SolidBorder;
+import com.itextpdf.layout.element.AreaBreak;
 import com.itextpdf.layout.element.Cell;
 import com.itextpdf.layout.element.Paragraph;
 import com.itextpdf.layout.element.Table;
+import com.itextpdf.layout.property.AreaBreakType;
 import com.itextpdf.layout.property.TextAlignment;
 import com.itextpdf.layout.property.UnitValue;
 import com.itextpdf.layout.renderer.CellRenderer;
 import com.itextpdf.layout.renderer.DrawContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class ElectionServicePdf {
 
     private static final Logger logger = LoggerFactory.getLogger(ElectionServicePdf.class);
-    private static final ObjectMapper objectMapper = new ObjectMapper();
     private static final DeviceRgb HEADER_BG = new DeviceRgb(0x4F, 0x01, 0x8B);
     private static final DeviceRgb TITLE_COLOR = new DeviceRgb(44, 62, 80);
     private static final DeviceRgb BAR_BG = new DeviceRgb(0xEE, 0xEE, 0xEE);
     private static final DeviceGray INSIGHTS_BG_GRAY = new DeviceGray(0.9f);
     private static final DeviceRgb STAT_LABEL_COLOR = new DeviceRgb(0x8D, 0x94, 0x98);
 
-    public ByteArrayResource generatePdf(String jsonString) {
+    private final ObjectMapper objectMapper;
+    private final ExportOutputFactory exportOutputFactory;
+
+    public ElectionServicePdf(ObjectMapper objectMapper, ExportOutputFactory exportOutputFactory) {
+        this.objectMapper = objectMapper;
+        this.exportOutputFactory = exportOutputFactory;
+    }
+
+    /**
+     * Renders the election PDF as a download response
+     */
+    public ResponseEntity<Resource> export(JsonNode rootNode) {
+        String electionName = rootNode.path("data").path("electionName").asText("election_report");
+
+        Resource pdf = generatePdf(rootNode);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_PDF);
+        headers.setContentDispositionFormData("attachment", electionName + ".pdf");
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(pdf);
+    }
+
+    public Resource generatePdf(JsonNode rootNode) {
         logger.info("Starting PDF generation");
         try {
-            JsonNode rootNode = objectMapper.readTree(jsonString);
-            JsonNode dataNode = rootNode.has("data") ? rootNode.path("data") : rootNode;
-
-            String electionName = dataNode.findValue("electionName") != null ? dataNode.findValue("electionName").asText("") : "";
-            String electionDescription = dataNode.findValue("electionDescription") != null ? dataNode.findValue("electionDescription").asText("") : "";
-            String endDate = dataNode.findValue("end-date") != null ? dataNode.findValue("end-date").asText("") : "";
-            String endTime = dataNode.findValue("end-time") != null ? dataNode.findValue("end-time").asText("") : "";
-
-            JsonNode insightsNode = dataNode.findValue("insights") != null ? dataNode.findValue("insights") : objectMapper.createObjectNode();
-            int allVotersCount = insightsNode.has("allVotersCount") ? insightsNode.path("allVotersCount").asInt(1) : 1;
-
-            LocalDateTime nowInRiyadh = LocalDateTime.now(ZoneId.of("Asia/Riyadh"));
-            String timestamp = nowInRiyadh.format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            try (PdfWriter writer = new PdfWriter(baos);
-                 PdfDocument pdf = new PdfDocument(writer);
-                 Document doc = new Document(pdf)) {
-
-                pdf.addNewPage();
-                Table header = new Table(new float[]{1})
-                        .setWidth(UnitValue.createPercentValue(100))
-                        .setBorder(Border.NO_BORDER);
-                Cell headerCell = new Cell()
-                        .setBorder(Border.NO_BORDER)
-                        .setBackgroundColor(HEADER_BG)
-                        .setPadding(20);
-                Table headerContent = new Table(new float[]{50, 50})
-                        .setWidth(UnitValue.createPercentValue(100));
-                headerContent.addCell(new Cell()
-                        .setBorder(Border.NO_BORDER)
-                        .setTextAlignment(TextAlignment.LEFT)
-                        .setPadding(5)
-                        .setMargin(0)
-                        .add(new Paragraph("Election Result")
-                                .setFontSize(14)
-                                .setBold()
-                                .setFontColor(ColorConstants.WHITE)));
-                headerContent.addCell(new Cell()
-                        .setBorder(Border.NO_BORDER)
-                        .setTextAlignment(TextAlignment.RIGHT)
-                        .setPadding(5)
-                        .setMargin(0)
-                        .add(new Paragraph("Created: " + timestamp)
-                                .setFontSize(10)
-                                .setBold()
-                                .setFontColor(ColorConstants.WHITE)));
-                headerCell.add(headerContent);
-                header.addCell(headerCell);
-                doc.add(header);
-
-                doc.add(new Paragraph(electionName)
-                        .setBold()
-                        .setFontSize(16)
+            SpillableOutputStream output = exportOutputFactory.create();
+            writeReport(rootNode, output);
+            logger.info("PDF generated successfully");
+            return ExportOutputFactory.toResource(output);
+        } catch (Exception e) {
+            logger.error("Error generating PDF", e);
+            throw new RuntimeException("Failed to generate PDF", e);
+        }
+    }
+
+    /**
+     * Writes the complete report: title page details, insights and the results summary
+     */
+    void writeReport(JsonNode rootNode, OutputStream out) throws IOException {
+        JsonNode dataNode = rootNode.has("data") ? rootNode.path("data") : rootNode;
+
+        String electionName = dataNode.findValue("electionName") != null ? dataNode.findValue("electionName").asText("") : "";
+        String electionDescription = dataNode.findValue("electionDescription") != null ? dataNode.findValue("electionDescription").asText("") : "";
+        String endDate = dataNode.findValue("end-date") != null ? dataNode.findValue("end-date").asText("") : "";
+        String endTime = dataNode.findValue("end-time") != null ? dataNode.findValue("end-time").asText("") : "";
+
+        try (PdfWriter writer = new PdfWriter(out);
+             PdfDocument pdf = new PdfDocument(writer);
+             Document doc = new Document(pdf)) {
+
+            pdf.addNewPage();
+            addHeader(doc, "Election Result", "Created: " + riyadhTimestamp());
+
+            doc.add(new Paragraph(electionName)
+                    .setBold()
+                    .setFontSize(16)
+                    .setTextAlignment(TextAlignment.CENTER));
+            doc.add(new Paragraph(electionDescription)
+                    .setFontSize(10)
+                    .setTextAlignment(TextAlignment.CENTER)
+                    .setFontColor(ColorConstants.DARK_GRAY));
+            if (!endDate.isEmpty() || !endTime.isEmpty()) {
+                doc.add(new Paragraph("End Date: " + endDate + " | End Time: " + endTime)
+                        .setFontSize(12)
                         .setTextAlignment(TextAlignment.CENTER));
-                doc.add(new Paragraph(electionDescription)
-                        .setFontSize(10)
-                        .setTextAlignment(TextAlignment.CENTER)
-                        .setFontColor(ColorConstants.DARK_GRAY));
-                if (!endDate.isEmpty() || !endTime.isEmpty()) {
-                    doc.add(new Paragraph("End Date: " + endDate + " | End Time: " + endTime)
-                            .setFontSize(12)
-                            .setTextAlignment(TextAlignment.CENTER));
-                }
-                doc.add(new Paragraph("\nInsights")
+            }
+            writeResults(doc, dataNode);
+        }
+    }
+
+    /**
+     * Adds a page with the current insights and results after the existing pages of a document
+     * opened in append mode, so only that page is written as a new revision
+     */
+    void appendResultsUpdate(JsonNode rootNode, PdfDocument pdf) {
+        JsonNode dataNode = rootNode.has("data") ? rootNode.path("data") : rootNode;
+        Document doc = new Document(pdf);
+        doc.add(new AreaBreak(AreaBreakType.LAST_PAGE));
+        doc.add(new AreaBreak(AreaBreakType.NEXT_PAGE));
+        addHeader(doc, "Results Update", "Updated: " + riyadhTimestamp());
+        writeResults(doc, dataNode);
+        doc.close();
+    }
+
+    /**
+     * Renders one voter's candidates and named answers as a receipt download
+     */
+    public ResponseEntity<Resource> exportVoterReceipt(String electionName, VoterIndex.Votes votes) {
+        try {
+            SpillableOutputStream output = exportOutputFactory.create();
+            writeVoterReceipt(electionName, votes, output);
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_PDF);
+            headers.setContentDispositionFormData("attachment", "receipt_" + electionName + "_" + votes.voter() + ".pdf");
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(ExportOutputFactory.toResource(output));
+        } catch (Exception e) {
+            logger.error("Error generating voter receipt", e);
+            throw new RuntimeException("Failed to generate voter receipt", e);
+        }
+    }
+
+    void writeVoterReceipt(String electionName, VoterIndex.Votes votes, OutputStream out) throws IOException {
+        try (PdfWriter writer = new PdfWriter(out);
+             PdfDocument pdf = new PdfDocument(writer);
+             Document doc = new Document(pdf)) {
+
+            pdf.addNewPage();
+            addHeader(doc, "Voter Receipt", "Created: " + riyadhTimestamp());
+
+            doc.add(new Paragraph(electionName)
+                    .setBold()
+                    .setFontSize(16)
+                    .setTextAlignment(TextAlignment.CENTER));
+            doc.add(new Paragraph("Voter: " + votes.voter())
+                    .setFontSize(12)
+                    .setTextAlignment(TextAlignment.CENTER));
+
+            doc.add(new Paragraph("\nCandidates")
+                    .setBold()
+                    .setFontSize(14)
+                    .setFontColor(TITLE_COLOR));
+            Table candidates = new Table(new float[]{1})
+                    .setWidth(UnitValue.createPercentValue(100));
+            if (votes.candidates().isEmpty()) {
+                candidates.addCell(new Cell().add(new Paragraph("None").setFontColor(STAT_LABEL_COLOR)));
+            }
+            for (String candidate : votes.candidates()) {
+                candidates.addCell(new Cell().add(new Paragraph(candidate)));
+            }
+            doc.add(candidates);
+
+            if (!votes.answers().isEmpty()) {
+                doc.add(new Paragraph("\nAnswers")
                         .setBold()
                         .setFontSize(14)
-                        .setFontColor(TITLE_COLOR)
-                        .setTextAlignment(TextAlignment.LEFT));
-                Table stats = new Table(new float[]{1, 1})
-                        .setWidth(UnitValue.createPercentValue(100))
-                        .setMarginTop(5);
-                stats.addCell(createStatCell(insightsNode.has("totalCandidates") ? insightsNode.path("totalCandidates").asText("") : "", "Total Candidates"));
-                stats.addCell(createStatCell(insightsNode.has("allVotersCount") ? insightsNode.path("allVotersCount").asText("") : "", "All Participants"));
-                stats.addCell(createStatCell(insightsNode.has("completionRate") ? insightsNode.path("completionRate").asText("") + "%" : "", "Completion Rate"));
-                stats.addCell(createStatCell(insightsNode.has("submittedVotesCount") ? insightsNode.path("submittedVotesCount").asText("") : "", "Submitted Votes"));
-                doc.add(stats);
-
-                doc.add(new Paragraph("\nResults Summary")
-                        .setBold()
-                        .setFontSize(14));
-                JsonNode results = dataNode.findValue("resultsSummary") != null ? dataNode.findValue("resultsSummary") : objectMapper.createArrayNode();
-                if (results.isArray()) {
-                    List<JsonNode> candidates = new ArrayList<>();
-                    results.forEach(candidates::add);
-                    candidates.sort(Comparator.comparingInt(a -> -a.path("numberOfVoters").asInt(0)));
-                    drawResultBars(doc, candidates, allVotersCount);
+                        .setFontColor(TITLE_COLOR));
+                Table answers = new Table(new float[]{1, 4, 3})
+                        .setWidth(UnitValue.createPercentValue(100));
+                for (String label : List.of("Question", "Title", "Answer")) {
+                    answers.addHeaderCell(new Cell()
+                            .setBackgroundColor(INSIGHTS_BG_GRAY)
+                            .add(new Paragraph(label).setBold()));
                 }
+                for (VoterIndex.Answer answer : votes.answers()) {
+                    answers.addCell(new Cell().add(new Paragraph(answer.questionNumber())));
+                    answers.addCell(new Cell().add(new Paragraph(answer.title())));
+                    answers.addCell(new Cell().add(new Paragraph(answer.answer())));
+                }
+                doc.add(answers);
             }
-            logger.info("PDF generated successfully");
-            return new ByteArrayResource(baos.toByteArray());
+        }
+    }
+
+    /**
+     * Renders the comparison of many elections as a landscape report download
+     */
+    public ResponseEntity<Resource> exportComparison(ElectionComparison comparison) {
+        try {
+            SpillableOutputStream output = exportOutputFactory.create();
+            writeComparison(comparison, output);
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_PDF);
+            headers.setContentDispositionFormData("attachment",
+                    "comparison_" + comparison.totals().elections() + "_elections.pdf");
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(ExportOutputFactory.toResource(output));
         } catch (Exception e) {
-            logger.error("Error generating PDF", e);
-            throw new RuntimeException("Failed to generate PDF", e);
+            logger.error("Error generating comparison report", e);
+            throw new RuntimeException("Failed to generate comparison report", e);
+        }
+    }
+
+    void writeComparison(ElectionComparison comparison, OutputStream out) throws IOException {
+        ElectionComparison.Totals totals = comparison.totals();
+        try (PdfWriter writer = new PdfWriter(out);
+             PdfDocument pdf = new PdfDocument(writer);
+             Document doc = new Document(pdf, PageSize.A4.rotate())) {
+
+            addHeader(doc, "Election Comparison", "Created: " + riyadhTimestamp());
+
+            doc.add(new Paragraph("\nTotals")
+                    .setBold()
+                    .setFontSize(14)
+                    .setFontColor(TITLE_COLOR));
+            Table stats = new Table(new float[]{1, 1, 1, 1})
+                    .setWidth(UnitValue.createPercentValue(100));
+            stats.addCell(createStatCell(Integer.toString(totals.elections()), "Elections"));
+            stats.addCell(createStatCell(Long.toString(totals.allVoters()), "All Participants"));
+            stats.addCell(createStatCell(percent(totals.turnout()), "Turnout"));
+            stats.addCell(createStatCell(percent(totals.completionRate()), "Completion Rate"));
+            doc.add(stats);
+            addShares(doc, "Gender", totals.gender());
+            addShares(doc, "Age Range", totals.ageRange());
+
+            doc.add(new Paragraph("\nElections")
+                    .setBold()
+                    .setFontSize(14)
+                    .setFontColor(TITLE_COLOR));
+            // Large table: rows are laid out and flushed as they are added, not held until the end
+            Table elections = new Table(UnitValue.createPercentArray(new float[]{4, 2, 2, 1, 2, 2, 2, 2, 2}), true)
+                    .setWidth(UnitValue.createPercentValue(100));
+            for (String label : List.of("Election", "Start Date", "End Date", "Candidates", "Votes",
+                    "All Participants", "Submitted", "Turnout", "Completion")) {
+                elections.addHeaderCell(new Cell()
+                        .setBackgroundColor(INSIGHTS_BG_GRAY)
+                        .add(new Paragraph(label).setBold().setFontSize(9)));
+            }
+            doc.add(elections);
+            int rows = 0;
+            for (ElectionComparison.Row row : comparison.rows()) {
+                String name = row.electionName().isEmpty() ? row.electionId() : row.electionName();
+                for (String value : List.of(name, row.startDate(), row.endDate(), Integer.toString(row.candidates()),
+                        Long.toString(row.votes()), Long.toString(row.allVoters()), Long.toString(row.submitted()),
+                        percent(row.turnout()), percent(row.completionRate()))) {
+                    elections.addCell(new Cell().add(new Paragraph(value).setFontSize(9)));
+                }
+                if (++rows % 50 == 0) {
+                    elections.flush();
+                }
+            }
+            elections.complete();
+        }
+    }
+
+    private void addShares(Document doc, String title, Map<String, Long> distribution) {
+        if (distribution.isEmpty()) {
+            return;
+        }
+        doc.add(new Paragraph("\n" + title)
+                .setBold()
+                .setFontSize(12)
+                .setFontColor(TITLE_COLOR));
+        Table shares = new Table(new float[]{3, 1})
+                .setWidth(UnitValue.createPercentValue(50));
+        for (String category : distribution.keySet()) {
+            shares.addCell(new Cell().add(new Paragraph(category)));
+            shares.addCell(new Cell().add(new Paragraph(percent(ElectionComparison.share(distribution, category) * 100))));
+        }
+        doc.add(shares);
+    }
+
+    private static String percent(double value) {
+        return Double.isNaN(value) ? "-" : String.format("%.1f%%", value);
+    }
+
+    private static String riyadhTimestamp() {
+        LocalDateTime nowInRiyadh = LocalDateTime.now(ZoneId.of("Asia/Riyadh"));
+        return nowInRiyadh.format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+    }
+
+    private void addHeader(Document doc, String title, String stamp) {
+        Table header = new Table(new float[]{1})
+                .setWidth(UnitValue.createPercentValue(100))
+                .setBorder(Border.NO_BORDER);
+        Cell headerCell = new Cell()
+                .setBorder(Border.NO_BORDER)
+                .setBackgroundColor(HEADER_BG)
+                .setPadding(20);
+        Table headerContent = new Table(new float[]{50, 50})
+                .setWidth(UnitValue.createPercentValue(100));
+        headerContent.addCell(new Cell()
+                .setBorder(Border.NO_BORDER)
+                .setTextAlignment(TextAlignment.LEFT)
+                .setPadding(5)
+                .setMargin(0)
+                .add(new Paragraph(title)
+                        .setFontSize(14)
+                        .setBold()
+                        .setFontColor(ColorConstants.WHITE)));
+        headerContent.addCell(new Cell()
+                .setBorder(Border.NO_BORDER)
+                .setTextAlignment(TextAlignment.RIGHT)
+                .setPadding(5)
+                .setMargin(0)
+                .add(new Paragraph(stamp)
+                        .setFontSize(10)
+                        .setBold()
+                        .setFontColor(ColorConstants.WHITE)));
+        headerCell.add(headerContent);
+        header.addCell(headerCell);
+        doc.add(header);
+    }
+
+    private void writeResults(Document doc, JsonNode dataNode) {
+        JsonNode insightsNode = dataNode.findValue("insights") != null ? dataNode.findValue("insights") : objectMapper.createObjectNode();
+        int allVotersCount = insightsNode.has("allVotersCount") ? insightsNode.path("allVotersCount").asInt(1) : 1;
+
+        doc.add(new Paragraph("\nInsights")
+                .setBold()
+                .setFontSize(14)
+                .setFontColor(TITLE_COLOR)
+                .setTextAlignment(TextAlignment.LEFT));
+        Table stats = new Table(new float[]{1, 1})
+                .setWidth(UnitValue.createPercentValue(100))
+                .setMarginTop(5);
+        stats.addCell(createStatCell(insightsNode.has("totalCandidates") ? insightsNode.path("totalCandidates").asText("") : "", "Total Candidates"));
+        stats.addCell(createStatCell(insightsNode.has("allVotersCount") ? insightsNode.path("allVotersCount").asText("") : "", "All Participants"));
+        stats.addCell(createStatCell(insightsNode.has("completionRate") ? insightsNode.path("completionRate").asText("") + "%" : "", "Completion Rate"));
+        stats.addCell(createStatCell(insightsNode.has("submittedVotesCount") ? insightsNode.path("submittedVotesCount").asText("") : "", "Submitted Votes"));
+        doc.add(stats);
+
+        doc.add(new Paragraph("\nResults Summary")
+                .setBold()
+                .setFontSize(14));
+        JsonNode results = dataNode.findValue("resultsSummary") != null ? dataNode.findValue("resultsSummary") : objectMapper.createArrayNode();
+        if (results.isArray()) {
+            List<JsonNode> candidates = new ArrayList<>();
+            results.forEach(candidates::add);
+            candidates.sort(Comparator.comparingInt(a -> -a.path("numberOfVoters").asInt(0)));
+            drawResultBars(doc, candidates, allVotersCount);
         }
     }
 
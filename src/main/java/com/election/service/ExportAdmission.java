@@ -0,0 +1,261 @@
+package com.election.service;
+
+import com.election.config.ExportProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Admits exports against a heap budget using their {@link ExportCostEstimator.Estimate}, so a
+ * few giant exports cannot take the memory that many small ones need.
+ * <p>
+ * An export is small when its predicted heap and CPU time are both under the configured limits.
+ * Large exports together never hold more than the budget less {@code small-reserve}, so there is
+ * always room left for small ones. Large exports are admitted first come first served among
+ * themselves. Small ones are not queued: each starts as soon as it fits, so a small export may
+ * overtake one that has waited longer. A large export predicted to need more than its share
+ * counts as the whole share, so it runs without other large exports. An export that finds no room within
+ * {@code queue-timeout} is answered with a 503.
+ * <p>
+ * Waiting and admitted heap show up in {@code /actuator/metrics/export.admission.*}.
+ */
+@Slf4j
+@Component
+public class ExportAdmission {
+
+    /**
+     * Held while an admitted export renders; closing it gives its heap back
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * How an export would be admitted right now
+     *
+     * @param small      whether it counts as small
+     * @param heapWeight heap it would hold against the budget
+     * @param immediate  whether it would start without waiting
+     */
+    public record Verdict(ExportCostEstimator.Estimate estimate, boolean small, long heapWeight, boolean immediate) {
+    }
+
+    /**
+     * The answer to a dry run: what the payload holds, what each export would cost and whether
+     * it would start right away
+     */
+    public record DryRun(ExportCostEstimator.PayloadShape shape, List<Verdict> exports, Usage admission) {
+    }
+
+    /**
+     * Current use of the budget
+     */
+    public record Usage(boolean enabled, long heapBudget, long smallReserve, long heapInUse, long largeHeapInUse,
+                        int running, int waiting) {
+    }
+
+    private static final Permit NO_PERMIT = () -> {
+    };
+
+    private final boolean enabled;
+    private final long heapBudget;
+    private final long largeBudget;
+    private final long smallHeap;
+    private final long smallCpuMillis;
+    private final long queueTimeoutNanos;
+    private final Counter rejected;
+    private final Counter admittedSmall;
+    private final Counter admittedLarge;
+
+    // Guarded by this
+    private long heapInUse;
+    private long largeHeapInUse;
+    private int running;
+    private int waiting;
+    // Large exports waiting, admitted in order
+    private final ArrayDeque<Object> largeQueue = new ArrayDeque<>();
+
+    public ExportAdmission(ExportProperties exportProperties, MeterRegistry registry) {
+        ExportProperties.Admission settings = exportProperties.getAdmission();
+        this.enabled = settings.isEnabled();
+        this.heapBudget = Math.max(1, (long) (Runtime.getRuntime().maxMemory() * settings.getHeapShare()));
+        double reserve = Math.min(1.0, Math.max(0.0, settings.getSmallReserve()));
+        this.largeBudget = Math.max(1, (long) (heapBudget * (1.0 - reserve)));
+        this.smallHeap = settings.getSmallHeap().toBytes();
+        this.smallCpuMillis = settings.getSmallCpu().toMillis();
+        this.queueTimeoutNanos = settings.getQueueTimeout().toNanos();
+        this.rejected = Counter.builder("export.admission.rejected")
+                .description("Exports answered with a 503 after waiting for heap")
+                .register(registry);
+        this.admittedSmall = admittedCounter(registry, "small");
+        this.admittedLarge = admittedCounter(registry, "large");
+        Gauge.builder("export.admission.heap.in-use", this, admission -> admission.usage().heapInUse())
+                .baseUnit("bytes")
+                .description("Predicted heap of the exports being rendered")
+                .register(registry);
+        Gauge.builder("export.admission.waiting", this, admission -> admission.usage().waiting())
+                .description("Exports waiting for heap")
+                .register(registry);
+    }
+
+    public boolean isSmall(ExportCostEstimator.Estimate estimate) {
+        return estimate.heapBytes() <= smallHeap && estimate.cpuMillis() <= smallCpuMillis;
+    }
+
+    /**
+     * Writes an export that streams to the response
+     */
+    @FunctionalInterface
+    public interface StreamingExport {
+        void write() throws IOException;
+    }
+
+    /**
+     * Runs {@code export} once the estimate fits the budget
+     */
+    public <T> T run(ExportCostEstimator.Estimate estimate, Supplier<T> export) {
+        Permit permit = admit(estimate);
+        try {
+            return export.get();
+        } finally {
+            permit.close();
+        }
+    }
+
+    /**
+     * Writes {@code export} once the estimate fits the budget
+     */
+    public void write(ExportCostEstimator.Estimate estimate, StreamingExport export) throws IOException {
+        Permit permit = admit(estimate);
+        try {
+            export.write();
+        } finally {
+            permit.close();
+        }
+    }
+
+    /**
+     * Waits until the estimate fits the budget
+     *
+     * @throws ResponseStatusException 503 when it does not fit within the queue timeout
+     */
+    public Permit admit(ExportCostEstimator.Estimate estimate) {
+        if (!enabled) {
+            return NO_PERMIT;
+        }
+        boolean small = isSmall(estimate);
+        long weight = weight(estimate, small);
+        Object ticket = new Object();
+        synchronized (this) {
+            long deadline = System.nanoTime() + queueTimeoutNanos;
+            if (!small) {
+                largeQueue.addLast(ticket);
+            }
+            waiting++;
+            try {
+                while (!fits(weight, small, ticket)) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        rejected.increment();
+                        log.warn("Rejected {} {} export after waiting for {} bytes of heap", estimate.export(),
+                                estimate.role(), weight);
+                        throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                                "Too many exports are being rendered, try again later");
+                    }
+                    wait(Math.max(1, remaining / 1_000_000));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting", e);
+            } finally {
+                waiting--;
+                if (!small) {
+                    largeQueue.remove(ticket);
+                    // The next large export may fit now that this one has left the queue
+                    notifyAll();
+                }
+            }
+            heapInUse += weight;
+            if (!small) {
+                largeHeapInUse += weight;
+            }
+            running++;
+        }
+        (small ? admittedSmall : admittedLarge).increment();
+        return new Permit() {
+            private boolean closed;
+
+            @Override
+            public void close() {
+                synchronized (ExportAdmission.this) {
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
+                    heapInUse -= weight;
+                    if (!small) {
+                        largeHeapInUse -= weight;
+                    }
+                    running--;
+                    ExportAdmission.this.notifyAll();
+                }
+            }
+        };
+    }
+
+    /**
+     * How the estimate would be admitted now, without admitting it
+     */
+    public synchronized Verdict preview(ExportCostEstimator.Estimate estimate) {
+        boolean small = isSmall(estimate);
+        long weight = weight(estimate, small);
+        boolean immediate = !enabled || (small ? heapInUse + weight <= heapBudget || running == 0
+                : largeQueue.isEmpty() && fitsLarge(weight));
+        return new Verdict(estimate, small, enabled ? weight : 0, immediate);
+    }
+
+    public DryRun dryRun(ExportCostEstimator.PayloadShape shape, List<ExportCostEstimator.Estimate> estimates) {
+        List<Verdict> verdicts = new ArrayList<>(estimates.size());
+        for (ExportCostEstimator.Estimate estimate : estimates) {
+            verdicts.add(preview(estimate));
+        }
+        return new DryRun(shape, verdicts, usage());
+    }
+
+    public synchronized Usage usage() {
+        return new Usage(enabled, heapBudget, heapBudget - largeBudget, heapInUse, largeHeapInUse, running, waiting);
+    }
+
+    private long weight(ExportCostEstimator.Estimate estimate, boolean small) {
+        return Math.max(0, Math.min(estimate.heapBytes(), small ? heapBudget : largeBudget));
+    }
+
+    private boolean fits(long weight, boolean small, Object ticket) {
+        if (small) {
+            return heapInUse + weight <= heapBudget || running == 0;
+        }
+        return largeQueue.peekFirst() == ticket && fitsLarge(weight);
+    }
+
+    private boolean fitsLarge(long weight) {
+        return largeHeapInUse + weight <= largeBudget && heapInUse + weight <= heapBudget;
+    }
+
+    private static Counter admittedCounter(MeterRegistry registry, String size) {
+        return Counter.builder("export.admission.admitted")
+                .description("Exports admitted to render")
+                .tag("size", size)
+                .register(registry);
+    }
+}
@@ -0,0 +1,412 @@
+package com.election.service;
+
+import com.election.aggregate.TopAnswers;
+import com.election.aggregate.VoterLists;
+import com.election.config.ExportProperties;
+import com.election.store.ArtifactKey;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Predicts what an export will cost from a token scan of its payload, without building a tree:
+ * question, answer row and chart counts for surveys, candidate and voter counts for elections.
+ * <p>
+ * Each export kind has a linear model over those counts. The coefficients were fitted on warm
+ * runs of every endpoint on a single core and are rough: they are meant to tell a five-question
+ * viewer CSV from a 300-chart PDF, not to predict either to the millisecond.
+ */
+@Component
+public class ExportCostEstimator {
+
+    // Parsed tree: bytes per token and per character of field names and strings
+    private static final long TREE_BYTES_PER_TOKEN = 24;
+    private static final long TREE_BYTES_PER_CHAR = 4;
+    // Encoded voter names: an id per vote plus each distinct name once as UTF-8, amortized
+    private static final long ENCODED_BYTES_PER_VOTE = 16;
+    // An XSSF row of the survey POI workbook, held until the workbook is written
+    private static final long XSSF_BYTES_PER_ROW = 4608;
+    // Buffers and windows of the streaming writers, independent of the payload
+    private static final long STREAMING_WORKING_SET = 4L << 20;
+    private static final long PDF_WORKING_SET = 8L << 20;
+
+    private static final double PARSE_NANOS_PER_TOKEN = 350;
+
+    /**
+     * Counts of a payload that the export cost depends on
+     *
+     * @param questions      entries of {@code questionResults}
+     * @param answerRows     rows the survey questions take once cut to their top answers
+     * @param appendixRows   rows of the questions listed in full in the appendix
+     * @param chartQuestions questions the survey PDF draws a chart for
+     * @param candidates     entries of {@code resultsSummary}
+     * @param voters         names in {@code resultsSummary[].voters}
+     * @param voterChars     characters of those names
+     * @param tokens         JSON tokens of the whole payload
+     * @param textChars      characters of all field names and strings
+     */
+    public record PayloadShape(long questions, long answerRows, long appendixRows, long chartQuestions,
+                               long candidates, long voters, long voterChars, long tokens, long textChars) {
+
+        /**
+         * Adds the voter names that were read aside from the tree, as the election exports do.
+         * Names are counted, not measured.
+         */
+        public PayloadShape withVoters(VoterLists voterLists) {
+            long count = 0;
+            for (int i = 0; i < candidates; i++) {
+                count += voterLists.size(i);
+            }
+            return new PayloadShape(questions, answerRows, appendixRows, chartQuestions, candidates,
+                    voters + count, voterChars, tokens + count, textChars);
+        }
+
+        /**
+         * Both payloads together, as a comparison holds them
+         */
+        public PayloadShape plus(PayloadShape other) {
+            return new PayloadShape(questions + other.questions, answerRows + other.answerRows,
+                    appendixRows + other.appendixRows, chartQuestions + other.chartQuestions,
+                    candidates + other.candidates, voters + other.voters, voterChars + other.voterChars,
+                    tokens + other.tokens, textChars + other.textChars);
+        }
+    }
+
+    /**
+     * Predicted cost of one export
+     *
+     * @param export      an {@link ArtifactKey} kind, e.g. {@code survey-pdf}
+     * @param role        {@code creator} or {@code viewer}, empty for the PDFs, comparisons and receipts
+     * @param cpuMillis   time to parse and render on one core
+     * @param heapBytes   payload tree, rendering working set and buffered output held together
+     * @param outputBytes size of the file before response compression
+     */
+    public record Estimate(String export, String role, long cpuMillis, long heapBytes, long outputBytes) {
+    }
+
+    private final ObjectMapper objectMapper;
+    private final ExportProperties exportProperties;
+
+    public ExportCostEstimator(ObjectMapper objectMapper, ExportProperties exportProperties) {
+        this.objectMapper = objectMapper;
+        this.exportProperties = exportProperties;
+    }
+
+    /**
+     * Scans a payload from the parser's next token to the end of that value
+     */
+    public PayloadShape scan(JsonParser parser) throws IOException {
+        Scan scan = new Scan(parser, new TopAnswers(exportProperties.getTopAnswers().getLimit()),
+                exportProperties.getTopAnswers().isAppendix());
+        try {
+            JsonToken token = scan.next();
+            if (token == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Request body is empty");
+            }
+            if (token == JsonToken.START_OBJECT) {
+                scan.payload();
+            } else {
+                scan.skip();
+            }
+        } catch (JsonProcessingException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed payload", e);
+        }
+        return scan.shape();
+    }
+
+    /**
+     * Scans a payload that was already parsed
+     */
+    public PayloadShape scan(JsonNode tree) {
+        try (JsonParser parser = objectMapper.treeAsTokens(tree)) {
+            return scan(parser);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Every export the payload can be rendered as: the survey exports when it has questions, the
+     * election exports when it has candidates
+     */
+    public List<Estimate> estimateAll(PayloadShape shape) {
+        List<Estimate> estimates = new ArrayList<>();
+        boolean election = shape.candidates() > 0;
+        if (shape.questions() > 0 || !election) {
+            estimates.add(estimate(shape, ArtifactKey.SURVEY_PDF, ""));
+            for (String role : List.of("creator", "viewer")) {
+                estimates.add(estimate(shape, ArtifactKey.SURVEY_EXCEL, role));
+                estimates.add(estimate(shape, ArtifactKey.SURVEY_EXCEL_FAST, role));
+                estimates.add(estimate(shape, ArtifactKey.SURVEY_CSV, role));
+            }
+        }
+        if (election) {
+            estimates.add(estimate(shape, ArtifactKey.ELECTION_PDF, ""));
+            for (String role : List.of("creator", "viewer")) {
+                estimates.add(estimate(shape, ArtifactKey.ELECTION_EXCEL, role));
+                estimates.add(estimate(shape, ArtifactKey.ELECTION_CSV, role));
+            }
+        }
+        return estimates;
+    }
+
+    /**
+     * A survey CSV streamed from the request, whose shape is only known once it is rendered. Its
+     * heap does not depend on the payload.
+     */
+    public Estimate streamingCsv(String role) {
+        return estimate(new PayloadShape(0, 0, 0, 0, 0, 0, 0, 0, 0), ArtifactKey.SURVEY_CSV, role);
+    }
+
+    /**
+     * A voter's receipt, whose cost does not depend on the election
+     */
+    public Estimate receipt() {
+        return estimate(new PayloadShape(0, 0, 0, 0, 0, 0, 0, 0, 0), ArtifactKey.VOTER_RECEIPT, "");
+    }
+
+    /**
+     * A comparison of the given elections: their payloads summed, with each ballot election id
+     * counted as a payload of one token until it is aggregated
+     */
+    public Estimate comparison(List<JsonNode> elections) {
+        PayloadShape shape = new PayloadShape(0, 0, 0, 0, 0, 0, 0, 0, 0);
+        for (JsonNode election : elections) {
+            shape = shape.plus(scan(election));
+        }
+        return estimate(shape, ArtifactKey.ELECTION_COMPARISON, "");
+    }
+
+    /**
+     * @param export an {@link ArtifactKey} kind
+     * @param role   {@code creator} or {@code viewer}; ignored by the PDFs, comparisons and receipts
+     */
+    public Estimate estimate(PayloadShape shape, String export, String role) {
+        boolean creator = !"viewer".equals(role);
+        long spillThreshold = exportProperties.getSpill().getMemoryThreshold().toBytes();
+        long rows = shape.answerRows() + shape.appendixRows();
+        long voters = creator ? shape.voters() : 0;
+        long tree = TREE_BYTES_PER_TOKEN * shape.tokens() + TREE_BYTES_PER_CHAR * shape.textChars();
+        // Election Excel and CSV keep voter names out of the tree
+        long encodedTree = TREE_BYTES_PER_TOKEN * (shape.tokens() - shape.voters())
+                + TREE_BYTES_PER_CHAR * (shape.textChars() - shape.voterChars())
+                + ENCODED_BYTES_PER_VOTE * shape.voters();
+        double parseMillis = PARSE_NANOS_PER_TOKEN * shape.tokens() / 1e6;
+
+        double cpuMillis;
+        long heap;
+        long output;
+        switch (export) {
+            case ArtifactKey.SURVEY_PDF -> {
+                cpuMillis = 500 + 10 * shape.chartQuestions() + 0.07 * rows;
+                output = 20_000 + 10_000 * shape.chartQuestions() + 130 * rows;
+                // Parallel chunks are held as byte arrays until they are merged
+                heap = tree + PDF_WORKING_SET + output + Math.min(output, spillThreshold);
+            }
+            case ArtifactKey.SURVEY_EXCEL -> {
+                cpuMillis = 200 + 3.5 * shape.questions() + 0.03 * rows;
+                output = 6_000 + 25 * rows;
+                heap = tree + XSSF_BYTES_PER_ROW * rows + Math.min(output, spillThreshold);
+            }
+            case ArtifactKey.SURVEY_EXCEL_FAST -> {
+                cpuMillis = 20 + 0.15 * shape.questions() + 0.004 * rows;
+                output = 6_000 + 24 * rows;
+                heap = tree + STREAMING_WORKING_SET;
+            }
+            case ArtifactKey.SURVEY_CSV -> {
+                // Questions stream from the body a chunk at a time, the tree is never built
+                cpuMillis = 5 + 0.002 * rows;
+                output = 500 + 70 * rows;
+                heap = STREAMING_WORKING_SET;
+            }
+            case ArtifactKey.ELECTION_PDF -> {
+                cpuMillis = 50 + 0.5 * shape.candidates();
+                output = 3_000 + 180 * shape.candidates();
+                heap = tree + STREAMING_WORKING_SET + Math.min(output, spillThreshold);
+            }
+            case ArtifactKey.ELECTION_EXCEL -> {
+                cpuMillis = creator ? 550 + 1.3 * shape.candidates() + 0.0032 * voters : 40 + 0.3 * shape.candidates();
+                output = 4_000 + 170 * shape.candidates() + 10 * voters;
+                heap = encodedTree + STREAMING_WORKING_SET + Math.min(output, spillThreshold);
+            }
+            case ArtifactKey.ELECTION_CSV -> {
+                cpuMillis = 5 + 0.1 * shape.candidates() + 0.00015 * voters;
+                output = 400 + 20 * shape.candidates() + 15 * voters;
+                heap = encodedTree + STREAMING_WORKING_SET + Math.min(output, spillThreshold);
+            }
+            case ArtifactKey.ELECTION_COMPARISON -> {
+                // Each election is reduced to its totals on the fork-join pool, one row per election
+                cpuMillis = 50 + 0.2 * shape.candidates();
+                output = 3_000 + 20 * shape.candidates();
+                heap = tree + STREAMING_WORKING_SET + Math.min(output, spillThreshold);
+            }
+            case ArtifactKey.VOTER_RECEIPT -> {
+                // One voter's answers, read from an index that is already in memory
+                cpuMillis = 20;
+                output = 3_000;
+                heap = STREAMING_WORKING_SET;
+            }
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown export: " + export);
+        }
+        boolean roleless = switch (export) {
+            case ArtifactKey.SURVEY_PDF, ArtifactKey.ELECTION_PDF, ArtifactKey.ELECTION_COMPARISON,
+                    ArtifactKey.VOTER_RECEIPT -> true;
+            default -> false;
+        };
+        return new Estimate(export, roleless ? "" : creator ? "creator" : "viewer",
+                Math.round(parseMillis + cpuMillis), heap, output);
+    }
+
+    /**
+     * One pass over the tokens of a payload, counting as it goes
+     */
+    private static final class Scan {
+        private final JsonParser parser;
+        private final TopAnswers topAnswers;
+        private final boolean appendix;
+        private long questions;
+        private long answerRows;
+        private long appendixRows;
+        private long chartQuestions;
+        private long candidates;
+        private long voters;
+        private long voterChars;
+        private long tokens;
+        private long textChars;
+
+        Scan(JsonParser parser, TopAnswers topAnswers, boolean appendix) {
+            this.parser = parser;
+            this.topAnswers = topAnswers;
+            this.appendix = appendix;
+        }
+
+        JsonToken next() throws IOException {
+            JsonToken token = parser.nextToken();
+            if (token != null) {
+                tokens++;
+                if (token == JsonToken.FIELD_NAME || token == JsonToken.VALUE_STRING) {
+                    textChars += parser.getTextLength();
+                }
+            }
+            return token;
+        }
+
+        /**
+         * Reads an object holding the payload fields, either the root or its {@code data}
+         */
+        void payload() throws IOException {
+            while (next() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = next();
+                if (field.equals("data") && value == JsonToken.START_OBJECT) {
+                    payload();
+                } else if (field.equals("questionResults") && value == JsonToken.START_ARRAY) {
+                    questions();
+                } else if (field.equals("resultsSummary") && value == JsonToken.START_ARRAY) {
+                    candidates();
+                } else {
+                    skip();
+                }
+            }
+        }
+
+        private void questions() throws IOException {
+            for (JsonToken token = next(); token != JsonToken.END_ARRAY && token != null; token = next()) {
+                if (token != JsonToken.START_OBJECT) {
+                    skip();
+                    continue;
+                }
+                String type = "";
+                int answers = 0;
+                while (next() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    JsonToken value = next();
+                    if (field.equals("type") && value == JsonToken.VALUE_STRING) {
+                        type = parser.getText();
+                    } else if (field.equals("answers") && value == JsonToken.START_ARRAY) {
+                        for (JsonToken answer = next(); answer != JsonToken.END_ARRAY && answer != null; answer = next()) {
+                            skip();
+                            answers++;
+                        }
+                    } else {
+                        skip();
+                    }
+                }
+                questions++;
+                if (ExportService.QuestionType.fromString(type).isMultiAnswerType() && answers > 0) {
+                    answerRows += topAnswers.displayedCount(answers);
+                    if (appendix && topAnswers.truncates(answers)) {
+                        appendixRows += answers;
+                    }
+                } else {
+                    answerRows++;
+                }
+                if (PdfService.CHARTABLE_TYPES.contains(type) && answers > 0) {
+                    chartQuestions++;
+                }
+            }
+        }
+
+        private void candidates() throws IOException {
+            for (JsonToken token = next(); token != JsonToken.END_ARRAY && token != null; token = next()) {
+                candidates++;
+                if (token != JsonToken.START_OBJECT) {
+                    skip();
+                    continue;
+                }
+                while (next() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    JsonToken value = next();
+                    if (field.equals("voters") && value == JsonToken.START_ARRAY) {
+                        for (JsonToken name = next(); name != JsonToken.END_ARRAY && name != null; name = next()) {
+                            voters++;
+                            if (name == JsonToken.VALUE_STRING) {
+                                voterChars += parser.getTextLength();
+                            } else {
+                                skip();
+                            }
+                        }
+                    } else {
+                        skip();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Skips the value at the current token, counting the tokens inside it
+         */
+        void skip() throws IOException {
+            JsonToken token = parser.currentToken();
+            if (token != JsonToken.START_OBJECT && token != JsonToken.START_ARRAY) {
+                return;
+            }
+            for (int depth = 1; depth > 0; ) {
+                token = next();
+                if (token == null) {
+                    return;
+                }
+                if (token.isStructStart()) {
+                    depth++;
+                } else if (token.isStructEnd()) {
+                    depth--;
+                }
+            }
+        }
+
+        PayloadShape shape() {
+            return new PayloadShape(questions, answerRows, appendixRows, chartQuestions, candidates, voters,
+                    voterChars, tokens, textChars);
+        }
+    }
+}
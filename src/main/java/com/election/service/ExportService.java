@@ -1,32 +1,51 @@
 package com.election.service;
 
+import com.election.aggregate.TopAnswers;
+import com.election.config.ExportProperties;
+import com.election.io.OrderedChunkWriter;
+import com.election.io.SegmentedByteBuffer;
+import com.election.io.SpillableOutputStream;
+import com.election.io.StreamingXlsxWriter;
+import com.election.io.StreamingXlsxWriter.Style;
+import com.election.io.Utf8CsvWriter;
+import com.election.web.ExportOutputFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.opencsv.CSVWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import jakarta.servlet.http.HttpServletResponse;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.io.ByteArrayOutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 @Service
 public class ExportService {
 
     private static final class ExportConstants {
-        static final String UTF8_BOM = "\uFEFF";
-
         static final class Arabic {
             static final String MAIN_DATA_TITLE = "البيانات الرئيسية";
             static final String CREATOR_SHEET_NAME = "بيانات الاستبيان - منشئ";
             static final String VIEWER_SHEET_NAME = "بيانات الاستبيان - مشاهد";
             static final String UNKNOWN_QUESTION_TYPE = "نوع السؤال غير معروف";
+            static final String OTHERS_LABEL = "أخرى (%d إجابة)";
+            static final String APPENDIX_SHEET_NAME = "ملحق - جميع الإجابات";
+            static final String APPENDIX_TITLE = "ملحق: جميع الإجابات";
             static final Map<String, String> FIELD_LABELS = createArabicFieldLabels();
             static final String[] QUESTION_HEADERS_WITH_VOTER = new String[]{
                     "رقم السؤال", "العنوان", "النوع", "اسم الإجابة", "نسبة الإجابة", "اسم المصوت"};
@@ -61,6 +80,9 @@ public class ExportService {
             static final String CREATOR_SHEET_NAME = "Survey Data - Creator";
             static final String VIEWER_SHEET_NAME = "Survey Data - Viewer";
             static final String UNKNOWN_QUESTION_TYPE = "Unknown Question Type";
+            static final String OTHERS_LABEL = "Others (%d answers)";
+            static final String APPENDIX_SHEET_NAME = "Appendix - All Answers";
+            static final String APPENDIX_TITLE = "Appendix: All Answers";
             static final Map<String, String> FIELD_LABELS = createEnglishFieldLabels();
             static final String[] QUESTION_HEADERS_WITH_VOTER = new String[]{
                     "Question Number", "Title", "Type", "Answer Name", "Answer Percentage", "Voter Name"};
@@ -91,7 +113,7 @@ public class ExportService {
         }
     }
 
-    private enum QuestionType {
+    enum QuestionType {
         TEXT_SINGLE_LINE, TEXT_MULTI_LINE, TEXT_URL, TEXT_NUMBER, TEXT_DATE, TEXT_DATETIME,
         RANKING, MULTI_SELECTION, MULTI_CHOICE, RATING_RANGE, RATING_STARS,
         UNKNOWN;
@@ -116,36 +138,67 @@ public class ExportService {
         }
     }
 
+    // Title, labels and values of the creator's main data block
+    private static final int MAIN_DATA_ROWS = 3;
+    private static final int MAX_SHEET_NAME_LENGTH = 31;
+    private static final int EXCEL_MAX_ROWS = 1_048_576;
+
+    private final ObjectMapper objectMapper;
+    private final ExportProperties exportProperties;
+    private final ForkJoinPool exportForkJoinPool;
+    private final ExportOutputFactory exportOutputFactory;
+
+    public ExportService(ObjectMapper objectMapper, ExportProperties exportProperties, ForkJoinPool exportForkJoinPool,
+                         ExportOutputFactory exportOutputFactory) {
+        this.objectMapper = objectMapper;
+        this.exportProperties = exportProperties;
+        this.exportForkJoinPool = exportForkJoinPool;
+        this.exportOutputFactory = exportOutputFactory;
+    }
+
     public byte[] exportCreatorExcel(JsonNode jsonData, boolean isArabic) throws Exception {
-        return generateExcel(jsonData, true, isArabic);
+        return toByteArray(out -> generateExcel(jsonData, true, isArabic, out));
     }
 
     public byte[] exportViewerExcel(JsonNode jsonData, boolean isArabic) throws Exception {
-        return generateExcel(jsonData, false, isArabic);
+        return toByteArray(out -> generateExcel(jsonData, false, isArabic, out));
     }
 
     public byte[] exportCreatorCsv(JsonNode jsonData, boolean isArabic) throws Exception {
-        return generateCsvWithUtf8(jsonData, true, isArabic);
+        return toByteArray(out -> generateCsvWithUtf8(jsonData, true, isArabic, out));
     }
 
     public byte[] exportViewerCsv(JsonNode jsonData, boolean isArabic) throws Exception {
-        return generateCsvWithUtf8(jsonData, false, isArabic);
+        return toByteArray(out -> generateCsvWithUtf8(jsonData, false, isArabic, out));
+    }
+
+    @FunctionalInterface
+    private interface ExportWriter {
+        void write(OutputStream out) throws Exception;
     }
 
-    private byte[] generateExcel(JsonNode jsonData, boolean isCreator, boolean isArabic) throws Exception {
+    private static byte[] toByteArray(ExportWriter writer) throws Exception {
+        SegmentedByteBuffer buffer = new SegmentedByteBuffer();
+        try {
+            writer.write(buffer);
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private void generateExcel(JsonNode jsonData, boolean isCreator, boolean isArabic, OutputStream out) throws Exception {
         try (Workbook workbook = new XSSFWorkbook()) {
-            String sheetName = getSheetName(isCreator, isArabic);
-            Sheet sheet = workbook.createSheet(sheetName);
-            int currentRow = 0;
+            ShardedSheet sheet = new ShardedSheet(workbook, getSheetName(isCreator, isArabic));
             if (isCreator) {
-                currentRow = writeMainDataHorizontal(jsonData, sheet, isArabic);
+                writeMainDataHorizontal(jsonData, sheet, isArabic);
             }
-            writeQuestionResultsWithRespondents(jsonData, sheet, currentRow, isCreator, isArabic);
-            autoSizeColumns(sheet);
-            try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-                workbook.write(outputStream);
-                return outputStream.toByteArray();
+            writeQuestionResultsWithRespondents(jsonData, sheet, isCreator, isArabic);
+            writeAppendixSheet(jsonData, workbook, isCreator, isArabic);
+            for (Sheet shard : workbook) {
+                autoSizeColumns(shard);
             }
+            workbook.write(out);
         }
     }
 
@@ -157,18 +210,128 @@ public class ExportService {
         }
     }
 
-    private byte[] generateCsvWithUtf8(JsonNode jsonData, boolean includeVoterName, boolean isArabic) throws Exception {
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-             OutputStreamWriter streamWriter = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
-             CSVWriter csvWriter = new CSVWriter(streamWriter)) {
-            streamWriter.write(ExportConstants.UTF8_BOM);
+    private void generateCsvWithUtf8(JsonNode jsonData, boolean includeVoterName, boolean isArabic,
+                                     OutputStream out) throws Exception {
+        JsonNode questionResults = jsonData.path("data").path("questionResults");
+        Iterator<JsonNode> questions = questionResults.isArray() ? questionResults.elements() : Collections.emptyIterator();
+        writeCsv(out, () -> questions.hasNext() ? questions.next() : null, includeVoterName, isArabic);
+    }
+
+    /**
+     * Supplies question results one at a time, returning null after the last one
+     */
+    @FunctionalInterface
+    private interface QuestionSource {
+        JsonNode next() throws IOException;
+    }
+
+    /**
+     * Writes the BOM, header and question rows. In parallel mode questions are encoded in chunks
+     * on the export pool and written back in order as each prefix completes.
+     */
+    private void writeCsv(OutputStream out, QuestionSource questions, boolean includeVoterName,
+                          boolean isArabic) throws IOException {
+        CsvAppendix appendix = new CsvAppendix(includeVoterName, isArabic);
+        if (!exportProperties.getCsv().isParallel()) {
+            Utf8CsvWriter csvWriter = new Utf8CsvWriter(out);
+            csvWriter.writeBom();
             writeQuestionResultsHeaderToCsv(csvWriter, includeVoterName, isArabic);
-            writeQuestionResultsWithRespondentsToCsv(jsonData, csvWriter, includeVoterName, isArabic);
+            for (JsonNode question = questions.next(); question != null; question = questions.next()) {
+                writeQuestionToCsv(csvWriter, question, includeVoterName, isArabic);
+                appendix.add(question);
+            }
+            csvWriter.flush();
+            appendix.writeTo(out);
+            return;
+        }
+        int chunkSize = Math.max(1, exportProperties.getCsv().getChunkSize());
+        OrderedChunkWriter chunkWriter = new OrderedChunkWriter(out, exportForkJoinPool,
+                exportForkJoinPool.getParallelism() * 2);
+        try {
+            // The header goes through the chunk writer too, so nothing is flushed ahead of the rows
+            chunkWriter.submit(chunk -> {
+                Utf8CsvWriter csvWriter = new Utf8CsvWriter(chunk, 1024);
+                csvWriter.writeBom();
+                writeQuestionResultsHeaderToCsv(csvWriter, includeVoterName, isArabic);
+                csvWriter.flush();
+            });
+            List<JsonNode> batch = new ArrayList<>(chunkSize);
+            for (JsonNode question = questions.next(); question != null; question = questions.next()) {
+                batch.add(question);
+                appendix.add(question);
+                if (batch.size() == chunkSize) {
+                    submitCsvChunk(chunkWriter, batch, includeVoterName, isArabic);
+                    batch = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                submitCsvChunk(chunkWriter, batch, includeVoterName, isArabic);
+            }
+            chunkWriter.flush();
+            appendix.writeTo(out);
+        } finally {
+            chunkWriter.cancel();
+        }
+    }
+
+    /**
+     * Full answer rows of the questions that were cut to their top answers. They are spooled
+     * while the questions stream past, so the questions themselves need not be kept, and are
+     * written after the last question row.
+     */
+    private final class CsvAppendix {
+        private final boolean includeVoterName;
+        private final boolean isArabic;
+        private final boolean enabled = exportProperties.getTopAnswers().isAppendix();
+        private final TopAnswers topAnswers = topAnswers();
+        private SpillableOutputStream spool;
+        private Utf8CsvWriter csvWriter;
+
+        CsvAppendix(boolean includeVoterName, boolean isArabic) {
+            this.includeVoterName = includeVoterName;
+            this.isArabic = isArabic;
+        }
+
+        void add(JsonNode question) throws IOException {
+            if (!enabled || !isCut(question, topAnswers)) {
+                return;
+            }
+            if (csvWriter == null) {
+                spool = exportOutputFactory.create();
+                csvWriter = new Utf8CsvWriter(spool);
+                csvWriter.endRow();
+                csvWriter.writeRow(isArabic ? ExportConstants.Arabic.APPENDIX_TITLE : ExportConstants.English.APPENDIX_TITLE);
+                writeQuestionResultsHeaderToCsv(csvWriter, includeVoterName, isArabic);
+            }
+            writeMultiAnswerQuestionToCsv(csvWriter, question.path("questionNumber").asText(""),
+                    question.path("title").asText(""), question.path("type").asText(""), question.path("answers"),
+                    includeVoterName);
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            if (csvWriter == null) {
+                return;
+            }
             csvWriter.flush();
-            return outputStream.toByteArray();
+            spool.close();
+            try (InputStream in = spool.openInputStream()) {
+                in.transferTo(out);
+            }
+            out.flush();
         }
     }
 
+    private void submitCsvChunk(OrderedChunkWriter chunkWriter, List<JsonNode> questions,
+                                boolean includeVoterName, boolean isArabic) throws IOException {
+        chunkWriter.submit(chunk -> {
+            Utf8CsvWriter csvWriter = new Utf8CsvWriter(chunk);
+            for (JsonNode question : questions) {
+                writeQuestionToCsv(csvWriter, question, includeVoterName, isArabic);
+            }
+            csvWriter.flush();
+        });
+    }
+
     private void autoSizeColumns(Sheet sheet) {
         int maxColumns = 0;
         for (Row row : sheet) {
@@ -179,19 +342,18 @@ public class ExportService {
         }
     }
 
-    private int writeMainDataHorizontal(JsonNode jsonData, Sheet sheet, boolean isArabic) {
-        int rowNum = 0;
+    private void writeMainDataHorizontal(JsonNode jsonData, ShardedSheet sheet, boolean isArabic) {
         JsonNode mainData = jsonData.path("data");
         String mainDataTitle = isArabic ? ExportConstants.Arabic.MAIN_DATA_TITLE : ExportConstants.English.MAIN_DATA_TITLE;
-        Row titleRow = sheet.createRow(rowNum++);
-        CellStyle titleStyle = createHeaderStyle(sheet);
+        Row titleRow = sheet.createRow();
+        CellStyle titleStyle = createHeaderStyle(sheet.workbook);
         Cell titleCell = titleRow.createCell(0);
         titleCell.setCellValue(mainDataTitle);
         titleCell.setCellStyle(titleStyle);
-        Row headerRow = sheet.createRow(rowNum++);
-        Row valueRow = sheet.createRow(rowNum++);
+        Row headerRow = sheet.createRow();
+        Row valueRow = sheet.createRow();
         Map<String, String> fieldLabels = isArabic ? ExportConstants.Arabic.FIELD_LABELS : ExportConstants.English.FIELD_LABELS;
-        CellStyle headerStyle = createHeaderStyle(sheet);
+        CellStyle headerStyle = createHeaderStyle(sheet.workbook);
         int colIndex = 0;
         for (Map.Entry<String, String> field : fieldLabels.entrySet()) {
             String key = field.getKey();
@@ -207,41 +369,34 @@ public class ExportService {
             valueRow.createCell(colIndex).setCellValue(valueStr);
             colIndex++;
         }
-        return rowNum;
     }
 
-    private void writeQuestionResultsWithRespondents(JsonNode jsonData, Sheet sheet, int rowNum,
+    private void writeQuestionResultsWithRespondents(JsonNode jsonData, ShardedSheet sheet,
                                                      boolean includeVoterName, boolean isArabic) {
         JsonNode questionResults = jsonData.path("data").path("questionResults");
         if (!questionResults.isArray()) {
             return;
         }
-        String[] headers = getQuestionHeaders(includeVoterName, isArabic);
-        Row headerRow = sheet.createRow(rowNum++);
-        CellStyle headerStyle = createHeaderStyle(sheet);
-        for (int col = 0; col < headers.length; col++) {
-            Cell cell = headerRow.createCell(col);
-            cell.setCellValue(headers[col]);
-            cell.setCellStyle(headerStyle);
-        }
+        sheet.startQuestionRows(getQuestionHeaders(includeVoterName, isArabic), createHeaderStyle(sheet.workbook));
+        CellStyle percentStyle = createPercentStyle(sheet.workbook);
         for (JsonNode question : questionResults) {
             String questionNumber = question.path("questionNumber").asText("");
             String title = question.path("title").asText("");
             String typeStr = question.path("type").asText("");
             QuestionType type = QuestionType.fromString(typeStr);
             if (type.isTextType()) {
-                writeTextQuestionRow(sheet, rowNum++, questionNumber, title, typeStr, question, includeVoterName);
+                writeTextQuestionRow(sheet.createRow(), questionNumber, title, typeStr, question, includeVoterName);
             } else if (type.isMultiAnswerType()) {
-                rowNum = writeMultiAnswerQuestionRows(sheet, rowNum, questionNumber, title, typeStr, question, includeVoterName);
+                writeMultiAnswerQuestionRows(sheet, questionNumber, title, typeStr,
+                        displayedAnswers(question.path("answers"), isArabic), percentStyle, includeVoterName);
             } else {
-                writeUnknownQuestionTypeRow(sheet, rowNum++, questionNumber, title, typeStr, includeVoterName, isArabic);
+                writeUnknownQuestionTypeRow(sheet.createRow(), questionNumber, title, typeStr, includeVoterName, isArabic);
             }
         }
     }
 
-    private void writeTextQuestionRow(Sheet sheet, int rowNum, String questionNumber, String title,
+    private void writeTextQuestionRow(Row row, String questionNumber, String title,
                                       String type, JsonNode question, boolean includeVoterName) {
-        Row row = sheet.createRow(rowNum);
         row.createCell(0).setCellValue(questionNumber);
         row.createCell(1).setCellValue(title);
         row.createCell(2).setCellValue(type);
@@ -252,12 +407,32 @@ public class ExportService {
         }
     }
 
-    private int writeMultiAnswerQuestionRows(Sheet sheet, int rowNum, String questionNumber,
-                                             String title, String type, JsonNode question,
-                                             boolean includeVoterName) {
-        JsonNode answers = question.path("answers");
-        if (!answers.isArray() || answers.size() == 0) {
-            Row emptyRow = sheet.createRow(rowNum++);
+    /**
+     * Lists the questions whose answers were cut to the top answers in full, on their own sheet
+     */
+    private void writeAppendixSheet(JsonNode jsonData, Workbook workbook, boolean includeVoterName, boolean isArabic) {
+        List<JsonNode> questions = appendixQuestions(jsonData.path("data").path("questionResults"));
+        if (questions.isEmpty()) {
+            return;
+        }
+        ShardedSheet sheet = new ShardedSheet(workbook, isArabic
+                ? ExportConstants.Arabic.APPENDIX_SHEET_NAME : ExportConstants.English.APPENDIX_SHEET_NAME);
+        sheet.startQuestionRows(getQuestionHeaders(includeVoterName, isArabic), createHeaderStyle(workbook));
+        CellStyle percentStyle = createPercentStyle(workbook);
+        for (JsonNode question : questions) {
+            List<JsonNode> answers = new ArrayList<>(question.path("answers").size());
+            question.path("answers").forEach(answers::add);
+            writeMultiAnswerQuestionRows(sheet, question.path("questionNumber").asText(""),
+                    question.path("title").asText(""), question.path("type").asText(""), answers, percentStyle,
+                    includeVoterName);
+        }
+    }
+
+    private void writeMultiAnswerQuestionRows(ShardedSheet sheet, String questionNumber,
+                                              String title, String type, List<JsonNode> answers,
+                                              CellStyle percentStyle, boolean includeVoterName) {
+        if (answers.isEmpty()) {
+            Row emptyRow = sheet.createRow();
             emptyRow.createCell(0).setCellValue(questionNumber);
             emptyRow.createCell(1).setCellValue(title);
             emptyRow.createCell(2).setCellValue(type);
@@ -266,26 +441,25 @@ public class ExportService {
             if (includeVoterName) {
                 emptyRow.createCell(5).setCellValue("");
             }
-            return rowNum;
+            return;
         }
         for (JsonNode answer : answers) {
-            Row answerRow = sheet.createRow(rowNum++);
+            Row answerRow = sheet.createRow();
             answerRow.createCell(0).setCellValue(questionNumber);
             answerRow.createCell(1).setCellValue(title);
             answerRow.createCell(2).setCellValue(type);
             answerRow.createCell(3).setCellValue(answer.path("name").asText(""));
-            double percentage = answer.path("answerPercentage").asDouble();
-            answerRow.createCell(4).setCellValue(percentage + "%");
+            Cell percentageCell = answerRow.createCell(4);
+            percentageCell.setCellValue(answer.path("answerPercentage").asDouble() / 100);
+            percentageCell.setCellStyle(percentStyle);
             if (includeVoterName) {
                 answerRow.createCell(5).setCellValue(answer.path("voterName").asText(""));
             }
         }
-        return rowNum;
     }
 
-    private void writeUnknownQuestionTypeRow(Sheet sheet, int rowNum, String questionNumber, String title,
+    private void writeUnknownQuestionTypeRow(Row unknownRow, String questionNumber, String title,
                                              String type, boolean includeVoterName, boolean isArabic) {
-        Row unknownRow = sheet.createRow(rowNum);
         unknownRow.createCell(0).setCellValue(questionNumber);
         unknownRow.createCell(1).setCellValue(title);
         unknownRow.createCell(2).setCellValue(type);
@@ -297,9 +471,109 @@ public class ExportService {
         }
     }
 
-    private CellStyle createHeaderStyle(Sheet sheet) {
-        CellStyle style = sheet.getWorkbook().createCellStyle();
-        Font font = sheet.getWorkbook().createFont();
+    private TopAnswers topAnswers() {
+        return new TopAnswers(exportProperties.getTopAnswers().getLimit());
+    }
+
+    /**
+     * Whether a multi-answer question has more answers than are listed
+     */
+    private static boolean isCut(JsonNode question, TopAnswers topAnswers) {
+        JsonNode answers = question.path("answers");
+        return QuestionType.fromString(question.path("type").asText("")).isMultiAnswerType()
+                && answers.isArray() && topAnswers.truncates(answers);
+    }
+
+    /**
+     * Questions to list in full in the appendix, empty when the appendix is off
+     */
+    private List<JsonNode> appendixQuestions(JsonNode questionResults) {
+        List<JsonNode> questions = new ArrayList<>();
+        if (exportProperties.getTopAnswers().isAppendix() && questionResults.isArray()) {
+            TopAnswers topAnswers = topAnswers();
+            for (JsonNode question : questionResults) {
+                if (isCut(question, topAnswers)) {
+                    questions.add(question);
+                }
+            }
+        }
+        return questions;
+    }
+
+    /**
+     * The answer rows of a question: every answer, or the top answers in payload order followed
+     * by an "Others" row that sums up the rest
+     */
+    private List<JsonNode> displayedAnswers(JsonNode answers, boolean isArabic) {
+        if (!answers.isArray()) {
+            return List.of();
+        }
+        TopAnswers topAnswers = topAnswers();
+        if (!topAnswers.truncates(answers)) {
+            List<JsonNode> all = new ArrayList<>(answers.size());
+            answers.forEach(all::add);
+            return all;
+        }
+        TopAnswers.Selection selection = topAnswers.select(answers, "answerPercentage");
+        List<JsonNode> displayed = new ArrayList<>(selection.inPayloadOrder());
+        String othersLabel = isArabic ? ExportConstants.Arabic.OTHERS_LABEL : ExportConstants.English.OTHERS_LABEL;
+        displayed.add(objectMapper.createObjectNode()
+                .put("name", String.format(othersLabel, selection.otherAnswers()))
+                .put("answerCount", selection.otherCount())
+                .put("answerPercentage", selection.otherPercentage()));
+        return displayed;
+    }
+
+    /**
+     * Hands out consecutive rows, continuing on a new sheet that repeats the question header row
+     * once the current sheet reaches the row budget
+     */
+    private final class ShardedSheet {
+        private final Workbook workbook;
+        private final String sheetName;
+        private final int maxRows = getMaxRowsPerSheet();
+        private Sheet sheet;
+        private int shards = 1;
+        private int rowNum;
+        private String[] headers;
+        private CellStyle headerStyle;
+
+        ShardedSheet(Workbook workbook, String sheetName) {
+            this.workbook = workbook;
+            this.sheetName = sheetName;
+            this.sheet = workbook.createSheet(sheetName);
+        }
+
+        void startQuestionRows(String[] headers, CellStyle headerStyle) {
+            this.headers = headers;
+            this.headerStyle = headerStyle;
+            writeHeaderRow();
+        }
+
+        Row createRow() {
+            if (rowNum >= maxRows) {
+                sheet = workbook.createSheet(getShardSheetName(sheetName, shards++));
+                rowNum = 0;
+                if (headers != null) {
+                    writeHeaderRow();
+                }
+            }
+            return sheet.createRow(rowNum++);
+        }
+
+        private void writeHeaderRow() {
+            Row headerRow = createRow();
+            for (int col = 0; col < headers.length; col++) {
+                Cell cell = headerRow.createCell(col);
+                cell.setCellValue(headers[col]);
+                cell.setCellStyle(headerStyle);
+            }
+        }
+    }
+
+    private CellStyle createHeaderStyle(Workbook workbook) {
+        CellStyle style = workbook.createCellStyle();
+        Font font = workbook.createFont();
         font.setBold(true);
         font.setColor(IndexedColors.WHITE.getIndex());
         style.setFont(font);
@@ -308,6 +582,12 @@ public class ExportService {
         return style;
     }
 
+    private CellStyle createPercentStyle(Workbook workbook) {
+        CellStyle style = workbook.createCellStyle();
+        style.setDataFormat((short) BuiltinFormats.getBuiltinFormat("0.00%"));
+        return style;
+    }
+
     private String[] getQuestionHeaders(boolean includeVoterName, boolean isArabic) {
         if (isArabic) {
             return includeVoterName ? ExportConstants.Arabic.QUESTION_HEADERS_WITH_VOTER : ExportConstants.Arabic.QUESTION_HEADERS_WITHOUT_VOTER;
@@ -316,134 +596,391 @@ public class ExportService {
         }
     }
 
-    private void writeQuestionResultsHeaderToCsv(CSVWriter csvWriter, boolean includeVoterName, boolean isArabic) {
+    private void writeQuestionResultsHeaderToCsv(Utf8CsvWriter csvWriter, boolean includeVoterName,
+                                                 boolean isArabic) throws IOException {
         String[] headers = getQuestionHeaders(includeVoterName, isArabic);
-        csvWriter.writeNext(headers);
+        csvWriter.writeRow(headers);
     }
 
-    private void writeQuestionResultsWithRespondentsToCsv(JsonNode jsonData, CSVWriter csvWriter,
-                                                          boolean includeVoterName, boolean isArabic) {
-        JsonNode questionResults = jsonData.path("data").path("questionResults");
-        if (!questionResults.isArray()) {
-            return;
-        }
-        for (JsonNode question : questionResults) {
-            String questionNumber = question.path("questionNumber").asText("");
-            String title = question.path("title").asText("");
-            String typeStr = question.path("type").asText("");
-            QuestionType type = QuestionType.fromString(typeStr);
-            if (type.isTextType()) {
-                writeTextQuestionToCsv(csvWriter, questionNumber, title, typeStr, question, includeVoterName);
-            } else if (type.isMultiAnswerType()) {
-                writeMultiAnswerQuestionToCsv(csvWriter, questionNumber, title, typeStr, question, includeVoterName);
-            } else {
-                writeUnknownQuestionTypeToCsv(csvWriter, questionNumber, title, typeStr, includeVoterName, isArabic);
-            }
+    private void writeQuestionToCsv(Utf8CsvWriter csvWriter, JsonNode question, boolean includeVoterName,
+                                    boolean isArabic) throws IOException {
+        String questionNumber = question.path("questionNumber").asText("");
+        String title = question.path("title").asText("");
+        String typeStr = question.path("type").asText("");
+        QuestionType type = QuestionType.fromString(typeStr);
+        if (type.isTextType()) {
+            writeTextQuestionToCsv(csvWriter, questionNumber, title, typeStr, question, includeVoterName);
+        } else if (type.isMultiAnswerType()) {
+            writeMultiAnswerQuestionToCsv(csvWriter, questionNumber, title, typeStr,
+                    displayedAnswers(question.path("answers"), isArabic), includeVoterName);
+        } else {
+            writeUnknownQuestionTypeToCsv(csvWriter, questionNumber, title, typeStr, includeVoterName, isArabic);
         }
     }
 
-    private void writeTextQuestionToCsv(CSVWriter csvWriter, String questionNumber, String title,
-                                        String type, JsonNode question, boolean includeVoterName) {
-        String[] row;
+    private void writeTextQuestionToCsv(Utf8CsvWriter csvWriter, String questionNumber, String title,
+                                        String type, JsonNode question, boolean includeVoterName) throws IOException {
+        csvWriter.field(questionNumber)
+                .field(title)
+                .field(type)
+                .field(question.path("singleAnswer").asText(""))
+                .field("");
         if (includeVoterName) {
-            row = new String[]{
-                    questionNumber,
-                    title,
-                    type,
-                    question.path("singleAnswer").asText(""),
-                    "",
-                    question.path("voterName").asText("")
-            };
-        } else {
-            row = new String[]{
-                    questionNumber,
-                    title,
-                    type,
-                    question.path("singleAnswer").asText(""),
-                    ""
-            };
+            csvWriter.field(question.path("voterName").asText(""));
         }
-        csvWriter.writeNext(row);
+        csvWriter.endRow();
     }
 
-    private void writeMultiAnswerQuestionToCsv(CSVWriter csvWriter, String questionNumber, String title,
-                                               String type, JsonNode question, boolean includeVoterName) {
-        JsonNode answers = question.path("answers");
-        if (!answers.isArray() || answers.size() == 0) {
-            String[] emptyRow;
+    private void writeMultiAnswerQuestionToCsv(Utf8CsvWriter csvWriter, String questionNumber, String title,
+                                               String type, Iterable<JsonNode> answers,
+                                               boolean includeVoterName) throws IOException {
+        if (!answers.iterator().hasNext()) {
+            csvWriter.field(questionNumber).field(title).field(type).field("").field("");
             if (includeVoterName) {
-                emptyRow = new String[]{questionNumber, title, type, "", "", ""};
-            } else {
-                emptyRow = new String[]{questionNumber, title, type, "", ""};
+                csvWriter.field("");
             }
-            csvWriter.writeNext(emptyRow);
+            csvWriter.endRow();
             return;
         }
         for (JsonNode answer : answers) {
-            String[] row;
+            csvWriter.field(questionNumber)
+                    .field(title)
+                    .field(type)
+                    .field(answer.path("name").asText(""))
+                    .plainPercentField(answer.path("answerPercentage").asDouble());
             if (includeVoterName) {
-                row = new String[]{
-                        questionNumber,
-                        title,
-                        type,
-                        answer.path("name").asText(""),
-                        answer.path("answerPercentage").asDouble() + "%",
-                        answer.path("voterName").asText("")
-                };
-            } else {
-                row = new String[]{
-                        questionNumber,
-                        title,
-                        type,
-                        answer.path("name").asText(""),
-                        answer.path("answerPercentage").asDouble() + "%"
-                };
+                csvWriter.field(answer.path("voterName").asText(""));
             }
-            csvWriter.writeNext(row);
+            csvWriter.endRow();
         }
     }
 
-    private void writeUnknownQuestionTypeToCsv(CSVWriter csvWriter, String questionNumber, String title,
-                                               String type, boolean includeVoterName, boolean isArabic) {
+    private void writeUnknownQuestionTypeToCsv(Utf8CsvWriter csvWriter, String questionNumber, String title,
+                                               String type, boolean includeVoterName, boolean isArabic) throws IOException {
         String unknownText = isArabic ? ExportConstants.Arabic.UNKNOWN_QUESTION_TYPE : ExportConstants.English.UNKNOWN_QUESTION_TYPE;
-        String[] row;
+        csvWriter.field(questionNumber).field(title).field(type).field(unknownText).field("");
         if (includeVoterName) {
-            row = new String[]{questionNumber, title, type, unknownText, "", ""};
-        } else {
-            row = new String[]{questionNumber, title, type, unknownText, ""};
+            csvWriter.field("");
         }
-        csvWriter.writeNext(row);
+        csvWriter.endRow();
     }
 
 
-    public ResponseEntity<byte[]> export(JsonNode data, String dataType, boolean isExcel, String lang) {
+    /**
+     * Renders the export into a sink that spills to disk when large; the sink is deleted when the
+     * request completes
+     */
+    public ResponseEntity<Resource> export(JsonNode data, String dataType, boolean isExcel, String lang) {
         try {
             boolean isArabic = lang.equalsIgnoreCase("ar");
+            boolean isCreator = dataType.equalsIgnoreCase("creator");
 
-            byte[] fileData;
+            SpillableOutputStream fileData = exportOutputFactory.create();
             if (isExcel) {
-                fileData = dataType.equalsIgnoreCase("creator")
-                        ? this.exportCreatorExcel(data, isArabic)
-                        : this.exportViewerExcel(data, isArabic);
+                generateExcel(data, isCreator, isArabic, fileData);
             } else {
-                fileData = dataType.equalsIgnoreCase("creator")
-                        ? this.exportCreatorCsv(data, isArabic)
-                        : this.exportViewerCsv(data, isArabic);
+                generateCsvWithUtf8(data, isCreator, isArabic, fileData);
             }
 
-            String voteTitle = data.path("data").path("voteTitle").asText("export").replaceAll("\\s+", "_");
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-            String extension = isExcel ? ".xlsx" : ".csv";
-            String fileName = dataType + "_" + voteTitle + "_" + timestamp + extension;
+            String fileName = buildFileName(dataType, data.path("data").path("voteTitle").asText("export"), isExcel);
 
             MediaType contentType = isExcel ? MediaType.APPLICATION_OCTET_STREAM : MediaType.valueOf("text/csv");
 
             return ResponseEntity.ok()
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName)
                     .contentType(contentType)
-                    .body(fileData);
+                    .body(ExportOutputFactory.toResource(fileData));
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
         }
     }
+
+    /**
+     * Streams the CSV export straight from the request parser to the response. Only the question
+     * currently being written is materialized, so heap use does not grow with the payload.
+     * The file name uses {@code voteTitle} when it precedes {@code questionResults} in the payload.
+     */
+    public void exportCsvStream(JsonParser parser, String dataType, String lang,
+                                HttpServletResponse response) throws IOException {
+        boolean isArabic = lang.equalsIgnoreCase("ar");
+        boolean includeVoterName = dataType.equalsIgnoreCase("creator");
+        try (parser) {
+            Map<String, String> dataFields = new HashMap<>();
+            boolean hasQuestions = seekQuestionResults(parser, dataFields);
+
+            String fileName = buildFileName(dataType, dataFields.getOrDefault("voteTitle", "export"), false);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName);
+            response.setContentType("text/csv");
+
+            writeCsv(response.getOutputStream(), () -> {
+                JsonToken token = hasQuestions ? parser.nextToken() : null;
+                return token == null || token == JsonToken.END_ARRAY ? null : objectMapper.readTree(parser);
+            }, includeVoterName, isArabic);
+        } catch (JsonProcessingException e) {
+            if (response.isCommitted()) {
+                throw e;
+            }
+            response.reset();
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed payload", e);
+        }
+    }
+
+    /**
+     * Writes the Excel export with {@link StreamingXlsxWriter} straight to the response instead
+     * of building a POI workbook. Content matches {@link #export} except that column widths are
+     * derived from the header labels rather than auto-sized. Question rows beyond the sheet row
+     * budget continue on further sheets, which are rendered in parallel.
+     */
+    public void exportExcelStream(JsonNode data, String dataType, String lang,
+                                  HttpServletResponse response) throws IOException {
+        boolean isArabic = lang.equalsIgnoreCase("ar");
+        boolean isCreator = dataType.equalsIgnoreCase("creator");
+
+        String fileName = buildFileName(dataType, data.path("data").path("voteTitle").asText("export"), true);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName);
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+
+        String[] headers = getQuestionHeaders(isCreator, isArabic);
+        double[] columnWidths = estimateColumnWidths(headers);
+        String sheetName = getSheetName(isCreator, isArabic);
+        JsonNode questionResults = data.path("data").path("questionResults");
+        List<SheetShard> shards = planSheetShards(questionResults, isCreator ? MAIN_DATA_ROWS : 0, false);
+
+        List<StreamingXlsxWriter.SheetTask> tasks = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            SheetShard shard = shards.get(i);
+            boolean first = i == 0;
+            tasks.add(new StreamingXlsxWriter.SheetTask(getShardSheetName(sheetName, i), columnWidths, sheet -> {
+                if (first && isCreator) {
+                    writeMainDataHorizontal(data, sheet, isArabic);
+                }
+                writeQuestionResultsWithRespondents(questionResults, sheet, headers, shard, isCreator, isArabic, false);
+            }));
+        }
+        ArrayNode appendix = objectMapper.createArrayNode().addAll(appendixQuestions(questionResults));
+        if (!appendix.isEmpty()) {
+            String appendixName = isArabic ? ExportConstants.Arabic.APPENDIX_SHEET_NAME : ExportConstants.English.APPENDIX_SHEET_NAME;
+            List<SheetShard> appendixShards = planSheetShards(appendix, 0, true);
+            for (int i = 0; i < appendixShards.size(); i++) {
+                SheetShard shard = appendixShards.get(i);
+                tasks.add(new StreamingXlsxWriter.SheetTask(getShardSheetName(appendixName, i), columnWidths,
+                        sheet -> writeQuestionResultsWithRespondents(appendix, sheet, headers, shard, isCreator,
+                                isArabic, true)));
+            }
+        }
+        StreamingXlsxWriter xlsxWriter = new StreamingXlsxWriter(response.getOutputStream(),
+                exportProperties.getExcel().getMaxSharedStrings());
+        xlsxWriter.writeSheets(tasks, exportForkJoinPool);
+        xlsxWriter.close();
+    }
+
+    /**
+     * A run of question result rows that fits on one sheet, starting {@code firstRow} rows into
+     * question {@code firstQuestion}
+     */
+    private record SheetShard(int firstQuestion, int firstRow, int rowCount) {}
+
+    /**
+     * Splits the question rows so that no sheet, including its header row and the
+     * {@code leadingRows} written before it on the first sheet, exceeds the row budget
+     */
+    private List<SheetShard> planSheetShards(JsonNode questionResults, int leadingRows, boolean allAnswers) {
+        int capacity = getMaxRowsPerSheet() - 1;
+        List<SheetShard> shards = new ArrayList<>();
+        int available = capacity - leadingRows;
+        int firstQuestion = 0;
+        int firstRow = 0;
+        int rows = 0;
+        for (int i = 0; i < questionResults.size(); i++) {
+            int remaining = getQuestionRowCount(questionResults.get(i), allAnswers);
+            int offset = 0;
+            while (remaining > 0) {
+                if (rows == available) {
+                    shards.add(new SheetShard(firstQuestion, firstRow, rows));
+                    firstQuestion = i;
+                    firstRow = offset;
+                    rows = 0;
+                    available = capacity;
+                }
+                int taken = Math.min(remaining, available - rows);
+                rows += taken;
+                offset += taken;
+                remaining -= taken;
+            }
+        }
+        shards.add(new SheetShard(firstQuestion, firstRow, rows));
+        return shards;
+    }
+
+    /**
+     * Configured row budget, kept within Excel's limit and large enough for the header rows
+     */
+    private int getMaxRowsPerSheet() {
+        return Math.min(EXCEL_MAX_ROWS, Math.max(MAIN_DATA_ROWS + 2, exportProperties.getExcel().getMaxRowsPerSheet()));
+    }
+
+    private int getQuestionRowCount(JsonNode question, boolean allAnswers) {
+        JsonNode answers = question.path("answers");
+        boolean multiAnswer = QuestionType.fromString(question.path("type").asText("")).isMultiAnswerType();
+        if (!multiAnswer || !answers.isArray() || answers.size() == 0) {
+            return 1;
+        }
+        return allAnswers ? answers.size() : topAnswers().displayedCount(answers);
+    }
+
+    /**
+     * Sheet name for the given shard, kept within Excel's 31 character limit
+     */
+    private String getShardSheetName(String sheetName, int shardIndex) {
+        if (shardIndex == 0) {
+            return sheetName;
+        }
+        String suffix = " (" + (shardIndex + 1) + ")";
+        return sheetName.substring(0, Math.min(sheetName.length(), MAX_SHEET_NAME_LENGTH - suffix.length())) + suffix;
+    }
+
+    private double[] estimateColumnWidths(String[] headers) {
+        double[] widths = new double[headers.length];
+        for (int i = 0; i < headers.length; i++) {
+            widths[i] = Math.max(15, headers[i].length() + 4);
+        }
+        // Question titles and answers are usually much longer than their headers
+        widths[1] = 50;
+        widths[3] = 40;
+        return widths;
+    }
+
+    private void writeMainDataHorizontal(JsonNode jsonData, StreamingXlsxWriter.SheetWriter sheet,
+                                         boolean isArabic) throws IOException {
+        JsonNode mainData = jsonData.path("data");
+        sheet.startRow();
+        sheet.cell(isArabic ? ExportConstants.Arabic.MAIN_DATA_TITLE : ExportConstants.English.MAIN_DATA_TITLE, Style.HEADER);
+        Map<String, String> fieldLabels = isArabic ? ExportConstants.Arabic.FIELD_LABELS : ExportConstants.English.FIELD_LABELS;
+        List<String> keys = new ArrayList<>();
+        sheet.startRow();
+        for (Map.Entry<String, String> field : fieldLabels.entrySet()) {
+            String key = field.getKey();
+            if ((key.equals("endDate") && !mainData.has("endDate")) ||
+                    (key.equals("endTime") && !mainData.has("endTime"))) {
+                continue;
+            }
+            sheet.cell(field.getValue(), Style.HEADER);
+            keys.add(key);
+        }
+        sheet.startRow();
+        for (String key : keys) {
+            sheet.cell(mainData.path(key).asText(""));
+        }
+        sheet.endRow();
+    }
+
+    private void writeQuestionResultsWithRespondents(JsonNode questionResults, StreamingXlsxWriter.SheetWriter sheet,
+                                                     String[] headers, SheetShard shard, boolean includeVoterName,
+                                                     boolean isArabic, boolean allAnswers) throws IOException {
+        if (!questionResults.isArray()) {
+            return;
+        }
+        sheet.startRow();
+        for (String header : headers) {
+            sheet.cell(header, Style.HEADER);
+        }
+        sheet.endRow();
+        int rows = shard.rowCount();
+        int offset = shard.firstRow();
+        for (int i = shard.firstQuestion(); rows > 0; i++, offset = 0) {
+            JsonNode question = questionResults.get(i);
+            String questionNumber = question.path("questionNumber").asText("");
+            String title = question.path("title").asText("");
+            String typeStr = question.path("type").asText("");
+            QuestionType type = QuestionType.fromString(typeStr);
+            JsonNode answerNodes = question.path("answers");
+            if (type.isMultiAnswerType() && answerNodes.isArray() && answerNodes.size() > 0) {
+                List<JsonNode> answers = allAnswers ? null : displayedAnswers(answerNodes, isArabic);
+                int answerCount = allAnswers ? answerNodes.size() : answers.size();
+                for (int a = offset; a < answerCount && rows > 0; a++, rows--) {
+                    JsonNode answer = allAnswers ? answerNodes.get(a) : answers.get(a);
+                    writeAnswerRow(sheet, questionNumber, title, typeStr, answer.path("name").asText(""),
+                            answer.path("answerPercentage").asDouble() / 100,
+                            includeVoterName ? answer.path("voterName").asText("") : null);
+                }
+                continue;
+            }
+            if (type.isTextType()) {
+                writeQuestionRow(sheet, questionNumber, title, typeStr, question.path("singleAnswer").asText(""), "",
+                        includeVoterName ? question.path("voterName").asText("") : null);
+            } else if (type.isMultiAnswerType()) {
+                writeQuestionRow(sheet, questionNumber, title, typeStr, "", "", includeVoterName ? "" : null);
+            } else {
+                String unknownText = isArabic ? ExportConstants.Arabic.UNKNOWN_QUESTION_TYPE : ExportConstants.English.UNKNOWN_QUESTION_TYPE;
+                writeQuestionRow(sheet, questionNumber, title, typeStr, unknownText, "", includeVoterName ? "" : null);
+            }
+            rows--;
+        }
+    }
+
+    private void writeAnswerRow(StreamingXlsxWriter.SheetWriter sheet, String questionNumber, String title, String type,
+                                String answer, double percentage, String voterName) throws IOException {
+        sheet.startRow();
+        sheet.cell(questionNumber);
+        sheet.cell(title);
+        sheet.cell(type);
+        sheet.cell(answer);
+        sheet.cell(percentage, Style.PERCENT);
+        if (voterName != null) {
+            sheet.cell(voterName);
+        }
+        sheet.endRow();
+    }
+
+    private void writeQuestionRow(StreamingXlsxWriter.SheetWriter sheet, String questionNumber, String title, String type,
+                                  String answer, String percentage, String voterName) throws IOException {
+        sheet.startRow();
+        sheet.cell(questionNumber);
+        sheet.cell(title);
+        sheet.cell(type);
+        sheet.cell(answer);
+        sheet.cell(percentage);
+        if (voterName != null) {
+            sheet.cell(voterName);
+        }
+        sheet.endRow();
+    }
+
+    /**
+     * Advances the parser to the opening of {@code data.questionResults}, collecting the scalar
+     * {@code data} fields that come before it.
+     *
+     * @return false if the payload has no questionResults array
+     */
+    private boolean seekQuestionResults(JsonParser parser, Map<String, String> dataFields) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("data".equals(field) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String dataField = parser.currentName();
+                    JsonToken dataValue = parser.nextToken();
+                    if ("questionResults".equals(dataField) && dataValue == JsonToken.START_ARRAY) {
+                        return true;
+                    }
+                    if (dataValue.isScalarValue()) {
+                        dataFields.put(dataField, parser.getValueAsString(""));
+                    }
+                    parser.skipChildren();
+                }
+                return false;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private String buildFileName(String dataType, String voteTitle, boolean isExcel) {
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+        String extension = isExcel ? ".xlsx" : ".csv";
+        return dataType + "_" + voteTitle.replaceAll("\\s+", "_") + "_" + timestamp + extension;
+    }
 }
@@ -0,0 +1,351 @@
+package com.election.service;
+
+import com.election.config.ExportProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.StampingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Election PDF for running elections that grows by PDF incremental updates instead of being
+ * rendered again.
+ * <p>
+ * The first request for an election renders the full report. Each later request with changed
+ * results opens the document in iText append mode and adds a results page as a new revision.
+ * Only the update is written to the file and sent to clients that already have revision
+ * {@code since}, which they append to their copy to get the current document. The time of a
+ * revision still grows with the document: iText parses its cross-reference sections and copies
+ * all of its original bytes through the writer before the update (the copy is discarded), which
+ * costs several milliseconds per megabyte of history. {@code max-revisions} bounds that cost.
+ * <p>
+ * Documents are kept in {@code export.live-pdf.directory} for the life of the process only.
+ * After {@code export.live-pdf.max-revisions} revisions the report is rendered afresh and
+ * revision numbers continue from there. Past {@code export.live-pdf.max-elections}, the least
+ * recently requested document is dropped; its file is deleted under the document's own lock, so
+ * a request already working on it finishes first, and later ones start a new document. New
+ * documents number their revisions past any dropped one, so a revision from a dropped document
+ * is never taken for one of the new document.
+ */
+@Slf4j
+@Service
+public class LiveElectionPdfService {
+
+    public static final String REVISION_HEADER = "X-Pdf-Revision";
+    public static final String INCREMENTAL_HEADER = "X-Pdf-Incremental";
+    public static final String OFFSET_HEADER = "X-Pdf-Offset";
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static final class LiveDocument {
+        // Revision of the first rendering
+        final long startRevision;
+        Path file;
+        // Revision number of the first entry in ends
+        long firstRevision;
+        // File length after each revision
+        final List<Long> ends = new ArrayList<>();
+        byte[] payloadHash;
+        // Set once the document has left the map; its file is then deleted
+        volatile boolean evicted;
+        volatile long lastRevision;
+
+        LiveDocument(long startRevision) {
+            this.startRevision = startRevision;
+        }
+
+        long revision() {
+            return firstRevision + ends.size() - 1;
+        }
+    }
+
+    private final ElectionServicePdf electionServicePdf;
+    private final Path directory;
+    private final int maxRevisions;
+    // Least recently requested elections are dropped first; guarded by itself
+    private final Map<String, LiveDocument> documents;
+    // Dropped from documents but not yet deleted; guarded by documents
+    private final List<LiveDocument> evicted = new ArrayList<>();
+    // Highest revision a dropped document may have sent; guarded by documents
+    private long droppedRevision;
+
+    public LiveElectionPdfService(ElectionServicePdf electionServicePdf, ExportProperties exportProperties) throws IOException {
+        ExportProperties.LivePdf settings = exportProperties.getLivePdf();
+        this.electionServicePdf = electionServicePdf;
+        this.directory = StringUtils.hasText(settings.getDirectory())
+                ? Path.of(settings.getDirectory())
+                : Path.of(System.getProperty("java.io.tmpdir"), "multiexport-live-pdf");
+        this.maxRevisions = Math.max(1, settings.getMaxRevisions());
+        int maxElections = Math.max(1, settings.getMaxElections());
+        this.documents = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LiveDocument> eldest) {
+                if (size() > maxElections) {
+                    // Another request may hold the document, so the file is deleted outside this lock
+                    LiveDocument document = eldest.getValue();
+                    document.evicted = true;
+                    // A request working on it may still add one revision
+                    droppedRevision = Math.max(droppedRevision, document.lastRevision + 1);
+                    evicted.add(document);
+                    return true;
+                }
+                return false;
+            }
+        };
+        Files.createDirectories(directory);
+        // Documents from an earlier run have no revision index and cannot be extended
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "*.pdf")) {
+            stale.forEach(LiveElectionPdfService::deleteQuietly);
+        }
+    }
+
+    /**
+     * Records the payload as the latest state of its election and returns either the bytes added
+     * after revision {@code since} or, when the client has no usable revision, the whole document
+     */
+    public ResponseEntity<Resource> export(JsonNode rootNode, Long since) throws IOException {
+        JsonNode dataNode = rootNode.has("data") ? rootNode.path("data") : rootNode;
+        String electionId = dataNode.path("electionId").asText("");
+        if (electionId.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Live PDFs need data.electionId");
+        }
+        Served served = null;
+        while (served == null) {
+            LiveDocument document;
+            List<LiveDocument> dropped;
+            synchronized (documents) {
+                document = documents.computeIfAbsent(electionId, id -> new LiveDocument(droppedRevision + 1));
+                dropped = new ArrayList<>(evicted);
+                evicted.clear();
+            }
+            dropped.forEach(LiveElectionPdfService::discard);
+            served = serve(document, rootNode, since);
+        }
+        long start = served.start();
+        long end = served.end();
+        long revision = served.revision();
+        InputStream body = served.body();
+
+        String electionName = dataNode.path("electionName").asText("election_report");
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(REVISION_HEADER, Long.toString(revision));
+        headers.set(INCREMENTAL_HEADER, Boolean.toString(start > 0));
+        if (start > 0) {
+            headers.set(OFFSET_HEADER, Long.toString(start));
+            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+            headers.setContentDisposition(ContentDisposition.attachment()
+                    .filename(electionName + "-r" + since + "-r" + revision + ".pdfupdate").build());
+        } else {
+            headers.setContentType(MediaType.APPLICATION_PDF);
+            headers.setContentDisposition(ContentDisposition.attachment().filename(electionName + ".pdf").build());
+        }
+        headers.setContentLength(end - start);
+        return ResponseEntity.ok().headers(headers).body(new InputStreamResource(body));
+    }
+
+    private record Served(long start, long end, long revision, InputStream body) {
+    }
+
+    /**
+     * Brings the document up to date and opens the bytes to send, or returns null when the
+     * document was dropped before its lock was taken
+     */
+    private Served serve(LiveDocument document, JsonNode rootNode, Long since) throws IOException {
+        synchronized (document) {
+            if (document.evicted) {
+                return null;
+            }
+            update(document, rootNode);
+            long revision = document.revision();
+            long end = document.ends.get(document.ends.size() - 1);
+            boolean incremental = since != null && since >= document.firstRevision && since <= revision;
+            long start = incremental ? document.ends.get((int) (since - document.firstRevision)) : 0;
+            // Opened under the lock; a compaction may replace the file once it is released
+            return new Served(start, end, revision, slice(document.file, start, end));
+        }
+    }
+
+    /**
+     * Deletes a dropped document's file once no request is working on it
+     */
+    private static void discard(LiveDocument document) {
+        synchronized (document) {
+            if (document.file != null) {
+                deleteQuietly(document.file);
+                document.file = null;
+            }
+        }
+    }
+
+    private void update(LiveDocument document, JsonNode rootNode) throws IOException {
+        byte[] hash = sha256(rootNode);
+        if (document.file != null && Arrays.equals(hash, document.payloadHash)) {
+            return;
+        }
+        if (document.file == null || document.ends.size() >= maxRevisions) {
+            render(document, rootNode);
+        } else {
+            append(document, rootNode);
+        }
+        document.payloadHash = hash;
+        document.lastRevision = document.revision();
+    }
+
+    private void render(LiveDocument document, JsonNode rootNode) throws IOException {
+        Path file = Files.createTempFile(directory, "live-", ".pdf");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), COPY_BUFFER_SIZE)) {
+            electionServicePdf.writeReport(rootNode, out);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+        long next = document.file == null ? document.startRevision : document.revision() + 1;
+        if (document.file != null) {
+            deleteQuietly(document.file);
+        }
+        document.file = file;
+        document.firstRevision = next;
+        document.ends.clear();
+        document.ends.add(Files.size(file));
+        log.info("Rendered live election PDF revision {} ({} bytes)", next, Files.size(file));
+    }
+
+    private void append(LiveDocument document, JsonNode rootNode) throws IOException {
+        long length = document.ends.get(document.ends.size() - 1);
+        Path update = Files.createTempFile(directory, "update-", ".tmp");
+        try {
+            try (OutputStream out = new SkippingOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(update), COPY_BUFFER_SIZE), length);
+                 PdfDocument pdf = new PdfDocument(new PdfReader(document.file.toString()), new PdfWriter(out),
+                         new StampingProperties().useAppendMode())) {
+                electionServicePdf.appendResultsUpdate(rootNode, pdf);
+            }
+            try (FileChannel target = FileChannel.open(document.file, StandardOpenOption.WRITE);
+                 FileChannel source = FileChannel.open(update, StandardOpenOption.READ)) {
+                // Drop anything a failed earlier append left behind
+                target.truncate(length);
+                target.position(length);
+                long size = source.size();
+                for (long done = 0; done < size; ) {
+                    done += source.transferTo(done, size - done, target);
+                }
+                target.force(false);
+            }
+            document.ends.add(Files.size(document.file));
+            log.debug("Appended live election PDF revision {} ({} bytes)", document.revision(), Files.size(update));
+        } finally {
+            deleteQuietly(update);
+        }
+    }
+
+    private static InputStream slice(Path file, long start, long end) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        channel.position(start);
+        return new FilterInputStream(Channels.newInputStream(channel)) {
+            private long remaining = end - start;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int b = super.read();
+                if (b >= 0) {
+                    remaining--;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int n = super.read(b, off, (int) Math.min(len, remaining));
+                if (n > 0) {
+                    remaining -= n;
+                }
+                return n;
+            }
+        };
+    }
+
+    private static byte[] sha256(JsonNode rootNode) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(rootNode.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete live PDF file {}", file, e);
+        }
+    }
+
+    /**
+     * Discards the first {@code skip} bytes written, which in append mode are the unchanged
+     * original document. iText still reads and writes them; only the file write is saved.
+     */
+    private static final class SkippingOutputStream extends FilterOutputStream {
+        private long skip;
+
+        SkippingOutputStream(OutputStream out, long skip) {
+            super(out);
+            this.skip = skip;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (skip > 0) {
+                skip--;
+            } else {
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int skipped = (int) Math.min(skip, len);
+            skip -= skipped;
+            if (len > skipped) {
+                out.write(b, off + skipped, len - skipped);
+            }
+        }
+    }
+}
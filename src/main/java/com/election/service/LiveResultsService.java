@@ -0,0 +1,324 @@
+package com.election.service;
+
+import com.election.config.ExportProperties;
+import com.election.web.EventStream;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pushes live election standings to server-sent event subscribers as uploaded snapshots change.
+ * <p>
+ * Each snapshot is reduced to candidate vote counts, {@code insights} fields and question answer
+ * percentages, and only values that differ from the previous snapshot are broadcast. A new
+ * subscriber first receives all current values. Every event carries a {@code version} and
+ * objects to merge into the client's state: {@code candidates}, {@code insights} and
+ * {@code answers} keyed by question number and answer name. A {@code null} value means the key
+ * is no longer in the snapshot and is to be removed from the client's state, together with
+ * anything under it: {@code {"answers":{"3":null}}} drops question 3.
+ * <p>
+ * Subscribers are served on async requests by a small dispatch pool, and events are written
+ * without blocking: a client that has not taken its last event is skipped until it has, so it
+ * holds no thread however slowly it reads. Each subscriber remembers the last snapshot it was
+ * sent, and an event is computed when it is written: a client that is up to date gets the shared
+ * difference to the previous snapshot, one that fell behind gets the difference from what it
+ * last received. A slow client therefore gets fewer, larger events instead of a growing backlog,
+ * and removals are never lost by folding events together. A client that has taken nothing for
+ * {@code send-timeout} is disconnected the next time there is something to send it.
+ */
+@Slf4j
+@Service
+public class LiveResultsService {
+
+    public record Published(long version, int changedValues, int subscribers) {
+    }
+
+    private static final String CANDIDATES = "candidates";
+    private static final String INSIGHTS = "insights";
+    private static final String ANSWERS = "answers";
+    private static final long IDLE = Long.MIN_VALUE;
+
+    /**
+     * The changes one snapshot made to the previous one, written once for every subscriber that
+     * was up to date
+     */
+    private record Update(long version, String json) {
+    }
+
+    private final class Election {
+        final String id;
+        final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        // Guarded by this; current is replaced, never modified
+        long version;
+        ObjectNode current = objectMapper.createObjectNode();
+        Update latest;
+
+        Election(String id) {
+            this.id = id;
+        }
+    }
+
+    private final class Subscriber {
+        final Election election;
+        final EventStream stream;
+        // Guarded by this
+        boolean pending;
+        boolean scheduled;
+        // What the client was last sent
+        long sentVersion;
+        ObjectNode sent = objectMapper.createObjectNode();
+        // System.nanoTime() when the client stopped taking events, IDLE while it keeps up
+        long stalledSince = IDLE;
+
+        Subscriber(Election election, EventStream stream) {
+            this.election = election;
+            this.stream = stream;
+        }
+
+        void signal() {
+            synchronized (this) {
+                pending = true;
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
+            dispatchExecutor.execute(this::drain);
+        }
+
+        private synchronized void drain() {
+            scheduled = false;
+            write();
+        }
+
+        /**
+         * Sends the latest changes for as long as the client takes them. Runs on a dispatch thread
+         * when signalled, and on a container thread once a client that fell behind has caught up.
+         */
+        synchronized void write() {
+            try {
+                while (stream.isReady()) {
+                    stalledSince = IDLE;
+                    if (!pending) {
+                        return;
+                    }
+                    pending = false;
+                    long version;
+                    ObjectNode current;
+                    Update latest;
+                    synchronized (election) {
+                        version = election.version;
+                        current = election.current;
+                        latest = election.latest;
+                    }
+                    if (version == sentVersion) {
+                        continue;
+                    }
+                    // A client that missed versions, or was never sent any, gets its own difference
+                    String json = latest != null && latest.version() == version && sentVersion == version - 1
+                            ? latest.json() : event(version, diff(sent, current));
+                    stream.send(Long.toString(version), "update", json);
+                    sent = current;
+                    sentVersion = version;
+                }
+                long now = System.nanoTime();
+                if (stalledSince == IDLE) {
+                    stalledSince = now;
+                } else if (now - stalledSince > sendTimeoutNanos) {
+                    log.warn("Dropping a subscriber of {} that has not taken an event for {} ms", election.id,
+                            (now - stalledSince) / 1_000_000);
+                    close();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The client went away
+                close();
+            }
+        }
+
+        void close() {
+            election.subscribers.remove(this);
+            stream.close();
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final TaskExecutor dispatchExecutor;
+    private final ExportProperties.Live settings;
+    private final long sendTimeoutNanos;
+    // Least recently published or subscribed elections are dropped first; guarded by itself
+    private final Map<String, Election> elections;
+
+    public LiveResultsService(ObjectMapper objectMapper,
+                              @Qualifier("liveDispatchExecutor") TaskExecutor liveDispatchExecutor,
+                              ExportProperties exportProperties) {
+        this.objectMapper = objectMapper;
+        this.dispatchExecutor = liveDispatchExecutor;
+        this.settings = exportProperties.getLive();
+        this.sendTimeoutNanos = settings.getSendTimeout().toNanos();
+        int maxElections = Math.max(1, settings.getMaxElections());
+        this.elections = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Election> eldest) {
+                if (size() > maxElections) {
+                    eldest.getValue().subscribers.forEach(subscriber -> subscriber.stream.close());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Starts an event stream for the election on the request
+     */
+    public void subscribe(String electionId, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        Election election = admit(electionId);
+        register(election, EventStream.open(request, response, settings.getEmitterTimeout()));
+    }
+
+    /**
+     * Subscribes a stream the caller opened
+     */
+    void subscribe(String electionId, EventStream stream) {
+        register(admit(electionId), stream);
+    }
+
+    private Election admit(String electionId) {
+        Election election = election(electionId);
+        if (election.subscribers.size() >= settings.getMaxSubscribers()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many subscribers for " + electionId);
+        }
+        return election;
+    }
+
+    private void register(Election election, EventStream stream) {
+        Subscriber subscriber = new Subscriber(election, stream);
+        stream.onWritable(subscriber::write);
+        stream.onClose(() -> election.subscribers.remove(subscriber));
+        election.subscribers.add(subscriber);
+        // Anything published from here on signals the subscriber as well
+        subscriber.signal();
+    }
+
+    /**
+     * Takes an uploaded election payload as the latest snapshot and broadcasts what changed
+     */
+    public Published publish(String electionId, JsonNode rootNode) {
+        JsonNode dataNode = rootNode.has("data") ? rootNode.path("data") : rootNode;
+        ObjectNode values = extract(dataNode);
+        Election election = election(electionId);
+        Published published;
+        synchronized (election) {
+            ObjectNode changes = diff(election.current, values);
+            int changed = count(changes);
+            if (changed == 0) {
+                return new Published(election.version, 0, election.subscribers.size());
+            }
+            election.version++;
+            election.current = values;
+            election.latest = new Update(election.version, event(election.version, changes));
+            published = new Published(election.version, changed, election.subscribers.size());
+        }
+        // Signalled outside the lock, which a subscriber takes while holding its own
+        for (Subscriber subscriber : election.subscribers) {
+            subscriber.signal();
+        }
+        log.debug("Published version {} of {} with {} changes to {} subscribers", published.version(), election.id,
+                published.changedValues(), published.subscribers());
+        return published;
+    }
+
+    private Election election(String electionId) {
+        synchronized (elections) {
+            return elections.computeIfAbsent(electionId, Election::new);
+        }
+    }
+
+    private ObjectNode extract(JsonNode dataNode) {
+        ObjectNode values = objectMapper.createObjectNode();
+        ObjectNode candidates = values.putObject(CANDIDATES);
+        for (JsonNode candidate : dataNode.path("resultsSummary")) {
+            candidates.put(candidate.path("candidateName").asText("N/A"), candidate.path("numberOfVoters").asInt(0));
+        }
+        ObjectNode insights = values.putObject(INSIGHTS);
+        dataNode.path("insights").fields().forEachRemaining(field -> {
+            if (field.getValue().isValueNode()) {
+                insights.set(field.getKey(), field.getValue());
+            }
+        });
+        ObjectNode answers = values.putObject(ANSWERS);
+        for (JsonNode question : dataNode.path("questionResults")) {
+            ObjectNode percentages = answers.putObject(question.path("questionNumber").asText(""));
+            for (JsonNode answer : question.path("answers")) {
+                percentages.put(answer.path("name").asText(""), answer.path("answerPercentage").asDouble(0.0));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Values in {@code next} that are new or different from {@code previous}, and {@code null}
+     * for keys of {@code previous} that {@code next} no longer has, at any depth
+     */
+    private ObjectNode diff(ObjectNode previous, ObjectNode next) {
+        ObjectNode changes = objectMapper.createObjectNode();
+        Iterator<Map.Entry<String, JsonNode>> fields = next.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode before = previous.get(field.getKey());
+            if (field.getValue().isObject()) {
+                ObjectNode nested = diff(before != null && before.isObject() ? (ObjectNode) before
+                        : objectMapper.createObjectNode(), (ObjectNode) field.getValue());
+                if (!nested.isEmpty()) {
+                    changes.set(field.getKey(), nested);
+                }
+            } else if (!field.getValue().equals(before)) {
+                changes.set(field.getKey(), field.getValue());
+            }
+        }
+        previous.fieldNames().forEachRemaining(name -> {
+            if (!next.has(name)) {
+                changes.putNull(name);
+            }
+        });
+        return changes;
+    }
+
+    private static int count(JsonNode changes) {
+        int count = 0;
+        for (JsonNode value : changes) {
+            count += value.isObject() ? count(value) : 1;
+        }
+        return count;
+    }
+
+    private String event(long version, ObjectNode changes) {
+        changes.put("version", version);
+        return write(changes);
+    }
+
+    private String write(ObjectNode values) {
+        try {
+            return objectMapper.writeValueAsString(values);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package com.election.service;
 
+import com.election.aggregate.TopAnswers;
+import com.election.config.ExportProperties;
+import com.election.io.SegmentedByteBuffer;
+import com.election.io.SpillableOutputStream;
+import com.election.web.ExportOutputFactory;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.itextpdf.io.image.ImageDataFactory;
 import com.itextpdf.kernel.colors.ColorConstants;
 import com.itextpdf.kernel.colors.DeviceRgb;
 import com.itextpdf.kernel.geom.Rectangle;
@@ -14,6 +17,8 @@ import com.itextpdf.layout.element.*;
 import com.itextpdf.layout.element.Image;
 import com.itextpdf.layout.property.TextAlignment;
 import com.itextpdf.layout.property.UnitValue;
+import com.itextpdf.kernel.utils.PdfMerger;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
@@ -24,53 +29,93 @@ import org.jfree.chart.plot.CategoryPlot;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.renderer.category.BarRenderer;
 import org.jfree.data.category.DefaultCategoryDataset;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class PdfService {
 
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
-
     private static final float HEADER_HEIGHT = 80f;
 
-    private static final Set<String> CHARTABLE_TYPES = Set.of("RATING_STARS", "RATING_RANGE", "RANKING");
+    static final Set<String> CHARTABLE_TYPES = Set.of("RATING_STARS", "RATING_RANGE", "RANKING");
     private static final DeviceRgb HEADER_COLOR = new DeviceRgb(79, 29, 123);
     private static final DeviceRgb SECTION_COLOR = new DeviceRgb(44, 62, 80);
     private static final Color BAR_COLOR = new Color(0xa5, 0x4f, 0xe0);
 
+    private static final String APPENDIX_TITLE = "Appendix: All Answers";
+
     private static final float CHART_WIDTH = 600f;
     private static final float CHART_HEIGHT = 350f;
 
-    public ByteArrayResource generateDemandCommitteePdf(String jsonString) {
+    private final ExportProperties exportProperties;
+    private final ForkJoinPool exportForkJoinPool;
+    private final ExportOutputFactory exportOutputFactory;
+    private final ChartRasterizer chartRasterizer = new ChartRasterizer((int) CHART_WIDTH, (int) CHART_HEIGHT,
+            Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Renders the charts PDF as a download response; failures are answered with a 500
+     */
+    public ResponseEntity<Resource> export(JsonNode rootNode) {
+        try {
+            String voteTitle = rootNode.path("data").path("voteTitle").asText("Vote");
+            Resource pdfResource = generateDemandCommitteePdf(rootNode);
+
+            String fileName = voteTitle + " Results.pdf";
+            HttpHeaders headers = new HttpHeaders();
+            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+            headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_PDF_VALUE);
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(pdfResource);
+        } catch (Exception e) {
+            log.error("Error generating PDF", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    public Resource generateDemandCommitteePdf(JsonNode rootNode) {
         try {
-            JsonNode rootNode = OBJECT_MAPPER.readTree(jsonString);
             JsonNode dataNode = rootNode.path("data");
 
             PdfMetadata metadata = extractMetadata(dataNode);
             Map<String, List<JsonNode>> questionsByType = groupQuestionsByType(dataNode.path("questionResults"));
+            List<JsonNode> appendix = appendixQuestions(dataNode.path("questionResults"));
 
-            try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                 PdfWriter writer = new PdfWriter(baos);
+            int questionCount = questionsByType.values().stream().mapToInt(List::size).sum();
+            SpillableOutputStream output = exportOutputFactory.create();
+            if (questionCount >= exportProperties.getPdf().getParallelThreshold()) {
+                generateChunkedPdf(metadata, questionsByType, appendix, output);
+                return ExportOutputFactory.toResource(output);
+            }
+
+            try (PdfWriter writer = new PdfWriter(output);
                  PdfDocument pdfDoc = new PdfDocument(writer);
-                 Document document = new Document(pdfDoc)) {
+                 // Pages stay open until the total is known for the page numbers
+                 Document document = new Document(pdfDoc, pdfDoc.getDefaultPageSize(), false)) {
 
-                generatePdfContent(document, pdfDoc, metadata, questionsByType);
-                document.close();
-                return new ByteArrayResource(baos.toByteArray());
+                generatePdfContent(document, pdfDoc, metadata, questionsByType, appendix);
+                document.flush();
+                drawPageNumbers(pdfDoc);
             }
+            return ExportOutputFactory.toResource(output);
         } catch (Exception e) {
             log.error("Error generating PDF: ", e);
             throw new RuntimeException("Failed to generate PDF", e);
@@ -112,8 +157,24 @@ public class PdfService {
         return questionsByType;
     }
 
-    private void generatePdfContent(Document document, PdfDocument pdfDoc,
-                                    PdfMetadata metadata, Map<String, List<JsonNode>> questionsByType) throws Exception {
+    /**
+     * Questions whose answers were cut to the top answers, to be listed in full at the end
+     */
+    private List<JsonNode> appendixQuestions(JsonNode questionResults) {
+        List<JsonNode> appendix = new ArrayList<>();
+        if (exportProperties.getTopAnswers().isAppendix() && questionResults.isArray()) {
+            TopAnswers topAnswers = topAnswers();
+            for (JsonNode question : questionResults) {
+                if (hasAnswers(question) && topAnswers.truncates(question.get("answers"))) {
+                    appendix.add(question);
+                }
+            }
+        }
+        return appendix;
+    }
+
+    private void generatePdfContent(Document document, PdfDocument pdfDoc, PdfMetadata metadata,
+                                    Map<String, List<JsonNode>> questionsByType, List<JsonNode> appendix) throws Exception {
         String headerTitle = metadata.voteTitle() + " Results";
         drawHeader(pdfDoc, document, headerTitle, metadata);
         document.setMargins(50, 30, 20, 30);
@@ -137,6 +198,128 @@ public class PdfService {
                 processQuestionsInTable(document, questions);
             }
         });
+
+        if (!appendix.isEmpty()) {
+            addSectionTitle(document, APPENDIX_TITLE);
+            processAppendix(document, appendix);
+        }
+    }
+
+    /**
+     * One independently rendered slice of the report. The section title is only set on the
+     * first chunk of a section so that split sections read as one after merging.
+     */
+    private record PdfChunk(String sectionTitle, boolean charts, boolean appendix, List<JsonNode> questions) {}
+
+    /**
+     * Renders the report as fixed-size question ranges on the fork-join pool, then stitches the
+     * parts in order with {@link PdfMerger}. The header and page numbers depend on the final page
+     * layout, so they are drawn on the merged document rather than on the parts, the header beneath
+     * the first page's content as in {@link #generatePdfContent}.
+     */
+    private void generateChunkedPdf(PdfMetadata metadata, Map<String, List<JsonNode>> questionsByType,
+                                    List<JsonNode> appendix, OutputStream out) throws Exception {
+        List<PdfChunk> chunks = planChunks(questionsByType, appendix);
+        log.debug("Rendering PDF in {} parallel chunks", chunks.size());
+
+        List<ForkJoinTask<byte[]>> tasks = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            PdfChunk chunk = chunks.get(i);
+            boolean first = i == 0;
+            tasks.add(exportForkJoinPool.submit(() -> renderChunk(chunk, first)));
+        }
+
+        try (PdfDocument merged = new PdfDocument(new PdfWriter(out))) {
+            PdfMerger merger = new PdfMerger(merged);
+            for (ForkJoinTask<byte[]> task : tasks) {
+                try (PdfDocument part = new PdfDocument(new PdfReader(new ByteArrayInputStream(task.join())))) {
+                    merger.merge(part, 1, part.getNumberOfPages());
+                }
+            }
+            PdfPage firstPage = merged.getFirstPage();
+            drawHeaderOnPage(new PdfCanvas(firstPage.newContentStreamBefore(), firstPage.getResources(), merged),
+                    firstPage, metadata.voteTitle() + " Results", metadata);
+            drawPageNumbers(merged);
+        }
+    }
+
+    private List<PdfChunk> planChunks(Map<String, List<JsonNode>> questionsByType, List<JsonNode> appendix) {
+        int chunkSize = Math.max(1, exportProperties.getPdf().getChunkSize());
+        List<PdfChunk> chunks = new ArrayList<>();
+        for (String chartType : CHARTABLE_TYPES) {
+            List<JsonNode> questions = questionsByType.get(chartType);
+            if (questions != null && !questions.isEmpty()) {
+                List<JsonNode> answered = questions.stream().filter(this::hasAnswers).toList();
+                addChunks(chunks, "Votes by " + formatQuestionType(chartType), true, false, answered, chunkSize);
+            }
+        }
+        questionsByType.forEach((type, questions) -> {
+            if (!CHARTABLE_TYPES.contains(type) && !questions.isEmpty()) {
+                addChunks(chunks, "Votes by " + formatQuestionType(type), false, false, questions, chunkSize);
+            }
+        });
+        if (!appendix.isEmpty()) {
+            addChunks(chunks, APPENDIX_TITLE, false, true, appendix, chunkSize);
+        }
+        return chunks;
+    }
+
+    private void addChunks(List<PdfChunk> chunks, String sectionTitle, boolean charts, boolean appendix,
+                           List<JsonNode> questions, int chunkSize) {
+        if (questions.isEmpty()) {
+            chunks.add(new PdfChunk(sectionTitle, charts, appendix, questions));
+            return;
+        }
+        for (int from = 0; from < questions.size(); from += chunkSize) {
+            List<JsonNode> range = questions.subList(from, Math.min(from + chunkSize, questions.size()));
+            chunks.add(new PdfChunk(from == 0 ? sectionTitle : null, charts, appendix, range));
+        }
+    }
+
+    private byte[] renderChunk(PdfChunk chunk, boolean first) throws Exception {
+        SegmentedByteBuffer baos = new SegmentedByteBuffer();
+        try {
+            try (PdfDocument pdfDoc = new PdfDocument(new PdfWriter(baos));
+                 Document document = new Document(pdfDoc)) {
+                if (first) {
+                    // Leave the first page blank at the top, the header is drawn after merging
+                    pdfDoc.addNewPage();
+                }
+                document.setMargins(50, 30, 20, 30);
+                if (first) {
+                    document.add(createSpacer(10));
+                }
+                if (chunk.sectionTitle() != null) {
+                    addSectionTitle(document, chunk.sectionTitle());
+                }
+                if (chunk.appendix()) {
+                    processAppendix(document, chunk.questions());
+                } else if (chunk.charts()) {
+                    for (JsonNode question : chunk.questions()) {
+                        processChartQuestion(document, question);
+                    }
+                } else {
+                    processQuestionsInTable(document, chunk.questions());
+                }
+            }
+            return baos.toByteArray();
+        } finally {
+            baos.release();
+        }
+    }
+
+    private void drawPageNumbers(PdfDocument pdfDoc) {
+        int totalPages = pdfDoc.getNumberOfPages();
+        for (int i = 1; i <= totalPages; i++) {
+            PdfPage page = pdfDoc.getPage(i);
+            Rectangle pageSize = page.getPageSize();
+            try (Canvas canvas = new Canvas(new PdfCanvas(page), pageSize)) {
+                canvas.showTextAligned(new Paragraph("Page " + i + " of " + totalPages)
+                                .setFontSize(8)
+                                .setFontColor(ColorConstants.GRAY),
+                        pageSize.getWidth() / 2, 8, TextAlignment.CENTER);
+            }
+        }
     }
 
     private String formatQuestionType(String type) {
@@ -157,13 +340,19 @@ public class PdfService {
 
     private void drawHeader(PdfDocument pdfDoc, Document document, String headerText, PdfMetadata metadata) {
         if (pdfDoc.getNumberOfPages() == 0) {
-            PdfPage firstPage = pdfDoc.addNewPage();
-            PdfCanvas pdfCanvas = new PdfCanvas(firstPage);
-            drawHeaderBackground(pdfCanvas, firstPage);
-            drawHeaderText(pdfCanvas, firstPage, headerText, metadata);
+            drawHeaderOnPage(pdfDoc.addNewPage(), headerText, metadata);
         }
     }
 
+    private void drawHeaderOnPage(PdfPage page, String headerText, PdfMetadata metadata) {
+        drawHeaderOnPage(new PdfCanvas(page), page, headerText, metadata);
+    }
+
+    private void drawHeaderOnPage(PdfCanvas pdfCanvas, PdfPage page, String headerText, PdfMetadata metadata) {
+        drawHeaderBackground(pdfCanvas, page);
+        drawHeaderText(pdfCanvas, page, headerText, metadata);
+    }
+
     private void drawHeaderBackground(PdfCanvas pdfCanvas, PdfPage page) {
         float pageWidth = page.getPageSize().getWidth();
         pdfCanvas.setFillColor(HEADER_COLOR);
@@ -288,60 +477,52 @@ public class PdfService {
     }
 
     private Table buildProgressBarAnswers(JsonNode answersArray) throws Exception {
-        List<JsonNode> answersList = new ArrayList<>();
-        answersArray.forEach(answersList::add);
-
-        answersList.sort((a, b) -> Double.compare(
-                b.path("answerPercentage").asDouble(0.0),
-                a.path("answerPercentage").asDouble(0.0)
-        ));
+        TopAnswers.Selection selection = topAnswers().select(answersArray, "answerPercentage");
 
         Table table = new Table(UnitValue.createPercentArray(new float[]{40, 50, 10}))
                 .useAllAvailableWidth();
 
-        for (JsonNode answer : answersList) {
-            String name = answer.path("name").asText("--");
-            double percentage = answer.path("answerPercentage").asDouble(0.0);
-
-            Image progressBar = createProgressBarImage(percentage, 100, 10);
-            String percentageStr = String.format("%.2f%%", percentage);
-
-            table.addCell(new Cell()
-                    .add(new Paragraph(name).setFontSize(9))
-                    .setBorder(null));
-            table.addCell(new Cell()
-                    .add(progressBar)
-                    .setBorder(null));
-            table.addCell(new Cell()
-                    .add(new Paragraph(percentageStr).setFontSize(9))
-                    .setTextAlignment(TextAlignment.RIGHT)
-                    .setBorder(null));
+        for (JsonNode answer : selection.ranked()) {
+            addProgressBarRow(table, answer.path("name").asText("--"), answer.path("answerPercentage").asDouble(0.0));
+        }
+        if (selection.hasOthers()) {
+            addProgressBarRow(table, othersLabel(selection), selection.otherPercentage());
         }
         return table;
     }
 
-    private Image createProgressBarImage(double percentage, int width, int height) throws Exception {
-        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2 = img.createGraphics();
-
-        g2.setColor(Color.LIGHT_GRAY);
-        g2.fillRect(0, 0, width, height);
-
-        int progressWidth = (int) ((percentage / 100.0) * width);
-        g2.setColor(new Color(0xA5, 0x4F, 0xE0));
-        g2.fillRect(0, 0, progressWidth, height);
-
-        g2.dispose();
-
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(img, "png", baos);
+    private void addProgressBarRow(Table table, String name, double percentage) {
+        Image progressBar = createProgressBarImage(percentage, 100, 10);
+        String percentageStr = String.format("%.2f%%", percentage);
+
+        table.addCell(new Cell()
+                .add(new Paragraph(name).setFontSize(9))
+                .setBorder(null));
+        table.addCell(new Cell()
+                .add(progressBar)
+                .setBorder(null));
+        table.addCell(new Cell()
+                .add(new Paragraph(percentageStr).setFontSize(9))
+                .setTextAlignment(TextAlignment.RIGHT)
+                .setBorder(null));
+    }
 
-        return new Image(ImageDataFactory.create(baos.toByteArray()))
+    private Image createProgressBarImage(double percentage, int width, int height) {
+        return new Image(chartRasterizer.progressBar(percentage, width, height))
                 .setAutoScale(false)
                 .scaleAbsolute(width, height);
     }
 
     private Table buildAnswersTableSortedByCount(JsonNode answersArray) {
+        TopAnswers.Selection selection = topAnswers().select(answersArray, "answerCount");
+        Table subTable = createAnswersTable(selection.ranked());
+        if (selection.hasOthers()) {
+            addAnswerRow(subTable, othersLabel(selection), selection.otherCount(), selection.otherPercentage());
+        }
+        return subTable;
+    }
+
+    private Table createAnswersTable(Iterable<JsonNode> answers) {
         Table subTable = new Table(UnitValue.createPercentArray(new float[]{40, 30, 30}))
                 .useAllAvailableWidth()
                 .setMarginTop(5)
@@ -350,21 +531,42 @@ public class PdfService {
         subTable.addHeaderCell(createHeaderCell("Count"));
         subTable.addHeaderCell(createHeaderCell("Percentage"));
 
-        List<JsonNode> answersList = new ArrayList<>();
-        answersArray.forEach(answersList::add);
-        answersList.sort((a, b) -> Integer.compare(b.path("answerCount").asInt(0), a.path("answerCount").asInt(0)));
-
-        for (JsonNode answer : answersList) {
-            String name = answer.path("name").asText("--");
-            int count = answer.path("answerCount").asInt(0);
-            double percentage = answer.path("answerPercentage").asDouble(0.0);
-            subTable.addCell(createCell(name));
-            subTable.addCell(createCell(String.valueOf(count)));
-            subTable.addCell(createCell(String.format("%.2f%%", percentage)));
+        for (JsonNode answer : answers) {
+            addAnswerRow(subTable, answer.path("name").asText("--"), answer.path("answerCount").asLong(0),
+                    answer.path("answerPercentage").asDouble(0.0));
         }
         return subTable;
     }
 
+    private void addAnswerRow(Table table, String name, long count, double percentage) {
+        table.addCell(createCell(name));
+        table.addCell(createCell(String.valueOf(count)));
+        table.addCell(createCell(String.format("%.2f%%", percentage)));
+    }
+
+    /**
+     * Every answer of the cut questions in payload order, one table per question so long
+     * answer lists split across pages
+     */
+    private void processAppendix(Document document, List<JsonNode> questions) {
+        for (JsonNode question : questions) {
+            document.add(new Paragraph(question.path("questionNumber").asText("") + " "
+                    + question.path("title").asText("--"))
+                    .setBold()
+                    .setFontSize(10)
+                    .setMarginTop(10));
+            document.add(createAnswersTable(question.get("answers")));
+        }
+    }
+
+    private TopAnswers topAnswers() {
+        return new TopAnswers(exportProperties.getTopAnswers().getLimit());
+    }
+
+    private static String othersLabel(TopAnswers.Selection selection) {
+        return "Others (" + selection.otherAnswers() + " answers)";
+    }
+
     private Cell createCell(String text) {
         return new Cell()
                 .setPadding(2)
@@ -389,13 +591,18 @@ public class PdfService {
 
     private Image createSingleQuestionBarChart(JsonNode question) throws Exception {
         DefaultCategoryDataset dataset = new DefaultCategoryDataset();
-        question.get("answers").forEach(ans ->
+        // Bars keep the payload order, which is the scale order of rating questions
+        TopAnswers.Selection selection = topAnswers().select(question.get("answers"), "answerPercentage");
+        selection.inPayloadOrder().forEach(ans ->
                 dataset.addValue(
                         ans.path("answerPercentage").asDouble(0.0),
                         "Series",
                         ans.path("name").asText("Option?")
                 )
         );
+        if (selection.hasOthers()) {
+            dataset.addValue(selection.otherPercentage(), "Series", othersLabel(selection));
+        }
 
         JFreeChart barChart = ChartFactory.createBarChart("", null, null, dataset,
                 PlotOrientation.VERTICAL, false, true, false);
@@ -414,11 +621,7 @@ public class PdfService {
         CategoryAxis domainAxis = plot.getDomainAxis();
         domainAxis.setTickLabelFont(new Font("SansSerif", Font.PLAIN, 9));
 
-        BufferedImage chartImg = barChart.createBufferedImage((int) CHART_WIDTH, (int) CHART_HEIGHT);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(chartImg, "png", baos);
-
-        Image chartImage = new Image(ImageDataFactory.create(baos.toByteArray()))
+        Image chartImage = new Image(chartRasterizer.render(barChart))
                 .setAutoScale(false)
                 .scaleAbsolute(CHART_WIDTH, CHART_HEIGHT);
         return chartImage;
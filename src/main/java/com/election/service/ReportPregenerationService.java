@@ -0,0 +1,224 @@
+package com.election.service;
+
+import com.election.config.ExportProperties;
+import com.election.store.ArtifactKey;
+import com.election.store.ArtifactStore;
+import com.election.web.ElectionPayloadReader;
+import com.election.web.ExportOutputFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Renders every report variant of a registered survey or election into the {@link ArtifactStore}
+ * shortly after it closes, so the first downloads after close are served from disk instead of
+ * all rendering at once.
+ * <p>
+ * Variants are keyed exactly like the export endpoints key them, so they are only hit when the
+ * client later posts the same payload it registered. Registrations, and the payloads they hold,
+ * live in memory until they run and are lost on restart.
+ */
+@Slf4j
+@Service
+public class ReportPregenerationService {
+
+    private static final List<String> ROLES = List.of("creator", "viewer");
+    private static final List<String> LANGUAGES = List.of("en", "ar");
+
+    public enum Family {
+        SURVEY, ELECTION
+    }
+
+    public record Registration(String id, Family family, Instant closesAt, Instant renderAt) {
+    }
+
+    private record Pending(Registration registration, ScheduledFuture<?> future) {
+    }
+
+    private final ExportService exportService;
+    private final PdfService pdfService;
+    private final ElectionExportService electionExportService;
+    private final ElectionServicePdf electionServicePdf;
+    private final ArtifactStore artifactStore;
+    private final ExportOutputFactory exportOutputFactory;
+    private final ExportCostEstimator costEstimator;
+    private final ExportAdmission exportAdmission;
+    private final ThreadPoolTaskScheduler scheduler;
+    private final ExportProperties.Pregeneration settings;
+    private final ZoneId zone;
+
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    public ReportPregenerationService(ExportService exportService, PdfService pdfService,
+                                      ElectionExportService electionExportService,
+                                      ElectionServicePdf electionServicePdf, ArtifactStore artifactStore,
+                                      ExportOutputFactory exportOutputFactory, ExportCostEstimator costEstimator,
+                                      ExportAdmission exportAdmission, ThreadPoolTaskScheduler pregenerationScheduler,
+                                      ExportProperties exportProperties) {
+        this.exportService = exportService;
+        this.pdfService = pdfService;
+        this.electionExportService = electionExportService;
+        this.electionServicePdf = electionServicePdf;
+        this.artifactStore = artifactStore;
+        this.exportOutputFactory = exportOutputFactory;
+        this.costEstimator = costEstimator;
+        this.exportAdmission = exportAdmission;
+        this.scheduler = pregenerationScheduler;
+        this.settings = exportProperties.getPregeneration();
+        this.zone = ZoneId.of(settings.getZone());
+    }
+
+    /**
+     * Schedules rendering for {@code delay} after the payload's close time, or right away if it
+     * has already closed. Registering the same payload again replaces the earlier schedule.
+     */
+    public Registration register(Family family, ElectionPayloadReader.HashedPayload payload) {
+        if (!settings.isEnabled() || !artifactStore.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Report pre-generation is disabled");
+        }
+        Instant closesAt = closeTime(payload.tree(), zone);
+        Instant renderAt = closesAt.plus(settings.getDelay());
+        String id = family.name().toLowerCase(Locale.ROOT) + "-" + payload.hash();
+        Registration registration = new Registration(id, family, closesAt, renderAt);
+
+        synchronized (pending) {
+            if (!pending.containsKey(id) && pending.size() >= settings.getMaxPending()) {
+                throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many pending registrations");
+            }
+            cancel(id);
+            Instant start = renderAt.isAfter(Instant.now()) ? renderAt : Instant.now();
+            ScheduledFuture<?> future = scheduler.schedule(() -> run(registration, payload), start);
+            pending.put(id, new Pending(registration, future));
+        }
+        log.info("Registered {} for report pre-generation at {}", id, renderAt);
+        return registration;
+    }
+
+    public boolean cancel(String id) {
+        Pending removed = pending.remove(id);
+        if (removed == null) {
+            return false;
+        }
+        removed.future().cancel(false);
+        return true;
+    }
+
+    private void run(Registration registration, ElectionPayloadReader.HashedPayload payload) {
+        pending.computeIfPresent(registration.id(), (id, entry) -> entry.registration() == registration ? null : entry);
+        long start = System.nanoTime();
+        AtomicInteger stored = new AtomicInteger();
+        List<Variant> variants = variants(registration.family(), payload);
+        ExportCostEstimator.PayloadShape shape = costEstimator.scan(payload.tree());
+        for (Variant variant : variants) {
+            ArtifactKey key = variant.key();
+            try {
+                // Spill files of each variant are removed once it has been copied into the store
+                exportOutputFactory.runScoped(() -> {
+                    if (artifactStore.storeIfAbsent(key, () -> exportAdmission.run(
+                            costEstimator.estimate(shape, key.kind(), key.role()), variant.generator()))) {
+                        stored.incrementAndGet();
+                    } else {
+                        log.warn("Pre-generated {} for {} was not stored", variant.key().kind(), registration.id());
+                    }
+                });
+            } catch (RuntimeException e) {
+                log.warn("Could not pre-generate {} for {}", variant.key().kind(), registration.id(), e);
+            }
+        }
+        log.info("Pre-generated {}/{} reports for {} in {} ms", stored.get(), variants.size(), registration.id(),
+                Duration.ofNanos(System.nanoTime() - start).toMillis());
+    }
+
+    private record Variant(ArtifactKey key, Supplier<ResponseEntity<Resource>> generator) {
+    }
+
+    private List<Variant> variants(Family family, ElectionPayloadReader.HashedPayload payload) {
+        JsonNode tree = payload.tree();
+        String hash = payload.hash();
+        List<Variant> variants = new ArrayList<>();
+        for (String role : ROLES) {
+            for (String lang : LANGUAGES) {
+                if (family == Family.SURVEY) {
+                    variants.add(new Variant(new ArtifactKey(ArtifactKey.SURVEY_EXCEL, role, lang, hash),
+                            () -> exportService.export(tree, role, true, lang)));
+                    variants.add(new Variant(new ArtifactKey(ArtifactKey.SURVEY_CSV, role, lang, hash),
+                            () -> exportService.export(tree, role, false, lang)));
+                } else {
+                    variants.add(new Variant(new ArtifactKey(ArtifactKey.ELECTION_EXCEL, role, lang, hash),
+                            () -> electionExportService.export(tree, role, true, lang)));
+                    variants.add(new Variant(new ArtifactKey(ArtifactKey.ELECTION_CSV, role, lang, hash),
+                            () -> electionExportService.export(tree, role, false, lang)));
+                }
+            }
+        }
+        if (family == Family.SURVEY) {
+            variants.add(new Variant(new ArtifactKey(ArtifactKey.SURVEY_PDF, null, null, hash),
+                    () -> pdfService.export(tree)));
+        } else {
+            variants.add(new Variant(new ArtifactKey(ArtifactKey.ELECTION_PDF, null, null, hash),
+                    () -> electionServicePdf.export(tree)));
+        }
+        return variants;
+    }
+
+    /**
+     * Reads {@code endDate}/{@code end-date} and {@code endTime}/{@code end-time} from the payload.
+     * A date without a time closes at the end of that day in {@code zone}.
+     */
+    static Instant closeTime(JsonNode root, ZoneId zone) {
+        String date = field(root, "endDate", "end-date");
+        String time = field(root, "endTime", "end-time");
+        if (date.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Payload has no end date");
+        }
+        try {
+            if (date.contains("T")) {
+                return date.endsWith("Z") || date.matches(".*[+-]\\d{2}:\\d{2}$")
+                        ? OffsetDateTime.parse(date).toInstant()
+                        : LocalDateTime.parse(date).atZone(zone).toInstant();
+            }
+            LocalDate day = LocalDate.parse(date);
+            return time.isEmpty()
+                    ? day.plusDays(1).atStartOfDay(zone).toInstant()
+                    : day.atTime(LocalTime.parse(time)).atZone(zone).toInstant();
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unreadable end date: " + date + " " + time, e);
+        }
+    }
+
+    private static String field(JsonNode root, String... names) {
+        JsonNode data = root.path("data");
+        for (String name : names) {
+            JsonNode value = data.path(name);
+            if (value.isMissingNode()) {
+                value = root.findValue(name);
+            }
+            if (value != null && value.isValueNode() && !value.asText().isBlank()) {
+                return value.asText().trim();
+            }
+        }
+        return "";
+    }
+}
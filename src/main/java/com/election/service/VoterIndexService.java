@@ -0,0 +1,150 @@
+package com.election.service;
+
+import com.election.aggregate.VoterIndex;
+import com.election.aggregate.VoterLists;
+import com.election.config.ExportProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Answers "what did this voter choose" for support staff without a full creator export.
+ * <p>
+ * Posting an election snapshot builds a {@link VoterIndex} from its candidates' voters and the
+ * {@code voterName} of its questions and answers. The index is rebuilt only when a different
+ * payload is posted for the election. Indexes are kept in memory up to
+ * {@code export.voter-index.max-memory} in total; past that, the least recently used elections
+ * are dropped and must be posted again.
+ */
+@Slf4j
+@Service
+public class VoterIndexService {
+
+    public record Indexed(String electionId, int voters, long entries, long footprintBytes, long elapsedMillis,
+                          boolean reused) {
+    }
+
+    private record Snapshot(String hash, String electionName, VoterIndex index) {
+    }
+
+    private final ForkJoinPool exportForkJoinPool;
+    private final ElectionExportService electionExportService;
+    private final ElectionServicePdf electionServicePdf;
+    private final ExportProperties.VoterIndex settings;
+    // Least recently used first; guarded by itself
+    private final LinkedHashMap<String, Snapshot> indexes = new LinkedHashMap<>(16, 0.75f, true);
+    private long footprint;
+
+    public VoterIndexService(ForkJoinPool exportForkJoinPool, ElectionExportService electionExportService,
+                             ElectionServicePdf electionServicePdf, ExportProperties exportProperties) {
+        this.exportForkJoinPool = exportForkJoinPool;
+        this.electionExportService = electionExportService;
+        this.electionServicePdf = electionServicePdf;
+        this.settings = exportProperties.getVoterIndex();
+    }
+
+    /**
+     * Indexes the snapshot unless the election is already indexed from the same payload
+     *
+     * @param voters the candidates' voters, indexed like {@code data.resultsSummary}
+     * @param hash   identifies the payload
+     */
+    public Indexed index(String electionId, JsonNode rootNode, VoterLists voters, String hash) {
+        JsonNode dataNode = rootNode.has("data") ? rootNode.path("data") : rootNode;
+        synchronized (indexes) {
+            Snapshot current = indexes.get(electionId);
+            if (current != null && current.hash().equals(hash)) {
+                return indexed(electionId, current.index(), 0, true);
+            }
+        }
+        long entries = VoterIndex.countEntries(dataNode, voters);
+        if (entries > settings.getMaxEntries()) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                    "Snapshot has " + entries + " votes and named answers, more than " + settings.getMaxEntries());
+        }
+
+        long start = System.nanoTime();
+        long maxMemory = settings.getMaxMemory().toBytes();
+        VoterIndex index;
+        try {
+            index = VoterIndex.build(dataNode, voters, settings.getPartitions(), maxMemory, exportForkJoinPool);
+        } catch (VoterIndex.TooLargeException e) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, e.getMessage());
+        }
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        synchronized (indexes) {
+            Snapshot previous = indexes.put(electionId,
+                    new Snapshot(hash, dataNode.path("electionName").asText(electionId), index));
+            if (previous != null) {
+                footprint -= previous.index().footprint();
+            }
+            footprint += index.footprint();
+            Iterator<Map.Entry<String, Snapshot>> eldest = indexes.entrySet().iterator();
+            while (footprint > maxMemory && eldest.hasNext()) {
+                Map.Entry<String, Snapshot> entry = eldest.next();
+                if (!entry.getKey().equals(electionId)) {
+                    footprint -= entry.getValue().index().footprint();
+                    eldest.remove();
+                    log.info("Dropped voter index of {} to stay within {} bytes", entry.getKey(), maxMemory);
+                }
+            }
+        }
+        log.info("Indexed {} voters and {} entries of {} in {} ms ({} bytes)", index.voters(), index.entries(),
+                electionId, elapsed, index.footprint());
+        return indexed(electionId, index, elapsed, false);
+    }
+
+    public VoterIndex.Votes lookup(String electionId, String voter) {
+        return find(snapshot(electionId), voter);
+    }
+
+    public ResponseEntity<Resource> receipt(String electionId, String voter, boolean pdf, String lang) {
+        Snapshot snapshot = snapshot(electionId);
+        VoterIndex.Votes votes = find(snapshot, voter);
+        return pdf
+                ? electionServicePdf.exportVoterReceipt(snapshot.electionName(), votes)
+                : electionExportService.exportVoterReceiptCsv(electionId, snapshot.electionName(), votes, lang);
+    }
+
+    public boolean remove(String electionId) {
+        synchronized (indexes) {
+            Snapshot removed = indexes.remove(electionId);
+            if (removed == null) {
+                return false;
+            }
+            footprint -= removed.index().footprint();
+            return true;
+        }
+    }
+
+    private Snapshot snapshot(String electionId) {
+        synchronized (indexes) {
+            Snapshot snapshot = indexes.get(electionId);
+            if (snapshot == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No voter index for " + electionId);
+            }
+            return snapshot;
+        }
+    }
+
+    private static VoterIndex.Votes find(Snapshot snapshot, String voter) {
+        VoterIndex.Votes votes = snapshot.index().find(voter);
+        if (votes == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No votes recorded for " + voter);
+        }
+        return votes;
+    }
+
+    private static Indexed indexed(String electionId, VoterIndex index, long elapsed, boolean reused) {
+        return new Indexed(electionId, index.voters(), index.entries(), index.footprint(), elapsed, reused);
+    }
+}
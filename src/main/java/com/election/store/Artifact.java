@@ -0,0 +1,18 @@
+package com.election.store;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * A stored export and the response headers it was originally served with
+ */
+public record Artifact(String id, Path file, long size, Instant created,
+                       String contentType, String contentDisposition) {
+
+    /**
+     * Strong validator for this rendering; a re-rendered artifact with the same id gets a new one
+     */
+    public String etag() {
+        return "\"" + id + "-" + Long.toHexString(created.toEpochMilli()) + "\"";
+    }
+}
@@ -0,0 +1,51 @@
+package com.election.store;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/**
+ * Identifies a rendered export by what was asked for and the content it was rendered from
+ *
+ * @param kind        endpoint family and format, e.g. {@code survey-excel-poi} or {@code election-pdf}
+ * @param role        {@code creator} or {@code viewer}, empty where the export has no role
+ * @param lang        label language, empty where the export is not localized
+ * @param payloadHash hex SHA-256 of the decoded request body
+ */
+public record ArtifactKey(String kind, String role, String lang, String payloadHash) {
+
+    public static final String SURVEY_EXCEL = "survey-excel-poi";
+    public static final String SURVEY_EXCEL_FAST = "survey-excel-fast";
+    public static final String SURVEY_CSV = "survey-csv";
+    public static final String SURVEY_PDF = "survey-pdf";
+    public static final String ELECTION_EXCEL = "election-excel";
+    public static final String ELECTION_CSV = "election-csv";
+    public static final String ELECTION_PDF = "election-pdf";
+    public static final String ELECTION_COMPARISON = "election-comparison";
+    public static final String VOTER_RECEIPT = "voter-receipt";
+
+    /**
+     * Bump whenever rendering changes, so artifacts written by older code are no longer matched
+     */
+    static final int FORMAT_VERSION = 2;
+
+    public ArtifactKey {
+        role = role == null ? "" : role.toLowerCase(Locale.ROOT);
+        lang = lang == null ? "" : lang.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * File-name safe id derived from all fields
+     */
+    public String id() {
+        String material = FORMAT_VERSION + "\n" + kind + "\n" + role + "\n" + lang + "\n" + payloadHash;
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(material.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package com.election.store;
+
+import com.election.config.ExportProperties;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * On-disk store of rendered exports, keyed by {@link ArtifactKey}, so that repeated requests for
+ * the same report are served from a file instead of being rendered again.
+ * <p>
+ * Each artifact is a data file plus a small properties file with the headers it was served with.
+ * Both are moved into place only once complete, and the index is rebuilt from the directory on
+ * startup, so the store survives restarts. Artifacts expire {@code export.store.ttl} after they
+ * were rendered, and the least recently served ones are evicted once the store grows past
+ * {@code export.store.max-size}; the file modification time records the last access.
+ * <p>
+ * Artifacts are returned as {@link FileSystemResource} bodies with a strong {@code ETag}, so
+ * Spring streams them from disk and answers {@code Range} requests with partial content. An
+ * {@code If-Range} that no longer matches gets the full body instead. {@code Content-Location}
+ * points at {@code /api/artifacts/{id}}, where an interrupted download can be resumed without
+ * rendering anything.
+ */
+@Slf4j
+@Component
+public class ArtifactStore {
+
+    private static final String DATA_SUFFIX = ".bin";
+    private static final String META_SUFFIX = ".properties";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final Pattern ID_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final String LOCATION_PREFIX = "/api/artifacts/";
+
+    /**
+     * An export that writes straight to the servlet response
+     */
+    @FunctionalInterface
+    public interface StreamingExport {
+        void write(HttpServletResponse response) throws IOException;
+    }
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxSize;
+    private final Duration ttl;
+
+    // Access-ordered, least recently served first; guarded by this
+    private final LinkedHashMap<String, Artifact> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize;
+
+    public ArtifactStore(ExportProperties exportProperties) throws IOException {
+        ExportProperties.Store settings = exportProperties.getStore();
+        this.enabled = settings.isEnabled();
+        this.directory = StringUtils.hasText(settings.getDirectory())
+                ? Path.of(settings.getDirectory())
+                : Path.of(System.getProperty("java.io.tmpdir"), "multiexport-artifacts");
+        this.maxSize = settings.getMaxSize().toBytes();
+        this.ttl = settings.getTtl();
+        if (enabled) {
+            Files.createDirectories(directory);
+            load();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Optional<Artifact> find(ArtifactKey key) {
+        return findById(key.id());
+    }
+
+    public Optional<Artifact> findById(String id) {
+        if (!enabled || !ID_PATTERN.matcher(id).matches()) {
+            return Optional.empty();
+        }
+        Artifact artifact;
+        synchronized (this) {
+            artifact = index.get(id);
+            if (artifact == null) {
+                return Optional.empty();
+            }
+            if (isExpired(artifact)) {
+                removeLocked(id);
+                artifact = null;
+            }
+        }
+        if (artifact == null) {
+            deleteFiles(id);
+            return Optional.empty();
+        }
+        try {
+            Files.setLastModifiedTime(artifact.file(), FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            // Deleted behind our back
+            synchronized (this) {
+                removeLocked(id);
+            }
+            return Optional.empty();
+        }
+        return Optional.of(artifact);
+    }
+
+    /**
+     * Serves the stored artifact for {@code key}, or renders it with {@code generator} and keeps
+     * a successful result for next time
+     */
+    public ResponseEntity<Resource> serve(ArtifactKey key, HttpServletRequest request,
+                                          Supplier<ResponseEntity<Resource>> generator) throws IOException {
+        Optional<Artifact> cached = find(key);
+        if (cached.isPresent()) {
+            log.debug("Serving export {} from the artifact store", key.kind());
+            return toResponse(cached.get(), request);
+        }
+        return store(key, request, generator.get());
+    }
+
+    /**
+     * Renders {@code key} with {@code generator} unless it is already stored, without a request
+     * to answer; used to warm the store ahead of demand
+     *
+     * @return true if the artifact is available afterwards
+     */
+    public boolean storeIfAbsent(ArtifactKey key, Supplier<ResponseEntity<Resource>> generator) {
+        if (!enabled) {
+            return false;
+        }
+        if (find(key).isPresent()) {
+            return true;
+        }
+        return keep(key, generator.get()) != null;
+    }
+
+    /**
+     * Runs a streaming export and records what it writes, committing it if the export completes
+     * successfully. Lookups have to happen beforehand with {@link #find}.
+     */
+    public void capture(ArtifactKey key, HttpServletResponse response, StreamingExport export) throws IOException {
+        if (!enabled) {
+            export.write(response);
+            return;
+        }
+        Path temp = tempFile(key.id());
+        try {
+            CapturingResponse capturing;
+            try (OutputStream copy = new BufferedOutputStream(Files.newOutputStream(temp), COPY_BUFFER_SIZE)) {
+                capturing = new CapturingResponse(response, copy);
+                export.write(capturing);
+                capturing.flushCopy();
+            }
+            int status = capturing.getStatus();
+            if (capturing.isCaptured() && status >= 200 && status < 300) {
+                commit(key, temp, capturing.getContentType(), capturing.getHeader(HttpHeaders.CONTENT_DISPOSITION));
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public ResponseEntity<Resource> toResponse(Artifact artifact, HttpServletRequest request) throws IOException {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(artifact.contentType()))
+                .eTag(artifact.etag())
+                .lastModified(artifact.created())
+                .header(HttpHeaders.CONTENT_LOCATION, LOCATION_PREFIX + artifact.id());
+        if (StringUtils.hasText(artifact.contentDisposition())) {
+            builder.header(HttpHeaders.CONTENT_DISPOSITION, artifact.contentDisposition());
+        }
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !matchesIfRange(artifact, ifRange)) {
+            // Spring only slices file resources, so a stream body makes it ignore the Range header
+            return builder.contentLength(artifact.size())
+                    .body(new InputStreamResource(new FileSystemResource(artifact.file()).getInputStream()));
+        }
+        return builder.body(new FileSystemResource(artifact.file()));
+    }
+
+    /**
+     * Strong comparison against the ETag, or an exact match of the Last-Modified date
+     */
+    private static boolean matchesIfRange(Artifact artifact, String ifRange) {
+        String value = ifRange.trim();
+        if (value.startsWith("\"")) {
+            return value.equals(artifact.etag());
+        }
+        if (value.startsWith("W/")) {
+            return false;
+        }
+        try {
+            long seconds = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+            return seconds == artifact.created().getEpochSecond();
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private ResponseEntity<Resource> store(ArtifactKey key, HttpServletRequest request,
+                                           ResponseEntity<Resource> response) throws IOException {
+        Artifact artifact = keep(key, response);
+        return artifact != null ? toResponse(artifact, request) : response;
+    }
+
+    /**
+     * Copies a successful response body into the store, or returns null if it was not kept
+     */
+    private Artifact keep(ArtifactKey key, ResponseEntity<Resource> response) {
+        Resource body = response.getBody();
+        if (!enabled || body == null || !response.getStatusCode().is2xxSuccessful()) {
+            return null;
+        }
+        try {
+            if (body.contentLength() > maxSize) {
+                return null;
+            }
+            Path temp = tempFile(key.id());
+            try {
+                // A spilled export is linked rather than copied when it lives on the same file system
+                if (!body.isFile() || !tryLink(body.getFile().toPath(), temp)) {
+                    try (InputStream in = body.getInputStream()) {
+                        Files.copy(in, temp);
+                    }
+                }
+                MediaType contentType = response.getHeaders().getContentType();
+                return commit(key, temp, contentType != null ? contentType.toString() : null,
+                        response.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION));
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            log.warn("Could not store export artifact for {}", key.kind(), e);
+            return null;
+        }
+    }
+
+    private Artifact commit(ArtifactKey key, Path temp, String contentType, String contentDisposition) throws IOException {
+        long size = Files.size(temp);
+        if (size > maxSize) {
+            return null;
+        }
+        String id = key.id();
+        Artifact artifact = new Artifact(id, dataFile(id), size, Instant.now(),
+                contentType != null ? contentType : MediaType.APPLICATION_OCTET_STREAM_VALUE,
+                contentDisposition != null ? contentDisposition : "");
+
+        Properties meta = new Properties();
+        meta.setProperty("kind", key.kind());
+        meta.setProperty("created", Long.toString(artifact.created().toEpochMilli()));
+        meta.setProperty("contentType", artifact.contentType());
+        meta.setProperty("contentDisposition", artifact.contentDisposition());
+        Path metaTemp = tempFile(id);
+        try {
+            try (Writer writer = Files.newBufferedWriter(metaTemp)) {
+                meta.store(writer, null);
+            }
+            Files.move(metaTemp, metaFile(id), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(metaTemp);
+        }
+        Files.move(temp, artifact.file(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        List<Artifact> evicted;
+        synchronized (this) {
+            Artifact previous = index.put(id, artifact);
+            totalSize += size - (previous != null ? previous.size() : 0);
+            evicted = evictLocked();
+        }
+        evicted.forEach(victim -> deleteFiles(victim.id()));
+        return artifact;
+    }
+
+    /**
+     * Drops expired artifacts, then the least recently served ones until the store fits
+     */
+    private List<Artifact> evictLocked() {
+        List<Artifact> evicted = new ArrayList<>();
+        Iterator<Artifact> iterator = index.values().iterator();
+        while (iterator.hasNext()) {
+            Artifact artifact = iterator.next();
+            if (totalSize > maxSize || isExpired(artifact)) {
+                iterator.remove();
+                totalSize -= artifact.size();
+                evicted.add(artifact);
+            }
+        }
+        return evicted;
+    }
+
+    private void removeLocked(String id) {
+        Artifact removed = index.remove(id);
+        if (removed != null) {
+            totalSize -= removed.size();
+        }
+    }
+
+    private boolean isExpired(Artifact artifact) {
+        return artifact.created().plus(ttl).isBefore(Instant.now());
+    }
+
+    private void load() throws IOException {
+        record Loaded(Artifact artifact, FileTime lastAccess) {
+        }
+        List<Loaded> loaded = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(META_SUFFIX)) {
+                    String id = name.substring(0, name.length() - META_SUFFIX.length());
+                    Artifact artifact = readArtifact(id);
+                    if (artifact == null || isExpired(artifact)) {
+                        deleteFiles(id);
+                    } else {
+                        loaded.add(new Loaded(artifact, Files.getLastModifiedTime(artifact.file())));
+                    }
+                } else if (name.endsWith(DATA_SUFFIX)
+                        && !Files.exists(metaFile(name.substring(0, name.length() - DATA_SUFFIX.length())))) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        loaded.sort(Comparator.comparing(Loaded::lastAccess));
+        List<Artifact> evicted;
+        synchronized (this) {
+            for (Loaded entry : loaded) {
+                index.put(entry.artifact().id(), entry.artifact());
+                totalSize += entry.artifact().size();
+            }
+            evicted = evictLocked();
+        }
+        evicted.forEach(victim -> deleteFiles(victim.id()));
+        log.info("Artifact store at {} holds {} exports ({} bytes)", directory, index.size(), totalSize);
+    }
+
+    private Artifact readArtifact(String id) {
+        Path data = dataFile(id);
+        Properties meta = new Properties();
+        try (Reader reader = Files.newBufferedReader(metaFile(id))) {
+            meta.load(reader);
+            return new Artifact(id, data, Files.size(data),
+                    Instant.ofEpochMilli(Long.parseLong(meta.getProperty("created", "0"))),
+                    meta.getProperty("contentType", MediaType.APPLICATION_OCTET_STREAM_VALUE),
+                    meta.getProperty("contentDisposition", ""));
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void deleteFiles(String id) {
+        try {
+            Files.deleteIfExists(dataFile(id));
+            Files.deleteIfExists(metaFile(id));
+        } catch (IOException e) {
+            log.warn("Could not delete export artifact {}", id, e);
+        }
+    }
+
+    private static boolean tryLink(Path source, Path link) {
+        try {
+            Files.createLink(link, source);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private Path tempFile(String id) {
+        return directory.resolve(id + "-" + UUID.randomUUID() + TEMP_SUFFIX);
+    }
+
+    private Path dataFile(String id) {
+        return directory.resolve(id + DATA_SUFFIX);
+    }
+
+    private Path metaFile(String id) {
+        return directory.resolve(id + META_SUFFIX);
+    }
+
+    /**
+     * Copies everything written to the response output stream into the artifact file. A failing
+     * copy only stops the capture; the client response carries on.
+     */
+    private static final class CapturingResponse extends HttpServletResponseWrapper {
+        private final OutputStream copy;
+        private ServletOutputStream outputStream;
+        private boolean captured = true;
+
+        CapturingResponse(HttpServletResponse response, OutputStream copy) {
+            super(response);
+            this.copy = copy;
+        }
+
+        boolean isCaptured() {
+            return captured;
+        }
+
+        void flushCopy() {
+            if (captured) {
+                try {
+                    copy.flush();
+                } catch (IOException e) {
+                    captured = false;
+                }
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                ServletOutputStream target = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        target.write(b);
+                        if (captured) {
+                            try {
+                                copy.write(b);
+                            } catch (IOException e) {
+                                captured = false;
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        target.write(b, off, len);
+                        if (captured) {
+                            try {
+                                copy.write(b, off, len);
+                            } catch (IOException e) {
+                                captured = false;
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        target.flush();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return target.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        target.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            // Character output is not recorded, so the result is not stored
+            captured = false;
+            return super.getWriter();
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            captured = false;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.election.web;
+
+import com.election.config.ExportProperties;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Negotiates gzip-encoded responses for the export endpoints based on {@code Accept-Encoding}
+ */
+public class CompressionFilter extends OncePerRequestFilter {
+
+    private final ExportProperties.Compression settings;
+    private final List<MediaType> compressibleTypes;
+    private final CompressionMetrics metrics;
+
+    public CompressionFilter(ExportProperties exportProperties, CompressionMetrics metrics) {
+        this.settings = exportProperties.getCompression();
+        this.compressibleTypes = MediaType.parseMediaTypes(settings.getMimeTypes());
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !settings.isEnabled() || !acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    /**
+     * Exports rendered on an {@link ExportLanes} thread complete in an async dispatch, which must
+     * finish the gzip stream the first dispatch opened
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        GzipResponseWrapper wrapper = WebUtils.getNativeResponse(response, GzipResponseWrapper.class);
+        if (wrapper == null) {
+            wrapper = new GzipResponseWrapper(response, settings.getLevel(),
+                    (int) settings.getMinResponseSize().toBytes(), compressibleTypes, metrics);
+        }
+        filterChain.doFilter(request, wrapper);
+        if (!isAsyncStarted(request)) {
+            wrapper.finish();
+        }
+    }
+
+    /**
+     * Whether gzip is acceptable: an explicit {@code gzip} entry wins over {@code *}, and an entry
+     * with a malformed quality counts as {@code q=0}
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        double gzip = -1;
+        double any = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (name.equalsIgnoreCase("gzip")) {
+                gzip = Math.max(gzip, quality(parts));
+            } else if (name.equals("*")) {
+                any = Math.max(any, quality(parts));
+            }
+        }
+        return (gzip >= 0 ? gzip : any) > 0;
+    }
+
+    private static double quality(String[] parts) {
+        double quality = 1.0;
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].trim();
+            if (param.regionMatches(true, 0, "q=", 0, 2)) {
+                try {
+                    quality = Double.parseDouble(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0.0;
+                }
+            }
+        }
+        return Double.isNaN(quality) ? 0.0 : quality;
+    }
+}
@@ -0,0 +1,51 @@
+package com.election.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts bytes before and after compression so bandwidth savings show up in
+ * {@code /actuator/metrics/export.compression.*}
+ */
+@Component
+public class CompressionMetrics {
+
+    private final Counter requestOriginal;
+    private final Counter requestCompressed;
+    private final Counter responseOriginal;
+    private final Counter responseCompressed;
+
+    public CompressionMetrics(MeterRegistry registry) {
+        this.requestOriginal = originalCounter(registry, "request");
+        this.requestCompressed = compressedCounter(registry, "request");
+        this.responseOriginal = originalCounter(registry, "response");
+        this.responseCompressed = compressedCounter(registry, "response");
+    }
+
+    public void recordRequest(long originalBytes, long compressedBytes) {
+        requestOriginal.increment(originalBytes);
+        requestCompressed.increment(compressedBytes);
+    }
+
+    public void recordResponse(long originalBytes, long compressedBytes) {
+        responseOriginal.increment(originalBytes);
+        responseCompressed.increment(compressedBytes);
+    }
+
+    private static Counter originalCounter(MeterRegistry registry, String direction) {
+        return Counter.builder("export.compression.original")
+                .baseUnit("bytes")
+                .description("Payload bytes before compression")
+                .tag("direction", direction)
+                .register(registry);
+    }
+
+    private static Counter compressedCounter(MeterRegistry registry, String direction) {
+        return Counter.builder("export.compression.compressed")
+                .baseUnit("bytes")
+                .description("Payload bytes on the wire after compression")
+                .tag("direction", direction)
+                .register(registry);
+    }
+}
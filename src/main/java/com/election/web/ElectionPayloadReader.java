@@ -0,0 +1,355 @@
+package com.election.web;
+
+import com.election.aggregate.EncodedVoterLists;
+import com.election.aggregate.VoterLists;
+import com.election.config.ExportProperties;
+import com.election.io.SpillableOutputStream;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Reads export payloads straight from the request stream with the application's shared
+ * {@link ObjectMapper}, so the body is never held as a {@code String} copy. Bodies sent with
+ * {@code Content-Encoding: gzip} or {@code deflate} are inflated on the fly; the size limit
+ * applies to the inflated bytes as well.
+ * <p>
+ * Besides JSON, bodies may be sent as Smile ({@code application/x-jackson-smile}) or CBOR
+ * ({@code application/cbor}); all three produce the same tree for the export services.
+ * <p>
+ * The hashing variants also compute the SHA-256 of the decoded body, which keys cached exports.
+ * <p>
+ * {@link #readHashedElection} keeps the names in {@code data.resultsSummary[].voters} out of the
+ * tree: they are interned into {@link EncodedVoterLists} as they are parsed, so each distinct
+ * name is held once as UTF-8 bytes instead of as a text node per vote.
+ */
+@Component
+@RequiredArgsConstructor
+public class ElectionPayloadReader {
+
+    public static final MediaType APPLICATION_SMILE = MediaType.valueOf("application/x-jackson-smile");
+    public static final MediaType APPLICATION_CBOR = MediaType.valueOf("application/cbor");
+
+    private static final SmileFactory SMILE_FACTORY = new SmileFactory();
+    private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+
+    private final ObjectMapper objectMapper;
+    private final ExportProperties exportProperties;
+    private final CompressionMetrics compressionMetrics;
+    private final ExportOutputFactory exportOutputFactory;
+
+    /**
+     * A parsed payload together with the hex SHA-256 of its decoded body
+     */
+    public record HashedPayload(JsonNode tree, String hash) {
+    }
+
+    /**
+     * An election payload without its {@code voters} arrays, the voter names per candidate and
+     * the hex SHA-256 of the decoded body
+     */
+    public record ElectionPayload(JsonNode tree, VoterLists voters, String hash) {
+    }
+
+    private interface PayloadParser<T> {
+        T parse(JsonParser parser) throws IOException;
+    }
+
+    /**
+     * A decoded body copied aside (in memory or on disk) so it can be hashed before it is parsed
+     */
+    public record SpooledPayload(String hash, SpillableOutputStream body, JsonFactory factory) {
+        /**
+         * Opens a token parser over the spooled body; the caller owns the parser
+         */
+        public JsonParser openParser() throws IOException {
+            return factory.createParser(body.openInputStream());
+        }
+    }
+
+    public JsonNode readTree(HttpServletRequest request) throws IOException {
+        try (JsonParser parser = openParser(request, exportProperties.getRequest().getMaxBodySize().toBytes())) {
+            return readRoot(parser);
+        } catch (ZipException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Corrupt compressed request body", e);
+        }
+    }
+
+    /**
+     * Like {@link #readTree}, also hashing the whole decoded body including trailing whitespace
+     */
+    public HashedPayload readHashedTree(HttpServletRequest request) throws IOException {
+        MessageDigest digest = sha256();
+        JsonNode root = readHashed(request, digest, this::readRoot);
+        return new HashedPayload(root, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    /**
+     * Like {@link #readHashedTree}, with the voter names encoded while parsing instead of kept in
+     * the tree
+     */
+    public ElectionPayload readHashedElection(HttpServletRequest request) throws IOException {
+        MessageDigest digest = sha256();
+        EncodedVoterLists.Builder voters = new EncodedVoterLists.Builder();
+        JsonNode root = readHashed(request, digest, parser -> readElection(parser, voters));
+        return new ElectionPayload(root, voters.build(), HexFormat.of().formatHex(digest.digest()));
+    }
+
+    private <T> T readHashed(HttpServletRequest request, MessageDigest digest, PayloadParser<T> payloadParser)
+            throws IOException {
+        DigestInputStream body = new DigestInputStream(
+                openBody(request, exportProperties.getRequest().getMaxBodySize().toBytes()), digest);
+        try (JsonParser parser = factoryFor(request.getContentType()).createParser(body)) {
+            T payload = payloadParser.parse(parser);
+            body.transferTo(OutputStream.nullOutputStream());
+            return payload;
+        } catch (ZipException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Corrupt compressed request body", e);
+        }
+    }
+
+    /**
+     * Copies and hashes a streaming body without parsing it. The copy spills to disk past
+     * {@code export.spill.memory-threshold} and is deleted when the request completes.
+     */
+    public SpooledPayload spoolStreamingBody(HttpServletRequest request) throws IOException {
+        JsonFactory factory = factoryFor(request.getContentType());
+        MessageDigest digest = sha256();
+        SpillableOutputStream copy = exportOutputFactory.create();
+        try (InputStream body = new DigestInputStream(
+                openBody(request, exportProperties.getRequest().getMaxStreamingBodySize().toBytes()), digest)) {
+            body.transferTo(copy);
+        } catch (ZipException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Corrupt compressed request body", e);
+        }
+        copy.close();
+        return new SpooledPayload(HexFormat.of().formatHex(digest.digest()), copy, factory);
+    }
+
+    private JsonNode readRoot(JsonParser parser) throws IOException {
+        try {
+            JsonNode root = objectMapper.readTree(parser);
+            if (root == null || root.isMissingNode()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Request body is empty");
+            }
+            return root;
+        } catch (JsonProcessingException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed payload", e);
+        }
+    }
+
+    private JsonNode readElection(JsonParser parser, EncodedVoterLists.Builder voters) throws IOException {
+        try {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Request body is empty");
+            }
+            return readElectionValue(parser, voters);
+        } catch (JsonProcessingException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed payload", e);
+        }
+    }
+
+    /**
+     * Reads a JSON array of election payloads without the names in
+     * {@code data.resultsSummary[].voters}, for reports that only need the counts. Elements that
+     * are not objects are returned as they are. Bounded by
+     * {@code export.request.max-streaming-body-size}.
+     */
+    public List<JsonNode> readElectionSummaries(HttpServletRequest request, int maxElections) throws IOException {
+        try (JsonParser parser = openStreamingParser(request)) {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Request body is empty");
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Expected an array of elections");
+            }
+            List<JsonNode> elections = new ArrayList<>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (elections.size() == maxElections) {
+                    throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                            "More than " + maxElections + " elections");
+                }
+                elections.add(readElectionValue(parser, null));
+            }
+            return elections;
+        } catch (JsonProcessingException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed payload", e);
+        } catch (ZipException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Corrupt compressed request body", e);
+        }
+    }
+
+    /**
+     * @param voters receives the voter names, or null to skip them
+     */
+    private JsonNode readElectionValue(JsonParser parser, EncodedVoterLists.Builder voters) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            return readValue(parser);
+        }
+        ObjectNode root = objectMapper.createObjectNode();
+        for (String field = parser.nextFieldName(); field != null; field = parser.nextFieldName()) {
+            JsonToken value = parser.nextToken();
+            root.set(field, field.equals("data") && value == JsonToken.START_OBJECT
+                    ? readElectionData(parser, voters) : readValue(parser));
+        }
+        return root;
+    }
+
+    private ObjectNode readElectionData(JsonParser parser, EncodedVoterLists.Builder voters) throws IOException {
+        ObjectNode data = objectMapper.createObjectNode();
+        for (String field = parser.nextFieldName(); field != null; field = parser.nextFieldName()) {
+            JsonToken value = parser.nextToken();
+            data.set(field, field.equals("resultsSummary") && value == JsonToken.START_ARRAY
+                    ? readResultsSummary(parser, voters) : readValue(parser));
+        }
+        return data;
+    }
+
+    private ArrayNode readResultsSummary(JsonParser parser, EncodedVoterLists.Builder voters) throws IOException {
+        ArrayNode results = objectMapper.createArrayNode();
+        for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+            if (token != JsonToken.START_OBJECT) {
+                results.add(readValue(parser));
+                continue;
+            }
+            int index = results.size();
+            ObjectNode candidate = results.addObject();
+            for (String field = parser.nextFieldName(); field != null; field = parser.nextFieldName()) {
+                JsonToken value = parser.nextToken();
+                if (!field.equals("voters") || value != JsonToken.START_ARRAY) {
+                    candidate.set(field, readValue(parser));
+                    continue;
+                }
+                if (voters == null) {
+                    parser.skipChildren();
+                    continue;
+                }
+                for (JsonToken voter = parser.nextToken(); voter != JsonToken.END_ARRAY; voter = parser.nextToken()) {
+                    // Matches JsonNode.asText(): containers read as empty text
+                    parser.skipChildren();
+                    voters.add(index, voter.isScalarValue() ? parser.getText() : "");
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * The value at the parser's current token as a tree
+     */
+    private JsonNode readValue(JsonParser parser) throws IOException {
+        JsonNode value = objectMapper.readTree(parser);
+        return value != null ? value : NullNode.getInstance();
+    }
+
+    /**
+     * Opens a token parser over the request body for exports that consume the payload
+     * incrementally and never build the full tree. These are bounded by the larger
+     * {@code export.request.max-streaming-body-size}. The caller owns the parser.
+     */
+    public JsonParser openStreamingParser(HttpServletRequest request) throws IOException {
+        try {
+            return openParser(request, exportProperties.getRequest().getMaxStreamingBodySize().toBytes());
+        } catch (ZipException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Corrupt compressed request body", e);
+        }
+    }
+
+    private JsonParser openParser(HttpServletRequest request, long maxBytes) throws IOException {
+        JsonFactory factory = factoryFor(request.getContentType());
+        return factory.createParser(openBody(request, maxBytes));
+    }
+
+    /**
+     * Decoded, size-limited request body; compression ratios are recorded when it is closed
+     */
+    private InputStream openBody(HttpServletRequest request, long maxBytes) throws IOException {
+        if (request.getContentLengthLong() > maxBytes) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Request body exceeds " + maxBytes + " bytes");
+        }
+        String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        LimitedInputStream raw = new LimitedInputStream(request.getInputStream(), maxBytes);
+        if (isIdentity(encoding)) {
+            return raw;
+        }
+        LimitedInputStream body = new LimitedInputStream(decode(raw, encoding), maxBytes);
+        return new FilterInputStream(body) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                compressionMetrics.recordRequest(body.getCount(), raw.getCount());
+            }
+        };
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private JsonFactory factoryFor(String contentType) {
+        if (contentType != null) {
+            MediaType mediaType;
+            try {
+                mediaType = MediaType.parseMediaType(contentType);
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "Invalid Content-Type: " + contentType);
+            }
+            if (APPLICATION_SMILE.includes(mediaType)) {
+                return SMILE_FACTORY;
+            }
+            if (APPLICATION_CBOR.includes(mediaType)) {
+                return CBOR_FACTORY;
+            }
+        }
+        return objectMapper.getFactory();
+    }
+
+    private static boolean isIdentity(String encoding) {
+        return encoding == null || encoding.isBlank() || encoding.equalsIgnoreCase("identity");
+    }
+
+    private static InputStream decode(InputStream in, String encoding) throws IOException {
+        return switch (encoding.trim().toLowerCase()) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(in, 8192);
+            case "deflate" -> new InflaterInputStream(in);
+            default -> throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE,
+                    "Unsupported Content-Encoding: " + encoding);
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package com.election.web;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * A server-sent event stream that is written without blocking. An event may only be sent while
+ * {@link #isReady()}; once it returns {@code false} the client has not taken what was written
+ * yet, and the {@link #onWritable} callback runs when it has.
+ */
+public interface EventStream {
+
+    /**
+     * Starts an event stream on the request, which stays open until it is closed, the client goes
+     * away or {@code timeout} passes
+     */
+    static EventStream open(HttpServletRequest request, HttpServletResponse response, Duration timeout)
+            throws IOException {
+        return ServletEventStream.open(request, response, timeout);
+    }
+
+    /**
+     * Whether an event can be sent now; must be asked before each one
+     */
+    boolean isReady();
+
+    void send(String id, String name, String data) throws IOException;
+
+    /**
+     * Ends the stream; the {@link #onClose} callback runs once it has ended
+     */
+    void close();
+
+    /**
+     * Runs {@code callback} each time the stream can be written again after {@link #isReady()}
+     * returned {@code false}
+     */
+    void onWritable(Runnable callback);
+
+    /**
+     * Runs {@code callback} once the stream has ended, however it ended
+     */
+    void onClose(Runnable callback);
+}
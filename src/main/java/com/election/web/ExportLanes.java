@@ -0,0 +1,152 @@
+package com.election.web;
+
+import com.election.config.ExportProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs exports on one of two bounded executors instead of the servlet threads, so a burst of
+ * heavy creator exports queues behind its own threads while viewer downloads keep theirs.
+ * <p>
+ * Each lane has a concurrency limit, a queue capacity and a queue timeout; an export that finds
+ * the queue full, or that waited longer than the timeout, is answered with a 503. Queue wait,
+ * render time, active and queued exports and rejections are published per lane under
+ * {@code /actuator/metrics/export.lane.*}.
+ * <p>
+ * Outputs an export creates on a lane thread are deleted once the response has been sent, as
+ * they are for exports rendered on the servlet thread.
+ */
+@Component
+public class ExportLanes {
+
+    public enum Lane {
+        LIGHT, HEAVY;
+
+        /**
+         * Viewer exports are light, creator exports heavy
+         */
+        public static Lane forRole(String role) {
+            return "viewer".equalsIgnoreCase(role) ? LIGHT : HEAVY;
+        }
+    }
+
+    private final LaneState light;
+    private final LaneState heavy;
+
+    public ExportLanes(ExportProperties exportProperties, MeterRegistry registry,
+                       @Qualifier("lightLaneExecutor") ThreadPoolTaskExecutor lightLaneExecutor,
+                       @Qualifier("heavyLaneExecutor") ThreadPoolTaskExecutor heavyLaneExecutor) {
+        this.light = new LaneState("light", exportProperties.getLanes().getLight(), lightLaneExecutor, registry);
+        this.heavy = new LaneState("heavy", exportProperties.getLanes().getHeavy(), heavyLaneExecutor, registry);
+    }
+
+    /**
+     * Queues {@code export} on {@code lane}; the servlet thread is released once this returns
+     *
+     * @throws ResponseStatusException 503 when the lane's queue is full
+     */
+    public <T> WebAsyncTask<T> submit(Lane lane, Callable<T> export) {
+        LaneState state = lane == Lane.LIGHT ? light : heavy;
+        if (state.queued.incrementAndGet() > state.queueCapacity) {
+            state.queued.decrementAndGet();
+            state.queueFull.increment();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Too many " + state.name + " exports are waiting, try again later");
+        }
+        long enqueued = System.nanoTime();
+        AtomicReference<RequestAttributes> attributes = new AtomicReference<>();
+        // No timeout: an admitted export runs as long as it did on the servlet thread
+        WebAsyncTask<T> task = new WebAsyncTask<>(-1L, state.executor, () -> {
+            state.queued.decrementAndGet();
+            long waited = System.nanoTime() - enqueued;
+            state.queueWait.record(waited, TimeUnit.NANOSECONDS);
+            if (waited > state.queueTimeoutNanos) {
+                state.queueTimeout.increment();
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Waited too long for a " + state.name + " export thread, try again later");
+            }
+            attributes.set(RequestContextHolder.getRequestAttributes());
+            state.active.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                return export.call();
+            } finally {
+                state.active.decrementAndGet();
+                state.execution.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        });
+        // The attributes bound on the lane thread are never completed by Spring, so the outputs
+        // registered on them would outlive the request
+        task.onCompletion(() -> {
+            if (attributes.get() instanceof ServletRequestAttributes requestAttributes) {
+                requestAttributes.requestCompleted();
+            }
+        });
+        return task;
+    }
+
+    private static final class LaneState {
+        final String name;
+        final ThreadPoolTaskExecutor executor;
+        final int queueCapacity;
+        final long queueTimeoutNanos;
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicInteger active = new AtomicInteger();
+        final Timer queueWait;
+        final Timer execution;
+        final Counter queueFull;
+        final Counter queueTimeout;
+
+        LaneState(String name, ExportProperties.Lane settings, ThreadPoolTaskExecutor executor, MeterRegistry registry) {
+            this.name = name;
+            this.executor = executor;
+            this.queueCapacity = Math.max(0, settings.getQueueCapacity());
+            this.queueTimeoutNanos = settings.getQueueTimeout().toNanos();
+            this.queueWait = Timer.builder("export.lane.queue.wait")
+                    .description("Time exports waited for a lane thread")
+                    .tag("lane", name)
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry);
+            this.execution = Timer.builder("export.lane.execution")
+                    .description("Time exports took to render on a lane thread")
+                    .tag("lane", name)
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry);
+            this.queueFull = rejectedCounter(registry, name, "queue-full");
+            this.queueTimeout = rejectedCounter(registry, name, "queue-timeout");
+            Gauge.builder("export.lane.active", active, AtomicInteger::get)
+                    .description("Exports rendering on the lane")
+                    .tag("lane", name)
+                    .register(registry);
+            Gauge.builder("export.lane.queued", queued, AtomicInteger::get)
+                    .description("Exports waiting for a lane thread")
+                    .tag("lane", name)
+                    .register(registry);
+        }
+
+        private static Counter rejectedCounter(MeterRegistry registry, String lane, String reason) {
+            return Counter.builder("export.lane.rejected")
+                    .description("Exports answered with a 503 by the lane")
+                    .tag("lane", lane)
+                    .tag("reason", reason.toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+    }
+}
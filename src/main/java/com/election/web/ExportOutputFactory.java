@@ -0,0 +1,98 @@
+package com.election.web;
+
+import com.election.config.ExportProperties;
+import com.election.io.SpillableOutputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the output sinks export responses are rendered into.
+ * <p>
+ * Outputs larger than {@code export.spill.memory-threshold} go to a temporary file and are sent
+ * as a {@link FileSystemResource}, which Spring streams to the client in small buffers instead of
+ * loading the file. Every output created during a request is deleted when that request completes,
+ * whether the export succeeded or failed. Outside a request, outputs are deleted when the
+ * enclosing {@link #runScoped} call returns, or otherwise by the caller.
+ */
+@Slf4j
+@Component
+public class ExportOutputFactory {
+
+    private static final String CALLBACK_PREFIX = ExportOutputFactory.class.getName() + ".";
+
+    private final long memoryThreshold;
+    private final Path directory;
+    private final AtomicLong callbackIds = new AtomicLong();
+    private final ThreadLocal<List<SpillableOutputStream>> scoped = new ThreadLocal<>();
+
+    public ExportOutputFactory(ExportProperties exportProperties) throws IOException {
+        ExportProperties.Spill spill = exportProperties.getSpill();
+        this.memoryThreshold = spill.getMemoryThreshold().toBytes();
+        this.directory = StringUtils.hasText(spill.getDirectory())
+                ? Files.createDirectories(Path.of(spill.getDirectory()))
+                : Path.of(System.getProperty("java.io.tmpdir"));
+    }
+
+    public SpillableOutputStream create() {
+        SpillableOutputStream output = new SpillableOutputStream(memoryThreshold, directory);
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null) {
+            request.registerDestructionCallback(CALLBACK_PREFIX + callbackIds.incrementAndGet(),
+                    () -> delete(output), RequestAttributes.SCOPE_REQUEST);
+        } else if (scoped.get() != null) {
+            scoped.get().add(output);
+        }
+        return output;
+    }
+
+    /**
+     * Runs background work that renders exports, deleting every output it created once it returns
+     */
+    public void runScoped(Runnable task) {
+        if (scoped.get() != null) {
+            task.run();
+            return;
+        }
+        List<SpillableOutputStream> outputs = new ArrayList<>();
+        scoped.set(outputs);
+        try {
+            task.run();
+        } finally {
+            scoped.remove();
+            outputs.forEach(ExportOutputFactory::delete);
+        }
+    }
+
+    /**
+     * Finishes the output and exposes it as a response body
+     */
+    public static Resource toResource(SpillableOutputStream output) throws IOException {
+        output.close();
+        if (output.isSpilled()) {
+            log.debug("Serving {} byte export from {}", output.size(), output.getFile());
+            return new FileSystemResource(output.getFile());
+        }
+        return new ByteArrayResource(output.toByteArray());
+    }
+
+    private static void delete(SpillableOutputStream output) {
+        try {
+            output.delete();
+        } catch (IOException e) {
+            log.warn("Could not delete export spill file {}", output.getFile(), e);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.election.web;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Buffers the start of the body until the minimum size is reached, then either switches to
+ * gzip for compressible content types or passes the bytes through untouched. Once decided,
+ * writes go straight to the client, so streamed exports stay streamed.
+ * <p>
+ * Only full {@code 200} responses are compressed, so partial content is always sent as is.
+ */
+class GzipResponseWrapper extends HttpServletResponseWrapper {
+
+    private final int level;
+    private final int threshold;
+    private final List<MediaType> compressibleTypes;
+    private final CompressionMetrics metrics;
+
+    private ThresholdOutputStream stream;
+    private PrintWriter writer;
+    private long declaredLength = -1;
+
+    GzipResponseWrapper(HttpServletResponse response, int level, int threshold,
+                        List<MediaType> compressibleTypes, CompressionMetrics metrics) {
+        super(response);
+        this.level = level;
+        this.threshold = threshold;
+        this.compressibleTypes = compressibleTypes;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called");
+        }
+        return stream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (stream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called");
+            }
+            writer = new PrintWriter(new OutputStreamWriter(stream(), getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        setContentLengthLong(len);
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        if (stream != null && stream.target != null && !stream.compressing) {
+            super.setContentLengthLong(len);
+        }
+        declaredLength = len;
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value));
+        } else {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value));
+        } else {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (stream == null || stream.target != null) {
+            super.flushBuffer();
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        if (stream != null && stream.target == null) {
+            stream.buffer.reset();
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        declaredLength = -1;
+        if (stream != null && stream.target == null) {
+            stream.buffer.reset();
+        }
+    }
+
+    /**
+     * Completes the body: decides on any still-buffered bytes and writes the gzip trailer
+     */
+    void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (stream != null) {
+            stream.finish();
+        }
+    }
+
+    private ThresholdOutputStream stream() {
+        if (stream == null) {
+            stream = new ThresholdOutputStream();
+        }
+        return stream;
+    }
+
+    private boolean isCompressible() {
+        if (getStatus() != HttpServletResponse.SC_OK || getHeader(HttpHeaders.CONTENT_ENCODING) != null) {
+            return false;
+        }
+        String contentType = getContentType();
+        if (contentType == null) {
+            return false;
+        }
+        MediaType mediaType = MediaType.parseMediaType(contentType);
+        return compressibleTypes.stream().anyMatch(type -> type.includes(mediaType));
+    }
+
+    private class ThresholdOutputStream extends ServletOutputStream {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private OutputStream target;
+        private CountingOutputStream wire;
+        private boolean compressing;
+        private long originalBytes;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (target == null) {
+                if (buffer.size() + len < threshold && declaredLength < threshold) {
+                    buffer.write(b, off, len);
+                    return;
+                }
+                decide(isCompressible(), false);
+            }
+            originalBytes += len;
+            target.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // Until the encoding is decided nothing may reach the client
+            if (target != null) {
+                target.flush();
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return container().isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            container().setWriteListener(writeListener);
+        }
+
+        void finish() throws IOException {
+            if (target == null) {
+                decide(false, true);
+            }
+            if (compressing) {
+                ((GZIPOutputStream) target).finish();
+                metrics.recordResponse(originalBytes, wire.count);
+            }
+            target.flush();
+        }
+
+        private ServletOutputStream container() {
+            try {
+                return GzipResponseWrapper.super.getOutputStream();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void decide(boolean compress, boolean complete) throws IOException {
+            ServletOutputStream out = GzipResponseWrapper.super.getOutputStream();
+            if (compress) {
+                compressing = true;
+                GzipResponseWrapper.super.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+                GzipResponseWrapper.super.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                // Byte ranges and strong validators refer to the identity body, not the gzip stream
+                String etag = getHeader(HttpHeaders.ETAG);
+                if (etag != null && !etag.startsWith("W/")) {
+                    GzipResponseWrapper.super.setHeader(HttpHeaders.ETAG, "W/" + etag);
+                }
+                if (getHeader(HttpHeaders.ACCEPT_RANGES) != null) {
+                    GzipResponseWrapper.super.setHeader(HttpHeaders.ACCEPT_RANGES, "none");
+                }
+                wire = new CountingOutputStream(out);
+                target = new GZIPOutputStream(wire, 8192, true) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+            } else {
+                if (declaredLength >= 0 || complete) {
+                    GzipResponseWrapper.super.setContentLengthLong(declaredLength >= 0 ? declaredLength : buffer.size());
+                }
+                target = out;
+            }
+            originalBytes += buffer.size();
+            buffer.writeTo(target);
+            buffer.reset();
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
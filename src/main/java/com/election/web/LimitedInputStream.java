@@ -0,0 +1,65 @@
+package com.election.web;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails the read as soon as more than {@code maxBytes} have been consumed, so oversized
+ * payloads are rejected while streaming instead of after being buffered
+ */
+class LimitedInputStream extends FilterInputStream {
+
+    private final long maxBytes;
+    private long count;
+
+    LimitedInputStream(InputStream in, long maxBytes) {
+        super(in);
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            consumed(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            consumed(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        consumed(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    private void consumed(long n) {
+        count += n;
+        if (count > maxBytes) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Request body exceeds " + maxBytes + " bytes");
+        }
+    }
+}
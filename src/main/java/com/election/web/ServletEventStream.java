@@ -0,0 +1,133 @@
+package com.election.web;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link EventStream} over servlet non-blocking output: each event is handed to the container in
+ * one write, and a client that stops reading leaves it in the container's buffer instead of
+ * holding up the writing thread
+ */
+@Slf4j
+final class ServletEventStream implements EventStream, WriteListener, AsyncListener {
+
+    private final AsyncContext context;
+    private final ServletOutputStream out;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile Runnable onWritable = () -> {
+    };
+    private volatile Runnable onClose = () -> {
+    };
+
+    private ServletEventStream(AsyncContext context, ServletOutputStream out) {
+        this.context = context;
+        this.out = out;
+    }
+
+    static EventStream open(HttpServletRequest request, HttpServletResponse response, Duration timeout)
+            throws IOException {
+        response.setContentType(MediaType.TEXT_EVENT_STREAM_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        AsyncContext context = request.startAsync(request, response);
+        context.setTimeout(timeout.toMillis());
+        ServletEventStream stream = new ServletEventStream(context, response.getOutputStream());
+        context.addListener(stream);
+        // The container calls onWritePossible once this request thread has returned
+        stream.out.setWriteListener(stream);
+        return stream;
+    }
+
+    @Override
+    public boolean isReady() {
+        return !closed.get() && out.isReady();
+    }
+
+    @Override
+    public void send(String id, String name, String data) throws IOException {
+        out.write(("id:" + id + "\nevent:" + name + "\ndata:" + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        if (out.isReady()) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            complete();
+        }
+    }
+
+    @Override
+    public void onWritable(Runnable callback) {
+        this.onWritable = callback;
+    }
+
+    @Override
+    public void onClose(Runnable callback) {
+        this.onClose = callback;
+    }
+
+    @Override
+    public void onWritePossible() throws IOException {
+        // Sends the response headers on the first call, and what the last event left buffered after that
+        out.flush();
+        if (out.isReady()) {
+            onWritable.run();
+        }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        // The client went away; the container follows up with onError(AsyncEvent)
+        closed.set(true);
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        closed.set(true);
+        onClose.run();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        closed.set(true);
+        complete();
+    }
+
+    /**
+     * Completes here even if the stream was closed already, or the container dispatches to its
+     * error page
+     */
+    @Override
+    public void onError(AsyncEvent event) {
+        closed.set(true);
+        complete();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+
+    private void complete() {
+        try {
+            context.complete();
+        } catch (IllegalStateException e) {
+            // Already completed by the container
+            log.debug("Event stream was already complete", e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.election.aggregate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ElectionComparisonTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void comparesElectionsAndSumsTotals() throws Exception {
+        List<JsonNode> elections = List.of(
+                objectMapper.readTree("""
+                        {"data":{"electionId":"e1","electionName":"First",
+                          "analytics":{"candidateGender":{"male":30,"female":10}},
+                          "resultsSummary":[{"numberOfVoters":25},{"numberOfVoters":15}],
+                          "insights":{"allVotersCount":100,"submittedVotesCount":40,"completionRate":40.0}}}
+                        """),
+                objectMapper.readTree("""
+                        {"electionId":"e2","analytics":{"candidateGender":{"female":20,"other":10}},
+                         "resultsSummary":[{"numberOfVoters":30}],
+                         "insights":{"allVotersCount":300,"submittedVotesCount":240,"completionRate":80.0}}
+                        """),
+                objectMapper.readTree("""
+                        {"data":{"electionId":"e3","resultsSummary":[]}}
+                        """));
+
+        ElectionComparison comparison = ElectionComparison.build(elections.size(), elections::get,
+                ForkJoinPool.commonPool());
+
+        ElectionComparison.Row first = comparison.rows().get(0);
+        assertEquals("First", first.electionName());
+        assertEquals(2, first.candidates());
+        assertEquals(40, first.votes());
+        assertEquals(40.0, first.turnout(), 1e-9);
+        assertTrue(Double.isNaN(comparison.rows().get(2).turnout()));
+
+        ElectionComparison.Totals totals = comparison.totals();
+        assertEquals(3, totals.elections());
+        assertEquals(70, totals.votes());
+        assertEquals(400, totals.allVoters());
+        assertEquals(70.0, totals.turnout(), 1e-9);
+        // Weighted by allVotersCount: (40 * 100 + 80 * 300) / 400
+        assertEquals(70.0, totals.completionRate(), 1e-9);
+        assertEquals(List.of("male", "female", "other"), comparison.genderCategories());
+        assertEquals(30.0 / 70, ElectionComparison.share(totals.gender(), "female"), 1e-9);
+        assertTrue(comparison.ageRangeCategories().isEmpty());
+    }
+
+    @Test
+    void keepsElectionOrderAcrossForkedTasks() {
+        List<JsonNode> elections = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            elections.add(objectMapper.createObjectNode().put("electionId", "e" + i)
+                    .set("analytics", objectMapper.createObjectNode().set("candidateAgeRange",
+                            objectMapper.createObjectNode().put("range " + (i % 7), 1))));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ElectionComparison comparison;
+        try {
+            comparison = ElectionComparison.build(elections.size(), elections::get, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("e" + i, comparison.rows().get(i).electionId());
+        }
+        assertEquals(List.of("range 0", "range 1", "range 2", "range 3", "range 4", "range 5", "range 6"),
+                comparison.ageRangeCategories());
+        assertEquals(1000L, comparison.totals().ageRange().values().stream().mapToLong(Long::longValue).sum());
+    }
+}
@@ -0,0 +1,69 @@
+package com.election.aggregate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopAnswersTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void keepsTheLargestAnswersAndFoldsTheRest() {
+        ArrayNode answers = objectMapper.createArrayNode();
+        Random random = new Random(7);
+        long totalCount = 0;
+        for (int i = 0; i < 5000; i++) {
+            int count = random.nextInt(100);
+            totalCount += count;
+            answers.addObject().put("name", "option " + i).put("answerCount", count)
+                    .put("answerPercentage", count / 10.0);
+        }
+
+        TopAnswers.Selection selection = new TopAnswers(50).select(answers, "answerCount");
+
+        // A stable full sort gives the same answers, with ties kept in payload order
+        List<JsonNode> sorted = new ArrayList<>();
+        answers.forEach(sorted::add);
+        sorted.sort(Comparator.comparingLong((JsonNode a) -> a.path("answerCount").asLong()).reversed());
+        assertEquals(sorted.subList(0, 50), selection.ranked());
+
+        List<JsonNode> inPayloadOrder = new ArrayList<>(sorted.subList(0, 50));
+        inPayloadOrder.sort(Comparator.comparingInt(a -> Integer.parseInt(a.path("name").asText().substring(7))));
+        assertEquals(inPayloadOrder, selection.inPayloadOrder());
+
+        long keptCount = selection.ranked().stream().mapToLong(a -> a.path("answerCount").asLong()).sum();
+        assertTrue(selection.hasOthers());
+        assertEquals(4950, selection.otherAnswers());
+        assertEquals(totalCount - keptCount, selection.otherCount());
+        assertEquals((totalCount - keptCount) / 10.0, selection.otherPercentage(), 0.01);
+    }
+
+    @Test
+    void keepsEveryAnswerUpToTheLimit() {
+        ArrayNode answers = objectMapper.createArrayNode();
+        answers.addObject().put("name", "a").put("answerCount", 1);
+        answers.addObject().put("name", "b").put("answerCount", 3);
+        answers.addObject().put("name", "c").put("answerCount", 2);
+
+        TopAnswers topAnswers = new TopAnswers(3);
+        assertFalse(topAnswers.truncates(answers));
+        assertEquals(3, topAnswers.displayedCount(answers));
+        TopAnswers.Selection selection = topAnswers.select(answers, "answerCount");
+        assertFalse(selection.hasOthers());
+        assertEquals(List.of("b", "c", "a"), selection.ranked().stream().map(a -> a.path("name").asText()).toList());
+        assertEquals(List.of("a", "b", "c"),
+                selection.inPayloadOrder().stream().map(a -> a.path("name").asText()).toList());
+
+        assertFalse(new TopAnswers(0).truncates(answers));
+        assertEquals(3, new TopAnswers(2).displayedCount(answers));
+    }
+}
@@ -0,0 +1,62 @@
+package com.election.aggregate;
+
+import com.election.io.Utf8CsvWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoterDictionaryTest {
+
+    @Test
+    void storesEachNameOnceAcrossGrowth() {
+        VoterDictionary dictionary = new VoterDictionary(16);
+        VoterDictionary.Snapshot early = null;
+        for (int i = 0; i < 100_000; i++) {
+            assertEquals(i, dictionary.id("Voter " + i));
+            if (i == 10) {
+                early = dictionary.snapshot();
+            }
+        }
+        assertArrayEquals(new int[]{7, 99_999, 100_000}, dictionary.ids(List.of("Voter 7", "Voter 99999", "محمد")));
+        VoterDictionary.Snapshot snapshot = dictionary.snapshot();
+
+        assertEquals(100_001, snapshot.size());
+        assertEquals("محمد", snapshot.name(100_000));
+        assertEquals("Voter 54321", snapshot.name(54_321));
+        // Older snapshots keep reading the arrays they were taken on
+        assertEquals("Voter 10", early.name(10));
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshot.name(100_001));
+    }
+
+    @Test
+    void encodedListsWriteNamesAsOneCsvField() throws IOException {
+        EncodedVoterLists.Builder builder = new EncodedVoterLists.Builder();
+        builder.add(0, "Ali");
+        builder.add(2, "Sara \"S\"");
+        builder.add(2, "Ali");
+        VoterLists voters = builder.build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Utf8CsvWriter writer = new Utf8CsvWriter(out, 16)) {
+            writer.field("C");
+            writer.beginField();
+            for (int i = 0; i < voters.size(2); i++) {
+                if (i > 0) {
+                    writer.appendText(", ");
+                }
+                voters.appendTo(writer, 2, i);
+            }
+            writer.endField().endRow();
+        }
+
+        assertEquals(0, voters.size(1));
+        assertEquals(0, voters.size(5));
+        assertEquals("Ali", voters.name(2, 1));
+        assertEquals("\"C\",\"Sara \"\"S\"\", Ali\"\n", out.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,77 @@
+package com.election.aggregate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoterIndexTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void mapsVotersToCandidatesAndAnswers() throws Exception {
+        JsonNode data = objectMapper.readTree("""
+                {"resultsSummary":[
+                  {"candidateName":"A","voters":["v1","v2","v1"]},
+                  {"candidateName":"B","voters":["v2"]}],
+                 "questionResults":[
+                  {"questionNumber":"1","title":"Color","answers":[
+                    {"name":"Red","voterName":"v2"},{"name":"Blue","voterName":["v1","v3"]}]},
+                  {"questionNumber":"2","title":"Why","type":"TEXT","singleAnswer":"Because","voterName":"v3"}]}
+                """);
+        VoterIndex index = VoterIndex.build(data, VoterLists.of(data.path("resultsSummary")), 4, Long.MAX_VALUE, ForkJoinPool.commonPool());
+
+        VoterIndex.Votes v2 = index.find("v2");
+        assertEquals(List.of("A", "B"), v2.candidates());
+        assertEquals(List.of(new VoterIndex.Answer("1", "Color", "Red")), v2.answers());
+        assertEquals(List.of("A"), index.find("v1").candidates());
+        assertEquals(List.of(new VoterIndex.Answer("1", "Color", "Blue"), new VoterIndex.Answer("2", "Why", "Because")),
+                index.find("v3").answers());
+        assertNull(index.find("nobody"));
+        assertEquals(3, index.voters());
+        assertEquals(8, index.entries());
+    }
+
+    @Test
+    void partitionedBuildMatchesEncodedVoterLists() {
+        EncodedVoterLists.Builder builder = new EncodedVoterLists.Builder();
+        StringBuilder json = new StringBuilder("{\"resultsSummary\":[");
+        for (int c = 0; c < 3; c++) {
+            json.append(c > 0 ? "," : "").append("{\"candidateName\":\"C").append(c).append("\"}");
+        }
+        for (int v = 0; v < 200_000; v++) {
+            builder.add(v % 3, "Voter " + v);
+            if (v % 10 == 0) {
+                builder.add((v + 1) % 3, "Voter " + v);
+            }
+        }
+        JsonNode data = parse(json.append("]}").toString());
+        EncodedVoterLists voters = builder.build();
+        VoterIndex index = VoterIndex.build(data, voters, 16, Long.MAX_VALUE, ForkJoinPool.commonPool());
+
+        assertEquals(200_000, index.voters());
+        assertEquals(List.of("C0"), index.find("Voter 123456").candidates());
+        assertEquals(List.of("C1", "C2"), index.find("Voter 199990").candidates());
+
+        // The dictionaries are sized by distinct names, so the budget is checked while interning
+        long footprint = index.footprint();
+        VoterIndex.TooLargeException e = assertThrows(VoterIndex.TooLargeException.class,
+                () -> VoterIndex.build(data, voters, 16, footprint / 2, ForkJoinPool.commonPool()));
+        assertTrue(e.bytes() > footprint / 2);
+        assertThrows(VoterIndex.TooLargeException.class,
+                () -> VoterIndex.build(data, voters, 16, 4L * index.entries() - 1, ForkJoinPool.commonPool()));
+    }
+
+    private JsonNode parse(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.election.controller;
+
+import com.election.config.ExportProperties;
+import com.election.service.BallotAggregationService;
+import com.election.service.ExportAdmission;
+import com.election.service.ExportCostEstimator;
+import com.election.web.ExportLanes;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BallotControllerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ThreadPoolTaskExecutor light = new ThreadPoolTaskExecutor();
+    private final ThreadPoolTaskExecutor heavy = new ThreadPoolTaskExecutor();
+
+    @AfterEach
+    void shutdown() {
+        light.shutdown();
+        heavy.shutdown();
+    }
+
+    @Test
+    void ballotExportsAreRejectedWhenTheHeapBudgetIsFull() throws Exception {
+        ExportProperties properties = new ExportProperties();
+        properties.getAdmission().setQueueTimeout(Duration.ofMillis(50));
+        // Every export counts as large, so a held large permit leaves no room at all
+        properties.getAdmission().setSmallHeap(DataSize.ofBytes(0));
+        ExportAdmission admission = new ExportAdmission(properties, new SimpleMeterRegistry());
+        BallotAggregationService aggregation = new BallotAggregationService(objectMapper, properties);
+        aggregation.define("e1", objectMapper.readTree(
+                "{\"data\":{\"electionName\":\"Board\",\"resultsSummary\":[{\"candidateName\":\"A\"}]}}"));
+        // The export services are never reached
+        BallotController controller = new BallotController(aggregation, null, null, null,
+                new ExportCostEstimator(objectMapper, properties), admission,
+                new ExportLanes(properties, new SimpleMeterRegistry(), light, heavy));
+
+        long budget = admission.usage().heapBudget();
+        try (ExportAdmission.Permit held = admission.admit(
+                new ExportCostEstimator.Estimate("election-pdf", "", 10_000, budget, 0))) {
+            for (WebAsyncTask<ResponseEntity<Resource>> task
+                    : List.of(controller.pdf("e1"), controller.export("e1", "viewer", "csv", "en"))) {
+                // Run on this thread, as the lane would
+                ResponseStatusException e = assertThrows(ResponseStatusException.class, task.getCallable()::call);
+                assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+            }
+        }
+        assertEquals(0, admission.usage().heapInUse());
+    }
+}
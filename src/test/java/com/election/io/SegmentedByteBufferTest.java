@@ -0,0 +1,41 @@
+package com.election.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SegmentedByteBufferTest {
+
+    @Test
+    void keepsBytesInOrderAcrossSegmentSizes() throws Exception {
+        byte[] data = new byte[3 * BufferPool.LARGE_SEGMENT + 17];
+        new Random(7).nextBytes(data);
+
+        SegmentedByteBuffer buffer = new SegmentedByteBuffer(new BufferPool(4, 4));
+        buffer.write(data[0]);
+        for (int offset = 1; offset < data.length; offset += 1000) {
+            buffer.write(data, offset, Math.min(1000, data.length - offset));
+        }
+
+        assertEquals(data.length, buffer.size());
+        assertArrayEquals(data, buffer.toByteArray());
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        buffer.writeTo(copy);
+        assertArrayEquals(data, copy.toByteArray());
+    }
+
+    @Test
+    void isEmptyAndReusableAfterRelease() throws Exception {
+        SegmentedByteBuffer buffer = new SegmentedByteBuffer(new BufferPool(4, 4));
+        buffer.write(new byte[BufferPool.SMALL_LIMIT + 1]);
+        buffer.release();
+
+        assertEquals(0, buffer.size());
+        buffer.write(new byte[]{1, 2, 3});
+        assertArrayEquals(new byte[]{1, 2, 3}, buffer.toByteArray());
+    }
+}
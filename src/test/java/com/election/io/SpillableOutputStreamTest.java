@@ -0,0 +1,47 @@
+package com.election.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpillableOutputStreamTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void staysInMemoryUpToThreshold() throws Exception {
+        SpillableOutputStream output = new SpillableOutputStream(16, directory);
+        output.write(new byte[16]);
+        output.close();
+
+        assertFalse(output.isSpilled());
+        assertEquals(16, output.toByteArray().length);
+        output.delete();
+    }
+
+    @Test
+    void spillsPastThresholdAndDeletesFile() throws Exception {
+        byte[] data = new byte[200_000];
+        new Random(3).nextBytes(data);
+
+        SpillableOutputStream output = new SpillableOutputStream(50_000, directory);
+        for (int offset = 0; offset < data.length; offset += 7_000) {
+            output.write(data, offset, Math.min(7_000, data.length - offset));
+        }
+        output.close();
+
+        assertTrue(output.isSpilled());
+        assertEquals(data.length, output.size());
+        assertArrayEquals(data, Files.readAllBytes(output.getFile()));
+        assertThrows(IllegalStateException.class, output::toByteArray);
+
+        output.delete();
+        assertFalse(Files.exists(output.getFile()));
+    }
+}
@@ -0,0 +1,115 @@
+package com.election.io;
+
+import com.election.io.StreamingXlsxWriter.Style;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingXlsxWriterTest {
+
+    @Test
+    void workbookIsReadableByPoi() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (StreamingXlsxWriter writer = new StreamingXlsxWriter(out)) {
+            StreamingXlsxWriter.SheetWriter sheet = writer.startSheet("Results & <More>", 20, 40);
+            sheet.startRow();
+            sheet.cell("Question", Style.HEADER);
+            sheet.cell("عنوان", Style.HEADER);
+            sheet.startRow();
+            sheet.cell(" a \"quoted\" <b>&</b> ");
+            sheet.cell("bell\u0007gone");
+            StreamingXlsxWriter.SheetWriter wide = writer.startSheet("Wide");
+            wide.startRow();
+            for (int i = 0; i < 800; i++) {
+                wide.cell("c" + i, Style.SECTION_DATA);
+            }
+        }
+
+        try (Workbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(2, workbook.getNumberOfSheets());
+            Sheet sheet = workbook.getSheet("Results & <More>");
+            assertEquals("عنوان", sheet.getRow(0).getCell(1).getStringCellValue());
+            assertTrue(workbook.getFontAt(sheet.getRow(0).getCell(0).getCellStyle().getFontIndex()).getBold());
+            assertEquals(FillPatternType.SOLID_FOREGROUND, sheet.getRow(0).getCell(0).getCellStyle().getFillPattern());
+            assertEquals(" a \"quoted\" <b>&</b> ", sheet.getRow(1).getCell(0).getStringCellValue());
+            assertEquals("bellgone", sheet.getRow(1).getCell(1).getStringCellValue());
+            assertEquals(40 * 256, sheet.getColumnWidth(1), 256);
+
+            Row wide = workbook.getSheet("Wide").getRow(0);
+            assertEquals(800, wide.getLastCellNum());
+            assertEquals("c799", wide.getCell(799).getStringCellValue());
+            assertEquals(BorderStyle.THIN, wide.getCell(0).getCellStyle().getBorderLeft());
+        }
+    }
+
+    @Test
+    void repeatedStringsAreSharedUpToTheBound() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (StreamingXlsxWriter writer = new StreamingXlsxWriter(out, 2)) {
+            StreamingXlsxWriter.SheetWriter sheet = writer.startSheet("Sheet");
+            for (int i = 0; i < 4; i++) {
+                sheet.startRow();
+                sheet.cell("Title");
+                sheet.cell("Voter " + i);
+                sheet.cell(0.125, Style.PERCENT);
+                sheet.cell(i, Style.SECTION_DATA);
+            }
+        }
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(2, workbook.getSharedStringSource().getUniqueCount());
+            Sheet sheet = workbook.getSheetAt(0);
+            for (int i = 0; i < 4; i++) {
+                Row row = sheet.getRow(i);
+                assertEquals("Title", row.getCell(0).getStringCellValue());
+                assertEquals("Voter " + i, row.getCell(1).getStringCellValue());
+                assertEquals(0.125, row.getCell(2).getNumericCellValue());
+                assertEquals("0.00%", row.getCell(2).getCellStyle().getDataFormatString());
+                assertEquals(CellType.NUMERIC, row.getCell(3).getCellType());
+                assertEquals(i, row.getCell(3).getNumericCellValue());
+            }
+        }
+    }
+
+    @Test
+    void parallelSheetsAreAssembledInOrder() throws Exception {
+        List<StreamingXlsxWriter.SheetTask> tasks = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            int shard = i;
+            tasks.add(new StreamingXlsxWriter.SheetTask("Shard " + shard, new double[]{20}, sheet -> {
+                for (int row = 0; row < 1000; row++) {
+                    sheet.startRow();
+                    sheet.cell("Question " + row % 10);
+                    sheet.cell(shard * 1000 + row, Style.DEFAULT);
+                }
+            }));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try (StreamingXlsxWriter writer = new StreamingXlsxWriter(out)) {
+            writer.writeSheets(tasks, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(6, workbook.getNumberOfSheets());
+            assertEquals(10, workbook.getSharedStringSource().getUniqueCount());
+            for (int i = 0; i < 6; i++) {
+                Sheet sheet = workbook.getSheetAt(i);
+                assertEquals("Shard " + i, sheet.getSheetName());
+                assertEquals(999, sheet.getLastRowNum());
+                assertEquals("Question 7", sheet.getRow(997).getCell(0).getStringCellValue());
+                assertEquals(i * 1000 + 997, sheet.getRow(997).getCell(1).getNumericCellValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.election.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Utf8CsvWriterTest {
+
+    @Test
+    void quotesEveryFieldAndDoublesEmbeddedQuotes() throws IOException {
+        String csv = write(writer -> {
+            writer.writeRow("a", "say \"hi\"", "x,y", "");
+            writer.endRow();
+            writer.field("line\nbreak").field(42).endRow();
+        });
+
+        assertThat(csv).isEqualTo("\"a\",\"say \"\"hi\"\"\",\"x,y\",\"\"\n\n\"line\nbreak\",\"42\"\n");
+    }
+
+    @Test
+    void encodesBomAndMultiByteCharactersAsUtf8() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Utf8CsvWriter writer = new Utf8CsvWriter(out, 16)) {
+            writer.writeBom();
+            writer.writeRow("البيانات الرئيسية", "é", "🗳", "\uD800");
+        }
+
+        String expected = "﻿\"البيانات الرئيسية\",\"é\",\"🗳\",\"?\"\n";
+        assertThat(out.toByteArray()).isEqualTo(expected.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void percentFieldMatchesStringFormat() throws IOException {
+        Random random = new Random(7);
+        double[] samples = new double[2_000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = Math.round(random.nextDouble() * 100_000) / 1000.0;
+        }
+        double[] edges = {0.0, -0.0, 1.005, 0.125, 2.675, 99.995, 100.0, -3.14159, 1e12, Double.NaN};
+
+        for (double[] values : new double[][]{samples, edges}) {
+            for (double value : values) {
+                for (int decimals = 0; decimals <= 3; decimals++) {
+                    int d = decimals;
+                    assertThat(write(writer -> writer.percentField(value, d).endRow()))
+                            .as("value %s with %d decimals", value, decimals)
+                            .isEqualTo("\"" + String.format("%." + decimals + "f%%", value) + "\"\n");
+                }
+            }
+        }
+    }
+
+    @Test
+    void plainPercentFieldMatchesDoubleToString() throws IOException {
+        for (double value : new double[]{0.0, 12.0, 56.92, 33.333333333333336, 1.0E7, -4.0}) {
+            assertThat(write(writer -> writer.plainPercentField(value).endRow()))
+                    .isEqualTo("\"" + value + "%\"\n");
+        }
+    }
+
+    private interface RowWriter {
+        void write(Utf8CsvWriter writer) throws IOException;
+    }
+
+    private static String write(RowWriter rows) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Utf8CsvWriter writer = new Utf8CsvWriter(out)) {
+            rows.write(writer);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,78 @@
+package com.election.service;
+
+import com.election.config.ExportProperties;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BallotAggregationServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void aggregatesBallotsIntoElectionPayload() throws Exception {
+        BallotAggregationService service = new BallotAggregationService(objectMapper, new ExportProperties());
+        service.define("e1", objectMapper.readTree("{\"data\":{\"electionName\":\"Board\","
+                + "\"resultsSummary\":[{\"candidateName\":\"B\"},{\"candidateName\":\"Z\"}],\"insights\":{\"allVotersCount\":4}}}"));
+
+        service.ingest("e1", parser("""
+                {"voter":"v1","candidate":"A","gender":"male","answers":{"1":"Yes"}}
+                {"voter":"v2","candidate":"B","gender":"female","answers":{"1":["Yes","No"]}}
+                {"voter":"v3","candidate":"A","answers":{"1":"No"}}
+                """));
+        JsonNode data = service.results("e1").path("data");
+
+        assertEquals("Board", data.path("electionName").asText());
+        assertEquals("B", data.path("resultsSummary").get(0).path("candidateName").asText());
+        assertEquals(0, data.path("resultsSummary").get(1).path("numberOfVoters").asInt());
+        assertEquals(2, data.path("resultsSummary").get(2).path("numberOfVoters").asInt());
+        assertEquals("v3", data.path("resultsSummary").get(2).path("voters").get(1).asText());
+        assertEquals(1, data.path("analytics").path("candidateGender").path("female").asInt());
+        assertEquals(66.67, data.path("questionResults").get(0).path("answers").get(0).path("answerPercentage").asDouble());
+        assertEquals(75.0, data.path("insights").path("completionRate").asDouble());
+    }
+
+    @Test
+    void countsConcurrentUploadsExactly() throws Exception {
+        ExportProperties properties = new ExportProperties();
+        properties.getBallots().setFlushInterval(7);
+        BallotAggregationService service = new BallotAggregationService(objectMapper, properties);
+        StringBuilder ballots = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            ballots.append("{\"candidate\":\"C").append(i % 3).append("\"}\n");
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> uploads = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                uploads.add(pool.submit(() -> service.ingest("e1", parser(ballots.toString()))));
+            }
+            for (Future<?> upload : uploads) {
+                upload.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        JsonNode data = service.results("e1").path("data");
+        assertEquals(8000, data.path("insights").path("submittedVotesCount").asLong());
+        long total = 0;
+        for (JsonNode candidate : data.path("resultsSummary")) {
+            total += candidate.path("numberOfVoters").asLong();
+        }
+        assertEquals(8000, total);
+    }
+
+    private JsonParser parser(String ndjson) throws Exception {
+        return objectMapper.getFactory().createParser(ndjson);
+    }
+}
@@ -0,0 +1,74 @@
+package com.election.service;
+
+import com.election.config.ExportProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ElectionDeltaTrackerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void returnsVotersAppendedSinceVersion() throws Exception {
+        ElectionDeltaTracker tracker = newTracker(10);
+        ElectionDeltaTracker.Result baseline = tracker.update("e1", data("[\"a\",\"b\"]", 2, 40.0), 0);
+        tracker.update("e1", data("[\"a\",\"b\",\"c\"]", 3, 40.0), baseline.version());
+        ElectionDeltaTracker.Result result = tracker.update("e1", data("[\"a\",\"b\",\"c\",\"d\"]", 4, 55.5), baseline.version());
+
+        assertFalse(baseline.delta());
+        assertTrue(result.delta());
+        assertEquals(baseline.version() + 2, result.version());
+        assertEquals(List.of(new ElectionDeltaTracker.CandidateChange("Cand", 4, List.of("c", "d"))), result.candidates());
+        assertEquals(List.of(new ElectionDeltaTracker.PercentageChange("1", "Yes", 55.5)), result.percentages());
+    }
+
+    @Test
+    void sendsFullExportWhenVersionIsNoLongerKept() throws Exception {
+        ElectionDeltaTracker tracker = newTracker(1);
+        ElectionDeltaTracker.Result baseline = tracker.update("e1", data("[\"a\"]", 1, 0), 0);
+        tracker.update("e1", data("[\"a\",\"b\"]", 2, 0), baseline.version());
+        ElectionDeltaTracker.Result result = tracker.update("e1", data("[\"a\",\"b\",\"c\"]", 3, 0), baseline.version());
+
+        assertFalse(result.delta());
+        assertTrue(tracker.update("e1", data("[\"a\",\"b\",\"c\"]", 3, 0), result.version()).delta());
+    }
+
+    @Test
+    void resetsWhenVotersAreRemoved() throws Exception {
+        ElectionDeltaTracker tracker = newTracker(10);
+        ElectionDeltaTracker.Result baseline = tracker.update("e1", data("[\"a\",\"b\"]", 2, 0), 0);
+        ElectionDeltaTracker.Result result = tracker.update("e1", data("[\"b\"]", 1, 0), baseline.version());
+
+        assertFalse(result.delta());
+        assertEquals(baseline.version() + 1, result.version());
+    }
+
+    @Test
+    void resetsWhenAnswersAreRemoved() throws Exception {
+        ElectionDeltaTracker tracker = newTracker(10);
+        ElectionDeltaTracker.Result baseline = tracker.update("e1", objectMapper.readTree(
+                "{\"questionResults\":[{\"questionNumber\":\"1\",\"answers\":"
+                        + "[{\"name\":\"Yes\",\"answerPercentage\":60},{\"name\":\"No\",\"answerPercentage\":40}]}]}"), 0);
+        ElectionDeltaTracker.Result result = tracker.update("e1", data("[]", 0, 100.0), baseline.version());
+
+        assertFalse(result.delta());
+        assertTrue(tracker.update("e1", data("[]", 0, 100.0), result.version()).delta());
+    }
+
+    private ElectionDeltaTracker newTracker(int history) {
+        ExportProperties properties = new ExportProperties();
+        properties.getDelta().setHistory(history);
+        return new ElectionDeltaTracker(properties);
+    }
+
+    private JsonNode data(String voters, int count, double percentage) throws Exception {
+        return objectMapper.readTree("{\"resultsSummary\":[{\"candidateName\":\"Cand\",\"numberOfVoters\":" + count
+                + ",\"voters\":" + voters + "}],\"questionResults\":[{\"questionNumber\":\"1\",\"answers\":"
+                + "[{\"name\":\"Yes\",\"answerPercentage\":" + percentage + "}]}]}");
+    }
+}
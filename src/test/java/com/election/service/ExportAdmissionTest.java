@@ -0,0 +1,65 @@
+package com.election.service;
+
+import com.election.config.ExportProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExportAdmissionTest {
+
+    private static final long MB = 1L << 20;
+
+    @Test
+    void keepsRoomForSmallExportsWhileLargeOnesWait() throws Exception {
+        ExportAdmission admission = admission(Duration.ofSeconds(5));
+        long budget = admission.usage().heapBudget();
+        ExportCostEstimator.Estimate large = estimate(budget, 10_000);
+        ExportCostEstimator.Estimate small = estimate(MB, 10);
+
+        ExportAdmission.Permit first = admission.admit(large);
+        assertEquals(budget - admission.usage().smallReserve(), admission.usage().largeHeapInUse());
+        // A second large export has to wait for the first
+        CompletableFuture<ExportAdmission.Permit> second = CompletableFuture.supplyAsync(() -> admission.admit(large));
+        assertThrows(Exception.class, () -> second.get(200, TimeUnit.MILLISECONDS));
+        assertFalse(admission.preview(large).immediate());
+
+        // Small exports still start right away
+        assertTrue(admission.preview(small).small());
+        try (ExportAdmission.Permit permit = admission.admit(small)) {
+            assertEquals(2, admission.usage().running());
+        }
+
+        first.close();
+        second.get(5, TimeUnit.SECONDS).close();
+        assertEquals(0, admission.usage().heapInUse());
+    }
+
+    @Test
+    void rejectsExportsThatFindNoRoomInTime() {
+        ExportAdmission admission = admission(Duration.ofMillis(50));
+        ExportCostEstimator.Estimate large = estimate(admission.usage().heapBudget(), 10_000);
+
+        try (ExportAdmission.Permit permit = admission.admit(large)) {
+            ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> admission.admit(large));
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+            assertEquals(0, admission.usage().waiting());
+        }
+    }
+
+    private static ExportAdmission admission(Duration queueTimeout) {
+        ExportProperties properties = new ExportProperties();
+        properties.getAdmission().setQueueTimeout(queueTimeout);
+        return new ExportAdmission(properties, new SimpleMeterRegistry());
+    }
+
+    private static ExportCostEstimator.Estimate estimate(long heapBytes, long cpuMillis) {
+        return new ExportCostEstimator.Estimate("survey-pdf", "", cpuMillis, heapBytes, 0);
+    }
+}
@@ -0,0 +1,71 @@
+package com.election.service;
+
+import com.election.config.ExportProperties;
+import com.election.store.ArtifactKey;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExportCostEstimatorTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void countsRowsChartsAndVoters() throws Exception {
+        ExportProperties properties = new ExportProperties();
+        properties.getTopAnswers().setLimit(3);
+        ExportCostEstimator estimator = new ExportCostEstimator(objectMapper, properties);
+
+        ObjectNode root = objectMapper.createObjectNode();
+        ObjectNode data = root.putObject("data");
+        ArrayNode questions = data.putArray("questionResults");
+        // Five answers cut to three plus "Others", and listed in full in the appendix
+        ArrayNode ranking = questions.addObject().put("type", "RANKING").putArray("answers");
+        for (int i = 0; i < 5; i++) {
+            ranking.addObject().put("name", "a" + i).put("answerCount", i);
+        }
+        questions.addObject().put("type", "MULTI_CHOICE").putArray("answers").addObject().put("name", "x");
+        questions.addObject().put("type", "TEXT_SINGLE_LINE").putArray("answers").add("free text").add("more");
+        data.putArray("resultsSummary").add(objectMapper.readTree("""
+                {"candidateName":"A","voters":["Ann","Bob"],"numberOfVoters":2}"""));
+
+        ExportCostEstimator.PayloadShape shape = estimator.scan(root);
+        assertEquals(3, shape.questions());
+        assertEquals(4 + 1 + 1, shape.answerRows());
+        assertEquals(5, shape.appendixRows());
+        assertEquals(1, shape.chartQuestions());
+        assertEquals(1, shape.candidates());
+        assertEquals(2, shape.voters());
+        assertEquals(6, shape.voterChars());
+
+        // The streaming scan sees the same payload
+        ExportCostEstimator.PayloadShape streamed = estimator.scan(
+                objectMapper.getFactory().createParser(objectMapper.writeValueAsBytes(root)));
+        assertEquals(shape, streamed);
+    }
+
+    @Test
+    void ranksExportsByCost() {
+        ExportCostEstimator estimator = new ExportCostEstimator(objectMapper, new ExportProperties());
+        ExportCostEstimator.PayloadShape small = new ExportCostEstimator.PayloadShape(5, 25, 0, 2, 0, 0, 0, 300, 2_000);
+        ExportCostEstimator.PayloadShape large = new ExportCostEstimator.PayloadShape(300, 12_000, 0, 150, 0, 0, 0,
+                120_000, 700_000);
+
+        ExportCostEstimator.Estimate viewerCsv = estimator.estimate(small, ArtifactKey.SURVEY_CSV, "viewer");
+        ExportCostEstimator.Estimate pdf = estimator.estimate(large, ArtifactKey.SURVEY_PDF, "");
+        ExportCostEstimator.Estimate poi = estimator.estimate(large, ArtifactKey.SURVEY_EXCEL, "creator");
+        ExportCostEstimator.Estimate fast = estimator.estimate(large, ArtifactKey.SURVEY_EXCEL_FAST, "creator");
+
+        assertEquals("viewer", viewerCsv.role());
+        assertTrue(viewerCsv.cpuMillis() < 100);
+        assertTrue(pdf.cpuMillis() > 20 * viewerCsv.cpuMillis());
+        // The POI workbook holds every row, the fast writer streams them
+        assertTrue(poi.heapBytes() > 5 * fast.heapBytes());
+        assertTrue(poi.cpuMillis() > fast.cpuMillis());
+        // No candidates: the PDF and three tabular exports per role
+        assertEquals(7, estimator.estimateAll(large).size());
+    }
+}
@@ -0,0 +1,112 @@
+package com.election.service;
+
+import com.election.config.ExportProperties;
+import com.election.web.ExportOutputFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LiveElectionPdfServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void appendsRevisionThatCompletesEarlierCopy() throws Exception {
+        LiveElectionPdfService service = newService();
+
+        ResponseEntity<Resource> first = service.export(payload(10), null);
+        byte[] original = read(first);
+        ResponseEntity<Resource> update = service.export(payload(12), 1L);
+        byte[] increment = read(update);
+        byte[] full = read(service.export(payload(12), null));
+
+        assertEquals("2", update.getHeaders().getFirst(LiveElectionPdfService.REVISION_HEADER));
+        assertEquals("true", update.getHeaders().getFirst(LiveElectionPdfService.INCREMENTAL_HEADER));
+        assertArrayEquals(full, concat(original, increment));
+        try (PdfDocument pdf = new PdfDocument(new PdfReader(new ByteArrayInputStream(full)))) {
+            assertEquals(2, pdf.getNumberOfPages());
+        }
+    }
+
+    @Test
+    void sendsNothingNewForUnchangedResults() throws Exception {
+        LiveElectionPdfService service = newService();
+        service.export(payload(10), null);
+
+        ResponseEntity<Resource> again = service.export(payload(10), 1L);
+
+        assertEquals("1", again.getHeaders().getFirst(LiveElectionPdfService.REVISION_HEADER));
+        assertEquals(0, read(again).length);
+    }
+
+    @Test
+    void deletesDroppedDocumentsAndStartsThemAgain() throws Exception {
+        LiveElectionPdfService service = newService(1);
+        service.export(payload(10), null);
+
+        service.export(payload("e2", 10), null);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+
+        // Revision 1 of the dropped document must not pass for a revision of the new one
+        ResponseEntity<Resource> again = service.export(payload(12), 1L);
+        assertTrue(Long.parseLong(again.getHeaders().getFirst(LiveElectionPdfService.REVISION_HEADER)) > 1);
+        assertEquals("false", again.getHeaders().getFirst(LiveElectionPdfService.INCREMENTAL_HEADER));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    private LiveElectionPdfService newService() throws Exception {
+        return newService(new ExportProperties().getLivePdf().getMaxElections());
+    }
+
+    private LiveElectionPdfService newService(int maxElections) throws Exception {
+        ExportProperties properties = new ExportProperties();
+        properties.getLivePdf().setDirectory(directory.toString());
+        properties.getLivePdf().setMaxElections(maxElections);
+        ElectionServicePdf electionServicePdf = new ElectionServicePdf(objectMapper, new ExportOutputFactory(properties));
+        return new LiveElectionPdfService(electionServicePdf, properties);
+    }
+
+    private JsonNode payload(int votes) throws Exception {
+        return payload("e1", votes);
+    }
+
+    private JsonNode payload(String electionId, int votes) throws Exception {
+        return objectMapper.readTree("{\"data\":{\"electionId\":\"" + electionId + "\",\"electionName\":\"Board\","
+                + "\"insights\":{\"allVotersCount\":30},\"resultsSummary\":[{\"candidateName\":\"A\",\"numberOfVoters\":"
+                + votes + "}]}}");
+    }
+
+    private static byte[] read(ResponseEntity<Resource> response) throws Exception {
+        try (InputStream in = response.getBody().getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(a);
+        out.writeBytes(b);
+        return out.toByteArray();
+    }
+}
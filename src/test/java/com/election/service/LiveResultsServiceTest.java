@@ -0,0 +1,189 @@
+package com.election.service;
+
+import com.election.config.ExportProperties;
+import com.election.web.EventStream;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LiveResultsServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void publishesOnlyChangedValues() throws Exception {
+        LiveResultsService service = new LiveResultsService(objectMapper, new SyncTaskExecutor(), new ExportProperties());
+
+        LiveResultsService.Published first = service.publish("e1", objectMapper.readTree(snapshot(10, 50.0)));
+        LiveResultsService.Published second = service.publish("e1", objectMapper.readTree(snapshot(11, 50.0)));
+        LiveResultsService.Published repeated = service.publish("e1", objectMapper.readTree(snapshot(11, 50.0)));
+
+        assertEquals(4, first.changedValues());
+        assertEquals(1, second.changedValues());
+        assertEquals(2, second.version());
+        assertEquals(0, repeated.changedValues());
+        assertEquals(2, repeated.version());
+    }
+
+    @Test
+    void publishesRemovedValuesAsNull() throws Exception {
+        LiveResultsService service = new LiveResultsService(objectMapper, new SyncTaskExecutor(), new ExportProperties());
+        service.publish("e1", objectMapper.readTree(snapshot(10, 50.0)));
+
+        // Candidate B and question 1 are gone: one removal each
+        LiveResultsService.Published removed = service.publish("e1", objectMapper.readTree(
+                "{\"data\":{\"resultsSummary\":[{\"candidateName\":\"A\",\"numberOfVoters\":10}],"
+                        + "\"insights\":{\"completionRate\":40.0}}}"));
+        LiveResultsService.Published restored = service.publish("e1", objectMapper.readTree(snapshot(10, 50.0)));
+
+        assertEquals(2, removed.changedValues());
+        assertEquals(2, restored.changedValues());
+        assertEquals(3, restored.version());
+    }
+
+    @Test
+    void slowSubscribersDoNotKeepRemovedAnswers() throws Exception {
+        List<Runnable> dispatches = new ArrayList<>();
+        LiveResultsService service = new LiveResultsService(objectMapper, dispatches::add, new ExportProperties());
+        RecordingStream stream = new RecordingStream();
+        service.publish("e1", objectMapper.readTree(snapshot(10, 50.0, "{\"name\":\"No\",\"answerPercentage\":50.0}")));
+        service.subscribe("e1", stream);
+        runAll(dispatches);
+
+        // Question 1 is removed and comes back without "No" while the subscriber is still waiting
+        service.publish("e1", objectMapper.readTree("{\"data\":{\"resultsSummary\":[{\"candidateName\":\"A\","
+                + "\"numberOfVoters\":10},{\"candidateName\":\"B\",\"numberOfVoters\":3}],"
+                + "\"insights\":{\"completionRate\":40.0}}}"));
+        service.publish("e1", objectMapper.readTree(snapshot(10, 100.0)));
+        runAll(dispatches);
+
+        assertEquals(2, stream.events.size());
+        ObjectNode state = objectMapper.createObjectNode();
+        for (String event : stream.events) {
+            apply(state, objectMapper.readTree(event));
+        }
+        assertEquals(3, state.path("version").asInt());
+        assertEquals(objectMapper.readTree("{\"1\":{\"Yes\":100.0}}"), state.path("answers"));
+    }
+
+    @Test
+    void stalledSubscribersHoldNoThreadAndAreDropped() throws Exception {
+        ExportProperties properties = new ExportProperties();
+        properties.getLive().setSendTimeout(Duration.ofMillis(50));
+        List<Runnable> dispatches = new ArrayList<>();
+        LiveResultsService service = new LiveResultsService(objectMapper, dispatches::add, properties);
+        RecordingStream stalled = new RecordingStream();
+        RecordingStream reading = new RecordingStream();
+        service.subscribe("e1", stalled);
+        service.subscribe("e1", reading);
+
+        service.publish("e1", objectMapper.readTree(snapshot(10, 50.0)));
+        runAll(dispatches);
+        // The first client stops reading: its next event waits without taking a thread
+        stalled.ready = false;
+        service.publish("e1", objectMapper.readTree(snapshot(11, 50.0)));
+        runAll(dispatches);
+        assertEquals(1, stalled.events.size());
+        assertEquals(2, reading.events.size());
+
+        Thread.sleep(100);
+        LiveResultsService.Published published = service.publish("e1", objectMapper.readTree(snapshot(12, 50.0)));
+        runAll(dispatches);
+        assertTrue(stalled.closed);
+        assertFalse(reading.closed);
+        assertEquals(3, reading.events.size());
+        assertEquals(1, service.publish("e1", objectMapper.readTree(snapshot(13, 50.0))).subscribers());
+        assertEquals(2, published.subscribers());
+    }
+
+    @Test
+    void subscribersThatCatchUpGetWhatTheyMissed() throws Exception {
+        LiveResultsService service = new LiveResultsService(objectMapper, new SyncTaskExecutor(), new ExportProperties());
+        RecordingStream stream = new RecordingStream();
+        service.subscribe("e1", stream);
+        service.publish("e1", objectMapper.readTree(snapshot(10, 50.0)));
+        stream.ready = false;
+        service.publish("e1", objectMapper.readTree(snapshot(11, 50.0)));
+        service.publish("e1", objectMapper.readTree(snapshot(12, 60.0)));
+        assertEquals(1, stream.events.size());
+
+        stream.ready = true;
+        stream.onWritable.run();
+
+        assertEquals(2, stream.events.size());
+        assertEquals(objectMapper.readTree("{\"candidates\":{\"A\":12},\"answers\":{\"1\":{\"Yes\":60.0}},\"version\":3}"),
+                objectMapper.readTree(stream.events.get(1)));
+    }
+
+    private static void runAll(List<Runnable> dispatches) {
+        while (!dispatches.isEmpty()) {
+            dispatches.remove(0).run();
+        }
+    }
+
+    // What a client does with an event: merge objects, drop keys sent as null
+    private static void apply(ObjectNode state, JsonNode event) {
+        event.fields().forEachRemaining(field -> {
+            JsonNode existing = state.get(field.getKey());
+            if (field.getValue().isNull()) {
+                state.remove(field.getKey());
+            } else if (field.getValue().isObject() && existing != null && existing.isObject()) {
+                apply((ObjectNode) existing, field.getValue());
+            } else {
+                state.set(field.getKey(), field.getValue());
+            }
+        });
+    }
+
+    private static final class RecordingStream implements EventStream {
+        final List<String> events = new ArrayList<>();
+        boolean ready = true;
+        boolean closed;
+        Runnable onWritable;
+        Runnable onClose;
+
+        @Override
+        public boolean isReady() {
+            return ready && !closed;
+        }
+
+        @Override
+        public void send(String id, String name, String data) {
+            events.add(data);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            onClose.run();
+        }
+
+        @Override
+        public void onWritable(Runnable callback) {
+            onWritable = callback;
+        }
+
+        @Override
+        public void onClose(Runnable callback) {
+            onClose = callback;
+        }
+    }
+
+    private static String snapshot(int votes, double percentage, String... otherAnswers) {
+        return "{\"data\":{\"resultsSummary\":[{\"candidateName\":\"A\",\"numberOfVoters\":" + votes + "},"
+                + "{\"candidateName\":\"B\",\"numberOfVoters\":3}],\"insights\":{\"completionRate\":40.0},"
+                + "\"questionResults\":[{\"questionNumber\":\"1\",\"answers\":[{\"name\":\"Yes\",\"answerPercentage\":"
+                + percentage + "}" + Arrays.stream(otherAnswers).map(answer -> "," + answer).collect(Collectors.joining())
+                + "]}]}}";
+    }
+}
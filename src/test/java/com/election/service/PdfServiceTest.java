@@ -0,0 +1,72 @@
+package com.election.service;
+
+import com.election.config.ExportProperties;
+import com.election.web.ExportOutputFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfTextExtractor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PdfServiceTest {
+
+    private static final int QUESTIONS = 60;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void sequentialAndChunkedReportsLookTheSame() throws Exception {
+        assertNumberedWithHeaderBeneathContent(render(QUESTIONS + 1));
+        assertNumberedWithHeaderBeneathContent(render(1));
+    }
+
+    private void assertNumberedWithHeaderBeneathContent(Resource pdf) throws Exception {
+        try (InputStream in = pdf.getInputStream();
+             PdfDocument document = new PdfDocument(new PdfReader(in))) {
+            int pages = document.getNumberOfPages();
+            assertTrue(pages > 1);
+            for (int i = 1; i <= pages; i++) {
+                assertTrue(PdfTextExtractor.getTextFromPage(document.getPage(i)).contains("Page " + i + " of " + pages));
+            }
+            String firstPage = new String(document.getFirstPage().getContentBytes(), StandardCharsets.ISO_8859_1);
+            assertTrue(firstPage.indexOf("Board Results") < firstPage.indexOf("Votes by"));
+        }
+    }
+
+    private Resource render(int parallelThreshold) throws Exception {
+        ExportProperties properties = new ExportProperties();
+        properties.getPdf().setParallelThreshold(parallelThreshold);
+        properties.getPdf().setChunkSize(10);
+        return new PdfService(properties, pool, new ExportOutputFactory(properties)).generateDemandCommitteePdf(payload());
+    }
+
+    private JsonNode payload() {
+        ObjectNode data = objectMapper.createObjectNode().put("voteTitle", "Board");
+        ArrayNode questions = data.putArray("questionResults");
+        for (int i = 1; i <= QUESTIONS; i++) {
+            ObjectNode question = questions.addObject().put("questionNumber", i + ".").put("title", "Question " + i)
+                    .put("type", "SINGLE_CHOICE");
+            question.putArray("answers").addObject().put("name", "Yes").put("answerCount", i).put("answerPercentage", 100.0);
+        }
+        ObjectNode root = objectMapper.createObjectNode();
+        root.set("data", data);
+        return root;
+    }
+}
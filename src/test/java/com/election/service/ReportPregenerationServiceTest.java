@@ -0,0 +1,38 @@
+package com.election.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportPregenerationServiceTest {
+
+    private static final ZoneId RIYADH = ZoneId.of("Asia/Riyadh");
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void readsSurveyEndDateAndTimeInConfiguredZone() throws Exception {
+        Instant close = ReportPregenerationService.closeTime(objectMapper.readTree(
+                "{\"data\":{\"endDate\":\"2026-02-01\",\"endTime\":\"12:00\"}}"), RIYADH);
+
+        assertEquals(Instant.parse("2026-02-01T09:00:00Z"), close);
+    }
+
+    @Test
+    void closesElectionWithoutTimeAtEndOfDay() throws Exception {
+        Instant close = ReportPregenerationService.closeTime(objectMapper.readTree(
+                "{\"data\":{\"details\":{\"end-date\":\"2026-02-01\"}}}"), RIYADH);
+
+        assertEquals(Instant.parse("2026-02-01T21:00:00Z"), close);
+    }
+
+    @Test
+    void rejectsMissingEndDate() throws Exception {
+        assertThrows(ResponseStatusException.class, () -> ReportPregenerationService.closeTime(
+                objectMapper.readTree("{\"data\":{\"endTime\":\"12:00\"}}"), RIYADH));
+    }
+}
@@ -0,0 +1,94 @@
+package com.election.store;
+
+import com.election.config.ExportProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArtifactStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void servesStoredArtifactAfterRestart() throws Exception {
+        AtomicInteger renders = new AtomicInteger();
+        ArtifactKey key = new ArtifactKey("survey-csv", "creator", "EN", "abc");
+
+        ResponseEntity<Resource> first = newStore(DataSize.ofMegabytes(1)).serve(key, new MockHttpServletRequest(), () -> render(renders, "a,b\n"));
+        ResponseEntity<Resource> second = newStore(DataSize.ofMegabytes(1)).serve(key, new MockHttpServletRequest(), () -> render(renders, "other"));
+
+        assertEquals(1, renders.get());
+        assertEquals("a,b\n", second.getBody().getContentAsString(StandardCharsets.UTF_8));
+        assertEquals(first.getHeaders().getContentType(), second.getHeaders().getContentType());
+        assertEquals("attachment; filename=export.csv", second.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION));
+    }
+
+    @Test
+    void evictsLeastRecentlyServedPastMaxSize() throws Exception {
+        ArtifactStore store = newStore(DataSize.ofBytes(25));
+        AtomicInteger renders = new AtomicInteger();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        ArtifactKey a = new ArtifactKey("survey-csv", "creator", "en", "a");
+        ArtifactKey b = new ArtifactKey("survey-csv", "creator", "en", "b");
+        ArtifactKey c = new ArtifactKey("survey-csv", "creator", "en", "c");
+
+        store.serve(a, request, () -> render(renders, "0123456789"));
+        store.serve(b, request, () -> render(renders, "0123456789"));
+        store.serve(a, request, () -> render(renders, "0123456789"));
+        store.serve(c, request, () -> render(renders, "0123456789"));
+
+        assertTrue(store.find(a).isPresent());
+        assertFalse(store.find(b).isPresent());
+        assertTrue(store.find(c).isPresent());
+    }
+
+    @Test
+    void servesFullBodyWhenIfRangeDoesNotMatch() throws Exception {
+        ArtifactStore store = newStore(DataSize.ofMegabytes(1));
+        ArtifactKey key = new ArtifactKey("survey-pdf", null, null, "abc");
+        ResponseEntity<Resource> stored = store.serve(key, new MockHttpServletRequest(),
+                () -> render(new AtomicInteger(), "%PDF"));
+
+        MockHttpServletRequest matching = new MockHttpServletRequest();
+        matching.addHeader(HttpHeaders.IF_RANGE, stored.getHeaders().getETag());
+        MockHttpServletRequest stale = new MockHttpServletRequest();
+        stale.addHeader(HttpHeaders.IF_RANGE, "\"stale\"");
+        Artifact artifact = store.find(key).orElseThrow();
+
+        assertInstanceOf(FileSystemResource.class, store.toResponse(artifact, matching).getBody());
+        ResponseEntity<Resource> full = store.toResponse(artifact, stale);
+        assertInstanceOf(InputStreamResource.class, full.getBody());
+        assertEquals(4, full.getHeaders().getContentLength());
+        full.getBody().getInputStream().close();
+    }
+
+    private ArtifactStore newStore(DataSize maxSize) throws Exception {
+        ExportProperties properties = new ExportProperties();
+        properties.getStore().setDirectory(directory.toString());
+        properties.getStore().setMaxSize(maxSize);
+        return new ArtifactStore(properties);
+    }
+
+    private static ResponseEntity<Resource> render(AtomicInteger renders, String content) {
+        renders.incrementAndGet();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=export.csv")
+                .contentType(MediaType.valueOf("text/csv"))
+                .body(new ByteArrayResource(content.getBytes()));
+    }
+}
@@ -0,0 +1,33 @@
+package com.election.web;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionFilterTest {
+
+    @Test
+    void negotiatesGzipFromAcceptEncoding() {
+        assertTrue(CompressionFilter.acceptsGzip("gzip"));
+        assertTrue(CompressionFilter.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(CompressionFilter.acceptsGzip("br, *"));
+        assertFalse(CompressionFilter.acceptsGzip(null));
+        assertFalse(CompressionFilter.acceptsGzip("br, deflate"));
+        assertFalse(CompressionFilter.acceptsGzip("gzip;q=0"));
+        assertFalse(CompressionFilter.acceptsGzip("*;q=0.0"));
+    }
+
+    @Test
+    void explicitGzipWinsOverWildcard() {
+        assertTrue(CompressionFilter.acceptsGzip("*;q=0, gzip"));
+        assertFalse(CompressionFilter.acceptsGzip("gzip;q=0, *"));
+    }
+
+    @Test
+    void malformedQualityRefusesThatEntry() {
+        assertFalse(CompressionFilter.acceptsGzip("gzip;q=abc"));
+        assertFalse(CompressionFilter.acceptsGzip("gzip;q="));
+        assertTrue(CompressionFilter.acceptsGzip("*;q=abc, gzip"));
+        assertFalse(CompressionFilter.acceptsGzip("gzip;q=abc, *"));
+    }
+}
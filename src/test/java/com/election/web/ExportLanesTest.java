@@ -0,0 +1,103 @@
+package com.election.web;
+
+import com.election.config.ExportProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExportLanesTest {
+
+    private final ThreadPoolTaskExecutor light = executor();
+    private final ThreadPoolTaskExecutor heavy = executor();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @AfterEach
+    void shutdown() {
+        light.shutdown();
+        heavy.shutdown();
+    }
+
+    @Test
+    void viewerExportsRunWhileHeavyExportsQueue() throws Exception {
+        ExportLanes lanes = lanes(Duration.ofSeconds(10));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> running = start(lanes.submit(ExportLanes.Lane.HEAVY, () -> {
+            started.countDown();
+            release.await();
+            return "creator";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<String> queued = start(lanes.submit(ExportLanes.Lane.HEAVY, () -> "creator"));
+
+        // The heavy thread is taken and its queue is full, but the light lane is untouched
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> lanes.submit(ExportLanes.Lane.HEAVY, () -> "creator"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+        assertEquals("viewer", start(lanes.submit(ExportLanes.Lane.LIGHT, () -> "viewer")).get(5, TimeUnit.SECONDS));
+        assertEquals(1.0, registry.get("export.lane.queued").tag("lane", "heavy").gauge().value());
+
+        release.countDown();
+        assertEquals("creator", running.get(5, TimeUnit.SECONDS));
+        assertEquals("creator", queued.get(5, TimeUnit.SECONDS));
+        assertEquals(1.0, registry.get("export.lane.rejected").tags("lane", "heavy", "reason", "queue-full")
+                .counter().count());
+        assertEquals(1, registry.get("export.lane.execution").tag("lane", "light").timer().count());
+    }
+
+    @Test
+    void rejectsExportsThatWaitedTooLong() throws Exception {
+        ExportLanes lanes = lanes(Duration.ofMillis(50));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> running = start(lanes.submit(ExportLanes.Lane.HEAVY, () -> {
+            started.countDown();
+            release.await();
+            return "creator";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<String> queued = start(lanes.submit(ExportLanes.Lane.HEAVY, () -> "creator"));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertEquals("creator", running.get(5, TimeUnit.SECONDS));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ResponseStatusException.class, e.getCause());
+        assertEquals(1.0, registry.get("export.lane.rejected").tags("lane", "heavy", "reason", "queue-timeout")
+                .counter().count());
+    }
+
+    private ExportLanes lanes(Duration queueTimeout) {
+        ExportProperties properties = new ExportProperties();
+        properties.getLanes().getHeavy().setQueueCapacity(1);
+        properties.getLanes().getHeavy().setQueueTimeout(queueTimeout);
+        return new ExportLanes(properties, registry, light, heavy);
+    }
+
+    // What WebAsyncManager does with the task once the handler returns it
+    @SuppressWarnings("unchecked")
+    private static <T> Future<T> start(WebAsyncTask<T> task) {
+        return task.getExecutor().submit((Callable<T>) task.getCallable());
+    }
+
+    private static ThreadPoolTaskExecutor executor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.initialize();
+        return executor;
+    }
+}
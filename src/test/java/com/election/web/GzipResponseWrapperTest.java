@@ -0,0 +1,82 @@
+package com.election.web;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GzipResponseWrapperTest {
+
+    private static final int THRESHOLD = 64;
+
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private final GzipResponseWrapper wrapper = new GzipResponseWrapper(response, 6, THRESHOLD,
+            MediaType.parseMediaTypes("text/csv"), new CompressionMetrics(new SimpleMeterRegistry()));
+
+    @Test
+    void sendsSmallBodiesUncompressedWithTheirLength() throws IOException {
+        wrapper.setContentType("text/csv");
+        wrapper.getOutputStream().write(body(THRESHOLD - 1));
+        wrapper.finish();
+
+        assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(THRESHOLD - 1, response.getContentLength());
+        assertArrayEquals(body(THRESHOLD - 1), response.getContentAsByteArray());
+    }
+
+    @Test
+    void compressesLargeBodiesAndWeakensTheirValidators() throws IOException {
+        wrapper.setContentType("text/csv");
+        wrapper.setHeader(HttpHeaders.ETAG, "\"abc\"");
+        wrapper.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        wrapper.setContentLengthLong(10 * THRESHOLD);
+        wrapper.getOutputStream().write(body(10 * THRESHOLD));
+        wrapper.finish();
+
+        assertEquals("gzip", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeader(HttpHeaders.VARY));
+        assertEquals("W/\"abc\"", response.getHeader(HttpHeaders.ETAG));
+        assertEquals("none", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        // The identity length must not be sent with the gzip body
+        assertNull(response.getHeader(HttpHeaders.CONTENT_LENGTH));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertArrayEquals(body(10 * THRESHOLD), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void passesOtherTypesAndStatusesThrough() throws IOException {
+        wrapper.setContentType("application/pdf");
+        wrapper.setHeader(HttpHeaders.ETAG, "\"abc\"");
+        wrapper.setContentLengthLong(10 * THRESHOLD);
+        wrapper.getOutputStream().write(body(10 * THRESHOLD));
+        wrapper.finish();
+
+        assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("\"abc\"", response.getHeader(HttpHeaders.ETAG));
+        assertEquals(10 * THRESHOLD, response.getContentLength());
+
+        MockHttpServletResponse partial = new MockHttpServletResponse();
+        GzipResponseWrapper partialWrapper = new GzipResponseWrapper(partial, 6, THRESHOLD,
+                List.of(MediaType.parseMediaType("text/csv")), new CompressionMetrics(new SimpleMeterRegistry()));
+        partialWrapper.setStatus(206);
+        partialWrapper.setContentType("text/csv");
+        partialWrapper.getOutputStream().write(body(10 * THRESHOLD));
+        partialWrapper.finish();
+        assertNull(partial.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(body(10 * THRESHOLD), partial.getContentAsByteArray());
+    }
+
+    private static byte[] body(int length) {
+        return "a,b,c\n".repeat(length).substring(0, length).getBytes(StandardCharsets.UTF_8);
+    }
+}